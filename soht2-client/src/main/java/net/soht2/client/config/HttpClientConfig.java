@@ -0,0 +1,181 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.client.config;
+
+import static java.util.Optional.ofNullable;
+
+import io.vavr.control.Try;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import javax.net.ssl.SSLContext;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.soht2.client.config.Soht2ClientProperties.HttpVersion;
+import net.soht2.client.config.Soht2ClientProperties.ProxyAuth;
+import net.soht2.client.service.HCClientHttpRequestFactory;
+import net.soht2.client.service.HCConnectionPoolMonitor;
+import org.apache.http.HttpHost;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+/**
+ * Configuration class for the HTTP client used to reach the SOHT2 server. Every exchange of every
+ * tunnel goes through a single {@link PoolingHttpClientConnectionManager}, so polls reuse
+ * kept-alive connections instead of paying for a new TCP and TLS handshake.
+ *
+ * <h3>Components provided by this configuration:</h3>
+ *
+ * <ol>
+ *   <li>A {@link PoolingHttpClientConnectionManager} sized by {@link
+ *       Soht2ClientProperties#maxHttpConnections()}. All its HTTPS connections share one SSL
+ *       context, so a new connection resumes the cached TLS session. The SSL socket factory is
+ *       provided by {@link TrustingSSLConfig} if SSL verification is disabled.
+ *   <li>A {@link HCConnectionPoolMonitor} evicting idle connections and logging pool statistics.
+ *   <li>A {@link ClientHttpRequestFactory} with the explicit keep-alive strategy, which also uses
+ *       the proxy beans of {@link ProxyConfig} if a proxy is configured. If HTTP/2 is configured,
+ *       the factory is built on JDK HTTP client instead, so all the tunnels are multiplexed over a
+ *       single connection with compressed headers. NTLM proxy authentication keeps HTTP/1.1, as JDK
+ *       HTTP client does not support it.
+ * </ol>
+ */
+@Slf4j
+@Configuration
+public class HttpClientConfig {
+
+  @Bean
+  PoolingHttpClientConnectionManager httpClientConnectionManager(
+      Soht2ClientProperties properties,
+      @Autowired(required = false) SSLConnectionSocketFactory sslConnectionSocketFactory) {
+    val http = properties.getHttp();
+    val registry =
+        RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register(
+                "https",
+                ofNullable(sslConnectionSocketFactory)
+                    .orElseGet(SSLConnectionSocketFactory::getSystemSocketFactory))
+            .build();
+    val connectionManager = new PoolingHttpClientConnectionManager(registry);
+    val maxConnections = properties.maxHttpConnections();
+    // all exchanges go to the same server, so the whole pool is available to its route
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    connectionManager.setValidateAfterInactivity(
+        (int) http.getValidateAfterInactivity().toMillis());
+    log.info("httpClientConnectionManager: maxConnections={}, http={}", maxConnections, http);
+    return connectionManager;
+  }
+
+  @Bean
+  HCConnectionPoolMonitor hcConnectionPoolMonitor(
+      Soht2ClientProperties properties,
+      PoolingHttpClientConnectionManager httpClientConnectionManager) {
+    return HCConnectionPoolMonitor.builder()
+        .connectionManager(httpClientConnectionManager)
+        .idleTimeout(properties.getHttp().getIdleTimeout())
+        .build();
+  }
+
+  @Bean
+  ClientHttpRequestFactory clientHttpRequestFactory(
+      Soht2ClientProperties properties,
+      PoolingHttpClientConnectionManager httpClientConnectionManager,
+      @Autowired(required = false) SSLContext sslContext,
+      @Autowired(required = false) HttpHost httpHostProxy,
+      @Autowired(required = false) RequestConfig requestConfig,
+      @Autowired(required = false) CredentialsProvider credentialsProvider) {
+    log.info(
+        "clientHttpRequestFactory: httpHostProxy={}, requestConfig={}, credentialsProvider={}",
+        httpHostProxy,
+        requestConfig,
+        credentialsProvider);
+    if (properties.getHttp().getVersion() == HttpVersion.HTTP_2) {
+      if (!StringUtils.hasText(properties.getProxy().getUsername())
+          || properties.getProxy().getAuth() != ProxyAuth.NTLM)
+        return jdkClientHttpRequestFactory(properties, sslContext);
+      log.warn("clientHttpRequestFactory: NTLM proxy authentication requires HTTP/1.1");
+    }
+    return Try.of(
+            () ->
+                HttpClients.custom()
+                    .setConnectionManager(httpClientConnectionManager)
+                    .setKeepAliveStrategy(keepAliveStrategy(properties.getHttp().getKeepAlive()))
+                    .setProxy(httpHostProxy)
+                    .setDefaultCredentialsProvider(credentialsProvider)
+                    .setDefaultRequestConfig(
+                        ofNullable(requestConfig)
+                            .map(RequestConfig::copy)
+                            .orElseGet(RequestConfig::custom)
+                            .setConnectionRequestTimeout(
+                                (int) properties.getHttp().getConnectionRequestTimeout().toMillis())
+                            .build())
+                    .build())
+        .mapTry(HCClientHttpRequestFactory::new)
+        .onSuccess(factory -> log.info("clientHttpRequestFactory: {}", factory))
+        .get();
+  }
+
+  /**
+   * Creates the HTTP/2 request factory on top of JDK HTTP client. It negotiates {@code h2} by ALPN
+   * over TLS and upgrades plain connections to {@code h2c}, and it keeps HTTP/1.1 if the server
+   * does not agree. Requests through a proxy to a plain HTTP server always use HTTP/1.1, and the
+   * ones to an HTTPS server go through a CONNECT tunnel, so the proxy does not have to support
+   * HTTP/2. Basic proxy authentication is supported, but the JDK disables it for tunnels unless
+   * {@code -Djdk.http.auth.tunneling.disabledSchemes=} is set.
+   */
+  static ClientHttpRequestFactory jdkClientHttpRequestFactory(
+      Soht2ClientProperties properties, @Nullable SSLContext sslContext) {
+    val builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+    // the host name check is left to the trust manager of the context
+    ofNullable(sslContext).ifPresent(builder::sslContext);
+    val proxy = properties.getProxy();
+    if (StringUtils.hasText(proxy.getHost())) {
+      builder.proxy(ProxySelector.of(new InetSocketAddress(proxy.getHost(), proxy.getPort())));
+      if (StringUtils.hasText(proxy.getUsername()))
+        builder.authenticator(
+            new Authenticator() {
+              @Override
+              protected PasswordAuthentication getPasswordAuthentication() {
+                return getRequestorType() == RequestorType.PROXY
+                    ? new PasswordAuthentication(
+                        proxy.getUsername(),
+                        ofNullable(proxy.getPassword()).orElse("").toCharArray())
+                    : null;
+              }
+            });
+    }
+    val factory = new JdkClientHttpRequestFactory(builder.build());
+    log.info("jdkClientHttpRequestFactory: {}", factory);
+    return factory;
+  }
+
+  /**
+   * Keeps a connection alive as long as the {@code Keep-Alive} response header tells, or for the
+   * configured duration if the server does not tell it.
+   */
+  static ConnectionKeepAliveStrategy keepAliveStrategy(Duration keepAlive) {
+    return (response, context) -> {
+      val duration =
+          DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      return duration > 0 ? duration : keepAlive.toMillis();
+    };
+  }
+}
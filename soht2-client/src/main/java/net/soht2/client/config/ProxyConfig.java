@@ -5,7 +5,6 @@ import io.vavr.control.Try;
 import java.net.InetAddress;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
-import net.soht2.client.service.HCClientHttpRequestFactory;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
@@ -14,10 +13,7 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClients;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -64,17 +60,16 @@ import org.springframework.http.client.ClientHttpRequestFactory;
  *   <li>{@code requestConfig}: Provides a custom {@link RequestConfig} that configures the HTTP
  *       client's request preferences, including proxy server settings and supported authentication
  *       schemes.
- *   <li>{@code clientHttpRequestFactory}: Provides a {@link ClientHttpRequestFactory} for creating
- *       HTTP requests with the configured proxy, request settings, credentials provider, and
- *       connection manager.
  * </ol>
  *
+ * <p>These beans are used by the {@link ClientHttpRequestFactory} of {@link HttpClientConfig} to
+ * send the requests through the proxy.
+ *
  * <h3>Dependencies:</h3>
  *
  * <ul>
  *   <li>{@link Soht2ClientProperties}: Supplies the proxy-related properties such as host, port,
  *       username, password, and domain.
- *   <li>{@link HttpClientConnectionManager}: Configurable connection manager for HTTP clients.
  *   <li>{@link AuthScope}, {@link AuthSchemes}, {@link BasicCredentialsProvider}: Used for managing
  *       authentication details.
  * </ul>
@@ -135,33 +130,4 @@ public class ProxyConfig {
         .setProxyPreferredAuthSchemes(List.of(AuthSchemes.BASIC, AuthSchemes.NTLM))
         .build();
   }
-
-  @Bean
-  ClientHttpRequestFactory clientHttpRequestFactory(
-      HttpHost httpHostProxy,
-      @Autowired(required = false) RequestConfig requestConfig,
-      @Autowired(required = false) CredentialsProvider credentialsProvider,
-      @Autowired(required = false) HttpClientConnectionManager httpClientConnectionManager) {
-    log.info(
-        "clientHttpRequestFactory: "
-            + "httpHostProxy={}, "
-            + "requestConfig={}, "
-            + "credentialsProvider={}, "
-            + "httpClientConnectionManager={}",
-        httpHostProxy,
-        requestConfig,
-        credentialsProvider,
-        httpClientConnectionManager);
-    return Try.of(
-            () ->
-                HttpClients.custom()
-                    .setProxy(httpHostProxy)
-                    .setConnectionManager(httpClientConnectionManager)
-                    .setDefaultCredentialsProvider(credentialsProvider)
-                    .setDefaultRequestConfig(requestConfig)
-                    .build())
-        .mapTry(HCClientHttpRequestFactory::new)
-        .onSuccess(factory -> log.info("clientHttpRequestFactory: {}", factory))
-        .get();
-  }
 }
@@ -8,10 +8,13 @@ import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
 
 import java.util.Base64;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import net.soht2.client.service.AdaptivePollStrategy;
 import net.soht2.client.service.ConstantPollStrategy;
 import net.soht2.client.service.ExponentPollStrategy;
 import net.soht2.client.service.LinearPollStrategy;
@@ -60,6 +63,17 @@ public class Soht2ClientConfig {
     return restClientBuilder.build();
   }
 
+  /**
+   * Executor running the listeners and the exchange loops of the tunnels. They spend most of their
+   * time blocked on socket reads and poll delays, so every task gets its own virtual thread instead
+   * of competing for a pool sized by the number of CPU cores.
+   */
+  @Bean(destroyMethod = "shutdownNow")
+  ExecutorService tunnelExecutor() {
+    return Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("soht2-tunnel-", 0).factory());
+  }
+
   @Bean
   PollStrategy pollStrategy(Soht2ClientProperties properties) {
     val poll = properties.getPoll();
@@ -76,6 +90,12 @@ public class Soht2ClientConfig {
               .maxDelay(poll.getMaxDelay())
               .factor(poll.getFactor())
               .build();
+      case ADAPTIVE ->
+          AdaptivePollStrategy.builder()
+              .initialDelay(poll.getInitialDelay())
+              .maxDelay(poll.getMaxDelay())
+              .jitter(poll.getJitter())
+              .build();
     };
   }
 }
@@ -8,7 +8,9 @@ import java.util.Set;
 import lombok.Data;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import net.soht2.common.compress.CompressionType;
+import net.soht2.common.compress.DeflateStrategy;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.util.Assert;
@@ -30,7 +32,7 @@ public class Soht2ClientProperties implements InitializingBean {
    * Properties for each host connection.
    *
    * <p>This class holds the properties for a single host connection, including the local port,
-   * remote host, and remote port.
+   * remote host, and remote port, and the limits of the local listener.
    */
   @Data
   public static class HostProperties {
@@ -42,6 +44,18 @@ public class Soht2ClientProperties implements InitializingBean {
 
     /** The port number on the remote machine to connect to. */
     private int remotePort;
+
+    /**
+     * The maximum number of incoming local connections queued by the listener while they are not
+     * accepted yet.
+     */
+    private int backlog = 50;
+
+    /**
+     * The maximum number of simultaneous tunnels of the listener, zero or less for no limit.
+     * Connections exceeding the limit wait in the backlog until a tunnel closes.
+     */
+    private int maxTunnels = 0;
   }
 
   /** Defines the strategy for polling the server for updates. */
@@ -51,7 +65,9 @@ public class Soht2ClientProperties implements InitializingBean {
     /** Polling strategy that increases the delay linearly with each request. */
     LINEAR,
     /** Polling strategy that increases the delay exponentially with each request. */
-    EXPONENT
+    EXPONENT,
+    /** Polling strategy that adapts the delay to the traffic of each connection. */
+    ADAPTIVE
   }
 
   /**
@@ -67,12 +83,48 @@ public class Soht2ClientProperties implements InitializingBean {
      * Whether request compression is enabled or, if enabled, which encoding is used.
      *
      * <p>In the case of DEFLATE, only client requests are compressed, while server responses are
-     * not. In the case of GZIP, both client requests and server responses are compressed.
+     * not. In the case of GZIP and LZ4, both client requests and server responses are compressed.
+     * LZ4 is much faster than GZIP, which matters on fast links, at the cost of a lower ratio.
      */
     private CompressionType type = CompressionType.NONE;
 
     /** The threshold size in bytes above which compression is applied. */
     private DataSize minRequestSize = DataSize.ofKilobytes(2);
+
+    /**
+     * Whether compression is skipped for the connections sending incompressible data, like TLS
+     * traffic, and turned back on when their data gets compressible again.
+     */
+    private boolean adaptive = true;
+
+    /**
+     * The GZIP and DEFLATE compression level from 0 (no compression) to 9 (best), or -1 for the
+     * default. Lower levels are much faster at a slightly lower ratio.
+     */
+    private int level = -1;
+
+    /** The GZIP and DEFLATE compression strategy. */
+    private DeflateStrategy strategy = DeflateStrategy.DEFAULT;
+
+    /**
+     * Whether the uploads of a connection are compressed as a single DEFLATE stream that lasts as
+     * long as the connection does, if the type is GZIP or DEFLATE. Every upload refers to the data
+     * of the previous ones, so small repetitive messages of chatty protocols compress much better.
+     * Every upload is compressed then, neither the minimum size nor the adaptive skipping apply.
+     * The server must support it.
+     */
+    private boolean stateful = false;
+
+    /**
+     * Whether the preset dictionary of the target, offered by the server when a connection is
+     * opened, is used if compression is enabled. The uploads of the connection are compressed with
+     * DEFLATE and the dictionary then, and the server compresses the responses with it, too, so
+     * even small messages compress well. The stateful stream does not use the dictionary.
+     */
+    private boolean dictionary = true;
+
+    /** The threshold size in bytes above which compression with the dictionary is applied. */
+    private DataSize minDictionaryRequestSize = DataSize.ofBytes(64);
   }
 
   /**
@@ -86,7 +138,10 @@ public class Soht2ClientProperties implements InitializingBean {
     /** The strategy for polling the server for updates. */
     private PollStrategyType strategy = PollStrategyType.EXPONENT;
 
-    /** The initial delay before the first poll request. Used in LINEAR and EXPONENT strategies. */
+    /**
+     * The initial delay before the first poll request. Used in LINEAR, EXPONENT and ADAPTIVE
+     * strategies.
+     */
     private Duration initialDelay = Duration.ofMillis(100);
 
     /** The maximum delay between poll requests. Used in all supported strategies. */
@@ -94,6 +149,80 @@ public class Soht2ClientProperties implements InitializingBean {
 
     /** The factor by which the delay increases for EXPONENT strategy. */
     private int factor = 5;
+
+    /**
+     * The fraction of the delay by which it is randomly shortened or extended, so the polls of many
+     * clients do not synchronize. Used in ADAPTIVE strategy.
+     */
+    private double jitter = 0.2;
+  }
+
+  /**
+   * Properties for pipelined exchanges.
+   *
+   * <p>This class holds the properties related to the sequence-numbered uploads and downloads of a
+   * connection, including how many of them are kept in flight, and how a request failed by a
+   * network error is retried.
+   */
+  @Data
+  public static class ExchangeProperties {
+    /**
+     * The maximum number of uploads and, separately, downloads of a connection in flight. It must
+     * not exceed the exchange window of the server.
+     */
+    private int window = 4;
+
+    /** The number of retries of an upload or a download failed by a network error. */
+    private int retries = 3;
+
+    /** The delay before the first retry, multiplied by the number of the retry for the others. */
+    private Duration retryDelay = Duration.ofMillis(200);
+  }
+
+  /** Defines the HTTP version used to reach the SOHT2 server. */
+  public enum HttpVersion {
+    /** HTTP/1.1 over the pool of keep-alive connections of Apache HTTP client. */
+    HTTP_1_1,
+    /** HTTP/2 (h2 or h2c) over a single multiplexed connection of JDK HTTP client. */
+    HTTP_2
+  }
+
+  /**
+   * Properties for the HTTP connection pool.
+   *
+   * <p>This class holds the HTTP version used to reach the SOHT2 server and the properties of the
+   * pool of keep-alive connections for HTTP/1.1, including its size, and how long the pooled
+   * connections are kept and validated.
+   */
+  @Data
+  public static class HttpProperties {
+    /**
+     * The HTTP version used to reach the SOHT2 server. HTTP/2 multiplexes all the exchanges over a
+     * single connection, and falls back to HTTP/1.1 if the server or the proxy does not support it.
+     */
+    private HttpVersion version = HttpVersion.HTTP_1_1;
+
+    /**
+     * The maximum number of pooled connections to the SOHT2 server, zero or less to derive it from
+     * the connections: every tunnel gets the exchange window of uploads and of downloads plus one.
+     * If a connection has no tunnel limit, the pool is not limited either.
+     */
+    private int maxConnections = 0;
+
+    /**
+     * How long a request waits for a pooled connection if all of them are leased, before it fails
+     * and is retried.
+     */
+    private Duration connectionRequestTimeout = Duration.ofSeconds(30);
+
+    /** How long an idle connection is kept alive if the server does not tell it otherwise. */
+    private Duration keepAlive = Duration.ofSeconds(30);
+
+    /** How long a connection may stay idle in the pool before it is closed. */
+    private Duration idleTimeout = Duration.ofSeconds(30);
+
+    /** How long a connection may stay idle before it is validated on its next lease. */
+    private Duration validateAfterInactivity = Duration.ofSeconds(2);
   }
 
   /**
@@ -166,6 +295,12 @@ public class Soht2ClientProperties implements InitializingBean {
   /** Properties for polling configuration. */
   private PollProperties poll = new PollProperties();
 
+  /** Properties for pipelined exchanges. */
+  private ExchangeProperties exchange = new ExchangeProperties();
+
+  /** Properties for the HTTP connection pool. */
+  private HttpProperties http = new HttpProperties();
+
   /** Properties for proxy configuration. */
   private ProxyProperties proxy = new ProxyProperties();
 
@@ -185,5 +320,36 @@ public class Soht2ClientProperties implements InitializingBean {
     Assert.hasText(password, "SOHT2 server password must be defined in soht2.client.password");
     Assert.notEmpty(
         connections, "At least one connection must be defined in soht2.client.connections");
+    Assert.isTrue(exchange.getWindow() > 0, "Exchange window must be positive");
+    Assert.isTrue(
+        compression.getLevel() >= -1 && compression.getLevel() <= 9,
+        "Compression level must be in range [-1, 9]");
+    Assert.notNull(compression.getStrategy(), "Compression strategy must not be empty");
+    Assert.isTrue(
+        !compression.getMinDictionaryRequestSize().isNegative(),
+        "Min dictionary request size must not be negative");
+    Assert.isTrue(exchange.getRetries() >= 0, "Exchange retries must not be negative");
+    Assert.isTrue(
+        poll.getJitter() >= 0 && poll.getJitter() < 1, "Poll jitter must be in range [0, 1)");
+    Assert.isTrue(http.getKeepAlive().isPositive(), "HTTP keep-alive must be positive");
+    Assert.isTrue(http.getIdleTimeout().isPositive(), "HTTP idle timeout must be positive");
+    Assert.isTrue(
+        http.getConnectionRequestTimeout().isPositive(),
+        "HTTP connection request timeout must be positive");
+  }
+
+  /**
+   * Returns the maximum number of pooled connections to the SOHT2 server, either the configured one
+   * or, if it is not configured, the one derived from the connections and the exchange window. The
+   * pool is unbounded if a connection has no tunnel limit, as its tunnels may need any number of
+   * connections.
+   *
+   * @return the maximum number of pooled connections
+   */
+  public int maxHttpConnections() {
+    if (http.getMaxConnections() > 0) return http.getMaxConnections();
+    if (connections.stream().anyMatch(h -> h.getMaxTunnels() <= 0)) return Integer.MAX_VALUE;
+    val perTunnel = 2 * exchange.getWindow() + 1;
+    return connections.stream().mapToInt(h -> h.getMaxTunnels() * perTunnel).sum();
   }
 }
@@ -2,23 +2,18 @@
 package net.soht2.client.config;
 
 import io.vavr.control.Try;
+import java.net.Socket;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
 import lombok.extern.slf4j.Slf4j;
-import net.soht2.client.service.HCClientHttpRequestFactory;
-import org.apache.http.config.RegistryBuilder;
-import org.apache.http.conn.HttpClientConnectionManager;
-import org.apache.http.conn.socket.ConnectionSocketFactory;
-import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.TrustAllStrategy;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.ssl.SSLContextBuilder;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.ClientHttpRequestFactory;
 
 /**
  * Configuration class for creating HTTP client components with SSL verification disabled. This
@@ -31,26 +26,20 @@ import org.springframework.http.client.ClientHttpRequestFactory;
  * <h3>Components provided by this configuration:</h3>
  *
  * <ol>
- *   <li>A custom {@link HttpClientConnectionManager} that trusts all SSL certificates and disables
- *       hostname verification.
- *   <li>A {@link ClientHttpRequestFactory} bean that uses the custom connection manager for HTTP
- *       requests.
+ *   <li>A custom {@link SSLContext} that trusts all SSL certificates and skips the host name check.
+ *       It is used by the HTTP/2 client of {@link HttpClientConfig}.
+ *   <li>A custom {@link SSLConnectionSocketFactory} that trusts all SSL certificates and disables
+ *       hostname verification. It is registered for HTTPS in the pooled connection manager of
+ *       {@link HttpClientConfig}.
  * </ol>
  *
  * <h3>Key features include:</h3>
  *
  * <ul>
- *   <li>Trusting all SSL certificates using the {@link TrustAllStrategy}.
+ *   <li>Trusting all SSL certificates using the {@link TrustAllManager}. Being an {@link
+ *       X509ExtendedTrustManager}, it is also responsible for the host name check of the JDK, so
+ *       the check is skipped for the connections of this context only, not for the whole JVM.
  *   <li>Disabling hostname verification with the {@link NoopHostnameVerifier}.
- *   <li>Support for HTTP clients with advanced configuration through {@link
- *       HCClientHttpRequestFactory}.
- * </ul>
- *
- * <h3>Dependency Injection:</h3>
- *
- * <ul>
- *   <li>The {@link ClientHttpRequestFactory} bean is conditionally registered, ensuring no
- *       conflicts if a bean of the same type already exists.
  * </ul>
  */
 @Slf4j
@@ -59,29 +48,58 @@ import org.springframework.http.client.ClientHttpRequestFactory;
 public class TrustingSSLConfig {
 
   @Bean
-  HttpClientConnectionManager trustingClientConnectionManager() {
-    return Try.of(SSLContextBuilder::create)
-        .mapTry(b -> b.loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build())
-        .mapTry(ctx -> new SSLConnectionSocketFactory(ctx, NoopHostnameVerifier.INSTANCE))
-        .mapTry(
-            sslSocketFactory ->
-                RegistryBuilder.<ConnectionSocketFactory>create()
-                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                    .register("https", sslSocketFactory)
-                    .build())
-        .mapTry(PoolingHttpClientConnectionManager::new)
-        .onSuccess(cm -> log.info("trustingClientConnectionManager: {}", cm))
+  SSLContext trustingSslContext() {
+    log.warn("trustingSslContext: SSL verification of the server is disabled");
+    return Try.of(() -> SSLContext.getInstance("TLS"))
+        .andThenTry(ctx -> ctx.init(null, new TrustManager[] {new TrustAllManager()}, null))
+        .onSuccess(ctx -> log.info("trustingSslContext: {}", ctx))
         .get();
   }
 
   @Bean
-  @ConditionalOnMissingBean
-  ClientHttpRequestFactory clientHttpRequestFactory(
-      HttpClientConnectionManager httpClientConnectionManager) {
+  SSLConnectionSocketFactory trustingSslConnectionSocketFactory(SSLContext trustingSslContext) {
     return Try.of(
-            () -> HttpClients.custom().setConnectionManager(httpClientConnectionManager).build())
-        .mapTry(HCClientHttpRequestFactory::new)
-        .onSuccess(factory -> log.debug("clientHttpRequestFactory: {}", factory))
+            () -> new SSLConnectionSocketFactory(trustingSslContext, NoopHostnameVerifier.INSTANCE))
+        .onSuccess(factory -> log.info("trustingSslConnectionSocketFactory: {}", factory))
         .get();
   }
+
+  /** Trust manager accepting any certificate chain for any host. */
+  static class TrustAllManager extends X509ExtendedTrustManager {
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+      // all certificates are trusted
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+      // all certificates are trusted
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+      // all certificates are trusted
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+      // all certificates are trusted
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      // all certificates are trusted
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      // all certificates are trusted
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return new X509Certificate[0];
+    }
+  }
 }
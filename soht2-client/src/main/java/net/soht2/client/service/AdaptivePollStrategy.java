@@ -0,0 +1,79 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.client.service;
+
+import static java.time.Duration.ZERO;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import lombok.Builder;
+import lombok.val;
+
+/**
+ * Poll strategy that learns the traffic of its session. It keeps the moving average of the gaps
+ * between the moments the session sends or receives data, and while the session is idle for less
+ * than this average, more data is expected soon, so it polls with the initial delay. Once the
+ * session stays idle for longer, the delay doubles with every empty poll, and it is never less than
+ * a half of the idle time, so long-idle tunnels back off faster than the exponent strategy does.
+ * Every delay gets a random jitter, so the polls of many clients do not synchronize.
+ *
+ * <p>The strategy configured for the client is a template: every session gets its own instance by
+ * {@link #forSession()}.
+ */
+public final class AdaptivePollStrategy implements PollStrategy {
+
+  /** The weight of the latest gap in the moving average. */
+  private static final double GAP_WEIGHT = 0.25;
+
+  private static final int MAX_SHIFT = 30;
+
+  private final Duration initialDelay;
+  private final Duration maxDelay;
+  private final double jitter;
+  private final LongSupplier clock;
+
+  private long lastActivity;
+  private double averageGap;
+
+  @Builder
+  private AdaptivePollStrategy(
+      Duration initialDelay, Duration maxDelay, double jitter, LongSupplier clock) {
+    this.initialDelay = initialDelay;
+    this.maxDelay = maxDelay;
+    this.jitter = jitter;
+    this.clock = clock != null ? clock : System::currentTimeMillis;
+    this.lastActivity = this.clock.getAsLong();
+  }
+
+  @Override
+  public PollStrategy forSession() {
+    return new AdaptivePollStrategy(initialDelay, maxDelay, jitter, clock);
+  }
+
+  @Override
+  public synchronized void onActivity() {
+    val now = clock.getAsLong();
+    val gap = now - lastActivity;
+    averageGap = averageGap == 0 ? gap : GAP_WEIGHT * gap + (1 - GAP_WEIGHT) * averageGap;
+    lastActivity = now;
+  }
+
+  @Override
+  public synchronized Duration getDelay(int iteration) {
+    if (iteration == 0) return ZERO;
+    val idle = clock.getAsLong() - lastActivity;
+    val delay =
+        idle < averageGap
+            ? initialDelay.toMillis()
+            : Math.max(initialDelay.toMillis() << Math.min(iteration - 1, MAX_SHIFT), idle / 2);
+    val jittered =
+        Math.min(delay, maxDelay.toMillis())
+            * (1 + jitter * ThreadLocalRandom.current().nextDouble(-1, 1));
+    return Duration.ofMillis(Math.round(jittered));
+  }
+
+  /** Returns the moving average of the gaps between the activities of the session, in millis. */
+  synchronized double getAverageGap() {
+    return averageGap;
+  }
+}
@@ -7,11 +7,16 @@ import io.vavr.control.Try;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
@@ -35,12 +40,17 @@ import org.springframework.stereotype.Service;
 @Service
 public class ConnectionService {
 
+  private static final Duration LISTEN_RETRY_DELAY = Duration.ofSeconds(1);
+  private static final String CONNECTION_RESET = "Connection reset";
+
   private final Soht2ClientProperties soht2ClientProperties;
   private final Soht2Client soht2Client;
   private final PollStrategy pollStrategy;
+  private final ExecutorService tunnelExecutor;
 
   private final AtomicBoolean isRunning = new AtomicBoolean();
   private final Map<UUID, SessionState> sessions = new ConcurrentHashMap<>();
+  private final Map<HostProperties, ServerSocket> listeners = new ConcurrentHashMap<>();
 
   /**
    * Starts connections to the specified hosts defined in the client properties.
@@ -52,7 +62,9 @@ public class ConnectionService {
   }
 
   /**
-   * Starts connections to the specified hosts defined in the client properties.
+   * Starts connections to the specified hosts defined in the client properties. Every listener and
+   * every exchange loop of an accepted connection runs on its own thread of the tunnel executor, so
+   * blocked tunnels never hold up the others.
    *
    * @param socketOpenedCallback a callback that is invoked when a socket connection is opened
    * @return a {@link CompletableFuture} that completes when all connections are started
@@ -62,7 +74,10 @@ public class ConnectionService {
     isRunning.set(true);
     return CompletableFuture.allOf(
             soht2ClientProperties.getConnections().stream()
-                .map(host -> CompletableFuture.runAsync(() -> connect(host, socketOpenedCallback)))
+                .map(
+                    host ->
+                        CompletableFuture.runAsync(
+                            () -> connect(host, socketOpenedCallback), tunnelExecutor))
                 .toArray(CompletableFuture[]::new))
         .thenRun(
             () -> {
@@ -72,9 +87,10 @@ public class ConnectionService {
   }
 
   /** Gratefully stops all active connections. */
-  @SuppressWarnings("unused")
   public void stopConnections() {
     isRunning.set(false);
+    // closing the listeners interrupts their accept calls
+    listeners.values().forEach(serverSocket -> Try.run(serverSocket::close));
   }
 
   /**
@@ -88,101 +104,218 @@ public class ConnectionService {
   }
 
   /**
-   * Connects to the specified host and starts a server socket to accept incoming connections.
+   * Listens for local connections to the specified host. The listener is bound once and accepts
+   * connections until the service is stopped; every accepted socket is handed over to its own
+   * tunnel, so setting up one tunnel does not delay accepting the others. If the limit of
+   * simultaneous tunnels is reached, new connections wait in the backlog until a tunnel closes.
    *
    * @param host the properties of the host to connect to
-   * @param socketOpenedCallback an optional callback that is invoked when a socket connection is
-   *     opened
+   * @param socketOpenedCallback an optional callback that is invoked when the listener is bound
    */
   @SneakyThrows
   void connect(HostProperties host, @Nullable Consumer<HostProperties> socketOpenedCallback) {
     log.info("connect: host={}", host);
+    val tunnels = host.getMaxTunnels() > 0 ? new Semaphore(host.getMaxTunnels()) : null;
 
     while (isRunning.get()) {
-      try (val serverSocket = new ServerSocket(host.getLocalPort())) {
+      try (val serverSocket = new ServerSocket(host.getLocalPort(), host.getBacklog())) {
+        listeners.put(host, serverSocket);
         log.debug("connect: serverSocket={}", serverSocket);
         ofNullable(socketOpenedCallback).ifPresent(cb -> cb.accept(host));
 
-        val socket = serverSocket.accept();
-        socket.setSoTimeout((int) soht2ClientProperties.getSocketReadTimeout().toMillis());
-        socket.setKeepAlive(true);
-        log.debug("connect: socket={}", socket);
-
-        val state =
-            SessionState.builder()
-                .host(host)
-                .connection(soht2Client.open(host.getRemoteHost(), host.getRemotePort()).get())
-                .in(socket.getInputStream())
-                .out(socket.getOutputStream())
-                .build();
-        sessions.put(state.connection.id(), state);
-        log.debug("connect: connection={}", state.connection);
-
-        CompletableFuture.runAsync(() -> exchange(state))
-            .thenRun(
+        while (isRunning.get()) {
+          if (tunnels != null) tunnels.acquire();
+          try {
+            val socket = serverSocket.accept();
+            log.debug("connect: socket={}", socket);
+            tunnelExecutor.execute(
                 () -> {
-                  Try.run(state.in::close);
-                  Try.run(state.out::close);
+                  try {
+                    tunnel(host, socket);
+                  } finally {
+                    if (tunnels != null) tunnels.release();
+                  }
                 });
+          } catch (Exception e) {
+            if (tunnels != null) tunnels.release();
+            throw e;
+          }
+        }
       } catch (Exception e) {
+        if (!isRunning.get()) break;
         log.atError().setMessage("connect: {}").addArgument(e::toString).setCause(e).log();
+        Thread.sleep(LISTEN_RETRY_DELAY.toMillis());
+      } finally {
+        listeners.remove(host);
       }
     }
+    log.info("connect: stopped - host={}", host);
   }
 
   /**
-   * Exchanges data between the client and server for the given session state.
+   * Opens a connection on the server for the accepted local socket and exchanges data through it
+   * until either side closes it.
+   *
+   * @param host the properties of the host the socket was accepted for
+   * @param socket the accepted local socket
+   */
+  void tunnel(HostProperties host, Socket socket) {
+    try (socket) {
+      socket.setSoTimeout((int) soht2ClientProperties.getSocketReadTimeout().toMillis());
+      socket.setKeepAlive(true);
+      val state =
+          SessionState.builder()
+              .host(host)
+              .pollStrategy(pollStrategy.forSession())
+              .connection(soht2Client.open(host.getRemoteHost(), host.getRemotePort()).get())
+              .in(socket.getInputStream())
+              .out(socket.getOutputStream())
+              .build();
+      sessions.put(state.connection.id(), state);
+      log.debug("tunnel: connection={}", state.connection);
+      exchange(state);
+    } catch (Exception e) {
+      log.atError().setMessage("tunnel: {}").addArgument(e::toString).setCause(e).log();
+    }
+  }
+
+  /**
+   * Exchanges data between the client and server for the given session state. The session is served
+   * by two independent pumps sharing the connection: the upstream pump sends the local data to the
+   * server as soon as it is read, and the downstream pump polls the server for the target data and
+   * writes it to the local socket. Both pumps keep up to the configured window of sequence-numbered
+   * requests in flight. The session ends as soon as either pump fails, and the method returns when
+   * both pumps are finished.
    *
    * @param state the session state containing connection and I/O streams
    */
   void exchange(SessionState state) {
+    val downstream = CompletableFuture.runAsync(() -> download(state), tunnelExecutor);
+    try {
+      upload(state);
+    } finally {
+      downstream.join();
+    }
+  }
+
+  /**
+   * Upstream pump, which reads the local socket and sends the data to the server until the session
+   * ends. A read timeout just repeats the read, nothing is sent to the server. Every chunk is sent
+   * by its own task, and the pump waits only if the window of uploads in flight is full; the server
+   * writes the chunks to the target in the order of their sequence numbers.
+   *
+   * @param state the session state
+   */
+  @SneakyThrows
+  void upload(SessionState state) {
     val connectionId = state.connection.id();
-    val readSize = new AtomicInteger();
-    val writeSize = new AtomicInteger();
     val bufferSize = (int) soht2ClientProperties.getReadBufferSize().toBytes();
     val buffer = new byte[bufferSize];
+    val window = soht2ClientProperties.getExchange().getWindow();
+    val inFlight = new Semaphore(window);
+    long seq = 0;
 
     while (sessions.containsKey(connectionId)) {
-      readSize.set(0);
-      writeSize.set(0);
-      Try.of(() -> state.in.read(buffer))
-          .filter(bufferLen -> bufferLen >= 0, () -> new SocketException("Connection reset"))
-          .recover(SocketTimeoutException.class, 0)
-          .andThen(readSize::set)
-          .flatMap(
-              bufferLen ->
-                  soht2Client.exchange(
-                      connectionId,
-                      bufferLen < bufferSize ? Arrays.copyOf(buffer, bufferLen) : buffer))
-          .flatMapTry(
-              bytes ->
-                  Optional.of(bytes)
-                      .filter(b -> b.length > 0)
-                      .map(b -> Try.run(() -> state.out.write(b)).andThenTry(state.out::flush))
-                      .orElse(Try.success(null))
-                      .andThenTry(v -> writeSize.set(bytes.length)))
-          .andThenTry(() -> delay(state, readSize.get() == 0 && writeSize.get() == 0))
-          .recoverWith(
-              SocketException.class,
-              // Message "Connection reset" is expected in 2 cases:
-              // 1. The OS resets the socket connection.
-              // 2. This loop is interrupted by throwing a SocketException above.
-              e -> "Connection reset".equals(e.getMessage()) ? Try.failure(e) : Try.success(null))
-          .onFailure(
-              e -> {
-                sessions.remove(connectionId);
-                soht2Client.close(connectionId);
-              });
+      val read =
+          Try.of(() -> state.in.read(buffer))
+              .filter(bufferLen -> bufferLen >= 0, () -> new SocketException(CONNECTION_RESET))
+              .recover(SocketTimeoutException.class, 0);
+      if (read.isFailure()) {
+        // the uploads in flight are completed before the session is closed
+        inFlight.acquire(window);
+        finish(state, "upload", read.getCause());
+      } else if (read.get() > 0) {
+        val data = Arrays.copyOf(buffer, read.get());
+        val dataSeq = seq++;
+        inFlight.acquire();
+        tunnelExecutor.execute(
+            () -> {
+              try {
+                // the session may have ended while the upload was waiting for its turn
+                if (!sessions.containsKey(connectionId)) return;
+                soht2Client
+                    .write(connectionId, data, dataSeq)
+                    // the target is likely to respond, so the downstream pump stops waiting
+                    .onSuccess(v -> state.wakeUp())
+                    .onFailure(e -> finish(state, "upload", e));
+              } finally {
+                inFlight.release();
+              }
+            });
+      }
     }
   }
 
+  /**
+   * Downstream pump, which polls the server for the target data and writes it to the local socket
+   * until the session ends. The window of downloads is kept in flight, and their responses are
+   * written in the order of their sequence numbers. The delay before the next download after an
+   * empty one is defined by the poll strategy, and it is cut short when the upstream pump sends
+   * data. Once the session ends, the downloads in flight are not sent anymore, and the pump returns
+   * when all of them are completed.
+   *
+   * @param state the session state
+   */
+  void download(SessionState state) {
+    val connectionId = state.connection.id();
+    val window = soht2ClientProperties.getExchange().getWindow();
+    val inFlight = new ArrayDeque<CompletableFuture<Try<byte[]>>>(window);
+    long seq = 0;
+    long ack = -1;
+
+    while (sessions.containsKey(connectionId)) {
+      while (inFlight.size() < window) {
+        val downloadSeq = seq++;
+        val downloadAck = ack;
+        inFlight.add(
+            CompletableFuture.supplyAsync(
+                () ->
+                    sessions.containsKey(connectionId)
+                        ? soht2Client.exchange(connectionId, downloadSeq, downloadAck)
+                        : Try.<byte[]>failure(new SocketException(CONNECTION_RESET)),
+                tunnelExecutor));
+      }
+      val result =
+          inFlight
+              .poll()
+              .join()
+              .andThenTry(
+                  bytes -> {
+                    if (bytes.length > 0) {
+                      state.pollStrategy.onActivity();
+                      state.out.write(bytes);
+                      state.out.flush();
+                    }
+                  })
+              .andThenTry(bytes -> delay(state, bytes.length == 0));
+      if (result.isSuccess()) ack++;
+      else finish(state, "download", result.getCause());
+    }
+    // the downloads still in flight are completed, so none of them reaches the server later
+    inFlight.forEach(CompletableFuture::join);
+  }
+
+  /**
+   * Ends the session, closing the connection on the server and the local socket, so the other pump
+   * stops as well. Only the first call for the session has an effect.
+   */
+  private void finish(SessionState state, String pump, Throwable cause) {
+    val connectionId = state.connection.id();
+    if (sessions.remove(connectionId) == null) return;
+    log.debug("finish: id={}, {} - {}", connectionId, pump, cause.toString());
+    soht2Client.close(connectionId);
+    // closing the stream interrupts a blocked read of the upstream pump
+    Try.run(state.in::close);
+  }
+
   @SneakyThrows
   private void delay(SessionState state, boolean isEmptyExchange) {
     if (isEmptyExchange) {
-      val delay = pollStrategy.getDelay(state.emptyExchangeCount.getAndIncrement());
+      val delay = state.pollStrategy.getDelay(state.emptyExchangeCount.getAndIncrement());
       if (!delay.isZero()) {
         log.debug("delay: id={} - {}", state.connection.id(), delay);
-        Thread.sleep(delay.toMillis());
+        if (state.wakeUp.tryAcquire(delay.toMillis(), TimeUnit.MILLISECONDS))
+          state.wakeUp.drainPermits();
       }
     } else state.emptyExchangeCount.set(0);
   }
@@ -191,9 +324,17 @@ public class ConnectionService {
   @RequiredArgsConstructor
   static class SessionState {
     final HostProperties host;
+    final PollStrategy pollStrategy;
     final Soht2Connection connection;
     final InputStream in;
     final OutputStream out;
     final AtomicInteger emptyExchangeCount = new AtomicInteger(0);
+    final Semaphore wakeUp = new Semaphore(0);
+
+    void wakeUp() {
+      pollStrategy.onActivity();
+      emptyExchangeCount.set(0);
+      wakeUp.release();
+    }
   }
 }
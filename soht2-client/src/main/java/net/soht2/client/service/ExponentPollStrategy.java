@@ -3,7 +3,6 @@ package net.soht2.client.service;
 
 import static java.time.Duration.ZERO;
 
-import io.vavr.Function1;
 import java.time.Duration;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
@@ -16,11 +15,6 @@ public final class ExponentPollStrategy implements PollStrategy {
   private final Duration initialDelay;
   private final Duration maxDelay;
 
-  private final Function1<Integer, Duration> periodCache =
-      Function1.of(this::computeDelay).memoized();
-
-  private int maxIteration = Integer.MAX_VALUE;
-
   @Builder
   private ExponentPollStrategy(int factor, Duration initialDelay, Duration maxDelay) {
     this.factor = factor;
@@ -30,16 +24,9 @@ public final class ExponentPollStrategy implements PollStrategy {
 
   @Override
   public Duration getDelay(int iteration) {
-    val delay = iteration == 0 ? ZERO : periodCache.apply(Math.min(iteration, maxIteration));
-    if (delay.compareTo(maxDelay) >= 0) {
-      maxIteration = iteration;
-      return maxDelay;
-    }
-    return delay;
-  }
-
-  private Duration computeDelay(int iteration) {
-    return Duration.ofMillis(
-        (long) (initialDelay.toMillis() * Math.exp((double) iteration / factor)));
+    if (iteration == 0) return ZERO;
+    // the strategy is shared by all sessions, so the delay is computed without keeping any state
+    val delay = initialDelay.toMillis() * Math.exp((double) iteration / factor);
+    return delay >= maxDelay.toMillis() ? maxDelay : Duration.ofMillis((long) delay);
   }
 }
@@ -0,0 +1,71 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.client.service;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Keeps the pool of {@link PoolingHttpClientConnectionManager} healthy and observable. The expired
+ * connections and the connections idle for longer than the idle timeout are closed periodically, so
+ * a poll never leases a connection the server has already dropped, and the pool statistics are
+ * logged on every run at the debug level.
+ */
+@Slf4j
+public class HCConnectionPoolMonitor implements Closeable {
+
+  private static final Duration MIN_INTERVAL = Duration.ofSeconds(1);
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final Duration idleTimeout;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Creates the monitor and starts the eviction of idle connections, which runs twice per idle
+   * timeout.
+   *
+   * @param connectionManager the connection manager to monitor
+   * @param idleTimeout how long a connection may stay idle in the pool
+   */
+  @Builder
+  private HCConnectionPoolMonitor(
+      PoolingHttpClientConnectionManager connectionManager, Duration idleTimeout) {
+    this.connectionManager = connectionManager;
+    this.idleTimeout = idleTimeout;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofVirtual().name("soht2-http-pool").factory());
+    val interval = idleTimeout.dividedBy(2);
+    val period = (interval.compareTo(MIN_INTERVAL) < 0 ? MIN_INTERVAL : interval).toMillis();
+    scheduler.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the statistics of the whole pool: leased, pending, available and maximum connections.
+   *
+   * @return the pool statistics
+   */
+  public PoolStats getStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /** Closes the expired connections and the ones idle for longer than the idle timeout. */
+  void evict() {
+    connectionManager.closeExpiredConnections();
+    connectionManager.closeIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    if (log.isDebugEnabled()) log.debug("evict: stats={}", getStats());
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    log.info("close: stats={}", getStats());
+  }
+}
@@ -4,7 +4,20 @@ package net.soht2.client.service;
 import java.time.Duration;
 
 public sealed interface PollStrategy
-    permits ConstantPollStrategy, LinearPollStrategy, ExponentPollStrategy {
+    permits ConstantPollStrategy, LinearPollStrategy, ExponentPollStrategy, AdaptivePollStrategy {
 
   Duration getDelay(int iteration);
+
+  /**
+   * Returns the strategy serving a single session. Stateless strategies are shared by all the
+   * sessions, while the stateful ones create their own instance per session.
+   *
+   * @return the strategy for a new session
+   */
+  default PollStrategy forSession() {
+    return this;
+  }
+
+  /** Notifies the strategy that the session has just sent or received data. */
+  default void onActivity() {}
 }
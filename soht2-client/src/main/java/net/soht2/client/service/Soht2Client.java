@@ -3,20 +3,35 @@ package net.soht2.client.service;
 
 import static java.util.Optional.ofNullable;
 import static net.soht2.common.compress.Compressor.compressorCache;
+import static net.soht2.common.compress.Compressor.compressorFactory;
+import static net.soht2.common.compress.Compressor.dictionaryCompressorFactory;
+import static net.soht2.common.dto.Soht2Connection.HEADER_ACK;
+import static net.soht2.common.dto.Soht2Connection.HEADER_DICTIONARY;
+import static net.soht2.common.dto.Soht2Connection.HEADER_SEQUENCE;
+import static net.soht2.common.util.AuxUtil.peek;
 import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
 import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
 
 import io.vavr.control.Try;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import net.soht2.client.config.Soht2ClientProperties;
+import net.soht2.common.compress.AdaptiveCompressor;
+import net.soht2.common.compress.CompressionType;
+import net.soht2.common.compress.PresetDictionary;
+import net.soht2.common.compress.StreamDeflater;
 import net.soht2.common.dto.Soht2Connection;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 
 /**
@@ -35,11 +50,19 @@ public class Soht2Client {
   @SuppressWarnings("java:S1075")
   private static final String PATH_ID = "/{id}";
 
+  @SuppressWarnings("java:S1075")
+  private static final String PATH_DICTIONARY = "/{id}/dictionary";
+
   private final RestClient restClient;
   private final Soht2ClientProperties soht2ClientProperties;
+  private final Map<UUID, AdaptiveCompressor> compressors = new ConcurrentHashMap<>();
+  private final Map<UUID, StreamDeflater> streams = new ConcurrentHashMap<>();
+  private final Map<UUID, PresetDictionary> dictionaries = new ConcurrentHashMap<>();
 
   /**
-   * Opens a connection to the specified remote host and port.
+   * Opens a connection to the specified remote host and port. If the server offers the preset
+   * dictionary of the target and compression is enabled, the dictionary is used for the connection;
+   * it is downloaded once, unless it is already registered.
    *
    * @param remoteHost the host name or IP address of the remote machine
    * @param remotePort the port number on the remote machine to connect to
@@ -55,12 +78,56 @@ public class Soht2Client {
                         b ->
                             b.queryParam("host", remoteHost).queryParam("port", remotePort).build())
                     .retrieve()
-                    .body(Soht2Connection.class))
+                    .toEntity(Soht2Connection.class))
+        .map(
+            entity -> {
+              val connection = Objects.requireNonNull(entity.getBody());
+              ofNullable(entity.getHeaders().getFirst(HEADER_DICTIONARY))
+                  .filter(id -> isDictionaryEnabled())
+                  .flatMap(id -> dictionary(connection.id(), id))
+                  .ifPresent(d -> dictionaries.put(connection.id(), d));
+              return connection;
+            })
         .onSuccess(connection -> log.info("open: connection={}", connection))
         .onFailure(
             e -> log.atError().setMessage("open: {}").addArgument(e::toString).setCause(e).log());
   }
 
+  private boolean isDictionaryEnabled() {
+    val compression = soht2ClientProperties.getCompression();
+    return compression.isDictionary() && compression.getType() != CompressionType.NONE;
+  }
+
+  /**
+   * Returns the registered dictionary of the id, or downloads the dictionary of the connection and
+   * registers it. A dictionary which cannot be got is not used, the connection works without it.
+   */
+  private Optional<PresetDictionary> dictionary(UUID connectionId, String dictionaryId) {
+    return PresetDictionary.get(dictionaryId)
+        .or(
+            () ->
+                Try.of(
+                        () ->
+                            restClient
+                                .get()
+                                .uri(PATH_DICTIONARY, Map.of("id", connectionId))
+                                .retrieve()
+                                .body(byte[].class))
+                    .map(PresetDictionary::register)
+                    .filter(
+                        d -> d.id().equals(dictionaryId),
+                        d -> new IllegalStateException("Unexpected dictionary " + d.id()))
+                    .onFailure(
+                        e ->
+                            log.warn(
+                                "dictionary: id={}, dictionary={} - {}",
+                                connectionId,
+                                dictionaryId,
+                                e.toString()))
+                    .toJavaOptional())
+        .map(peek(d -> log.info("dictionary: id={}, dictionary={}", connectionId, d)));
+  }
+
   /**
    * Closes the connection with the specified ID.
    *
@@ -70,6 +137,15 @@ public class Soht2Client {
   @SuppressWarnings("java:S1905")
   public Try<Void> close(UUID connectionId) {
     log.debug("close: id={}", connectionId);
+    dictionaries.remove(connectionId);
+    ofNullable(compressors.remove(connectionId))
+        .ifPresent(c -> log.info("close: id={}, compression={}", connectionId, c.getStats()));
+    ofNullable(streams.remove(connectionId))
+        .ifPresent(
+            s -> {
+              log.info("close: id={}, stream compression={}", connectionId, s.getStats());
+              s.close();
+            });
     return Try.of(
             () ->
                 restClient
@@ -95,11 +171,32 @@ public class Soht2Client {
    * @param data the data to send to the server
    * @return a {@link Try} containing the response bytes if successful, or an error if it fails
    */
-  @SuppressWarnings("LoggingSimilarMessage")
   public Try<byte[]> exchange(UUID connectionId, byte[] data) {
+    return exchange(connectionId, data, new HttpHeaders());
+  }
+
+  /**
+   * Downloads data from the server using the specified connection ID. The download is
+   * sequence-numbered, so it is safe to repeat: it is retried after a network error and gets the
+   * same response from the server.
+   *
+   * @param connectionId the ID of the connection to download the data from
+   * @param seq the sequence number of the download
+   * @param ack the sequence number of the last download received in order, or -1 if none
+   * @return a {@link Try} containing the response bytes if successful, or an error if it fails
+   */
+  public Try<byte[]> exchange(UUID connectionId, long seq, long ack) {
+    val headers = new HttpHeaders();
+    headers.set(HEADER_SEQUENCE, String.valueOf(seq));
+    headers.set(HEADER_ACK, String.valueOf(ack));
+    return retry("exchange", connectionId, seq, () -> exchange(connectionId, EMPTY, headers));
+  }
+
+  @SuppressWarnings("LoggingSimilarMessage")
+  private Try<byte[]> exchange(UUID connectionId, byte[] data, HttpHeaders sequence) {
     if (log.isTraceEnabled() && data.length > 0)
       log.trace("exchange: id={}, in.length={}", connectionId, data.length);
-    return Try.of(() -> requestExchangeEntity(data))
+    return Try.of(() -> requestExchangeEntity(connectionId, data, null))
         .peek(
             entity ->
                 log.atTrace()
@@ -113,6 +210,7 @@ public class Soht2Client {
                     .post()
                     .uri(PATH_ID, Map.of("id", connectionId))
                     .headers(h -> h.putAll(entity.getHeaders()))
+                    .headers(h -> h.putAll(sequence))
                     .body(ofNullable(entity.getBody()).orElse(EMPTY), PTR_BYTES)
                     .retrieve()
                     .toEntity(PTR_BYTES))
@@ -139,20 +237,159 @@ public class Soht2Client {
                     .log());
   }
 
-  private HttpEntity<byte[]> requestExchangeEntity(byte[] body) {
+  /**
+   * Sends data to the server using the specified connection ID without reading the response data,
+   * which is received by {@link #exchange(UUID, byte[])} independently.
+   *
+   * @param connectionId the ID of the connection to send the data to
+   * @param data the data to send to the server
+   * @return a {@link Try} containing Void if successful, or an error if it fails
+   */
+  public Try<Void> write(UUID connectionId, byte[] data) {
+    return Try.of(() -> requestExchangeEntity(connectionId, data, null))
+        .flatMap(entity -> write(connectionId, entity, new HttpHeaders()));
+  }
+
+  /**
+   * Uploads data to the server using the specified connection ID without reading the response data.
+   * The upload is sequence-numbered, so the server writes the uploads in order even if several of
+   * them are in flight, and it is safe to repeat: it is retried after a network error and the
+   * server ignores the repeated upload. The data is compressed once, so a retry sends the same
+   * body, which matters for the stateful compression of the connection.
+   *
+   * @param connectionId the ID of the connection to send the data to
+   * @param data the data to send to the server
+   * @param seq the sequence number of the upload
+   * @return a {@link Try} containing Void if successful, or an error if it fails
+   */
+  public Try<Void> write(UUID connectionId, byte[] data, long seq) {
+    val headers = new HttpHeaders();
+    headers.set(HEADER_SEQUENCE, String.valueOf(seq));
+    return Try.of(() -> requestExchangeEntity(connectionId, data, seq))
+        .flatMap(
+            entity ->
+                retry("write", connectionId, seq, () -> write(connectionId, entity, headers)));
+  }
+
+  @SuppressWarnings("java:S1905")
+  private Try<Void> write(UUID connectionId, HttpEntity<byte[]> entity, HttpHeaders sequence) {
+    if (log.isTraceEnabled())
+      log.trace(
+          "write: id={}, in.length={}",
+          connectionId,
+          ofNullable(entity.getBody()).map(v -> v.length).orElse(0));
+    return Try.of(
+            () ->
+                restClient
+                    .put()
+                    .uri(PATH_ID, Map.of("id", connectionId))
+                    .headers(h -> h.putAll(entity.getHeaders()))
+                    .headers(h -> h.putAll(sequence))
+                    .body(ofNullable(entity.getBody()).orElse(EMPTY), PTR_BYTES)
+                    .retrieve()
+                    .toBodilessEntity())
+        .map(re -> (Void) null)
+        .onFailure(
+            e ->
+                log.atError()
+                    .setMessage("write: id={}, {}")
+                    .addArgument(connectionId)
+                    .addArgument(e::toString)
+                    .log());
+  }
+
+  /**
+   * Repeats the sequence-numbered request while it fails by a network error or a server error,
+   * which may be caused by a proxy, up to the configured number of retries.
+   */
+  private <T> Try<T> retry(String action, UUID connectionId, long seq, Supplier<Try<T>> request) {
+    val exchange = soht2ClientProperties.getExchange();
+    var result = request.get();
+    for (int retry = 1;
+        retry <= exchange.getRetries() && result.isFailure() && isTransient(result.getCause());
+        retry++) {
+      log.warn("{}: id={}, seq={} - retry {}", action, connectionId, seq, retry);
+      val delay = exchange.getRetryDelay().multipliedBy(retry);
+      Try.run(() -> Thread.sleep(delay.toMillis()));
+      result = request.get();
+    }
+    return result;
+  }
+
+  private static boolean isTransient(Throwable e) {
+    return e instanceof ResourceAccessException || e instanceof HttpServerErrorException;
+  }
+
+  private HttpEntity<byte[]> requestExchangeEntity(
+      UUID connectionId, byte[] body, @Nullable Long seq) throws InterruptedException {
     val compression = soht2ClientProperties.getCompression();
-    val compressor = compressorCache.apply(compression.getType().name());
+    val dictionary = ofNullable(dictionaries.get(connectionId));
+    val compressor =
+        dictionary
+            .map(
+                d ->
+                    dictionaryCompressorFactory.apply(
+                        d, compression.getLevel(), compression.getStrategy()))
+            .orElseGet(
+                () ->
+                    compressorFactory.apply(
+                        compression.getType().name(),
+                        compression.getLevel(),
+                        compression.getStrategy()));
+    val minSize =
+        (dictionary.isPresent()
+                ? compression.getMinDictionaryRequestSize()
+                : compression.getMinRequestSize())
+            .toBytes();
     val headers = new HttpHeaders();
-    headers.set(ACCEPT_ENCODING, compressor.getAcceptEncoding());
-    if (body.length >= compression.getMinRequestSize().toBytes()) {
-      val compressedBody = compressor.compress(body);
+    headers.set(ACCEPT_ENCODING, acceptEncoding(compression, dictionary.isPresent()));
+    // the server compresses the responses with the dictionary only if the client has it
+    dictionary.ifPresent(d -> headers.set(HEADER_DICTIONARY, d.id()));
+    if (seq != null && isStateful(compression)) {
+      // every sequence number passes the stream, so the following uploads do not wait for it
+      val compressedBody =
+          streams
+              .computeIfAbsent(
+                  connectionId,
+                  id -> new StreamDeflater(compression.getLevel(), compression.getStrategy()))
+              .deflate(seq, body);
       headers.setContentLength(compressedBody.length);
-      ofNullable(compressor.getContentEncoding()).ifPresent(v -> headers.set(CONTENT_ENCODING, v));
+      headers.set(CONTENT_ENCODING, StreamDeflater.CONTENT_ENCODING);
       return new HttpEntity<>(compressedBody, headers);
     }
+    val compressedBody =
+        compression.isAdaptive() && compressor.getContentEncoding() != null
+            ? compressors
+                .computeIfAbsent(connectionId, id -> new AdaptiveCompressor(compressor, minSize))
+                .compress(body)
+            : Optional.of(body).filter(v -> v.length >= minSize).map(compressor::compress);
+    if (compressedBody.isPresent()) {
+      headers.setContentLength(compressedBody.get().length);
+      ofNullable(compressor.getContentEncoding()).ifPresent(v -> headers.set(CONTENT_ENCODING, v));
+      return new HttpEntity<>(compressedBody.get(), headers);
+    }
     return new HttpEntity<>(body, headers);
   }
 
+  /**
+   * Returns the encodings accepted for the responses: the one of the compression type, and DEFLATE
+   * if the connection has a dictionary, so the server compresses the responses with it.
+   */
+  private static String acceptEncoding(
+      Soht2ClientProperties.CompressionProperties compression, boolean dictionary) {
+    val acceptEncoding = compressorCache.apply(compression.getType().name()).getAcceptEncoding();
+    val deflate = CompressionType.DEFLATE.name().toLowerCase();
+    return dictionary && !acceptEncoding.contains(deflate)
+        ? acceptEncoding + ", " + deflate
+        : acceptEncoding;
+  }
+
+  private static boolean isStateful(Soht2ClientProperties.CompressionProperties compression) {
+    return compression.isStateful()
+        && (compression.getType() == CompressionType.GZIP
+            || compression.getType() == CompressionType.DEFLATE);
+  }
+
   private byte[] responseExchangeEntity(HttpEntity<byte[]> entity) {
     return Optional.of(entity.getHeaders()).map(h -> h.get(CONTENT_ENCODING)).stream()
         .flatMap(Collection::stream)
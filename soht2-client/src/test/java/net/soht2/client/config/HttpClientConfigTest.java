@@ -0,0 +1,90 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.client.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import lombok.val;
+import net.soht2.client.service.HCClientHttpRequestFactory;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+class HttpClientConfigTest {
+
+  final HttpClientConfig httpClientConfig = new HttpClientConfig();
+
+  @Test
+  void httpClientConnectionManager_OK() {
+    val properties = new Soht2ClientProperties();
+    properties.getExchange().setWindow(4);
+    val limited = new Soht2ClientProperties.HostProperties();
+    limited.setLocalPort(1);
+    limited.setMaxTunnels(3);
+    properties.getConnections().add(limited);
+
+    // every tunnel gets 4 uploads, 4 downloads and one more connection
+    try (val connectionManager = httpClientConfig.httpClientConnectionManager(properties, null)) {
+      assertThat(connectionManager.getMaxTotal()).isEqualTo(3 * 9);
+      assertThat(connectionManager.getDefaultMaxPerRoute()).isEqualTo(3 * 9);
+      assertThat(connectionManager.getValidateAfterInactivity()).isEqualTo(2000);
+    }
+
+    // the tunnels of a connection without the limit may need any number of connections
+    val unlimited = new Soht2ClientProperties.HostProperties();
+    unlimited.setLocalPort(2);
+    properties.getConnections().add(unlimited);
+    try (val connectionManager = httpClientConfig.httpClientConnectionManager(properties, null)) {
+      assertThat(connectionManager.getMaxTotal()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    properties.getHttp().setMaxConnections(10);
+    try (val connectionManager = httpClientConfig.httpClientConnectionManager(properties, null)) {
+      assertThat(connectionManager.getMaxTotal()).isEqualTo(10);
+    }
+  }
+
+  @Test
+  void clientHttpRequestFactory_Http2() {
+    val properties = new Soht2ClientProperties();
+    properties.getHttp().setVersion(Soht2ClientProperties.HttpVersion.HTTP_2);
+    properties.getConnections().add(new Soht2ClientProperties.HostProperties());
+    properties.getProxy().setHost("localhost");
+    properties.getProxy().setUsername("user");
+
+    try (val connectionManager = httpClientConfig.httpClientConnectionManager(properties, null)) {
+      assertThat(
+              httpClientConfig.clientHttpRequestFactory(
+                  properties, connectionManager, null, null, null, null))
+          .isInstanceOf(JdkClientHttpRequestFactory.class);
+
+      // the trusting context does not disable host name verification for the whole JVM
+      val sslContext = new TrustingSSLConfig().trustingSslContext();
+      assertThat(
+              httpClientConfig.clientHttpRequestFactory(
+                  properties, connectionManager, sslContext, null, null, null))
+          .isInstanceOf(JdkClientHttpRequestFactory.class);
+      assertThat(System.getProperty("jdk.internal.httpclient.disableHostnameVerification"))
+          .isNull();
+
+      // JDK HTTP client does not support NTLM, so the proxy keeps HTTP/1.1
+      properties.getProxy().setAuth(Soht2ClientProperties.ProxyAuth.NTLM);
+      assertThat(
+              httpClientConfig.clientHttpRequestFactory(
+                  properties, connectionManager, null, null, null, null))
+          .isInstanceOf(HCClientHttpRequestFactory.class);
+    }
+  }
+
+  @Test
+  void keepAliveStrategy_OK() {
+    val strategy = HttpClientConfig.keepAliveStrategy(Duration.ofSeconds(30));
+    val response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+    assertThat(strategy.getKeepAliveDuration(response, new BasicHttpContext())).isEqualTo(30_000);
+
+    response.setHeader("Keep-Alive", "timeout=5");
+    assertThat(strategy.getKeepAliveDuration(response, new BasicHttpContext())).isEqualTo(5_000);
+  }
+}
@@ -1,14 +1,30 @@
 /* SOHT2 © Licensed under MIT 2025. */
 package net.soht2.client.service;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 import io.vavr.control.Try;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import net.soht2.client.config.Soht2ClientConfig;
@@ -32,6 +48,8 @@ class ConnectionServiceTest {
 
   @Autowired ConnectionService connectionService;
   @Autowired Soht2ClientProperties soht2ClientProperties;
+  @Autowired PollStrategy pollStrategy;
+  @Autowired ExecutorService tunnelExecutor;
 
   @MockitoBean Soht2Client soht2Client;
   @MockitoBean RestClient restClient;
@@ -55,8 +73,8 @@ class ConnectionServiceTest {
             .build();
 
     doReturn(Try.success(soht2)).when(soht2Client).open(anyString(), anyInt());
+    doReturn(Try.success((Void) null)).when(soht2Client).write(any(UUID.class), any(), anyLong());
     doReturn(
-            Try.success(bytesIn),
             Try.success(bytesOut1),
             Try.success(bytesOut2),
             Try.success(bytesEmpty),
@@ -64,7 +82,7 @@ class ConnectionServiceTest {
             Try.success(bytesEmpty),
             Try.<byte[]>failure(new RuntimeException("Test error")))
         .when(soht2Client)
-        .exchange(any(UUID.class), any());
+        .exchange(any(UUID.class), anyLong(), anyLong());
     doReturn(Try.success((Void) null)).when(soht2Client).close(any(UUID.class));
 
     val socketStarted = new AtomicBoolean();
@@ -77,14 +95,275 @@ class ConnectionServiceTest {
             .bufferSize(bufferSize)
             .build()) {
       echoClient.shout(bytesIn);
-      await()
-          .pollDelay(Duration.ofSeconds(1))
-          .until(() -> !connectionService.isServerOpen(soht2.id()));
+      // the failed download ends the session while the local socket is still open
+      await().untilAsserted(() -> verify(soht2Client).close(soht2.id()));
+      assertThat(connectionService.isServerOpen(soht2.id())).isFalse();
+    } finally {
+      connectionService.stopConnections();
     }
 
     verify(soht2Client).open(host.getRemoteHost(), host.getRemotePort());
-    verify(soht2Client).exchange(soht2.id(), bytesIn);
-    verify(soht2Client, atLeast(5)).exchange(soht2.id(), bytesEmpty);
-    verify(soht2Client).close(soht2.id());
+    verify(soht2Client).write(soht2.id(), bytesIn, 0L);
+    verify(soht2Client).exchange(soht2.id(), 0L, -1L);
+    // every download up to the failed one is sent once, the later ones may be skipped
+    for (long seq = 0; seq <= 5; seq++)
+      verify(soht2Client).exchange(eq(soht2.id()), eq(seq), anyLong());
+  }
+
+  @Test
+  void startConnections_Concurrent() throws Exception {
+    val tunnels = 200;
+    val properties = new Soht2ClientProperties();
+    properties.setSocketReadTimeout(soht2ClientProperties.getSocketReadTimeout());
+    properties.setReadBufferSize(soht2ClientProperties.getReadBufferSize());
+    for (val port : freePorts(tunnels)) {
+      val host = new Soht2ClientProperties.HostProperties();
+      host.setLocalPort(port);
+      host.setRemoteHost("remotehost");
+      host.setRemotePort(port);
+      properties.getConnections().add(host);
+    }
+
+    doAnswer(inv -> Try.success(Soht2Connection.builder().targetPort(inv.getArgument(1)).build()))
+        .when(soht2Client)
+        .open(anyString(), anyInt());
+    val platformThreads = new AtomicInteger();
+    stubEchoServer(platformThreads);
+    doReturn(Try.success((Void) null)).when(soht2Client).close(any(UUID.class));
+
+    val service = new ConnectionService(properties, soht2Client, pollStrategy, tunnelExecutor);
+    val listeners = new AtomicInteger();
+    service.startConnections(h -> listeners.incrementAndGet());
+    // every listener is blocked in accept at the same time
+    await().atMost(Duration.ofSeconds(10)).until(() -> listeners.get() >= tunnels);
+
+    val clients =
+        properties.getConnections().stream()
+            .map(
+                host ->
+                    EchoClient.builder()
+                        .portNumber(host.getLocalPort())
+                        .socketTimeout(10_000)
+                        .bufferSize(1024)
+                        .build())
+            .toList();
+    try (val executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      // all tunnels are open while the data is exchanged through every one of them
+      val echoes =
+          clients.stream()
+              .map(
+                  client ->
+                      executor.submit(
+                          () -> {
+                            val bytes = UTHelper.createBinData(100);
+                            return Arrays.equals(client.shout(bytes), bytes);
+                          }))
+              .toList();
+      for (val echo : echoes) assertThat(echo.get(30, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      clients.forEach(EchoClient::close);
+      service.stopConnections();
+    }
+
+    assertThat(platformThreads).hasValue(0);
+    verify(soht2Client, times(tunnels)).open(anyString(), anyInt());
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(() -> verify(soht2Client, times(tunnels)).close(any(UUID.class)));
+  }
+
+  @Test
+  void startConnections_MaxTunnels() throws Exception {
+    val properties = new Soht2ClientProperties();
+    properties.setSocketReadTimeout(soht2ClientProperties.getSocketReadTimeout());
+    properties.setReadBufferSize(soht2ClientProperties.getReadBufferSize());
+    val host = new Soht2ClientProperties.HostProperties();
+    host.setLocalPort(freePorts(1).getFirst());
+    host.setRemoteHost("remotehost");
+    host.setRemotePort(8080);
+    host.setMaxTunnels(2);
+    properties.getConnections().add(host);
+
+    doAnswer(inv -> Try.success(Soht2Connection.builder().build()))
+        .when(soht2Client)
+        .open(anyString(), anyInt());
+    stubEchoServer(new AtomicInteger());
+    doReturn(Try.success((Void) null)).when(soht2Client).close(any(UUID.class));
+
+    val service = new ConnectionService(properties, soht2Client, pollStrategy, tunnelExecutor);
+    val listening = new AtomicBoolean();
+    val stopped = service.startConnections(h -> listening.set(true));
+    await().until(listening::get);
+
+    val bytes = UTHelper.createBinData(100);
+    val client =
+        EchoClient.builder().portNumber(host.getLocalPort()).socketTimeout(10_000).bufferSize(1024);
+    try (val client1 = client.build();
+        val client2 = client.build();
+        val client3 = client.build()) {
+      assertThat(client1.shout(bytes)).isEqualTo(bytes);
+      assertThat(client2.shout(bytes)).isEqualTo(bytes);
+      // the third connection waits in the backlog while two tunnels are open
+      await()
+          .pollDelay(Duration.ofMillis(500))
+          .untilAsserted(() -> verify(soht2Client, times(2)).open(anyString(), anyInt()));
+
+      client1.close();
+      assertThat(client3.shout(bytes)).isEqualTo(bytes);
+      verify(soht2Client, times(3)).open(anyString(), anyInt());
+    } finally {
+      service.stopConnections();
+    }
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(() -> verify(soht2Client, times(3)).close(any(UUID.class)));
+    // the listener is closed and released its port
+    stopped.get(10, TimeUnit.SECONDS);
+    new ServerSocket(host.getLocalPort()).close();
+  }
+
+  @Test
+  void exchange_FullDuplex() throws Exception {
+    val properties = new Soht2ClientProperties();
+    properties.setSocketReadTimeout(soht2ClientProperties.getSocketReadTimeout());
+    properties.setReadBufferSize(soht2ClientProperties.getReadBufferSize());
+    val host = new Soht2ClientProperties.HostProperties();
+    host.setLocalPort(freePorts(1).getFirst());
+    host.setRemoteHost("remotehost");
+    host.setRemotePort(8080);
+    properties.getConnections().add(host);
+
+    val bytesIn = UTHelper.createBinData(100);
+    val bytesOut = UTHelper.createBinData(200);
+    val uploaded = new CountDownLatch(1);
+    doReturn(Try.success(Soht2Connection.builder().build()))
+        .when(soht2Client)
+        .open(anyString(), anyInt());
+    doAnswer(
+            inv -> {
+              uploaded.countDown();
+              return Try.success(null);
+            })
+        .when(soht2Client)
+        .write(any(UUID.class), any(), anyLong());
+    // the server pushes data until the upload is received
+    doAnswer(inv -> Try.success(uploaded.getCount() > 0 ? bytesOut : new byte[0]))
+        .when(soht2Client)
+        .exchange(any(UUID.class), anyLong(), anyLong());
+    doReturn(Try.success((Void) null)).when(soht2Client).close(any(UUID.class));
+
+    val service = new ConnectionService(properties, soht2Client, pollStrategy, tunnelExecutor);
+    val listening = new AtomicBoolean();
+    service.startConnections(h -> listening.set(true));
+    await().until(listening::get);
+
+    try (val socket = new Socket("localhost", host.getLocalPort())) {
+      socket.setSoTimeout(10_000);
+      // the downloaded data flows while nothing is sent locally
+      val received = socket.getInputStream().readNBytes(bytesOut.length * 3);
+      assertThat(received).startsWith(bytesOut);
+      verify(soht2Client, never()).write(any(UUID.class), any(), anyLong());
+
+      // the upload does not wait for the download
+      socket.getOutputStream().write(bytesIn);
+      assertThat(uploaded.await(10, TimeUnit.SECONDS)).isTrue();
+      verify(soht2Client).write(any(UUID.class), eq(bytesIn), eq(0L));
+    } finally {
+      service.stopConnections();
+    }
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(() -> verify(soht2Client).close(any(UUID.class)));
+  }
+
+  @Test
+  void exchange_Pipelined() throws Exception {
+    val window = 3;
+    val properties = new Soht2ClientProperties();
+    properties.setSocketReadTimeout(soht2ClientProperties.getSocketReadTimeout());
+    properties.setReadBufferSize(soht2ClientProperties.getReadBufferSize());
+    properties.getExchange().setWindow(window);
+    val host = new Soht2ClientProperties.HostProperties();
+    host.setLocalPort(freePorts(1).getFirst());
+    host.setRemoteHost("remotehost");
+    host.setRemotePort(8080);
+    properties.getConnections().add(host);
+
+    doReturn(Try.success(Soht2Connection.builder().build()))
+        .when(soht2Client)
+        .open(anyString(), anyInt());
+    // the first downloads are answered only when all of them are in flight, and in reverse order
+    val allInFlight = new CountDownLatch(window);
+    doAnswer(
+            inv -> {
+              long seq = inv.getArgument(1);
+              if (seq >= window) return Try.success(new byte[0]);
+              allInFlight.countDown();
+              if (!allInFlight.await(10, TimeUnit.SECONDS))
+                return Try.failure(new AssertionError("Downloads are not pipelined"));
+              TimeUnit.MILLISECONDS.sleep((window - seq) * 100);
+              return Try.success(new byte[] {(byte) seq});
+            })
+        .when(soht2Client)
+        .exchange(any(UUID.class), anyLong(), anyLong());
+    doReturn(Try.success((Void) null)).when(soht2Client).close(any(UUID.class));
+
+    val service = new ConnectionService(properties, soht2Client, pollStrategy, tunnelExecutor);
+    val listening = new AtomicBoolean();
+    service.startConnections(h -> listening.set(true));
+    await().until(listening::get);
+
+    try (val socket = new Socket("localhost", host.getLocalPort())) {
+      socket.setSoTimeout(10_000);
+      // the responses are written in order of the downloads
+      assertThat(socket.getInputStream().readNBytes(window)).containsExactly(0, 1, 2);
+      // the next download acknowledges the received ones
+      verify(soht2Client).exchange(any(UUID.class), eq(3L), eq(0L));
+    } finally {
+      service.stopConnections();
+    }
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .untilAsserted(() -> verify(soht2Client).close(any(UUID.class)));
+  }
+
+  /**
+   * Stubs the client as a server echoing the data written to a connection back in the following
+   * exchanges of the connection.
+   */
+  void stubEchoServer(AtomicInteger platformThreads) {
+    val pending = new ConcurrentHashMap<UUID, ConcurrentSkipListMap<Long, byte[]>>();
+    doAnswer(
+            inv -> {
+              if (!Thread.currentThread().isVirtual()) platformThreads.incrementAndGet();
+              pending
+                  .computeIfAbsent(inv.getArgument(0), id -> new ConcurrentSkipListMap<>())
+                  .put(inv.getArgument(2), inv.<byte[]>getArgument(1).clone());
+              return Try.success(null);
+            })
+        .when(soht2Client)
+        .write(any(UUID.class), any(), anyLong());
+    doAnswer(
+            inv -> {
+              if (!Thread.currentThread().isVirtual()) platformThreads.incrementAndGet();
+              return Try.success(
+                  Optional.ofNullable(pending.get(inv.<UUID>getArgument(0)))
+                      .map(ConcurrentSkipListMap::pollFirstEntry)
+                      .map(Map.Entry::getValue)
+                      .orElseGet(() -> new byte[0]));
+            })
+        .when(soht2Client)
+        .exchange(any(UUID.class), anyLong(), anyLong());
+  }
+
+  static List<Integer> freePorts(int count) throws IOException {
+    // the sockets are kept open until all ports are found, so no port is returned twice
+    val sockets = new ArrayList<ServerSocket>();
+    try {
+      for (int i = 0; i < count; i++) sockets.add(new ServerSocket(0));
+      return sockets.stream().map(ServerSocket::getLocalPort).toList();
+    } finally {
+      for (val socket : sockets) socket.close();
+    }
   }
 }
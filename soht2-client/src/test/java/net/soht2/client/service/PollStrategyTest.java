@@ -4,6 +4,7 @@ package net.soht2.client.service;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
@@ -46,6 +47,56 @@ class PollStrategyTest {
     assertThat(linear.size()).isLessThan(constant.size());
   }
 
+  @Test
+  void adaptivePollStrategy_OK() {
+    val now = new AtomicLong();
+    val template =
+        AdaptivePollStrategy.builder()
+            .initialDelay(Duration.ofMillis(100))
+            .maxDelay(Duration.ofSeconds(10))
+            .jitter(0)
+            .clock(now::get)
+            .build();
+    val session = (AdaptivePollStrategy) template.forSession();
+    assertThat(session).isNotSameAs(template);
+
+    // the traffic arrives every 500 ms, so polls are aggressive within this gap
+    for (int i = 0; i < 4; i++) {
+      now.addAndGet(500);
+      session.onActivity();
+    }
+    assertThat(session.getAverageGap()).isEqualTo(500);
+    assertThat(session.getDelay(0)).isZero();
+    now.addAndGet(200);
+    assertThat(session.getDelay(3)).isEqualTo(Duration.ofMillis(100));
+
+    // after the gap the delay grows, and it is never less than a half of the idle time
+    now.addAndGet(400);
+    assertThat(session.getDelay(3)).isEqualTo(Duration.ofMillis(400));
+    now.addAndGet(3_000);
+    assertThat(session.getDelay(3)).isEqualTo(Duration.ofMillis(1_800));
+    now.addAndGet(60_000);
+    assertThat(session.getDelay(3)).isEqualTo(Duration.ofSeconds(10));
+
+    // the other sessions are not affected
+    assertThat(((AdaptivePollStrategy) template.forSession()).getAverageGap()).isZero();
+  }
+
+  @Test
+  void adaptivePollStrategy_Jitter() {
+    val strategy =
+        AdaptivePollStrategy.builder()
+            .initialDelay(Duration.ofMillis(100))
+            .maxDelay(Duration.ofSeconds(1))
+            .jitter(0.2)
+            .build()
+            .forSession();
+    val delays = Stream.generate(() -> strategy.getDelay(20)).limit(100).distinct().toList();
+    assertThat(delays)
+        .hasSizeGreaterThan(1)
+        .allSatisfy(d -> assertThat(d).isBetween(Duration.ofMillis(800), Duration.ofMillis(1_200)));
+  }
+
   Stream<Duration> allPeriods(PollStrategy pollStrategy, Duration duringTime) {
     val time = new AtomicReference<>(Duration.ZERO);
     return Stream.iterate(0, i -> i + 1)
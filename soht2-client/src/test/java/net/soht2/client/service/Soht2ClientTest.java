@@ -4,22 +4,38 @@ package net.soht2.client.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.http.HttpMethod.*;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
-import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.zip.Adler32;
 import lombok.val;
 import net.soht2.client.config.Soht2ClientConfig;
 import net.soht2.client.config.Soht2ClientProperties;
 import net.soht2.client.test.UTHelper;
+import net.soht2.common.compress.CompressionType;
+import net.soht2.common.compress.Compressor;
+import net.soht2.common.compress.PresetDictionary;
+import net.soht2.common.compress.StreamDeflater;
+import net.soht2.common.compress.StreamInflater;
 import net.soht2.common.dto.Soht2Connection;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.client.RestClientTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
 
 @RestClientTest(Soht2Client.class)
 @Import(Soht2ClientConfig.class)
@@ -49,6 +65,72 @@ class Soht2ClientTest {
     assertThat(soht2Client.open("localhost", 8080).get()).isEqualTo(connection);
   }
 
+  @Test
+  void open_Dictionary() throws Exception {
+    val connection = Soht2Connection.builder().targetHost("targethost").targetPort(12345).build();
+    val message =
+        "{\"method\":\"orders.update\",\"params\":{\"status\":\"CONFIRMED\",\"currency\":\"EUR\"}}";
+    val dictionaryData = ("open_Dictionary " + message).getBytes();
+    val adler = new Adler32();
+    adler.update(dictionaryData);
+    val dictionaryId = "%08x".formatted(adler.getValue());
+    val compression = soht2ClientProperties.getCompression();
+    compression.setType(CompressionType.GZIP);
+    // the dictionary is registered by opening the connection
+    Supplier<Compressor> compressor =
+        () ->
+            Compressor.dictionaryCompressorFactory.apply(
+                PresetDictionary.get(dictionaryId).orElseThrow(),
+                compression.getLevel(),
+                compression.getStrategy());
+
+    try {
+      val headers = new HttpHeaders();
+      headers.set(Soht2Connection.HEADER_DICTIONARY, dictionaryId);
+      server
+          .expect(requestTo(soht2ClientProperties.getUrl() + "?host=localhost&port=8080"))
+          .andExpect(method(POST))
+          .andRespond(
+              withSuccess(objectMapper.writeValueAsString(connection), MediaType.APPLICATION_JSON)
+                  .headers(headers));
+      server
+          .expect(requestTo(soht2ClientProperties.getUrl() + "/" + connection.id() + "/dictionary"))
+          .andExpect(method(GET))
+          .andRespond(withSuccess(dictionaryData, MediaType.APPLICATION_OCTET_STREAM));
+
+      // a small upload is compressed with the dictionary, which is used for the response, too
+      val responseHeaders = new HttpHeaders();
+      responseHeaders.set(HttpHeaders.CONTENT_ENCODING, "deflate");
+      server
+          .expect(requestTo(soht2ClientProperties.getUrl() + "/" + connection.id()))
+          .andExpect(method(POST))
+          .andExpect(header(HttpHeaders.CONTENT_ENCODING, "deflate"))
+          .andExpect(header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+          .andExpect(header(Soht2Connection.HEADER_DICTIONARY, dictionaryId))
+          .andExpect(
+              request ->
+                  assertThat(
+                          compressor
+                              .get()
+                              .decompress(((MockClientHttpRequest) request).getBodyAsBytes()))
+                      .isEqualTo(message.getBytes()))
+          .andRespond(
+              request ->
+                  withSuccess(
+                          compressor.get().compress(message.getBytes()),
+                          MediaType.APPLICATION_OCTET_STREAM)
+                      .headers(responseHeaders)
+                      .createResponse(request));
+
+      assertThat(soht2Client.open("localhost", 8080).get()).isEqualTo(connection);
+      assertThat(soht2Client.exchange(connection.id(), message.getBytes()).get())
+          .isEqualTo(message.getBytes());
+      server.verify();
+    } finally {
+      compression.setType(CompressionType.NONE);
+    }
+  }
+
   @Test
   void exchange_OK() {
     val connectionId = UUID.randomUUID();
@@ -66,6 +148,99 @@ class Soht2ClientTest {
     assertThat(soht2Client.exchange(connectionId, bytesIn).get()).isEqualTo(bytesOut);
   }
 
+  @Test
+  void exchange_Retry() {
+    val connectionId = UUID.randomUUID();
+    val bytesOut = UTHelper.createBinData(100);
+
+    for (val response :
+        List.of(
+            withException(new SocketTimeoutException("Read timed out")),
+            withStatus(HttpStatus.BAD_GATEWAY),
+            withSuccess(bytesOut, MediaType.APPLICATION_OCTET_STREAM)))
+      server
+          .expect(requestTo(soht2ClientProperties.getUrl() + "/" + connectionId))
+          .andExpect(method(POST))
+          .andExpect(header(Soht2Connection.HEADER_SEQUENCE, "5"))
+          .andExpect(header(Soht2Connection.HEADER_ACK, "4"))
+          .andRespond(response);
+
+    // the sequenced download is repeated after the failures
+    assertThat(soht2Client.exchange(connectionId, 5, 4).get()).isEqualTo(bytesOut);
+    server.verify();
+  }
+
+  @Test
+  void write_Retry() {
+    val connectionId = UUID.randomUUID();
+    val bytesIn = UTHelper.createBinData(100);
+
+    server
+        .expect(
+            ExpectedCount.times(4), requestTo(soht2ClientProperties.getUrl() + "/" + connectionId))
+        .andExpect(method(PUT))
+        .andExpect(header(Soht2Connection.HEADER_SEQUENCE, "0"))
+        .andExpect(content().bytes(bytesIn))
+        .andRespond(withException(new ConnectException("Connection refused")));
+    server
+        .expect(requestTo(soht2ClientProperties.getUrl() + "/" + connectionId))
+        .andExpect(method(PUT))
+        .andRespond(withStatus(HttpStatus.GONE));
+
+    // the upload fails after the retries, and a client error is not retried
+    assertThat(soht2Client.write(connectionId, bytesIn, 0).getCause())
+        .isInstanceOf(ResourceAccessException.class);
+    assertThat(soht2Client.write(connectionId, bytesIn, 1).getCause())
+        .isInstanceOf(HttpClientErrorException.Gone.class);
+    server.verify();
+  }
+
+  @Test
+  void write_OK() {
+    val connectionId = UUID.randomUUID();
+    val bytesIn = UTHelper.createBinData(100);
+
+    server
+        .expect(requestTo(soht2ClientProperties.getUrl() + "/" + connectionId))
+        .andExpect(method(PUT))
+        .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+        .andExpect(content().bytes(bytesIn))
+        .andRespond(withSuccess());
+
+    assertThat(soht2Client.write(connectionId, bytesIn).isSuccess()).isTrue();
+  }
+
+  @Test
+  void write_Stateful() {
+    val connectionId = UUID.randomUUID();
+    val bytesIn = "stateful compression ".repeat(10).getBytes();
+    val compression = soht2ClientProperties.getCompression();
+    compression.setType(CompressionType.DEFLATE);
+    compression.setStateful(true);
+
+    try (val inflater = new StreamInflater()) {
+      server
+          .expect(
+              ExpectedCount.times(2),
+              requestTo(soht2ClientProperties.getUrl() + "/" + connectionId))
+          .andExpect(method(PUT))
+          .andExpect(header(HttpHeaders.CONTENT_ENCODING, StreamDeflater.CONTENT_ENCODING))
+          .andExpect(
+              request ->
+                  assertThat(inflater.inflate(((MockClientHttpRequest) request).getBodyAsBytes()))
+                      .isEqualTo(bytesIn))
+          .andRespond(withSuccess());
+
+      // the second upload refers to the first one
+      assertThat(soht2Client.write(connectionId, bytesIn, 0).isSuccess()).isTrue();
+      assertThat(soht2Client.write(connectionId, bytesIn, 1).isSuccess()).isTrue();
+      server.verify();
+    } finally {
+      compression.setType(CompressionType.NONE);
+      compression.setStateful(false);
+    }
+  }
+
   @Test
   void close_OK() {
     val connectionId = UUID.randomUUID();
@@ -0,0 +1,99 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the compression types on typical tunnel payloads: plain text protocols (HTTP, SQL,
+ * JSON), binary data with some redundancy, and encrypted traffic that does not compress at all. Run
+ * it by {@code gradle :soht2-common:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompressorBenchmark {
+
+  private static final String TEXT =
+      """
+      GET /api/v1/orders?customer=%d&status=OPEN HTTP/1.1
+      Host: internal.example.com
+      Accept: application/json
+      Cookie: JSESSIONID=%08X; locale=en_US
+
+      {"id":%d,"customer":"customer-%d","items":[{"sku":"SKU-%05d","qty":%d}],"status":"OPEN"}
+      """;
+
+  @Param({"LZ4", "GZIP", "DEFLATE"})
+  public String type;
+
+  @Param({"text", "binary", "random"})
+  public String payload;
+
+  @Param({"4096", "65536"})
+  public int size;
+
+  private Compressor compressor;
+  private byte[] data;
+  private byte[] compressed;
+
+  @Setup
+  public void setup() {
+    compressor = Compressor.compressorCache.apply(type);
+    data =
+        switch (payload) {
+          case "text" -> text(size);
+          case "binary" -> binary(size);
+          default -> random(size);
+        };
+    compressed = compressor.compress(data);
+  }
+
+  @Benchmark
+  public byte[] compress() {
+    return compressor.compress(data);
+  }
+
+  @Benchmark
+  public byte[] decompress() {
+    return compressor.decompress(compressed);
+  }
+
+  private static byte[] text(int size) {
+    final Random random = new Random(size);
+    final StringBuilder sb = new StringBuilder(size);
+    for (int i = 0; sb.length() < size; i++)
+      sb.append(TEXT.formatted(i, random.nextInt(), i, i, random.nextInt(100_000), i % 10));
+    return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] binary(int size) {
+    // records of a fixed layout: a small counter, a repeated tag and a random value
+    final Random random = new Random(size);
+    final byte[] data = new byte[size];
+    for (int i = 0; i < size; i++)
+      data[i] =
+          switch (i % 16) {
+            case 0, 1 -> (byte) (i >>> 4);
+            case 2, 3, 4, 5, 6, 7 -> (byte) "RECORD".charAt(i % 16 - 2);
+            case 8, 9, 10, 11 -> (byte) random.nextInt(4);
+            default -> (byte) random.nextInt();
+          };
+    return data;
+  }
+
+  private static byte[] random(int size) {
+    final byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,164 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * AdaptiveCompressor decides per payload of a single connection whether compression pays off. Most
+ * of the tunneled traffic is often already encrypted or compressed, and compressing it only burns
+ * CPU and makes the payload larger. So every payload is sampled first, and payloads looking like
+ * random data are not compressed; the payloads that compress poorly are sent as is, too. After such
+ * a payload, compression is skipped for a number of the following payloads, which doubles while the
+ * connection keeps being incompressible, and it is tried again after that, so it turns back on when
+ * the traffic changes.
+ *
+ * <p>The instance keeps the state of one connection. It counts the bytes saved by compression and
+ * the CPU time spent on it, see {@link #getStats()}.
+ */
+@Slf4j
+public class AdaptiveCompressor {
+
+  /** The maximum number of bytes sampled to estimate the entropy of a payload. */
+  static final int SAMPLE_SIZE = 4096;
+
+  /** The entropy in bits per byte above which a payload is considered incompressible. */
+  static final double MAX_ENTROPY = 7.5;
+
+  /** The compressed to original size ratio above which compression is considered useless. */
+  static final double MAX_RATIO = 0.9;
+
+  /** The maximum number of payloads skipped before compression is tried again. */
+  static final int MAX_SKIP = 64;
+
+  /**
+   * Statistics of adaptive compression of a connection.
+   *
+   * @param compressed the number of compressed payloads
+   * @param skipped the number of payloads sent uncompressed because they were incompressible
+   * @param bytesIn the original size of the compressed payloads
+   * @param bytesOut the size of the compressed payloads after compression
+   * @param bytesSkipped the size of the skipped payloads
+   * @param nanos the time spent on compression, including the compressions that did not pay off
+   */
+  public record Stats(
+      long compressed, long skipped, long bytesIn, long bytesOut, long bytesSkipped, long nanos) {
+
+    /**
+     * Returns the number of bytes saved by compression.
+     *
+     * @return the difference between the original and compressed sizes of the compressed payloads
+     */
+    public long bytesSaved() {
+      return bytesIn - bytesOut;
+    }
+  }
+
+  private final Compressor compressor;
+  private final long minSize;
+
+  private int skipInterval;
+  private int skipRemaining;
+  private long compressed;
+  private long skipped;
+  private long bytesIn;
+  private long bytesOut;
+  private long bytesSkipped;
+  private long nanos;
+
+  /**
+   * Creates an adaptive compressor for a connection.
+   *
+   * @param compressor the compressor applied to the payloads that pay off
+   * @param minSize the minimum size of a payload to be compressed
+   */
+  public AdaptiveCompressor(Compressor compressor, long minSize) {
+    this.compressor = compressor;
+    this.minSize = minSize;
+  }
+
+  /**
+   * Returns the underlying compressor.
+   *
+   * @return the compressor applied to the payloads that pay off
+   */
+  public Compressor getCompressor() {
+    return compressor;
+  }
+
+  /**
+   * Compresses the payload if it pays off.
+   *
+   * @param data the payload to compress
+   * @return the compressed payload, or empty if the payload has to be sent as is
+   */
+  public synchronized Optional<byte[]> compress(byte[] data) {
+    if (data == null || data.length < minSize) return Optional.empty();
+    if (skipRemaining > 0) {
+      skipRemaining--;
+      return skip(data);
+    }
+    if (entropy(data) > MAX_ENTROPY) {
+      backOff();
+      return skip(data);
+    }
+
+    val start = System.nanoTime();
+    val result = compressor.compress(data);
+    nanos += System.nanoTime() - start;
+    if (result.length > data.length * MAX_RATIO) {
+      backOff();
+      return skip(data);
+    }
+
+    skipInterval = 0;
+    compressed++;
+    bytesIn += data.length;
+    bytesOut += result.length;
+    return Optional.of(result);
+  }
+
+  /**
+   * Returns the statistics of the connection.
+   *
+   * @return the current statistics
+   */
+  public synchronized Stats getStats() {
+    return new Stats(compressed, skipped, bytesIn, bytesOut, bytesSkipped, nanos);
+  }
+
+  private Optional<byte[]> skip(byte[] data) {
+    skipped++;
+    bytesSkipped += data.length;
+    return Optional.empty();
+  }
+
+  private void backOff() {
+    skipInterval = Math.min(Math.max(skipInterval * 2, 1), MAX_SKIP);
+    skipRemaining = skipInterval;
+    log.trace("backOff: skipInterval={}", skipInterval);
+  }
+
+  /**
+   * Estimates the Shannon entropy of the data by a sample of up to {@link #SAMPLE_SIZE} bytes taken
+   * evenly from it.
+   *
+   * @param data the data to estimate
+   * @return the entropy in bits per byte, from 0 to 8
+   */
+  static double entropy(byte[] data) {
+    val counts = new int[256];
+    val step = Math.max(data.length / SAMPLE_SIZE, 1);
+    var total = 0;
+    for (int i = 0; i < data.length; i += step, total++) counts[data[i] & 0xFF]++;
+
+    var entropy = 0.0;
+    for (val count : counts) {
+      if (count == 0) continue;
+      val p = (double) count / total;
+      entropy -= p * Math.log(p);
+    }
+    return entropy / Math.log(2);
+  }
+}
@@ -0,0 +1,186 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.common.compress;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * Base class of the compressors built on {@link Deflater} and {@link Inflater}. Their native state
+ * is expensive to create, so every compressor keeps pools of them together with their working
+ * buffers, which are sized from the payload and grow only when a larger payload comes. A payload is
+ * deflated and inflated right into the pooled buffer, so the only allocation per payload is the
+ * exact-size result.
+ *
+ * <p>Data compressed in the ZLIB format with a {@link PresetDictionary} is decompressed with the
+ * registered dictionary it refers to.
+ */
+@Slf4j
+abstract class BaseDeflaterCompressor implements Compressor {
+
+  /** The maximum number of idle deflaters and inflaters kept by a compressor. */
+  static final int MAX_POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+  /** The maximum size of a buffer kept in the pool, larger ones are released to the GC. */
+  static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+
+  /** The maximum compression ratio of DEFLATE, a larger expected size is not trusted. */
+  private static final long MAX_DEFLATE_RATIO = 1032;
+
+  private static final byte[] EMPTY = new byte[0];
+  private static final int MIN_BUFFER_SIZE = 1 << 10;
+
+  private final CodecPool<Context<Deflater>> deflaters;
+  private final CodecPool<Context<Inflater>> inflaters;
+
+  /**
+   * Creates a compressor with its pools.
+   *
+   * @param level the compression level from 0 to 9, or -1 for the default one
+   * @param strategy the compression strategy
+   * @param nowrap whether the raw DEFLATE format is used instead of the ZLIB one
+   * @param dictionary the preset dictionary to compress with, only for the ZLIB format (optional)
+   */
+  BaseDeflaterCompressor(
+      int level, DeflateStrategy strategy, boolean nowrap, PresetDictionary dictionary) {
+    this.deflaters =
+        CodecPool.<Context<Deflater>>builder()
+            .maxIdle(MAX_POOL_SIZE)
+            .factory(
+                () -> {
+                  val deflater = new Deflater(level, nowrap);
+                  deflater.setStrategy(strategy.value());
+                  if (dictionary != null) deflater.setDictionary(dictionary.data);
+                  return new Context<>(deflater);
+                })
+            .reset(
+                context ->
+                    context.reset(
+                        () -> {
+                          context.codec.reset();
+                          // reset keeps the level and the strategy, but discards the dictionary
+                          if (dictionary != null) context.codec.setDictionary(dictionary.data);
+                        }))
+            .dispose(context -> context.codec.end())
+            .build();
+    this.inflaters =
+        CodecPool.<Context<Inflater>>builder()
+            .maxIdle(MAX_POOL_SIZE)
+            .factory(() -> new Context<>(new Inflater(nowrap)))
+            .reset(context -> context.reset(context.codec::reset))
+            .dispose(context -> context.codec.end())
+            .build();
+  }
+
+  /**
+   * Deflates the data.
+   *
+   * @param data the data to deflate, not empty
+   * @param header the bytes written before the deflated data
+   * @param trailerSize the number of bytes reserved after the deflated data
+   * @return the header, the deflated data and the reserved trailer
+   */
+  byte[] deflate(byte[] data, byte[] header, int trailerSize) {
+    val context = deflaters.acquire();
+    try {
+      val deflater = context.codec;
+      deflater.setInput(data);
+      deflater.finish();
+      var buffer = context.buffer(header.length + maxDeflatedLength(data.length) + trailerSize);
+      System.arraycopy(header, 0, buffer, 0, header.length);
+      var size = header.length;
+      while (!deflater.finished()) {
+        if (size == buffer.length - trailerSize) buffer = context.grow();
+        size += deflater.deflate(buffer, size, buffer.length - trailerSize - size);
+      }
+      log.trace("deflate: data.length: {}, compressed.length={}", data.length, size + trailerSize);
+      return Arrays.copyOf(buffer, size + trailerSize);
+    } finally {
+      deflaters.release(context);
+    }
+  }
+
+  /**
+   * Inflates the data.
+   *
+   * @param data the array containing the deflated data
+   * @param offset the offset of the deflated data
+   * @param length the length of the deflated data, it may include a trailer following it
+   * @param expectedSize the size of the inflated data if it is known, otherwise -1
+   * @return the inflated data
+   */
+  @SneakyThrows
+  byte[] inflate(byte[] data, int offset, int length, int expectedSize) {
+    val context = inflaters.acquire();
+    try {
+      val inflater = context.codec;
+      inflater.setInput(data, offset, length);
+      // one more byte lets the inflater reach the end of the stream without growing the buffer
+      var buffer =
+          context.buffer(
+              expectedSize >= 0 && expectedSize <= length * MAX_DEFLATE_RATIO
+                  ? expectedSize + 1
+                  : length * 4);
+      var size = 0;
+      while (!inflater.finished()) {
+        if (size == buffer.length) buffer = context.grow();
+        val inflated = inflater.inflate(buffer, size, buffer.length - size);
+        if (inflated == 0 && inflater.needsDictionary())
+          inflater.setDictionary(
+              PresetDictionary.get(inflater.getAdler())
+                  .orElseThrow(
+                      () ->
+                          new ZipException(
+                              "Unknown preset dictionary %08x".formatted(inflater.getAdler())))
+                  .data);
+        else if (inflated == 0 && inflater.needsInput())
+          throw new ZipException("Unexpected end of deflated data");
+        size += inflated;
+      }
+      log.trace("inflate: data.length: {}, decompressed.length={}", length, size);
+      return Arrays.copyOf(buffer, size);
+    } catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    } finally {
+      inflaters.release(context);
+    }
+  }
+
+  /**
+   * Returns the size of the buffer enough for the deflated data of the given length, so it never
+   * grows. It is the bound of stored blocks, which is larger than the one of compressed blocks.
+   */
+  static int maxDeflatedLength(int length) {
+    return length + (length >> 3) + (length >> 6) + 16;
+  }
+
+  /** A pooled codec with its working buffer. */
+  private static final class Context<T> {
+
+    final T codec;
+    private byte[] buffer = EMPTY;
+
+    Context(T codec) {
+      this.codec = codec;
+    }
+
+    byte[] buffer(int size) {
+      if (buffer.length < size) buffer = new byte[Math.max(size, MIN_BUFFER_SIZE)];
+      return buffer;
+    }
+
+    byte[] grow() {
+      return buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, MIN_BUFFER_SIZE));
+    }
+
+    void reset(Runnable codecReset) {
+      codecReset.run();
+      if (buffer.length > MAX_POOLED_BUFFER_SIZE) buffer = EMPTY;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * A bounded pool of reusable codec contexts, like a {@link java.util.zip.Deflater} with its buffer.
+ * Creating such a context allocates native memory and large buffers, so a compressor takes an idle
+ * one from the pool and returns it after use. A returned context is reset, and it is disposed
+ * instead if the pool already keeps enough idle contexts.
+ *
+ * @param <T> the type of the pooled contexts
+ */
+final class CodecPool<T> {
+
+  private final BlockingQueue<T> idle;
+  private final Supplier<T> factory;
+  private final Consumer<T> reset;
+  private final Consumer<T> dispose;
+
+  @Builder
+  private CodecPool(
+      int maxIdle,
+      @NonNull Supplier<T> factory,
+      @NonNull Consumer<T> reset,
+      @NonNull Consumer<T> dispose) {
+    this.idle = new ArrayBlockingQueue<>(maxIdle);
+    this.factory = factory;
+    this.reset = reset;
+    this.dispose = dispose;
+  }
+
+  /**
+   * Takes an idle context from the pool or creates a new one if there are no idle contexts.
+   *
+   * @return the context to use exclusively until it is released
+   */
+  T acquire() {
+    final T context = idle.poll();
+    return context != null ? context : factory.get();
+  }
+
+  /**
+   * Resets the context and returns it to the pool, or disposes of it if the pool is full.
+   *
+   * @param context the context taken by {@link #acquire()}
+   */
+  void release(T context) {
+    reset.accept(context);
+    if (!idle.offer(context)) dispose.accept(context);
+  }
+
+  /** Returns the number of idle contexts in the pool. */
+  int size() {
+    return idle.size();
+  }
+}
@@ -13,5 +13,7 @@ public enum CompressionType {
   /** GZIP compression applied to requests. */
   GZIP,
   /** DEFLATE compression applied to requests. */
-  DEFLATE
+  DEFLATE,
+  /** Fast LZ4 block compression applied to requests and responses. */
+  LZ4
 }
@@ -4,7 +4,9 @@ package net.soht2.common.compress;
 import static java.util.Optional.ofNullable;
 
 import io.vavr.Function1;
+import io.vavr.Function3;
 import io.vavr.control.Try;
+import java.util.zip.Deflater;
 
 /**
  * Compressor interface defines methods for compressing and decompressing byte arrays.
@@ -13,22 +15,42 @@ import io.vavr.control.Try;
 public interface Compressor {
 
   /**
-   * A cache for compressor instances based on the encoding type. This avoids creating multiple
-   * instances of the same compressor for the same encoding type.
+   * A cache for compressor instances based on the encoding type, the compression level and the
+   * strategy. The level and the strategy apply to GZIP and DEFLATE only. Every compressor keeps its
+   * pools of native codecs, so the instances are shared rather than created per payload.
    */
-  Function1<String, Compressor> compressorCache =
-      Function1.<String, Compressor>of(
-              encoding ->
+  Function3<String, Integer, DeflateStrategy, Compressor> compressorFactory =
+      Function3.<String, Integer, DeflateStrategy, Compressor>of(
+              (encoding, level, strategy) ->
                   switch (ofNullable(encoding)
                       .map(String::toUpperCase)
                       .map(v -> Try.of(() -> CompressionType.valueOf(v)).getOrNull())
                       .orElse(CompressionType.NONE)) {
-                    case GZIP -> new GZIPCompressor();
-                    case DEFLATE -> new DeflateCompressor();
+                    case GZIP -> new GZIPCompressor(level, strategy);
+                    case DEFLATE -> new DeflateCompressor(level, strategy);
+                    case LZ4 -> new LZ4Compressor();
                     default -> new IdentityCompressor();
                   })
           .memoized();
 
+  /**
+   * A cache for DEFLATE compressor instances based on the preset dictionary, the compression level
+   * and the strategy. The dictionaries are registered once, so their instances are the keys.
+   */
+  Function3<PresetDictionary, Integer, DeflateStrategy, Compressor> dictionaryCompressorFactory =
+      Function3.<PresetDictionary, Integer, DeflateStrategy, Compressor>of(
+              (dictionary, level, strategy) -> new DeflateCompressor(level, strategy, dictionary))
+          .memoized();
+
+  /**
+   * A cache for compressor instances based on the encoding type, with the default compression level
+   * and strategy. This avoids creating multiple instances of the same compressor for the same
+   * encoding type. The level and the strategy do not matter for decompression.
+   */
+  Function1<String, Compressor> compressorCache =
+      encoding ->
+          compressorFactory.apply(encoding, Deflater.DEFAULT_COMPRESSION, DeflateStrategy.DEFAULT);
+
   /**
    * Returns the encoding type accepted by this compressor. This is typically used in HTTP headers
    * to indicate the compression method.
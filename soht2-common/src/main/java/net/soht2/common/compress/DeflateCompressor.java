@@ -1,15 +1,45 @@
 /* SOHT2 © Licensed under MIT 2025. */
 package net.soht2.common.compress;
 
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.Deflater;
 
 /**
  * DeflateCompressor implements the {@link Compressor} interface to provide compression and
- * decompression using the Deflate algorithm. It uses {@link DeflaterOutputStream} for compression
- * and {@link InflaterInputStream} for decompression.
+ * decompression using the Deflate algorithm. It uses the pooled {@link Deflater} and {@link
+ * java.util.zip.Inflater} in the ZLIB format, so its output is the same as the one of {@link
+ * java.util.zip.DeflaterOutputStream}.
  */
-public class DeflateCompressor extends BaseIOStreamCompressor {
+public class DeflateCompressor extends BaseDeflaterCompressor {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  /** Creates a compressor with the default compression level and strategy. */
+  public DeflateCompressor() {
+    this(Deflater.DEFAULT_COMPRESSION, DeflateStrategy.DEFAULT);
+  }
+
+  /**
+   * Creates a compressor with the given compression level and strategy.
+   *
+   * @param level the compression level from 0 to 9, or -1 for the default one
+   * @param strategy the compression strategy
+   */
+  public DeflateCompressor(int level, DeflateStrategy strategy) {
+    this(level, strategy, null);
+  }
+
+  /**
+   * Creates a compressor with the given compression level, strategy and preset dictionary. Its
+   * output refers to the dictionary by id, so the peer decompresses it with any {@link
+   * DeflateCompressor} once the dictionary is registered there.
+   *
+   * @param level the compression level from 0 to 9, or -1 for the default one
+   * @param strategy the compression strategy
+   * @param dictionary the preset dictionary (optional)
+   */
+  public DeflateCompressor(int level, DeflateStrategy strategy, PresetDictionary dictionary) {
+    super(level, strategy, false, dictionary);
+  }
 
   @Override
   public String getAcceptEncoding() {
@@ -18,11 +48,13 @@ public class DeflateCompressor extends BaseIOStreamCompressor {
 
   @Override
   public byte[] compress(byte[] data) {
-    return compress(data, DeflaterOutputStream::new);
+    if (data == null || data.length == 0) return data;
+    return deflate(data, EMPTY, 0);
   }
 
   @Override
   public byte[] decompress(byte[] data) {
-    return decompress(data, InflaterInputStream::new);
+    if (data == null || data.length == 0) return data;
+    return inflate(data, 0, data.length, -1);
   }
 }
@@ -0,0 +1,26 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.util.zip.Deflater;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+
+/**
+ * Defines the strategy of the DEFLATE algorithm used by GZIP and DEFLATE compression.
+ *
+ * @see Deflater#setStrategy(int)
+ */
+@Getter
+@Accessors(fluent = true)
+@RequiredArgsConstructor
+public enum DeflateStrategy {
+  /** The default strategy, good for most of the data. */
+  DEFAULT(Deflater.DEFAULT_STRATEGY),
+  /** The strategy for data with small values of a random distribution, like binary records. */
+  FILTERED(Deflater.FILTERED),
+  /** Huffman coding only, with no string matching, the fastest and the weakest one. */
+  HUFFMAN_ONLY(Deflater.HUFFMAN_ONLY);
+
+  private final int value;
+}
@@ -0,0 +1,187 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * Offline tool training a {@link PresetDictionary} from the sampled traffic of a target. The
+ * dictionary is made of the segments of the samples which share the most content with the other
+ * samples: every 8-byte sequence is scored by the number of samples it occurs in, and the segments
+ * with the highest total score of their sequences are taken greedily, discounting the sequences
+ * already covered by the taken segments. The best segments end up at the end of the dictionary,
+ * where DEFLATE reaches them with the shortest distances.
+ *
+ * <p>Usage: {@code DictionaryTrainer <dictionary-file> <size> <sample-file>...}, where the sample
+ * files are written by {@link #writeSample(OutputStream, byte[])}, as the SOHT2 server samples the
+ * traffic of its targets.
+ */
+@Slf4j
+public final class DictionaryTrainer {
+
+  /** The default size of a trained dictionary. */
+  public static final int DEFAULT_SIZE = 16 * 1024;
+
+  private static final int K = 8;
+  private static final int SEGMENT_SIZE = 64;
+  private static final int SEGMENT_STEP = 16;
+  private static final int HASH_LOG = 22;
+  // a segment sharing less than 2K-1 bytes with a single other sample is not worth including
+  private static final long MIN_SCORE = 2L * K;
+  private static final int MAX_SAMPLE_SIZE = 1 << 20;
+
+  private DictionaryTrainer() {}
+
+  /**
+   * Trains a dictionary from the samples.
+   *
+   * @param samples the payloads sampled from the traffic of a target
+   * @param size the maximum size of the dictionary, up to {@link PresetDictionary#MAX_SIZE}
+   * @return the data of the dictionary, empty if the samples share nothing
+   */
+  public static byte[] train(Collection<byte[]> samples, int size) {
+    // the number of samples every sequence occurs in, sequences are hashed to save memory
+    val frequency = new int[1 << HASH_LOG];
+    val lastSample = new int[1 << HASH_LOG];
+    var sampleNumber = 0;
+    for (val sample : samples) {
+      sampleNumber++;
+      for (int i = 0; i + K <= sample.length; i++) {
+        val hash = hash(sample, i);
+        if (lastSample[hash] != sampleNumber) {
+          lastSample[hash] = sampleNumber;
+          frequency[hash]++;
+        }
+      }
+    }
+
+    val queue = new PriorityQueue<>(Comparator.comparingLong(Segment::score).reversed());
+    for (val sample : samples)
+      for (int start = 0; start + K <= sample.length; start += SEGMENT_STEP) {
+        val segment = new Segment(sample, start, Math.min(start + SEGMENT_SIZE, sample.length), 0);
+        val score = segment.rescore(frequency);
+        if (score >= MIN_SCORE) queue.add(segment.withScore(score));
+      }
+
+    // scores only decrease, so a segment whose rescored value still beats the next one is the best
+    val selected = new ArrayList<Segment>();
+    var total = 0;
+    val maxSize = Math.min(size, PresetDictionary.MAX_SIZE);
+    while (total < maxSize && !queue.isEmpty()) {
+      val segment = queue.poll();
+      val score = segment.rescore(frequency);
+      if (score < MIN_SCORE) continue;
+      if (!queue.isEmpty() && score < queue.peek().score()) {
+        queue.add(segment.withScore(score));
+        continue;
+      }
+      selected.add(segment);
+      total += segment.end() - segment.start();
+      for (int i = segment.start(); i + K <= segment.end(); i++)
+        frequency[hash(segment.sample(), i)] = 0;
+    }
+
+    val result = new byte[Math.min(total, maxSize)];
+    var position = result.length;
+    for (val segment : selected) {
+      val length = Math.min(segment.end() - segment.start(), position);
+      position -= length;
+      System.arraycopy(segment.sample(), segment.end() - length, result, position, length);
+    }
+    log.debug("train: samples={}, segments={}, size={}", samples.size(), selected.size(), total);
+    return result;
+  }
+
+  /**
+   * Appends the sample to the sample file as a record of its length and data.
+   *
+   * @param out the output stream of the sample file
+   * @param sample the payload sampled from the traffic of a target
+   * @throws IOException if an I/O error occurs
+   */
+  public static void writeSample(OutputStream out, byte[] sample) throws IOException {
+    val data = new DataOutputStream(out);
+    data.writeInt(sample.length);
+    data.write(sample);
+    data.flush();
+  }
+
+  /**
+   * Reads the samples written by {@link #writeSample(OutputStream, byte[])}. A truncated last
+   * record, which is left if the server stops while writing it, is ignored.
+   *
+   * @param file the sample file
+   * @return the samples
+   * @throws IOException if an I/O error occurs or the file is malformed
+   */
+  public static List<byte[]> readSamples(Path file) throws IOException {
+    val samples = new ArrayList<byte[]>();
+    try (val in = new DataInputStream(Files.newInputStream(file))) {
+      while (true) {
+        final int length;
+        try {
+          length = in.readInt();
+          if (length < 0 || length > MAX_SAMPLE_SIZE)
+            throw new IOException("Malformed sample file " + file);
+          samples.add(in.readNBytes(length));
+        } catch (EOFException e) {
+          return samples;
+        }
+      }
+    }
+  }
+
+  /**
+   * Trains a dictionary from the sample files and writes it to the dictionary file.
+   *
+   * @param args the dictionary file, the size of the dictionary and the sample files
+   * @throws IOException if an I/O error occurs
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3)
+      throw new IllegalArgumentException(
+          "Usage: DictionaryTrainer <dictionary-file> <size> <sample-file>...");
+    val samples = new ArrayList<byte[]>();
+    for (int i = 2; i < args.length; i++) samples.addAll(readSamples(Path.of(args[i])));
+    val dictionary = train(samples, Integer.parseInt(args[1]));
+    Files.write(Path.of(args[0]), dictionary);
+    log.info(
+        "main: dictionary={}, samples={}, size={}", args[0], samples.size(), dictionary.length);
+  }
+
+  private static int hash(byte[] data, int i) {
+    var value = 0L;
+    for (int j = 0; j < K; j++) value = value << 8 | (data[i + j] & 0xFF);
+    return (int) ((value * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - HASH_LOG));
+  }
+
+  /** A candidate segment of a sample. */
+  private record Segment(byte[] sample, int start, int end, long score) {
+
+    Segment withScore(long score) {
+      return new Segment(sample, start, end, score);
+    }
+
+    /** Sums the frequencies of the sequences of the segment occurring in several samples. */
+    long rescore(int[] frequency) {
+      var score = 0L;
+      for (int i = start; i + K <= end; i++) {
+        val f = frequency[hash(sample, i)];
+        if (f > 1) score += f;
+      }
+      return score;
+    }
+  }
+}
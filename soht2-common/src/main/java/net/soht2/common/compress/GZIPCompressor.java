@@ -1,15 +1,42 @@
 /* SOHT2 © Licensed under MIT 2025. */
 package net.soht2.common.compress;
 
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+import lombok.SneakyThrows;
+import lombok.val;
 
 /**
  * GZIPCompressor implements the {@link Compressor} interface to provide GZIP compression and
- * decompression. It uses {@link GZIPOutputStream} for compression and {@link GZIPInputStream} for
- * decompression.
+ * decompression. It writes and parses the GZIP header and trailer itself around the raw DEFLATE
+ * data produced by the pooled {@link Deflater} and inflated by the pooled {@link
+ * java.util.zip.Inflater}, so its output is the same as the one of {@link
+ * java.util.zip.GZIPOutputStream}.
  */
-public class GZIPCompressor extends BaseIOStreamCompressor {
+public class GZIPCompressor extends BaseDeflaterCompressor {
+
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+  private static final int TRAILER_SIZE = 8;
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  /** Creates a compressor with the default compression level and strategy. */
+  public GZIPCompressor() {
+    this(Deflater.DEFAULT_COMPRESSION, DeflateStrategy.DEFAULT);
+  }
+
+  /**
+   * Creates a compressor with the given compression level and strategy.
+   *
+   * @param level the compression level from 0 to 9, or -1 for the default one
+   * @param strategy the compression strategy
+   */
+  public GZIPCompressor(int level, DeflateStrategy strategy) {
+    super(level, strategy, true, null);
+  }
 
   @Override
   public String getAcceptEncoding() {
@@ -18,11 +45,61 @@ public class GZIPCompressor extends BaseIOStreamCompressor {
 
   @Override
   public byte[] compress(byte[] data) {
-    return compress(data, GZIPOutputStream::new);
+    if (data == null || data.length == 0) return data;
+    val result = deflate(data, HEADER, TRAILER_SIZE);
+    val crc = new CRC32();
+    crc.update(data);
+    writeIntLE(result, result.length - TRAILER_SIZE, (int) crc.getValue());
+    writeIntLE(result, result.length - Integer.BYTES, data.length);
+    return result;
   }
 
   @Override
+  @SneakyThrows
   public byte[] decompress(byte[] data) {
-    return decompress(data, GZIPInputStream::new);
+    if (data == null || data.length == 0) return data;
+    val offset = headerSize(data);
+    if (data.length < offset + TRAILER_SIZE) throw new ZipException("Truncated GZIP data");
+    val result =
+        inflate(data, offset, data.length - offset, readIntLE(data, data.length - Integer.BYTES));
+    val crc = new CRC32();
+    crc.update(result);
+    if ((int) crc.getValue() != readIntLE(data, data.length - TRAILER_SIZE)
+        || result.length != readIntLE(data, data.length - Integer.BYTES))
+      throw new ZipException("Corrupt GZIP trailer");
+    return result;
+  }
+
+  private static int headerSize(byte[] data) throws ZipException {
+    if (data.length < HEADER.length || data[0] != HEADER[0] || data[1] != HEADER[1])
+      throw new ZipException("Not in GZIP format");
+    if (data[2] != Deflater.DEFLATED) throw new ZipException("Unsupported compression method");
+    val flags = data[3];
+    var offset = HEADER.length;
+    if ((flags & FEXTRA) != 0 && offset + 2 <= data.length)
+      offset += 2 + ((data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8);
+    if ((flags & FNAME) != 0) offset = skipString(data, offset);
+    if ((flags & FCOMMENT) != 0) offset = skipString(data, offset);
+    if ((flags & FHCRC) != 0) offset += 2;
+    return offset;
+  }
+
+  private static int skipString(byte[] data, int offset) {
+    while (offset < data.length && data[offset] != 0) offset++;
+    return offset + 1;
+  }
+
+  private static int readIntLE(byte[] data, int i) {
+    return (data[i] & 0xFF)
+        | (data[i + 1] & 0xFF) << 8
+        | (data[i + 2] & 0xFF) << 16
+        | (data[i + 3] & 0xFF) << 24;
+  }
+
+  private static void writeIntLE(byte[] data, int i, int value) {
+    data[i] = (byte) value;
+    data[i + 1] = (byte) (value >>> 8);
+    data[i + 2] = (byte) (value >>> 16);
+    data[i + 3] = (byte) (value >>> 24);
   }
 }
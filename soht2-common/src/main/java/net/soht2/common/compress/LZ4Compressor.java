@@ -0,0 +1,171 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LZ4Compressor implements the {@link Compressor} interface with a fast LZ77-family codec written
+ * in pure Java. The payload is encoded in the LZ4 block format, preceded by its uncompressed length
+ * as a 4-byte big-endian integer, so the decompressor allocates the output exactly once.
+ *
+ * <p>Matches are found by a single-probe hash table of 4-byte sequences, and the search steps
+ * faster over data without matches, so incompressible payloads cost little CPU. The ratio is lower
+ * than the one of DEFLATE, but both compression and decompression are several times faster.
+ */
+@Slf4j
+public class LZ4Compressor implements Compressor {
+
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_OFFSET = 0xFFFF;
+  private static final int HASH_LOG = 14;
+  private static final int SKIP_STRENGTH = 6;
+  private static final int RUN_MASK = 0x0F;
+  private static final int HEADER_SIZE = Integer.BYTES;
+
+  @Override
+  public String getAcceptEncoding() {
+    return CompressionType.LZ4.name().toLowerCase();
+  }
+
+  @Override
+  public byte[] compress(byte[] data) {
+    if (data == null || data.length == 0) return data;
+    final int length = data.length;
+    final byte[] out = new byte[maxCompressedLength(length)];
+    writeInt(out, 0, length);
+    int op = HEADER_SIZE;
+    int anchor = 0;
+
+    if (length > MF_LIMIT) {
+      final int[] table = new int[1 << HASH_LOG];
+      final int matchLimit = length - LAST_LITERALS;
+      final int ipLimit = length - MF_LIMIT;
+      int ip = 0;
+      while (ip <= ipLimit) {
+        final int sequence = readInt(data, ip);
+        final int hash = hash(sequence);
+        int ref = table[hash] - 1;
+        table[hash] = ip + 1;
+        if (ref < 0 || ip - ref > MAX_OFFSET || readInt(data, ref) != sequence) {
+          ip += 1 + ((ip - anchor) >>> SKIP_STRENGTH);
+          continue;
+        }
+
+        while (ip > anchor && ref > 0 && data[ip - 1] == data[ref - 1]) {
+          ip--;
+          ref--;
+        }
+        int matchLength = MIN_MATCH;
+        while (ip + matchLength < matchLimit && data[ip + matchLength] == data[ref + matchLength])
+          matchLength++;
+
+        op = writeSequence(out, op, data, anchor, ip - anchor, ip - ref, matchLength);
+        ip += matchLength;
+        anchor = ip;
+      }
+    }
+
+    op = writeLiterals(out, op, data, anchor, length - anchor, 0);
+    log.trace("compress: data.length: {}, compressed.length={}", length, op);
+    return Arrays.copyOf(out, op);
+  }
+
+  @Override
+  public byte[] decompress(byte[] data) {
+    if (data == null || data.length == 0) return data;
+    try {
+      final int length = readInt(data, 0);
+      // every byte of the block expands to 255 bytes at most, so a forged length is rejected
+      // before the output is allocated
+      if (length < 0 || length > (data.length - HEADER_SIZE) * 255L)
+        throw new IllegalArgumentException("Malformed LZ4 block length: " + length);
+      final byte[] out = new byte[length];
+      int ip = HEADER_SIZE;
+      int op = 0;
+      while (true) {
+        final int token = data[ip++] & 0xFF;
+        int literalLength = token >>> 4;
+        if (literalLength == RUN_MASK) {
+          int b;
+          do literalLength += (b = data[ip++] & 0xFF);
+          while (b == 0xFF);
+        }
+        System.arraycopy(data, ip, out, op, literalLength);
+        ip += literalLength;
+        op += literalLength;
+        if (ip >= data.length) break;
+
+        final int offset = (data[ip++] & 0xFF) | (data[ip++] & 0xFF) << 8;
+        if (offset == 0 || offset > op)
+          throw new IllegalArgumentException("Malformed LZ4 match offset: " + offset);
+        int matchLength = token & RUN_MASK;
+        if (matchLength == RUN_MASK) {
+          int b;
+          do matchLength += (b = data[ip++] & 0xFF);
+          while (b == 0xFF);
+        }
+        matchLength += MIN_MATCH;
+        final int ref = op - offset;
+        if (offset >= matchLength) System.arraycopy(out, ref, out, op, matchLength);
+        else for (int i = 0; i < matchLength; i++) out[op + i] = out[ref + i];
+        op += matchLength;
+      }
+      if (op != length)
+        throw new IllegalArgumentException("Malformed LZ4 block: " + op + " of " + length);
+      log.trace("decompress: data.length: {}, decompressed.length={}", data.length, length);
+      return out;
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Malformed LZ4 block", e);
+    }
+  }
+
+  /** Returns the size of the output buffer enough for the compressed data of the given length. */
+  static int maxCompressedLength(int length) {
+    return HEADER_SIZE + length + length / 255 + 16;
+  }
+
+  private static int writeSequence(
+      byte[] out, int op, byte[] data, int anchor, int literalLength, int offset, int matchLength) {
+    op = writeLiterals(out, op, data, anchor, literalLength, matchLength - MIN_MATCH);
+    out[op++] = (byte) offset;
+    out[op++] = (byte) (offset >>> 8);
+    return matchLength - MIN_MATCH >= RUN_MASK
+        ? writeLength(out, op, matchLength - MIN_MATCH - RUN_MASK)
+        : op;
+  }
+
+  private static int writeLiterals(
+      byte[] out, int op, byte[] data, int anchor, int literalLength, int matchCode) {
+    out[op++] = (byte) (Math.min(literalLength, RUN_MASK) << 4 | Math.min(matchCode, RUN_MASK));
+    if (literalLength >= RUN_MASK) op = writeLength(out, op, literalLength - RUN_MASK);
+    System.arraycopy(data, anchor, out, op, literalLength);
+    return op + literalLength;
+  }
+
+  private static int writeLength(byte[] out, int op, int length) {
+    for (; length >= 0xFF; length -= 0xFF) out[op++] = (byte) 0xFF;
+    out[op++] = (byte) length;
+    return op;
+  }
+
+  private static int hash(int sequence) {
+    return (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+  }
+
+  private static int readInt(byte[] data, int i) {
+    return (data[i] & 0xFF) << 24
+        | (data[i + 1] & 0xFF) << 16
+        | (data[i + 2] & 0xFF) << 8
+        | (data[i + 3] & 0xFF);
+  }
+
+  private static void writeInt(byte[] data, int i, int value) {
+    data[i] = (byte) (value >>> 24);
+    data[i + 1] = (byte) (value >>> 16);
+    data[i + 2] = (byte) (value >>> 8);
+    data[i + 3] = (byte) value;
+  }
+}
@@ -0,0 +1,90 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+import lombok.val;
+
+/**
+ * A preset dictionary of DEFLATE compression, the data typical for the traffic of a target, which
+ * payloads refer to as if it preceded them. It makes small payloads worth compressing: a message of
+ * a few hundred bytes rarely repeats itself, but it repeats a lot of the dictionary.
+ *
+ * <p>A dictionary is identified by the Adler-32 checksum of its data, the same one the ZLIB format
+ * puts into the header of the data compressed with it. So the data compressed with a dictionary is
+ * decompressed by {@link DeflateCompressor} with any registered dictionary it refers to, and both
+ * sides only have to agree on the id of the dictionary to use.
+ */
+public final class PresetDictionary {
+
+  /** The maximum useful size of a dictionary, the size of the DEFLATE window. */
+  public static final int MAX_SIZE = 32 * 1024;
+
+  private static final Map<Integer, PresetDictionary> registry = new ConcurrentHashMap<>();
+
+  private final int adler;
+  final byte[] data;
+
+  private PresetDictionary(int adler, byte[] data) {
+    this.adler = adler;
+    this.data = data;
+  }
+
+  /**
+   * Registers the dictionary, so the data compressed with it can be decompressed.
+   *
+   * @param data the data of the dictionary, only its last {@link #MAX_SIZE} bytes are used
+   * @return the registered dictionary, the same instance for the same data
+   * @throws IllegalArgumentException if the data is empty, or another dictionary with the same id
+   *     is registered
+   */
+  public static PresetDictionary register(byte[] data) {
+    if (data == null || data.length == 0)
+      throw new IllegalArgumentException("Preset dictionary must not be empty");
+    val bytes = Arrays.copyOfRange(data, Math.max(data.length - MAX_SIZE, 0), data.length);
+    val checksum = new Adler32();
+    checksum.update(bytes);
+    val dictionary =
+        registry.computeIfAbsent(
+            (int) checksum.getValue(), adler -> new PresetDictionary(adler, bytes));
+    if (!Arrays.equals(dictionary.data, bytes))
+      throw new IllegalArgumentException("Preset dictionary " + dictionary.id() + " is registered");
+    return dictionary;
+  }
+
+  /**
+   * Returns the registered dictionary.
+   *
+   * @param id the id of the dictionary
+   * @return the dictionary, or empty if it is not registered or the id is malformed
+   */
+  public static Optional<PresetDictionary> get(String id) {
+    try {
+      return get(Integer.parseUnsignedInt(id, 16));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  static Optional<PresetDictionary> get(int adler) {
+    return Optional.ofNullable(registry.get(adler));
+  }
+
+  /** Returns the id of the dictionary, its Adler-32 checksum as 8 hex digits. */
+  public String id() {
+    return "%08x".formatted(adler);
+  }
+
+  /** Returns a copy of the data of the dictionary. */
+  public byte[] data() {
+    return data.clone();
+  }
+
+  @Override
+  public String toString() {
+    return "PresetDictionary(id=" + id() + ", size=" + data.length + ")";
+  }
+}
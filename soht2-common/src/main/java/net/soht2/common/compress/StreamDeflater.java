@@ -0,0 +1,124 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * StreamDeflater compresses all the payloads of a connection as a single raw DEFLATE stream, so a
+ * payload refers to the data of the previous ones and repeating protocol headers cost a few bytes
+ * only. Every payload ends with a {@code SYNC_FLUSH} block, so the peer's {@link StreamInflater}
+ * decodes it completely as soon as it arrives. The empty stored block terminating every {@code
+ * SYNC_FLUSH} is always the same, so it is stripped from the payload and restored by the inflater.
+ *
+ * <p>The peer must inflate the payloads in the order they were deflated, each one exactly once.
+ * Payloads are numbered by the caller for that, and a payload waits until all the preceding ones
+ * are deflated, so concurrent senders may call it in any order.
+ */
+@Slf4j
+public class StreamDeflater implements Closeable {
+
+  /** The content encoding of the payloads deflated by the stream of the connection. */
+  public static final String CONTENT_ENCODING = "x-soht2-deflate-stream";
+
+  /** The tail of every {@code SYNC_FLUSH} block, which is stripped from the payloads. */
+  static final byte[] SYNC_TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+  private static final int MIN_BUFFER_SIZE = 1 << 10;
+
+  private final Deflater deflater;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition deflated = lock.newCondition();
+  private byte[] buffer = new byte[MIN_BUFFER_SIZE];
+  private long nextSeq;
+  private boolean closed;
+  private long count;
+  private long bytesIn;
+  private long bytesOut;
+  private long nanos;
+
+  /**
+   * Creates the stream of a connection.
+   *
+   * @param level the compression level from 0 to 9, or -1 for the default one
+   * @param strategy the compression strategy
+   */
+  public StreamDeflater(int level, DeflateStrategy strategy) {
+    this.deflater = new Deflater(level, true);
+    this.deflater.setStrategy(strategy.value());
+  }
+
+  /**
+   * Compresses the payload as the continuation of the stream. It waits until the payloads with the
+   * lower sequence numbers are compressed.
+   *
+   * @param seq the sequence number of the payload, starting from zero
+   * @param data the payload to compress, it is skipped if empty, but its number is counted
+   * @return the compressed payload
+   * @throws InterruptedException if the thread is interrupted while waiting
+   * @throws IllegalStateException if the stream is closed or the payload was already compressed
+   */
+  public byte[] deflate(long seq, byte[] data) throws InterruptedException {
+    lock.lock();
+    try {
+      while (seq > nextSeq && !closed) deflated.await();
+      if (closed) throw new IllegalStateException("Deflate stream is closed");
+      if (seq < nextSeq) throw new IllegalStateException("Payload " + seq + " is deflated");
+      nextSeq++;
+      deflated.signalAll();
+      return data.length == 0 ? data : deflate(data);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private byte[] deflate(byte[] data) {
+    val start = System.nanoTime();
+    deflater.setInput(data);
+    var size = 0;
+    while (true) {
+      size += deflater.deflate(buffer, size, buffer.length - size, Deflater.SYNC_FLUSH);
+      if (size < buffer.length) break;
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    val result = Arrays.copyOf(buffer, size - SYNC_TAIL.length);
+    count++;
+    bytesIn += data.length;
+    bytesOut += result.length;
+    nanos += System.nanoTime() - start;
+    log.trace("deflate: data.length: {}, compressed.length={}", data.length, result.length);
+    return result;
+  }
+
+  /**
+   * Returns the statistics of the stream, none of its payloads is skipped.
+   *
+   * @return the current statistics
+   */
+  public AdaptiveCompressor.Stats getStats() {
+    lock.lock();
+    try {
+      return new AdaptiveCompressor.Stats(count, 0, bytesIn, bytesOut, 0, nanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Releases the native resources of the stream and the payloads waiting for their turn. */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      deflater.end();
+      deflated.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * StreamInflater decompresses the payloads of a connection compressed by the peer's {@link
+ * StreamDeflater}. The payloads must be passed in the order of their sequence numbers, each one
+ * exactly once, otherwise the stream is broken for the rest of the connection.
+ */
+@Slf4j
+public class StreamInflater implements Closeable {
+
+  private static final int MIN_BUFFER_SIZE = 1 << 10;
+
+  private final Inflater inflater = new Inflater(true);
+  private byte[] buffer = new byte[MIN_BUFFER_SIZE];
+  private boolean closed;
+
+  /**
+   * Decompresses the payload as the continuation of the stream.
+   *
+   * @param data the compressed payload
+   * @return the decompressed payload
+   * @throws ZipException if the payload is malformed or the stream is closed
+   */
+  @SneakyThrows
+  public synchronized byte[] inflate(byte[] data) {
+    if (closed) throw new ZipException("Inflate stream is closed");
+    if (data.length == 0) return data;
+    try {
+      var size = inflate(data, 0);
+      size = inflate(StreamDeflater.SYNC_TAIL, size);
+      log.trace("inflate: data.length: {}, decompressed.length={}", data.length, size);
+      return Arrays.copyOf(buffer, size);
+    } catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    }
+  }
+
+  private int inflate(byte[] input, int size) throws DataFormatException, ZipException {
+    inflater.setInput(input);
+    // a full buffer may leave some output pending in the inflater even if the input is consumed
+    while (!inflater.needsInput() || size == buffer.length) {
+      if (inflater.finished()) throw new ZipException("Unexpected end of deflate stream");
+      if (size == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      val inflated = inflater.inflate(buffer, size, buffer.length - size);
+      if (inflated == 0 && !inflater.needsInput())
+        throw new ZipException("Deflate stream requires a dictionary");
+      size += inflated;
+    }
+    return size;
+  }
+
+  /** Releases the native resources of the stream. */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    inflater.end();
+  }
+}
@@ -19,6 +19,27 @@ public record Soht2Connection(
     Long bytesRead,
     Long bytesWritten) {
 
+  /**
+   * The request header with the sequence number of an upload or a download of the connection. The
+   * sequence numbers of uploads and downloads start from zero and are independent of each other.
+   */
+  public static final String HEADER_SEQUENCE = "X-SOHT2-Sequence";
+
+  /**
+   * The download request header with the sequence number of the last download the client received
+   * in order, so the server can discard the responses kept for repeated downloads.
+   */
+  public static final String HEADER_ACK = "X-SOHT2-Ack";
+
+  /**
+   * The response header of opening a connection with the id of the preset dictionary of its target.
+   * The client gets the dictionary by its connection unless it already has the dictionary of the
+   * id, and it may compress the uploads with it. The client sends the header back with the id in
+   * its exchange requests to opt in to the responses compressed with the dictionary, which it must
+   * accept DEFLATE for, too.
+   */
+  public static final String HEADER_DICTIONARY = "X-SOHT2-Dictionary";
+
   @Builder
   public Soht2Connection(
       UUID id,
@@ -0,0 +1,66 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.stream.IntStream;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveCompressorTest {
+
+  static final byte[] TEXT = CompressorTest.DATA.repeat(4).getBytes(StandardCharsets.UTF_8);
+  static final byte[] RANDOM = new byte[TEXT.length];
+
+  static {
+    new Random(42).nextBytes(RANDOM);
+  }
+
+  @Test
+  void entropy_OK() {
+    assertThat(AdaptiveCompressor.entropy(new byte[100])).isZero();
+    assertThat(AdaptiveCompressor.entropy(TEXT)).isLessThan(AdaptiveCompressor.MAX_ENTROPY);
+    assertThat(AdaptiveCompressor.entropy(RANDOM)).isGreaterThan(AdaptiveCompressor.MAX_ENTROPY);
+  }
+
+  @Test
+  void compress_OK() {
+    val compressor = new GZIPCompressor();
+    val adaptive = new AdaptiveCompressor(compressor, 100);
+
+    // small payloads are never compressed, compressible ones are
+    assertThat(adaptive.compress(new byte[10])).isEmpty();
+    val compressed = adaptive.compress(TEXT);
+    assertThat(compressed).isPresent();
+    assertThat(compressor.decompress(compressed.get())).isEqualTo(TEXT);
+
+    // incompressible payloads turn compression off for a growing number of payloads
+    assertThat(adaptive.compress(RANDOM)).isEmpty();
+    assertThat(adaptive.compress(TEXT)).isEmpty();
+    assertThat(adaptive.compress(RANDOM)).isEmpty();
+    assertThat(adaptive.compress(TEXT)).isEmpty();
+    assertThat(adaptive.compress(TEXT)).isEmpty();
+
+    // and compression turns back on when the data is compressible again
+    assertThat(adaptive.compress(TEXT)).isPresent();
+    assertThat(adaptive.compress(TEXT)).isPresent();
+
+    val stats = adaptive.getStats();
+    assertThat(stats.compressed()).isEqualTo(3);
+    assertThat(stats.skipped()).isEqualTo(5);
+    assertThat(stats.bytesIn()).isEqualTo(3L * TEXT.length);
+    assertThat(stats.bytesSaved()).isPositive();
+    assertThat(stats.bytesSkipped()).isEqualTo(2L * RANDOM.length + 3L * TEXT.length);
+  }
+
+  @Test
+  void compress_MaxSkip() {
+    val adaptive = new AdaptiveCompressor(new DeflateCompressor(), 100);
+    IntStream.range(0, 1_000).forEach(i -> adaptive.compress(RANDOM));
+    // the skipped payloads are not sampled, so only a few of them are probed
+    assertThat(adaptive.getStats().skipped()).isEqualTo(1_000);
+    assertThat(adaptive.compress(TEXT)).isEmpty();
+  }
+}
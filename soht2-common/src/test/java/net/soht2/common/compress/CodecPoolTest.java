@@ -0,0 +1,39 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+class CodecPoolTest {
+
+  @Test
+  void acquire_Release() {
+    val created = new AtomicInteger();
+    val reset = new AtomicInteger();
+    val disposed = new ArrayList<Integer>();
+    val pool =
+        CodecPool.<Integer>builder()
+            .maxIdle(2)
+            .factory(created::incrementAndGet)
+            .reset(v -> reset.incrementAndGet())
+            .dispose(disposed::add)
+            .build();
+
+    val first = pool.acquire();
+    pool.release(first);
+    assertThat(pool.acquire()).isEqualTo(first);
+    assertThat(created).hasValue(1);
+
+    val contexts = List.of(first, pool.acquire(), pool.acquire());
+    assertThat(created).hasValue(3);
+    contexts.forEach(pool::release);
+    assertThat(reset).hasValue(4);
+    assertThat(pool.size()).isEqualTo(2);
+    assertThat(disposed).containsExactly(3);
+  }
+}
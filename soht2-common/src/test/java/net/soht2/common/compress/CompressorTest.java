@@ -2,12 +2,23 @@
 package net.soht2.common.compress;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
 @Slf4j
@@ -60,7 +71,51 @@ class CompressorTest {
     return Stream.of(
         Arguments.of(Compressor.compressorCache.apply("GZip")),
         Arguments.of(Compressor.compressorCache.apply("Deflate")),
+        Arguments.of(Compressor.compressorCache.apply("LZ4")),
         Arguments.of(Compressor.compressorCache.apply("Identity")),
         Arguments.of(Compressor.compressorCache.apply("None")));
   }
+
+  @ParameterizedTest
+  @CsvSource({"-1,DEFAULT", "0,DEFAULT", "1,FILTERED", "9,HUFFMAN_ONLY"})
+  void compressorFactory_Interop(int level, DeflateStrategy strategy) throws Exception {
+    val data = DATA.repeat(100).getBytes();
+    val gzip = Compressor.compressorFactory.apply("gzip", level, strategy);
+    val deflate = Compressor.compressorFactory.apply("deflate", level, strategy);
+
+    // the output is readable by JDK streams and vice versa
+    try (val is = new GZIPInputStream(new ByteArrayInputStream(gzip.compress(data)))) {
+      assertThat(is.readAllBytes()).isEqualTo(data);
+    }
+    try (val is = new InflaterInputStream(new ByteArrayInputStream(deflate.compress(data)))) {
+      assertThat(is.readAllBytes()).isEqualTo(data);
+    }
+    val gzipStream = new ByteArrayOutputStream();
+    try (val os = new GZIPOutputStream(gzipStream)) {
+      os.write(data);
+    }
+    assertThat(gzip.decompress(gzipStream.toByteArray())).isEqualTo(data);
+    val deflateStream = new ByteArrayOutputStream();
+    try (val os = new DeflaterOutputStream(deflateStream)) {
+      os.write(data);
+    }
+    assertThat(deflate.decompress(deflateStream.toByteArray())).isEqualTo(data);
+  }
+
+  @Test
+  void decompress_Malformed() {
+    for (val compressor :
+        Stream.of("gzip", "deflate").map(Compressor.compressorCache::apply).toList()) {
+      val compressedData = compressor.compress(DATA.getBytes());
+      assertThatThrownBy(
+              () -> compressor.decompress(Arrays.copyOf(compressedData, compressedData.length / 2)))
+          .isInstanceOf(ZipException.class);
+    }
+
+    val gzipData = Compressor.compressorCache.apply("gzip").compress(DATA.getBytes());
+    gzipData[gzipData.length - 8] ^= 1;
+    assertThatThrownBy(() -> Compressor.compressorCache.apply("gzip").decompress(gzipData))
+        .isInstanceOf(ZipException.class)
+        .hasMessage("Corrupt GZIP trailer");
+  }
 }
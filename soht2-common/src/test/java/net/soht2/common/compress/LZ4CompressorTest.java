@@ -0,0 +1,55 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class LZ4CompressorTest {
+
+  final LZ4Compressor compressor = new LZ4Compressor();
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 12, 13, 100, 70_000, 1_000_000})
+  void compress_OK(int size) {
+    val random = new Random(size);
+    val randomData = new byte[size];
+    random.nextBytes(randomData);
+    val repeatedData = new byte[size];
+    IntStream.range(0, size).forEach(i -> repeatedData[i] = (byte) (i % 7));
+    val textData = Arrays.copyOf(CompressorTest.DATA.repeat(size / 1000 + 1).getBytes(), size);
+
+    // zeros compress at the highest ratio of the format
+    for (val data : new byte[][] {randomData, repeatedData, textData, new byte[size]}) {
+      val compressedData = compressor.compress(data);
+      assertThat(compressedData.length)
+          .isLessThanOrEqualTo(LZ4Compressor.maxCompressedLength(size));
+      assertThat(compressor.decompress(compressedData)).isEqualTo(data);
+    }
+    if (size > 100) assertThat(compressor.compress(repeatedData).length).isLessThan(size / 10);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {3, 5, 10})
+  void decompress_Malformed(int size) {
+    val compressedData = compressor.compress(CompressorTest.DATA.getBytes());
+    assertThatThrownBy(() -> compressor.decompress(Arrays.copyOf(compressedData, size)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void decompress_ForgedLength() {
+    // the header claims 2 GB of output for a single byte of the block
+    val forgedData = new byte[] {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00};
+    assertThatThrownBy(() -> compressor.decompress(forgedData))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("length");
+  }
+}
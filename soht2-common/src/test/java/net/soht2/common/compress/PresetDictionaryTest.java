@@ -0,0 +1,126 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PresetDictionaryTest {
+
+  static final String MESSAGE =
+      "{\"jsonrpc\":\"2.0\",\"method\":\"orders.update\",\"id\":%d,\"params\":{\"account\":"
+          + "\"%s\",\"status\":\"CONFIRMED\",\"currency\":\"EUR\",\"amount\":%d,"
+          + "\"timestamp\":\"2026-10-%02dT12:00:00Z\",\"source\":\"gateway\"}}";
+
+  static List<byte[]> samples(int count, long seed) {
+    val random = new Random(seed);
+    return IntStream.range(0, count)
+        .mapToObj(
+            i ->
+                MESSAGE
+                    .formatted(
+                        random.nextInt(),
+                        Long.toHexString(random.nextLong()),
+                        random.nextInt(100_000),
+                        1 + i % 28)
+                    .getBytes())
+        .toList();
+  }
+
+  @Test
+  void train_OK() {
+    val dictionary = PresetDictionary.register(DictionaryTrainer.train(samples(500, 1), 4096));
+    assertThat(dictionary.data()).isNotEmpty().hasSizeLessThanOrEqualTo(4096);
+    assertThat(PresetDictionary.get(dictionary.id())).containsSame(dictionary);
+    assertThat(PresetDictionary.register(dictionary.data())).isSameAs(dictionary);
+
+    // a small message compresses much better with the dictionary, and any DEFLATE compressor
+    // decompresses it once the dictionary is registered
+    val data = samples(1, 2).getFirst();
+    val compressor = new DeflateCompressor(-1, DeflateStrategy.DEFAULT, dictionary);
+    val compressedData = compressor.compress(data);
+    val plainData = new DeflateCompressor().compress(data);
+    assertThat(compressedData.length).isLessThan(plainData.length / 2);
+    assertThat(compressor.decompress(compressedData)).isEqualTo(data);
+    assertThat(new DeflateCompressor().decompress(compressedData)).isEqualTo(data);
+    assertThat(compressor.decompress(plainData)).isEqualTo(data);
+    assertThat(
+            Compressor.dictionaryCompressorFactory.apply(dictionary, -1, DeflateStrategy.DEFAULT))
+        .isSameAs(
+            Compressor.dictionaryCompressorFactory.apply(dictionary, -1, DeflateStrategy.DEFAULT));
+  }
+
+  @Test
+  void train_Incompressible() {
+    val random = new Random(3);
+    val samples =
+        IntStream.range(0, 10)
+            .mapToObj(
+                i -> {
+                  val sample = new byte[1000];
+                  random.nextBytes(sample);
+                  return sample;
+                })
+            .toList();
+    assertThat(DictionaryTrainer.train(samples, DictionaryTrainer.DEFAULT_SIZE)).isEmpty();
+  }
+
+  @Test
+  void register_Invalid() {
+    assertThatThrownBy(() -> PresetDictionary.register(new byte[0]))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(PresetDictionary.get("not-an-id")).isEmpty();
+
+    // only the end of the data fits the DEFLATE window
+    val data = new byte[PresetDictionary.MAX_SIZE + 100];
+    new Random(4).nextBytes(data);
+    assertThat(PresetDictionary.register(data).data())
+        .isEqualTo(Arrays.copyOfRange(data, 100, data.length));
+  }
+
+  @Test
+  void decompress_UnknownDictionary() {
+    val dictionary = new byte[100];
+    new Random(5).nextBytes(dictionary);
+    val deflater = new Deflater();
+    deflater.setDictionary(dictionary);
+    deflater.setInput(CompressorTest.DATA.getBytes());
+    deflater.finish();
+    val buffer = new byte[4096];
+    val compressedData = Arrays.copyOf(buffer, deflater.deflate(buffer));
+    deflater.end();
+
+    assertThatThrownBy(() -> new DeflateCompressor().decompress(compressedData))
+        .isInstanceOf(ZipException.class)
+        .hasMessageStartingWith("Unknown preset dictionary");
+  }
+
+  @Test
+  void readSamples_OK(@TempDir Path directory) throws Exception {
+    val samples = samples(3, 6);
+    val out = new ByteArrayOutputStream();
+    for (val sample : samples) DictionaryTrainer.writeSample(out, sample);
+    // a record cut short by a stop of the server is skipped
+    out.write(new byte[] {0, 0, 1});
+    val file = directory.resolve("localhost_80.smp");
+    Files.write(file, out.toByteArray());
+
+    assertThat(DictionaryTrainer.readSamples(file)).containsExactlyElementsOf(samples);
+
+    val dictionaryFile = directory.resolve("localhost_80.dict");
+    DictionaryTrainer.main(new String[] {dictionaryFile.toString(), "1024", file.toString()});
+    assertThat(Files.size(dictionaryFile)).isPositive().isLessThanOrEqualTo(1024);
+  }
+}
@@ -0,0 +1,94 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.common.compress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.vavr.control.Try;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+class StreamDeflaterTest {
+
+  static final String MESSAGE =
+      """
+      GET /api/v1/orders?customer=%d HTTP/1.1
+      Host: internal.example.com
+      Accept: application/json
+      Cookie: JSESSIONID=%08X
+
+      """;
+
+  @Test
+  void deflate_OK() throws Exception {
+    val random = new Random(1);
+    val messages =
+        IntStream.range(0, 100)
+            .mapToObj(i -> MESSAGE.formatted(i, random.nextInt()).getBytes())
+            .toList();
+    val stateless = Compressor.compressorCache.apply("deflate");
+
+    try (val deflater = new StreamDeflater(Deflater.DEFAULT_COMPRESSION, DeflateStrategy.DEFAULT);
+        val inflater = new StreamInflater()) {
+      for (int i = 0; i < messages.size(); i++) {
+        val compressed = deflater.deflate(i, messages.get(i));
+        assertThat(inflater.inflate(compressed)).isEqualTo(messages.get(i));
+        // the following messages refer to the previous ones
+        if (i > 0)
+          assertThat(compressed.length).isLessThan(stateless.compress(messages.get(i)).length / 3);
+      }
+      assertThat(deflater.deflate(messages.size(), new byte[0])).isEmpty();
+      assertThat(deflater.getStats().compressed()).isEqualTo(messages.size());
+      assertThat(deflater.getStats().bytesSaved()).isPositive();
+    }
+  }
+
+  @Test
+  void deflate_Large() throws Exception {
+    val data = new byte[1 << 20];
+    new Random(2).nextBytes(data);
+    Arrays.fill(data, 0, data.length / 2, (byte) 'a');
+    try (val deflater = new StreamDeflater(1, DeflateStrategy.DEFAULT);
+        val inflater = new StreamInflater()) {
+      for (int seq = 0; seq < 3; seq++)
+        assertThat(inflater.inflate(deflater.deflate(seq, data))).isEqualTo(data);
+    }
+  }
+
+  @Test
+  void deflate_Ordered() throws Exception {
+    val messages =
+        IntStream.range(0, 10).mapToObj(i -> MESSAGE.formatted(i, i).getBytes()).toList();
+    try (val deflater = new StreamDeflater(Deflater.DEFAULT_COMPRESSION, DeflateStrategy.DEFAULT);
+        val inflater = new StreamInflater()) {
+      // the payloads are deflated in the order of sequence numbers whatever order they come in
+      val futures = new ArrayList<CompletableFuture<byte[]>>();
+      for (int i = messages.size() - 1; i >= 0; i--) {
+        val seq = i;
+        futures.addFirst(
+            CompletableFuture.supplyAsync(
+                () -> Try.of(() -> deflater.deflate(seq, messages.get(seq))).get()));
+      }
+      for (int i = 0; i < messages.size(); i++)
+        assertThat(inflater.inflate(futures.get(i).join())).isEqualTo(messages.get(i));
+
+      assertThatThrownBy(() -> deflater.deflate(0, messages.getFirst()))
+          .isInstanceOf(IllegalStateException.class);
+    }
+  }
+
+  @Test
+  void inflate_Malformed() {
+    try (val inflater = new StreamInflater()) {
+      assertThatThrownBy(() -> inflater.inflate(new byte[] {(byte) 0xFF, 0x12, 0x34}))
+          .isInstanceOf(ZipException.class);
+    }
+  }
+}
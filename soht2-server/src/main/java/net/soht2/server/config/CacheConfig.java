@@ -1,9 +1,15 @@
 /* SOHT2 © Licensed under MIT 2025. */
 package net.soht2.server.config;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.val;
+import net.soht2.server.repository.UserEntityRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,8 +17,55 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class CacheConfig {
 
+  /** The cache of users by lowercase username. */
+  public static final String USER_CACHE = "userCache";
+
+  /** The cache of unknown lowercase usernames. */
+  public static final String UNKNOWN_USER_CACHE = "unknownUserCache";
+
+  /**
+   * Registers the user caches. The user cache loads missing users by itself, so it can reload stale
+   * entries in the background; unknown usernames are not stored in it. The repository is resolved
+   * lazily, because the entity manager factory depends on the cache manager.
+   */
+  @Bean
+  CacheManagerCustomizer<CaffeineCacheManager> userCacheCustomizer(
+      Soht2ServerConfig soht2ServerConfig,
+      ObjectProvider<UserEntityRepository> userEntityRepository) {
+    val properties = soht2ServerConfig.getUserCache();
+    return cacheManager -> {
+      val users =
+          Caffeine.newBuilder()
+              .maximumSize(properties.getMaximumSize())
+              .expireAfterWrite(properties.getTtl())
+              .recordStats();
+      if (properties.getRefreshAfter().isPositive())
+        users.refreshAfterWrite(properties.getRefreshAfter());
+      cacheManager.registerCustomCache(
+          USER_CACHE,
+          users.build(
+              name ->
+                  userEntityRepository
+                      .getObject()
+                      .findByNameIgnoreCase((String) name)
+                      .orElse(null)));
+      cacheManager.registerCustomCache(
+          UNKNOWN_USER_CACHE,
+          Caffeine.newBuilder()
+              .maximumSize(properties.getUnknownSize())
+              .expireAfterWrite(properties.getUnknownTtl())
+              .recordStats()
+              .build());
+    };
+  }
+
   @Bean
   Cache userCache(CacheManager cacheManager) {
-    return cacheManager.getCache("userCache");
+    return cacheManager.getCache(USER_CACHE);
+  }
+
+  @Bean
+  Cache unknownUserCache(CacheManager cacheManager) {
+    return cacheManager.getCache(UNKNOWN_USER_CACHE);
   }
 }
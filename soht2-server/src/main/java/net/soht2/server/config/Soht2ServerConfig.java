@@ -9,6 +9,7 @@ import java.net.URI;
 import java.time.Duration;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import net.soht2.common.compress.DeflateStrategy;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -48,11 +49,29 @@ public class Soht2ServerConfig implements InitializingBean {
   /** The size of the read buffer for incoming data. */
   private DataSize readBufferSize = DataSize.ofMegabytes(1);
 
+  /**
+   * The maximum size of data returned to the client in a single exchange. The server keeps reading
+   * from the target while data is immediately available, until this budget is reached.
+   */
+  private DataSize maxResponseSize = DataSize.ofMegabytes(4);
+
   /** The timeout for server socket read operations. */
   private Duration socketReadTimeout = Duration.ofMillis(100);
 
-  /** The time-to-live (TTL) for user cache entries. */
-  private Duration userCacheTtl = Duration.ofMinutes(10);
+  /**
+   * The maximum number of sequence-numbered uploads or downloads a client may have in flight per
+   * connection.
+   */
+  private int exchangeWindow = 64;
+
+  /** Properties for the compression of exchange responses. */
+  private ResponseCompressionProperties responseCompression = new ResponseCompressionProperties();
+
+  /** Properties for the preset dictionaries of compression trained per target. */
+  private DictionaryProperties dictionaries = new DictionaryProperties();
+
+  /** Properties for the cache of users used to authenticate requests. */
+  private UserCacheProperties userCache = new UserCacheProperties();
 
   /** Properties for managing abandoned connections. */
   private AbandonedConnectionsProperties abandonedConnections =
@@ -64,12 +83,127 @@ public class Soht2ServerConfig implements InitializingBean {
   /** Whether to enable gathering the connection history. */
   private boolean enableHistory = true;
 
+  /** Properties for the asynchronous connection history writer. */
+  private HistoryWriterProperties historyWriter = new HistoryWriterProperties();
+
+  /** Properties for the connection history search. */
+  private HistorySearchProperties historySearch = new HistorySearchProperties();
+
+  /** Properties for the monthly partitions of the connection history. */
+  private HistoryPartitionsProperties historyPartitions = new HistoryPartitionsProperties();
+
+  /** Properties for the deletion of the connection history of users. */
+  private HistoryDeletionProperties historyDeletion = new HistoryDeletionProperties();
+
+  /** Properties for the storage of the connection history. */
+  private HistorySinkProperties historySink = new HistorySinkProperties();
+
   @Override
   public void afterPropertiesSet() {
     log.debug("afterPropertiesSet: {}", this);
     Assert.notNull(databasePath, "Database path must not be empty");
     Assert.hasText(adminUsername, "Admin username must not be empty");
     Assert.hasText(defaultAdminPassword, "Default admin password must not be empty");
+    Assert.isTrue(
+        maxResponseSize.compareTo(readBufferSize) >= 0,
+        "Max response size must not be less than read buffer size");
+    Assert.isTrue(exchangeWindow > 0, "Exchange window must be positive");
+    Assert.isTrue(
+        responseCompression.getLevel() >= -1 && responseCompression.getLevel() <= 9,
+        "Response compression level must be in range [-1, 9]");
+    Assert.notNull(
+        responseCompression.getStrategy(), "Response compression strategy must not be empty");
+    Assert.isTrue(
+        !dictionaries.getMinResponseSize().isNegative(),
+        "Dictionary min response size must not be negative");
+    Assert.isTrue(
+        !dictionaries.getSampleLimit().isNegative(),
+        "Dictionary sample limit must not be negative");
+    Assert.isTrue(
+        dictionaries.getDirectory() != null || dictionaries.getSampleLimit().toBytes() == 0,
+        "Dictionary directory must not be empty if sampling is enabled");
+    Assert.isTrue(userCache.getMaximumSize() > 0, "User cache size must be positive");
+    Assert.isTrue(userCache.getTtl().isPositive(), "User cache time-to-live must be positive");
+    Assert.isTrue(
+        !userCache.getRefreshAfter().isNegative()
+            && userCache.getRefreshAfter().compareTo(userCache.getTtl()) < 0,
+        "User cache refresh interval must not be negative and must be less than time-to-live");
+    Assert.isTrue(userCache.getUnknownSize() >= 0, "Unknown user cache size must not be negative");
+    Assert.isTrue(
+        userCache.getUnknownTtl().isPositive(), "Unknown user cache time-to-live must be positive");
+    Assert.isTrue(historyWriter.getQueueCapacity() > 0, "History queue capacity must be positive");
+    Assert.isTrue(historyWriter.getBatchSize() > 0, "History batch size must be positive");
+    Assert.isTrue(historySearch.getCacheSize() >= 0, "History cache size must not be negative");
+    Assert.isTrue(historySearch.getCountLimit() >= 0, "History count limit must not be negative");
+    Assert.isTrue(
+        historySearch.getExportFetchSize() > 0, "History export fetch size must be positive");
+    Assert.isTrue(
+        historySearch.getExportTimeout().isPositive(), "History export timeout must be positive");
+    Assert.isTrue(
+        !historyPartitions.getRetention().isNegative(), "History retention must not be negative");
+    Assert.isTrue(
+        historyDeletion.getChunkSize() > 0, "History deletion chunk size must be positive");
+    Assert.notNull(historySink.getType(), "History sink type must not be empty");
+    Assert.notNull(historySink.getDirectory(), "History sink directory must not be empty");
+    Assert.isTrue(
+        historySink.getSegmentRecords() > 0, "History sink segment records must be positive");
+    Assert.isTrue(
+        historySink.getCompactionThreshold() >= 0 && historySink.getCompactionThreshold() <= 1,
+        "History sink compaction threshold must be between 0 and 1");
+  }
+
+  /**
+   * Properties for the compression of exchange responses.
+   *
+   * <p>The server compresses the exchange responses itself instead of the servlet container, so it
+   * can skip the connections carrying incompressible data, like TLS traffic.
+   */
+  @Data
+  public static class ResponseCompressionProperties {
+
+    /** Whether the exchange responses are compressed with LZ4 or GZIP for clients accepting it. */
+    private boolean enabled = true;
+
+    /**
+     * Whether compression is skipped for the connections receiving incompressible data, and turned
+     * back on when their data gets compressible again.
+     */
+    private boolean adaptive = true;
+
+    /** The minimum size of an exchange response to be compressed. */
+    private DataSize minResponseSize = DataSize.ofKilobytes(2);
+
+    /** The GZIP compression level from 0 (no compression) to 9 (best), or -1 for the default. */
+    private int level = -1;
+
+    /** The GZIP compression strategy. */
+    private DeflateStrategy strategy = DeflateStrategy.DEFAULT;
+  }
+
+  /**
+   * Properties for the preset dictionaries of compression trained per target.
+   *
+   * <p>A dictionary of a target is the data typical for its traffic, so even small payloads of the
+   * target compress well with DEFLATE. Dictionaries are trained offline by {@link
+   * net.soht2.common.compress.DictionaryTrainer} from the samples of the traffic, which the server
+   * collects if the sample limit is set, and they are loaded from the {@code <host>_<port>.dict}
+   * files of the directory on startup. The dictionary of the target is offered to the client when a
+   * connection is opened.
+   */
+  @Data
+  public static class DictionaryProperties {
+
+    /** The directory of the dictionary files. Dictionaries are disabled if not specified. */
+    private File directory;
+
+    /** The minimum size of an exchange response to be compressed with the dictionary. */
+    private DataSize minResponseSize = DataSize.ofBytes(64);
+
+    /**
+     * The maximum size of the traffic samples collected per target into the {@code samples}
+     * subdirectory of the directory, for training dictionaries. Zero disables sampling.
+     */
+    private DataSize sampleLimit = DataSize.ofBytes(0);
   }
 
   /**
@@ -88,4 +222,160 @@ public class Soht2ServerConfig implements InitializingBean {
     /** The interval at which the server checks for abandoned connections. */
     private Duration checkInterval = Duration.ofSeconds(5);
   }
+
+  /**
+   * Properties for the cache of users used to authenticate requests.
+   *
+   * <p>Cached users are reloaded in the background after the refresh interval, so requests of
+   * active users do not wait for the database when their entries get stale. Unknown usernames are
+   * cached separately for a short time, so repeated requests with them do not hit the database.
+   * Both caches record statistics, which are published as {@code cache.*} metrics.
+   */
+  @Data
+  public static class UserCacheProperties {
+
+    /** The maximum number of cached users. */
+    private long maximumSize = 10_000;
+
+    /** The time-to-live (TTL) for user cache entries. */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * The age of a user cache entry after which it is reloaded in the background on the next
+     * access. Zero disables the refresh.
+     */
+    private Duration refreshAfter = Duration.ofMinutes(1);
+
+    /** The maximum number of cached unknown usernames. Zero disables their caching. */
+    private long unknownSize = 10_000;
+
+    /** The time-to-live (TTL) for cached unknown usernames. */
+    private Duration unknownTtl = Duration.ofSeconds(30);
+  }
+
+  /** Defines what to do with a new history record when the history writer queue is full. */
+  public enum OverflowPolicy {
+    /** The new record is discarded. */
+    DISCARD_NEWEST,
+    /** The oldest queued record is discarded to make room for the new one. */
+    DISCARD_OLDEST,
+    /** The new record is written to the database synchronously by the calling thread. */
+    CALLER_WRITES
+  }
+
+  /**
+   * Properties for the asynchronous connection history writer.
+   *
+   * <p>History records are put into a bounded queue when connections are closed and then flushed to
+   * the database by a background job in batches.
+   */
+  @Data
+  public static class HistoryWriterProperties {
+
+    /** The maximum number of history records waiting to be written to the database. */
+    private int queueCapacity = 10_000;
+
+    /** The maximum number of history records written to the database in a single batch. */
+    private int batchSize = 50;
+
+    /** The interval at which queued history records are flushed to the database. */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /** What to do with a new history record when the queue is full. */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_WRITES;
+  }
+
+  /**
+   * Properties for the connection history search.
+   *
+   * <p>Search results and total counts are cached by the normalized filter. Cached entries are
+   * evicted when a matching history record is written, so repeated requests for the same filter
+   * with different pages do not hit the database.
+   */
+  @Data
+  public static class HistorySearchProperties {
+
+    /** The maximum number of cached search results and counts each. Zero disables caching. */
+    private long cacheSize = 1000;
+
+    /** The time-to-live (TTL) for cached search results and counts. */
+    private Duration cacheTtl = Duration.ofMinutes(1);
+
+    /**
+     * The maximum number of records to count for the total of the search. If there are more
+     * matching records, the total is reported as approximate. Zero means exact counting.
+     */
+    private long countLimit = 0;
+
+    /** The number of rows fetched from the database at a time when exporting the history. */
+    private int exportFetchSize = 500;
+
+    /** The maximum time of writing an export of the history to the client. */
+    private Duration exportTimeout = Duration.ofHours(1);
+  }
+
+  /**
+   * Properties for the monthly partitions of the connection history.
+   *
+   * <p>History records are stored in a separate table per month of their opening. Partitions for
+   * the current and the next month are created in advance, and partitions older than the retention
+   * period are dropped as a whole.
+   */
+  @Data
+  public static class HistoryPartitionsProperties {
+
+    /** How long history records are kept. Zero means forever. */
+    private Duration retention = Duration.ZERO;
+
+    /** The interval at which partitions are created and expired partitions are dropped. */
+    private Duration maintenanceInterval = Duration.ofHours(1);
+  }
+
+  /**
+   * Properties for the deletion of the connection history of users.
+   *
+   * <p>History records are deleted by set-based statements in chunks, every chunk in its own
+   * transaction, so deleting the history of a heavy user neither locks the tables for long nor
+   * loads the records into memory.
+   */
+  @Data
+  public static class HistoryDeletionProperties {
+
+    /** The maximum number of history records deleted in one transaction. */
+    private int chunkSize = 1000;
+  }
+
+  /** Defines where the connection history is stored. */
+  public enum HistorySinkType {
+    /** The history is stored in the H2 database. */
+    JPA,
+    /** The history is appended to memory-mapped segment files in the sink directory. */
+    MAPPED
+  }
+
+  /**
+   * Properties for the storage of the connection history.
+   *
+   * <p>By default, the history is stored in the H2 database. The mapped sink appends it as
+   * fixed-size binary records to memory-mapped segment files instead. A new segment is started when
+   * the current one is full, and sealed segments with few live records left are compacted.
+   */
+  @Data
+  public static class HistorySinkProperties {
+
+    /** Where the connection history is stored. */
+    private HistorySinkType type = HistorySinkType.JPA;
+
+    /** The directory of the segment files of the mapped sink. */
+    private File directory = new File("./soht2-history");
+
+    /** The number of records in a segment file of the mapped sink. */
+    private int segmentRecords = 65_536;
+
+    /**
+     * The share of live records in a sealed segment of the mapped sink below which the segment is
+     * compacted. Zero disables compaction.
+     */
+    private double compactionThreshold = 0.5;
+  }
 }
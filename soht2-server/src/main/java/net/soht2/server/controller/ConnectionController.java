@@ -2,8 +2,13 @@
 package net.soht2.server.controller;
 
 import static java.util.Optional.ofNullable;
+import static net.soht2.common.dto.Soht2Connection.HEADER_ACK;
+import static net.soht2.common.dto.Soht2Connection.HEADER_DICTIONARY;
+import static net.soht2.common.dto.Soht2Connection.HEADER_SEQUENCE;
 import static net.soht2.server.controller.UserController.AUTH_REQ;
 import static net.soht2.server.entity.UserEntity.ROLE_ADMIN;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
 import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
 import static org.springframework.http.MediaType.*;
 
@@ -16,6 +21,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import java.time.LocalDateTime;
@@ -24,16 +30,27 @@ import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import lombok.RequiredArgsConstructor;
+import lombok.val;
 import net.soht2.common.dto.Soht2Connection;
 import net.soht2.common.dto.Soht2User;
+import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.dto.HistoryExportFormat;
 import net.soht2.server.dto.HistoryPage;
 import net.soht2.server.dto.HistoryPaging;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
+import net.soht2.server.dto.StatsGrain;
+import net.soht2.server.dto.StatsGroup;
+import net.soht2.server.dto.StatsMetric;
 import net.soht2.server.service.Soht2HistoryService;
 import net.soht2.server.service.Soht2Service;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 /**
  * Controller for managing SOHT2 connections. Provides endpoints to open, list, exchange data with,
@@ -51,6 +68,7 @@ public class ConnectionController {
 
   private final Soht2Service soht2Service;
   private final Soht2HistoryService soht2HistoryService;
+  private final Soht2ServerConfig soht2ServerConfig;
 
   /**
    * Opens a new SOHT2 connection to the specified target host and port, associating it with the
@@ -61,7 +79,9 @@ public class ConnectionController {
    * @param targetPort the target port to connect to
    * @param authentication the current authentication object containing user details
    * @param request the HTTP request containing client information
-   * @return a {@link Soht2Connection} object representing the opened connection
+   * @return a {@link Soht2Connection} object representing the opened connection, with the id of the
+   *     preset dictionary of the target in the {@value Soht2Connection#HEADER_DICTIONARY} header if
+   *     the target has one
    */
   // <editor-fold desc="OpenAPI Annotations">
   @Tag(name = "Connection Requests")
@@ -77,21 +97,50 @@ public class ConnectionController {
   @SuppressWarnings("resource")
   @PreAuthorize("@soht2Service.isTargetAllowed(authentication, #targetHost, #targetPort)")
   @PostMapping(produces = APPLICATION_JSON_VALUE)
-  public Soht2Connection open(
+  public ResponseEntity<Soht2Connection> open(
       @RequestParam("host") String targetHost,
       @RequestParam("port") Integer targetPort,
       Authentication authentication,
       HttpServletRequest request) {
-    return soht2Service
-        .open(
+    val connection =
+        soht2Service.open(
             Soht2Connection.builder()
                 .user(Soht2User.builder().username(authentication.getName()).build())
                 .clientHost(request.getRemoteHost())
                 .targetHost(targetHost)
                 .targetPort(targetPort)
                 .build(),
-            authentication)
-        .soht2();
+            authentication);
+    val response = ResponseEntity.ok();
+    ofNullable(connection.dictionary()).ifPresent(d -> response.header(HEADER_DICTIONARY, d.id()));
+    return response.body(connection.soht2());
+  }
+
+  /**
+   * Retrieves the preset dictionary of the target of the specified SOHT2 connection, offered by
+   * {@link #open(String, Integer, Authentication, HttpServletRequest)}.
+   *
+   * @param connectionId the unique identifier of the SOHT2 connection
+   * @return the data of the dictionary, or 404 if the target has no dictionary
+   */
+  // <editor-fold desc="OpenAPI Annotations">
+  @Tag(name = "Connection Requests")
+  @Operation(
+      summary = "Retrieves the preset compression dictionary of the connection target.",
+      description = AUTH_REQ + " But only user who created connection can use it.")
+  @SecurityRequirement(name = "Basic Authentication")
+  @ApiResponse(responseCode = "200")
+  @ApiResponse(responseCode = "401", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "404", content = @Content(schema = @Schema(hidden = true)))
+  // </editor-fold>
+  @PreAuthorize("@soht2Service.isConnectionOwner(authentication, #connectionId)")
+  @GetMapping(path = PATH_ID + "/dictionary", produces = APPLICATION_OCTET_STREAM_VALUE)
+  public ResponseEntity<byte[]> dictionary(@PathVariable("id") UUID connectionId) {
+    return soht2Service
+        .dictionary(connectionId)
+        .map(d -> ResponseEntity.ok(d.data()))
+        .orElseGet(() -> ResponseEntity.notFound().build());
   }
 
   /**
@@ -147,6 +196,10 @@ public class ConnectionController {
    * @param pageNumber the 0-based page number to retrieve. Defaults to {@code 0} if not specified.
    * @param pageSize the number of records per page, with a maximum value of {@code 1000}. Defaults
    *     to {@code 10} if not specified.
+   * @param cursor the continuation token returned as {@code nextCursor} of the previous page. When
+   *     specified, the page starts right after the previous one and the page number is ignored.
+   * @param countTotal whether to count the total number of matching records. Defaults to {@code
+   *     true}; skipping the count makes deep paging with the cursor cheaper.
    * @param authentication the current authenticated user's authentication context.
    * @return a paginated object containing the history records matching the specified filters and
    *     sorting criteria.
@@ -171,7 +224,7 @@ public class ConnectionController {
   // </editor-fold>
   @GetMapping(path = "/history", produces = APPLICATION_JSON_VALUE)
   public HistoryPage searchHistory(
-      // <editor-fold desc="un, id, ch, th, tp, oa, ob, ca, cb, sort, pg, sz>
+      // <editor-fold desc="un, id, ch, th, tp, oa, ob, ca, cb, sort, pg, sz, cur, cnt>
       @Parameter(description = "Get only history of specified substring in username" + AST)
           @RequestParam(name = "un", required = false)
           @Nullable String username,
@@ -224,6 +277,15 @@ public class ConnectionController {
       @Parameter(description = "Number of records per page (up to 1000)")
           @RequestParam(name = "sz", required = false, defaultValue = "10")
           @Max(1000) int pageSize,
+      @Parameter(
+              description =
+                  "Cursor returned as nextCursor of the previous page; "
+                      + "when specified, the page number is ignored")
+          @RequestParam(name = "cur", required = false)
+          @Nullable String cursor,
+      @Parameter(description = "Whether to count the total number of records")
+          @RequestParam(name = "cnt", required = false, defaultValue = "true")
+          boolean countTotal,
       // </editor-fold>
       Authentication authentication) {
     return soht2HistoryService.searchHistory(
@@ -236,7 +298,191 @@ public class ConnectionController {
         openedBefore,
         closedAfter,
         closedBefore,
-        HistoryPaging.fromRequest(pageNumber, pageSize, sortBy),
+        HistoryPaging.fromRequest(pageNumber, pageSize, sortBy, cursor, !countTotal),
+        authentication);
+  }
+
+  /**
+   * Exports all connection history records matching the specified filters. The records are streamed
+   * to the client as they are read from the database, so there is no limit on their number. The
+   * export has its own timeout, longer than the default one of asynchronous requests.
+   *
+   * @param username the username to filter by
+   * @param connectionId the connection ID to filter by
+   * @param clientHost the client host to filter by
+   * @param targetHost the target host to filter by
+   * @param targetPorts the target ports to filter by
+   * @param openedAfter the minimum opened date-time to filter by
+   * @param openedBefore the maximum opened date-time to filter by
+   * @param closedAfter the minimum closed date-time to filter by
+   * @param closedBefore the maximum closed date-time to filter by
+   * @param format the format of the exported records
+   * @param authentication the current authenticated user's authentication context.
+   * @param response the response the records are written to
+   * @return the task streaming the history records
+   */
+  // <editor-fold desc="OpenAPI Annotations">
+  @Tag(name = "Connection Requests")
+  @Operation(
+      summary = "Exports connection history records as NDJSON or CSV.",
+      description =
+          "For user in "
+              + ROLE_ADMIN
+              + " role it exports history of all users, "
+              + "for other users it exports only their own history.")
+  @SecurityRequirement(name = "Basic Authentication")
+  @ApiResponse(responseCode = "200")
+  @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "401", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(hidden = true)))
+  // </editor-fold>
+  @GetMapping(path = "/history/export")
+  public WebAsyncTask<Void> exportHistory(
+      // <editor-fold desc="un, id, ch, th, tp, oa, ob, ca, cb, fmt>
+      @Parameter(description = "Export only history of specified substring in username" + AST)
+          @RequestParam(name = "un", required = false)
+          @Nullable String username,
+      @Parameter(description = "Export only history of specified substring in connection ID" + AST)
+          @RequestParam(name = "id", required = false)
+          @Nullable String connectionId,
+      @Parameter(description = "Export only history of specified substring in client host" + AST)
+          @RequestParam(name = "ch", required = false)
+          @Nullable String clientHost,
+      @Parameter(description = "Export only history of specified substring in target host" + AST)
+          @RequestParam(name = "th", required = false)
+          @Nullable String targetHost,
+      @Parameter(description = "Export only history of specified target ports")
+          @RequestParam(name = "tp", required = false)
+          @Nullable Set<Integer> targetPorts,
+      @Parameter(description = "Export only connections opened after timestamp " + TS)
+          @RequestParam(name = "oa", required = false)
+          @Nullable LocalDateTime openedAfter,
+      @Parameter(description = "Export only connections opened before timestamp " + TS)
+          @RequestParam(name = "ob", required = false)
+          @Nullable LocalDateTime openedBefore,
+      @Parameter(description = "Export only connections closed after timestamp " + TS)
+          @RequestParam(name = "ca", required = false)
+          @Nullable LocalDateTime closedAfter,
+      @Parameter(description = "Export only connections closed before timestamp " + TS)
+          @RequestParam(name = "cb", required = false)
+          @Nullable LocalDateTime closedBefore,
+      @Parameter(description = "Export format (ndjson, csv)")
+          @RequestParam(name = "fmt", required = false, defaultValue = "ndjson")
+          HistoryExportFormat format,
+      // </editor-fold>
+      Authentication authentication,
+      HttpServletResponse response) {
+    val body =
+        soht2HistoryService.exportHistory(
+            username,
+            connectionId,
+            clientHost,
+            targetHost,
+            ofNullable(targetPorts).orElse(Set.of()),
+            openedAfter,
+            openedBefore,
+            closedAfter,
+            closedBefore,
+            format,
+            authentication);
+    response.setContentType(format.mediaType());
+    response.setHeader(
+        CONTENT_DISPOSITION,
+        ContentDisposition.attachment()
+            .filename("soht2-history." + format.name())
+            .build()
+            .toString());
+    return new WebAsyncTask<>(
+        soht2ServerConfig.getHistorySearch().getExportTimeout().toMillis(),
+        () -> {
+          body.writeTo(response.getOutputStream());
+          return null;
+        });
+  }
+
+  /**
+   * Retrieves aggregated connection traffic from the pre-aggregated hourly or daily rollups, e.g.
+   * the users who moved the most bytes to each target last week.
+   *
+   * @param grain the rollup grain to aggregate
+   * @param from the start of the time range, inclusive
+   * @param to the end of the time range, exclusive
+   * @param username the username to filter by
+   * @param targetHost the target host to filter by
+   * @param targetPorts the target ports to filter by
+   * @param clientHost the client host to filter by
+   * @param groupBy the dimensions to group the statistics by
+   * @param orderBy the metric to order the groups by in descending order
+   * @param limit the maximum number of groups
+   * @param authentication the current authenticated user's authentication context.
+   * @return the aggregated statistics
+   */
+  // <editor-fold desc="OpenAPI Annotations">
+  @Tag(name = "Connection Requests")
+  @Operation(
+      summary = "Retrieves aggregated connection traffic statistics.",
+      description =
+          "For user in "
+              + ROLE_ADMIN
+              + " role it aggregates history of all users, "
+              + "for other users it aggregates only their own history.")
+  @SecurityRequirement(name = "Basic Authentication")
+  @ApiResponse(responseCode = "200")
+  @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "401", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(hidden = true)))
+  // </editor-fold>
+  @GetMapping(path = "/stats", produces = APPLICATION_JSON_VALUE)
+  public List<HistoryStats> stats(
+      // <editor-fold desc="gr, from, to, un, th, tp, ch, by, sort, lim>
+      @Parameter(description = "Rollup grain to aggregate")
+          @RequestParam(name = "gr", required = false, defaultValue = "day")
+          StatsGrain grain,
+      @Parameter(description = "Start of the time range, inclusive (defaults to 7 days ago) " + TS)
+          @RequestParam(name = "from", required = false)
+          @Nullable LocalDateTime from,
+      @Parameter(description = "End of the time range, exclusive (defaults to now) " + TS)
+          @RequestParam(name = "to", required = false)
+          @Nullable LocalDateTime to,
+      @Parameter(description = "Aggregate only history of specified username" + AST)
+          @RequestParam(name = "un", required = false)
+          @Nullable String username,
+      @Parameter(description = "Aggregate only history of specified target host" + AST)
+          @RequestParam(name = "th", required = false)
+          @Nullable String targetHost,
+      @Parameter(description = "Aggregate only history of specified target ports")
+          @RequestParam(name = "tp", required = false)
+          @Nullable Set<Integer> targetPorts,
+      @Parameter(description = "Aggregate only history of specified client host" + AST)
+          @RequestParam(name = "ch", required = false)
+          @Nullable String clientHost,
+      @Parameter(description = "Dimensions to group by (period, username, target, clientHost)")
+          @RequestParam(name = "by", required = false, defaultValue = "username,target")
+          List<StatsGroup> groupBy,
+      @Parameter(
+              description =
+                  "Metric to order groups by in descending order "
+                      + "(connections, duration, bytesRead, bytesWritten)")
+          @RequestParam(name = "sort", required = false, defaultValue = "bytesWritten")
+          StatsMetric orderBy,
+      @Parameter(description = "Maximum number of groups (up to 1000)")
+          @RequestParam(name = "lim", required = false, defaultValue = "100")
+          @Min(1) @Max(1000) int limit,
+      // </editor-fold>
+      Authentication authentication) {
+    return soht2HistoryService.getStats(
+        HistoryStatsQuery.builder()
+            .grain(grain)
+            .from(from)
+            .to(to)
+            .userName(username)
+            .targetHost(targetHost)
+            .targetPorts(ofNullable(targetPorts).orElse(Set.of()))
+            .clientHost(clientHost)
+            .groupBy(groupBy)
+            .orderBy(orderBy)
+            .limit(limit)
+            .build(),
         authentication);
   }
 
@@ -247,6 +493,13 @@ public class ConnectionController {
    * @param connectionId the unique identifier of the SOHT2 connection
    * @param data the data to send to the connection (optional)
    * @param contentEncoding the content encoding of the data (optional)
+   * @param seq the sequence number of the download, which makes the exchange safe to repeat
+   *     (optional)
+   * @param ack the sequence number of the last download the client received in order (optional)
+   * @param acceptEncoding the encodings accepted by the client, the response is compressed with LZ4
+   *     or GZIP if it is accepted and compression pays off (optional)
+   * @param dictionaryId the id of the preset dictionary the client has, the response is compressed
+   *     with it if DEFLATE is accepted (optional)
    * @return the response data received from the connection
    */
   // <editor-fold desc="OpenAPI Annotations">
@@ -266,11 +519,55 @@ public class ConnectionController {
       path = PATH_ID,
       produces = APPLICATION_OCTET_STREAM_VALUE,
       consumes = APPLICATION_OCTET_STREAM_VALUE)
-  public byte[] exchange(
+  public ResponseEntity<byte[]> exchange(
+      @PathVariable("id") UUID connectionId,
+      @RequestBody(required = false) @Nullable byte[] data,
+      @RequestHeader(name = CONTENT_ENCODING, required = false) @Nullable String contentEncoding,
+      @RequestHeader(name = HEADER_SEQUENCE, required = false) @Nullable Long seq,
+      @RequestHeader(name = HEADER_ACK, required = false) @Nullable Long ack,
+      @RequestHeader(name = ACCEPT_ENCODING, required = false) @Nullable String acceptEncoding,
+      @RequestHeader(name = HEADER_DICTIONARY, required = false) @Nullable String dictionaryId) {
+    val response = soht2Service.exchange(connectionId, data, contentEncoding, seq, ack).get();
+    return soht2Service
+        .compressResponse(connectionId, response, acceptEncoding, dictionaryId)
+        .map(
+            encoded ->
+                ResponseEntity.ok()
+                    .header(CONTENT_ENCODING, encoded.contentEncoding())
+                    .body(encoded.data()))
+        .orElseGet(() -> ResponseEntity.ok(response));
+  }
+
+  /**
+   * Sends the provided data to the specified SOHT2 connection without waiting for a response. The
+   * response data is received separately by {@link #exchange(UUID, byte[], String, Long, Long,
+   * String)}.
+   *
+   * @param connectionId the unique identifier of the SOHT2 connection
+   * @param data the data to send to the connection (optional)
+   * @param contentEncoding the content encoding of the data (optional)
+   * @param seq the sequence number of the upload, which makes the upload safe to repeat (optional)
+   */
+  // <editor-fold desc="OpenAPI Annotations">
+  @Tag(name = "Connection Requests")
+  @Operation(
+      summary = "Sends data to the specified SOHT2 connection without reading a response.",
+      description = AUTH_REQ + " But only user who created connection can use it.")
+  @SecurityRequirement(name = "Basic Authentication")
+  @ApiResponse(responseCode = "200")
+  @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "401", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "404", content = @Content(schema = @Schema(hidden = true)))
+  // </editor-fold>
+  @PreAuthorize("@soht2Service.isConnectionOwner(authentication, #connectionId)")
+  @PutMapping(path = PATH_ID, consumes = APPLICATION_OCTET_STREAM_VALUE)
+  public void write(
       @PathVariable("id") UUID connectionId,
       @RequestBody(required = false) @Nullable byte[] data,
-      @RequestHeader(name = CONTENT_ENCODING, required = false) @Nullable String contentEncoding) {
-    return soht2Service.exchange(connectionId, data, contentEncoding).get();
+      @RequestHeader(name = CONTENT_ENCODING, required = false) @Nullable String contentEncoding,
+      @RequestHeader(name = HEADER_SEQUENCE, required = false) @Nullable Long seq) {
+    soht2Service.write(connectionId, data, contentEncoding, seq).get();
   }
 
   /**
@@ -2,25 +2,41 @@
 package net.soht2.server.controller;
 
 import static net.soht2.server.entity.UserEntity.ROLE_ADMIN;
+import static net.soht2.server.service.ExceptionHelper.badRequest;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import io.vavr.control.Try;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import net.soht2.common.dto.Soht2User;
+import net.soht2.server.dto.HistoryDeletion;
+import net.soht2.server.dto.UserPage;
+import net.soht2.server.dto.UserPaging;
+import net.soht2.server.dto.UserProvision;
+import net.soht2.server.dto.UserProvisionResult;
 import net.soht2.server.service.Soht2UserService;
 import org.springframework.lang.Nullable;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller for managing users in the SOHT2 system. Provides endpoints for creating, updating,
@@ -35,14 +51,18 @@ public class UserController {
 
   static final String ADMIN_ONLY =
       "Only users in the " + ROLE_ADMIN + " role can access this endpoint.";
+  static final String AST =
+      ". An asterisk (*) can be used as a wildcard on the start or/and the end of the string.";
   static final String AUTH_REQ =
       "This endpoint does not require any specific role - just regular authentication.";
 
+  public static final String RE_USERNAME = "^\\w{3,30}$";
+
   @SuppressWarnings("java:S5857")
-  static final String RE_PASSWORD =
+  public static final String RE_PASSWORD =
       "^(?=.*?[A-Z])(?=.*?[a-z])(?=.*?\\d)(?=.*?[#?!@$%^&*:;-]).{8,20}$";
 
-  static final String MSG_PASSWORD =
+  public static final String MSG_PASSWORD =
       """
       Password must have:
       - Minimum 8 and maximum 20 characters in length
@@ -51,7 +71,7 @@ public class UserController {
       - At least one digit
       - At least one special character: #?!@$%^&*:;-
       """;
-  static final String MSG_USERNAME =
+  public static final String MSG_USERNAME =
       """
       Username must have:
       - Minimum 3 and maximum 30 characters in length
@@ -83,7 +103,7 @@ public class UserController {
   @PreAuthorize("hasAuthority('" + ROLE_ADMIN + "')")
   @PostMapping(produces = APPLICATION_JSON_VALUE)
   public Soht2User create(
-      @Pattern(regexp = "^\\w{3,30}$", message = MSG_USERNAME) @RequestParam("username")
+      @Pattern(regexp = RE_USERNAME, message = MSG_USERNAME) @RequestParam("username")
           String username,
       @Pattern(regexp = RE_PASSWORD, message = MSG_PASSWORD) @RequestParam("password")
           String password,
@@ -92,6 +112,31 @@ public class UserController {
     return soht2UserService.createUser(username, password, role, allowedTargets);
   }
 
+  /**
+   * Creates or updates many users at once. Users that do not exist are created, existing users are
+   * updated with the specified (non-null) attributes only. The format of all entries is validated
+   * before anything is written; other errors are reported per entry. Only users with the admin role
+   * can provision users.
+   *
+   * @param entries the users to create or update, up to {@code 1000}
+   * @return the results of the entries, in the order of the entries
+   */
+  // <editor-fold desc="OpenAPI Annotations">
+  @Tag(name = "User Requests")
+  @Operation(summary = "Creates or updates many users at once.", description = ADMIN_ONLY)
+  @SecurityRequirement(name = "Basic Authentication")
+  @ApiResponse(responseCode = "200")
+  @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "401", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(hidden = true)))
+  // </editor-fold>
+  @PreAuthorize("hasAuthority('" + ROLE_ADMIN + "')")
+  @PostMapping(path = "/bulk", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+  public List<UserProvisionResult> provision(
+      @RequestBody @Size(max = 1000) List<@Valid UserProvision> entries) {
+    return soht2UserService.provisionUsers(entries);
+  }
+
   /**
    * Updates an existing user with the specified password, role, and allowed targets. Only specified
    * (non-null) attributes are updated. Only users with the admin role can update user records.
@@ -131,6 +176,7 @@ public class UserController {
    * @param name the username of the user to delete
    * @param force if true, forces deletion even if the affected user is admin
    * @param andHistory if true, also deletes the user's history; otherwise, leaves the history
+   * @param inBackground if true, the user's history is deleted in the background
    */
   // <editor-fold desc="OpenAPI Annotations">
   @Tag(name = "User Requests")
@@ -147,8 +193,33 @@ public class UserController {
   public void delete(
       @PathVariable("name") String name,
       @RequestParam(name = "force", defaultValue = "false") boolean force,
-      @RequestParam(name = "history", defaultValue = "false") boolean andHistory) {
-    soht2UserService.deleteUser(name, force, andHistory);
+      @RequestParam(name = "history", defaultValue = "false") boolean andHistory,
+      @RequestParam(name = "background", defaultValue = "false") boolean inBackground) {
+    soht2UserService.deleteUser(name, force, andHistory, inBackground);
+  }
+
+  /**
+   * Retrieves the progress of the deletion of the user's history running in the background. Only
+   * users with the admin role can view it.
+   *
+   * @param name the username of the user whose history is deleted
+   * @return the {@link HistoryDeletion} object with the progress of the deletion
+   */
+  // <editor-fold desc="OpenAPI Annotations">
+  @Tag(name = "User Requests")
+  @Operation(
+      summary = "Retrieves the progress of the deletion of the user's history.",
+      description = ADMIN_ONLY)
+  @SecurityRequirement(name = "Basic Authentication")
+  @ApiResponse(responseCode = "200")
+  @ApiResponse(responseCode = "401", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "404", content = @Content(schema = @Schema(hidden = true)))
+  // </editor-fold>
+  @PreAuthorize("hasAuthority('" + ROLE_ADMIN + "')")
+  @GetMapping(path = "/{name}/history-deletion", produces = APPLICATION_JSON_VALUE)
+  public HistoryDeletion historyDeletion(@PathVariable("name") String name) {
+    return soht2UserService.getHistoryDeletion(name);
   }
 
   /**
@@ -170,6 +241,84 @@ public class UserController {
     return soht2UserService.listUsers();
   }
 
+  /**
+   * Searches users page by page by the specified filters. Only users with the admin role can search
+   * users. The response carries an entity tag, which changes whenever any user is created, updated
+   * or deleted; a request with the tag of the page the client already has in {@code If-None-Match}
+   * is answered with {@code 304 Not Modified} without reading the page.
+   *
+   * @param username the substring of the username to filter by, {@code *} matches any characters at
+   *     the start or the end
+   * @param role the role to filter by
+   * @param target the substring of an allowed target to filter by, {@code *} matches any characters
+   *     at the start or the end
+   * @param sortBy the sorting criteria, defaults to {@code username:asc}
+   * @param pageNumber the 0-based page number, defaults to {@code 0}
+   * @param pageSize the number of users per page, with a maximum value of {@code 1000}. Defaults to
+   *     {@code 10} if not specified.
+   * @param countTotal whether to count the total number of matching users, defaults to {@code true}
+   * @param webRequest the current request used to check the entity tag
+   * @return a paginated object containing the users matching the filters, or {@code null} if the
+   *     page has not been modified
+   */
+  // <editor-fold desc="OpenAPI Annotations">
+  @Tag(name = "User Requests")
+  @Operation(
+      summary = "Retrieves a paginated list of users based on specified filters and sorting.",
+      description = ADMIN_ONLY)
+  @SecurityRequirement(name = "Basic Authentication")
+  @ApiResponse(responseCode = "200")
+  @ApiResponse(responseCode = "304", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "400", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "401", content = @Content(schema = @Schema(hidden = true)))
+  @ApiResponse(responseCode = "403", content = @Content(schema = @Schema(hidden = true)))
+  // </editor-fold>
+  @PreAuthorize("hasAuthority('" + ROLE_ADMIN + "')")
+  @GetMapping(path = "/search", produces = APPLICATION_JSON_VALUE)
+  public @Nullable UserPage search(
+      // <editor-fold desc="un, role, tg, sort, pg, sz, cnt>
+      @Parameter(description = "Get only users of specified substring in username" + AST)
+          @RequestParam(name = "un", required = false)
+          @Nullable String username,
+      @Parameter(description = "Get only users in specified role")
+          @RequestParam(name = "role", required = false)
+          @Nullable String role,
+      @Parameter(description = "Get only users of specified substring in allowed target" + AST)
+          @RequestParam(name = "tg", required = false)
+          @Nullable String target,
+      @Parameter(
+              description =
+                  "Sorting criteria (supported fields: username, role, createdAt, updatedAt)",
+              example = "username:asc",
+              array =
+                  @ArraySchema(
+                      maxItems = 3,
+                      uniqueItems = true,
+                      schema =
+                          @Schema(
+                              type = "string",
+                              pattern = "^(username|role|createdAt|updatedAt):(asc|desc)$")))
+          @RequestParam(name = "sort", required = false, defaultValue = "username:asc")
+          List<String> sortBy,
+      @Parameter(description = "0-based page number")
+          @RequestParam(name = "pg", required = false, defaultValue = "0")
+          @Min(0) int pageNumber,
+      @Parameter(description = "Number of users per page (up to 1000)")
+          @RequestParam(name = "sz", required = false, defaultValue = "10")
+          @Max(1000) int pageSize,
+      @Parameter(description = "Whether to count the total number of users")
+          @RequestParam(name = "cnt", required = false, defaultValue = "true")
+          boolean countTotal,
+      // </editor-fold>
+      WebRequest webRequest) {
+    val paging =
+        Try.of(() -> UserPaging.fromRequest(pageNumber, pageSize, sortBy, !countTotal))
+            .getOrElseThrow(e -> badRequest(e.getMessage()));
+    val eTag = soht2UserService.searchUsersETag(username, role, target, paging);
+    if (webRequest.checkNotModified(eTag)) return null;
+    return soht2UserService.searchUsers(username, role, target, paging);
+  }
+
   /**
    * Retrieves the current user's information. This endpoint does not require any specific role.
    *
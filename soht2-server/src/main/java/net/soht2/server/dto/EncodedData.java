@@ -0,0 +1,11 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.server.dto;
+
+/**
+ * Data encoded for the client, along with the encoding to report in the {@code Content-Encoding}
+ * response header.
+ *
+ * @param contentEncoding the content encoding of the data
+ * @param data the encoded data
+ */
+public record EncodedData(String contentEncoding, byte[] data) {}
@@ -0,0 +1,164 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.val;
+import net.soht2.server.entity.HistoryEntity;
+
+/**
+ * Position of the last record of a history page used for keyset pagination. It contains the values
+ * of the sorting fields of the record and its unique ID, which breaks ties between records with
+ * equal sorting values. The cursor is passed to clients as an opaque URL-safe token.
+ *
+ * @param sorting the sorting the cursor was created for
+ * @param values the values of the sorting fields in the order of {@code sorting}
+ * @param historyId the unique ID of the history record
+ */
+public record HistoryCursor(List<HistoryOrder> sorting, List<Object> values, long historyId) {
+
+  private static final String SEPARATOR = "\n";
+
+  /**
+   * Creates a cursor pointing to the given history record.
+   *
+   * @param sorting the sorting of the page
+   * @param entity the last record of the page
+   * @return the cursor
+   */
+  public static HistoryCursor of(List<HistoryOrder> sorting, HistoryEntity entity) {
+    return new HistoryCursor(
+        sorting, sorting.stream().map(o -> valueOf(o.field(), entity)).toList(), entity.getId());
+  }
+
+  /**
+   * Decodes a cursor from the token created by {@link #encode()}.
+   *
+   * @param token the token to decode
+   * @param sorting the sorting of the requested page, it must match the sorting of the token
+   * @return the cursor
+   * @throws IllegalArgumentException if the token is malformed or was created for another sorting
+   */
+  public static HistoryCursor decode(String token, List<HistoryOrder> sorting) {
+    val parts = new String(Base64.getUrlDecoder().decode(token), UTF_8).split(SEPARATOR, -1);
+    if (parts.length != sorting.size() + 2 || !parts[0].equals(sortingKey(sorting)))
+      throw new IllegalArgumentException("Cursor does not match the sorting");
+    return new HistoryCursor(
+        sorting,
+        Stream.iterate(0, i -> i < sorting.size(), i -> i + 1)
+            .map(i -> parse(sorting.get(i).field(), parts[i + 1]))
+            .toList(),
+        Long.parseLong(parts[parts.length - 1]));
+  }
+
+  /**
+   * Encodes the cursor into an opaque URL-safe token.
+   *
+   * @return the token
+   */
+  public String encode() {
+    val payload =
+        Stream.of(
+                Stream.of(sortingKey(sorting)),
+                values.stream().map(String::valueOf),
+                Stream.of(String.valueOf(historyId)))
+            .flatMap(s -> s)
+            .collect(Collectors.joining(SEPARATOR));
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(UTF_8));
+  }
+
+  /**
+   * Creates a comparator ordering history records the same way as the database does for the given
+   * sorting, with the unique ID as the last key. UUIDs are compared as unsigned numbers and {@code
+   * null} values come first, as in H2.
+   *
+   * @param sorting the sorting of the records
+   * @return the comparator
+   */
+  public static Comparator<HistoryEntity> comparator(List<HistoryOrder> sorting) {
+    Comparator<HistoryEntity> comparator = (a, b) -> 0;
+    for (val order : sorting) {
+      Comparator<HistoryEntity> field =
+          Comparator.comparing(
+              e -> valueOf(order.field(), e), Comparator.nullsFirst(HistoryCursor::compareValues));
+      comparator = comparator.thenComparing(isDescending(order) ? field.reversed() : field);
+    }
+    return comparator.thenComparing(HistoryEntity::getId);
+  }
+
+  /**
+   * Checks whether the cursor precedes the history record in the order of {@link
+   * #comparator(List)}, i.e. whether the record belongs to a page following the cursor.
+   *
+   * @param entity the history record to check
+   * @return {@code true} if the record follows the cursor
+   */
+  public boolean isBefore(HistoryEntity entity) {
+    for (int i = 0; i < sorting.size(); i++) {
+      val order = sorting.get(i);
+      val result =
+          Comparator.nullsFirst(HistoryCursor::compareValues)
+              .compare(values.get(i), valueOf(order.field(), entity));
+      if (result != 0) return isDescending(order) ? result > 0 : result < 0;
+    }
+    return historyId < entity.getId();
+  }
+
+  /**
+   * Checks whether the sorting order is descending.
+   *
+   * @param order the sorting order
+   * @return {@code true} if the order is descending
+   */
+  public static boolean isDescending(SortingOrder<HistorySorting> order) {
+    return order.direction() == SortingDir.DESC;
+  }
+
+  private static String sortingKey(List<HistoryOrder> sorting) {
+    return sorting.stream()
+        .map(o -> o.field().name() + ":" + (isDescending(o) ? SortingDir.DESC : SortingDir.ASC))
+        .collect(Collectors.joining(","));
+  }
+
+  private static Object valueOf(HistorySorting field, HistoryEntity entity) {
+    return switch (field) {
+      case username -> entity.getUserName();
+      case id -> entity.getConnectionId();
+      case clientHost -> entity.getClientHost();
+      case targetHost -> entity.getTargetHost();
+      case targetPort -> entity.getTargetPort();
+      case openedAt -> entity.getOpenedAt();
+      case closedAt -> entity.getClosedAt();
+      case bytesRead -> entity.getBytesRead();
+      case bytesWritten -> entity.getBytesWritten();
+    };
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compareValues(Object a, Object b) {
+    if (a instanceof UUID u1 && b instanceof UUID u2) {
+      val high = Long.compareUnsigned(u1.getMostSignificantBits(), u2.getMostSignificantBits());
+      return high != 0
+          ? high
+          : Long.compareUnsigned(u1.getLeastSignificantBits(), u2.getLeastSignificantBits());
+    }
+    return ((Comparable) a).compareTo(b);
+  }
+
+  private static Object parse(HistorySorting field, String value) {
+    return switch (field) {
+      case username, clientHost, targetHost -> value;
+      case id -> UUID.fromString(value);
+      case targetPort -> Integer.valueOf(value);
+      case openedAt, closedAt -> LocalDateTime.parse(value);
+      case bytesRead, bytesWritten -> Long.valueOf(value);
+    };
+  }
+}
@@ -0,0 +1,32 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import org.springframework.lang.Nullable;
+
+/**
+ * Progress of the deletion of the connection history of a user running in the background.
+ *
+ * @param userName the username whose history is deleted
+ * @param status the status of the deletion
+ * @param deleted the number of history records deleted so far
+ * @param startedAt the time the deletion started
+ * @param finishedAt the time the deletion finished, or {@code null} if it is running
+ * @param error the error the deletion failed with, or {@code null}
+ */
+@Builder(toBuilder = true)
+public record HistoryDeletion(
+    String userName,
+    Status status,
+    long deleted,
+    LocalDateTime startedAt,
+    @Nullable LocalDateTime finishedAt,
+    @Nullable String error) {
+
+  public enum Status {
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+}
@@ -0,0 +1,20 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+
+/** Format of the exported connection history. */
+@SuppressWarnings("java:S115")
+@Getter
+@Accessors(fluent = true)
+@RequiredArgsConstructor
+public enum HistoryExportFormat {
+  /** Newline-delimited JSON, one connection object per line. */
+  ndjson("application/x-ndjson"),
+  /** Comma-separated values with a header line. */
+  csv("text/csv");
+
+  private final String mediaType;
+}
@@ -0,0 +1,107 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+import static java.util.regex.Pattern.DOTALL;
+import static java.util.regex.Pattern.UNICODE_CASE;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import lombok.Builder;
+import lombok.val;
+import net.soht2.server.entity.HistoryEntity;
+import org.springframework.lang.Nullable;
+
+/**
+ * Filter of the connection history search. String values are SQL {@code LIKE} patterns, {@code
+ * null} values and an empty collection of target ports mean no filtering by the field.
+ */
+@Builder
+public record HistoryFilter(
+    @Nullable String userName,
+    @Nullable String connectionId,
+    @Nullable String clientHost,
+    @Nullable String targetHost,
+    @Nullable Collection<Integer> targetPorts,
+    @Nullable LocalDateTime openedAfter,
+    @Nullable LocalDateTime openedBefore,
+    @Nullable LocalDateTime closedAfter,
+    @Nullable LocalDateTime closedBefore) {
+
+  /**
+   * Returns the filter with lowercase patterns and the target ports as a set, so that filters
+   * selecting the same records are equal.
+   *
+   * @return the normalized filter
+   */
+  public HistoryFilter normalized() {
+    return new HistoryFilter(
+        lowerCase(userName),
+        lowerCase(connectionId),
+        lowerCase(clientHost),
+        lowerCase(targetHost),
+        targetPorts == null || targetPorts.isEmpty() ? null : Set.copyOf(targetPorts),
+        openedAfter,
+        openedBefore,
+        closedAfter,
+        closedBefore);
+  }
+
+  /**
+   * Checks whether the history record matches the filter.
+   *
+   * @param entity the history record to check
+   * @return {@code true} if the record matches all conditions of the filter
+   */
+  public boolean matches(HistoryEntity entity) {
+    return matcher().test(entity);
+  }
+
+  /**
+   * Creates a predicate checking whether history records match the filter. Its patterns are
+   * compiled once, so it is the way to check many records, e.g. in a sequential scan.
+   *
+   * @return the predicate
+   */
+  public Predicate<HistoryEntity> matcher() {
+    val userNameLike = like(userName);
+    val connectionIdLike = like(connectionId);
+    val clientHostLike = like(clientHost);
+    val targetHostLike = like(targetHost);
+    return entity ->
+        userNameLike.test(entity.getUserName())
+            && connectionIdLike.test(String.valueOf(entity.getConnectionId()))
+            && clientHostLike.test(entity.getClientHost())
+            && targetHostLike.test(entity.getTargetHost())
+            && (targetPorts == null
+                || targetPorts.isEmpty()
+                || targetPorts.contains(entity.getTargetPort()))
+            && (openedAfter == null || !entity.getOpenedAt().isBefore(openedAfter))
+            && (openedBefore == null || !entity.getOpenedAt().isAfter(openedBefore))
+            && (closedAfter == null || !entity.getClosedAt().isBefore(closedAfter))
+            && (closedBefore == null || !entity.getClosedAt().isAfter(closedBefore));
+  }
+
+  private static @Nullable String lowerCase(@Nullable String value) {
+    return value != null ? value.toLowerCase(Locale.ROOT) : null;
+  }
+
+  private static Predicate<String> like(@Nullable String pattern) {
+    if (pattern == null) return value -> true;
+    val regex = new StringBuilder();
+    for (int i = 0; i < pattern.length(); i++) {
+      val c = pattern.charAt(i);
+      if (c == '\\' && i + 1 < pattern.length())
+        regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+      else if (c == '%') regex.append(".*");
+      else if (c == '_') regex.append('.');
+      else regex.append(Pattern.quote(String.valueOf(c)));
+    }
+    return Pattern.compile(regex.toString(), CASE_INSENSITIVE | UNICODE_CASE | DOTALL)
+        .asMatchPredicate();
+  }
+}
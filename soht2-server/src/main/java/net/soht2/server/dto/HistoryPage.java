@@ -11,8 +11,13 @@ import net.soht2.common.dto.Soht2Connection;
 public final class HistoryPage extends Page<Soht2Connection, HistorySorting> {
 
   @Builder
-  private HistoryPage(HistoryPaging paging, Long totalItems, List<Soht2Connection> data) {
-    super(paging, totalItems, data);
+  private HistoryPage(
+      HistoryPaging paging,
+      Long totalItems,
+      boolean totalApproximate,
+      List<Soht2Connection> data,
+      String nextCursor) {
+    super(paging, totalItems, totalApproximate, data, nextCursor);
   }
 
   @JsonProperty
@@ -27,6 +32,8 @@ public final class HistoryPage extends Page<Soht2Connection, HistorySorting> {
                         .pageNumber(p.pageNumber())
                         .pageSize(p.pageSize())
                         .sorting(HistoryPaging.sortingOrder(p.sorting()))
+                        .cursor(p.cursor())
+                        .skipTotal(p.skipTotal())
                         .build())
         .orElse(null);
   }
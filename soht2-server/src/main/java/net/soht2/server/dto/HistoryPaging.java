@@ -10,13 +10,16 @@ import lombok.Builder;
 public final class HistoryPaging extends Paging<HistorySorting> {
 
   @Builder
-  HistoryPaging(int pageNumber, int pageSize, List<HistoryOrder> sorting) {
+  HistoryPaging(
+      int pageNumber, int pageSize, List<HistoryOrder> sorting, String cursor, boolean skipTotal) {
     super(
         pageNumber,
         pageSize,
         ofNullable(sorting)
             .map(o -> o.stream().map(v -> (SortingOrder<HistorySorting>) v).toList())
-            .orElse(null));
+            .orElse(null),
+        cursor,
+        skipTotal);
   }
 
   @JsonProperty("sorting")
@@ -41,11 +44,14 @@ public final class HistoryPaging extends Paging<HistorySorting> {
         .orElse(null);
   }
 
-  public static HistoryPaging fromRequest(int pageNumber, int pageSize, List<String> sortBy) {
+  public static HistoryPaging fromRequest(
+      int pageNumber, int pageSize, List<String> sortBy, String cursor, boolean skipTotal) {
     return Paging.fromRequest(
         pageNumber,
         pageSize,
         sortBy,
+        cursor,
+        skipTotal,
         HistorySorting.class,
         HistoryOrder.class,
         HistoryPaging.class);
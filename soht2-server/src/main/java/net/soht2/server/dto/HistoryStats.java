@@ -0,0 +1,32 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import org.springframework.lang.Nullable;
+
+/**
+ * Aggregated traffic of a group of connections. Dimensions the statistics are not grouped by are
+ * {@code null}.
+ *
+ * @param period the start of the rollup period
+ * @param userName the username
+ * @param targetHost the target host
+ * @param targetPort the target port
+ * @param clientHost the client host
+ * @param connections the number of connections
+ * @param durationMillis the total duration of the connections in milliseconds
+ * @param bytesRead the total number of bytes read by the connections
+ * @param bytesWritten the total number of bytes written by the connections
+ */
+@Builder(toBuilder = true)
+public record HistoryStats(
+    @Nullable LocalDateTime period,
+    @Nullable String userName,
+    @Nullable String targetHost,
+    @Nullable Integer targetPort,
+    @Nullable String clientHost,
+    long connections,
+    long durationMillis,
+    long bytesRead,
+    long bytesWritten) {}
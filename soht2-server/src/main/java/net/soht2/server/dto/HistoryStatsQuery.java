@@ -0,0 +1,37 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import lombok.Builder;
+import org.springframework.lang.Nullable;
+
+/**
+ * Query of the connection history statistics. String values are SQL {@code LIKE} patterns, {@code
+ * null} values and an empty collection of target ports mean no filtering by the field.
+ *
+ * @param grain the rollup grain to aggregate
+ * @param from the start of the time range, inclusive; it is truncated to the grain
+ * @param to the end of the time range, exclusive; it is rounded up to the grain, so the period
+ *     containing it, like the current one, is included
+ * @param userName the username pattern
+ * @param targetHost the target host pattern
+ * @param targetPorts the target ports
+ * @param clientHost the client host pattern
+ * @param groupBy the dimensions to group by; no grouping aggregates the whole range
+ * @param orderBy the metric to order groups by in descending order
+ * @param limit the maximum number of groups
+ */
+@Builder(toBuilder = true)
+public record HistoryStatsQuery(
+    StatsGrain grain,
+    LocalDateTime from,
+    LocalDateTime to,
+    @Nullable String userName,
+    @Nullable String targetHost,
+    @Nullable Collection<Integer> targetPorts,
+    @Nullable String clientHost,
+    List<StatsGroup> groupBy,
+    StatsMetric orderBy,
+    int limit) {}
@@ -11,20 +11,31 @@ import lombok.experimental.Accessors;
 @Data
 @Accessors(fluent = true)
 @JsonPropertyOrder(alphabetic = true)
-public sealed class Page<T, S extends SortingField> permits HistoryPage {
+public sealed class Page<T, S extends SortingField> permits HistoryPage, UserPage {
 
   @JsonProperty private final Paging<S> paging;
   @JsonProperty private final Long totalItems;
+
+  /** Whether counting stopped at a limit, so there are at least {@link #totalItems} items. */
+  @JsonProperty private final boolean totalApproximate;
+
   @JsonProperty private final List<T> data;
 
+  /** Continuation token to request the next page with, or {@code null} if it is the last page. */
+  @JsonProperty private final String nextCursor;
+
   @JsonCreator
   protected Page(
       @JsonProperty("paging") Paging<S> paging,
       @JsonProperty("totalItems") Long totalItems,
-      @JsonProperty("data") List<T> data) {
+      @JsonProperty("totalApproximate") boolean totalApproximate,
+      @JsonProperty("data") List<T> data,
+      @JsonProperty("nextCursor") String nextCursor) {
     this.paging = paging;
     this.totalItems = totalItems;
+    this.totalApproximate = totalApproximate;
     this.data = data;
+    this.nextCursor = nextCursor;
   }
 
   @JsonProperty(value = "totalPages", access = JsonProperty.Access.READ_ONLY)
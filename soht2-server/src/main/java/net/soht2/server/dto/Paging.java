@@ -18,10 +18,11 @@ import lombok.val;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
 
 @Data
 @Accessors(fluent = true)
-public sealed class Paging<S extends SortingField> permits HistoryPaging {
+public sealed class Paging<S extends SortingField> permits HistoryPaging, UserPaging {
 
   @NotNull @JsonProperty(required = true)
   private final int pageNumber;
@@ -31,14 +32,27 @@ public sealed class Paging<S extends SortingField> permits HistoryPaging {
 
   @JsonProperty private final List<SortingOrder<S>> sorting;
 
+  /**
+   * Continuation token of the previous page. When specified, the page starts right after the record
+   * identified by the token and {@link #pageNumber} is not used for positioning.
+   */
+  @JsonProperty private final String cursor;
+
+  /** Whether counting of the total number of items should be skipped. */
+  @JsonProperty private final boolean skipTotal;
+
   @JsonCreator
   protected Paging(
       @NotNull @JsonProperty(value = "pageNumber", required = true) int pageNumber,
       @NotNull @JsonProperty(value = "pageSize", required = true) int pageSize,
-      @JsonProperty("sorting") List<SortingOrder<S>> sorting) {
+      @JsonProperty("sorting") List<SortingOrder<S>> sorting,
+      @JsonProperty("cursor") String cursor,
+      @JsonProperty("skipTotal") boolean skipTotal) {
     this.pageNumber = pageNumber;
     this.pageSize = pageSize;
     this.sorting = sorting;
+    this.cursor = cursor;
+    this.skipTotal = skipTotal;
   }
 
   public Pageable toPageable(boolean isNative) {
@@ -59,6 +73,8 @@ public sealed class Paging<S extends SortingField> permits HistoryPaging {
           int pageNumber,
           int pageSize,
           List<String> sortBy,
+          String cursor,
+          boolean skipTotal,
           Class<T> sortingClass,
           Class<O> orderClass,
           Class<P> pagingClass) {
@@ -82,7 +98,12 @@ public sealed class Paging<S extends SortingField> permits HistoryPaging {
                                 v.length > 1 ? SortingDir.valueOf(v[1].toUpperCase()) : null)))
             .toList();
     return pagingClass
-        .getDeclaredConstructor(int.class, int.class, List.class)
-        .newInstance(pageNumber, pageSize, sorting.isEmpty() ? null : sorting);
+        .getDeclaredConstructor(int.class, int.class, List.class, String.class, boolean.class)
+        .newInstance(
+            pageNumber,
+            pageSize,
+            sorting.isEmpty() ? null : sorting,
+            StringUtils.hasText(cursor) ? cursor : null,
+            skipTotal);
   }
 }
@@ -1,7 +1,7 @@
 /* SOHT2 © Licensed under MIT 2025. */
 package net.soht2.server.dto;
 
-public sealed interface SortingField permits HistorySorting {
+public sealed interface SortingField permits HistorySorting, UserSorting {
 
   String name();
 
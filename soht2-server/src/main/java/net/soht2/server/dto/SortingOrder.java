@@ -13,7 +13,7 @@ import org.springframework.data.domain.Sort;
 
 @Data
 @Accessors(fluent = true)
-public sealed class SortingOrder<T extends SortingField> permits HistoryOrder {
+public sealed class SortingOrder<T extends SortingField> permits HistoryOrder, UserOrder {
 
   @NotNull @JsonProperty(required = true)
   private final T field;
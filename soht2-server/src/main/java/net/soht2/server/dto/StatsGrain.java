@@ -0,0 +1,44 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+import lombok.val;
+
+/** Time grain of the connection history rollups. */
+@SuppressWarnings("java:S115")
+@Getter
+@Accessors(fluent = true)
+@RequiredArgsConstructor
+public enum StatsGrain {
+  hour("soht2_history_hourly", ChronoUnit.HOURS),
+  day("soht2_history_daily", ChronoUnit.DAYS);
+
+  private final String table;
+  private final ChronoUnit unit;
+
+  /**
+   * Returns the start of the rollup period containing the given time.
+   *
+   * @param dateTime the time
+   * @return the start of the period
+   */
+  public LocalDateTime periodStart(LocalDateTime dateTime) {
+    return dateTime.truncatedTo(unit);
+  }
+
+  /**
+   * Returns the end of the rollup period containing the given time, or the time itself if it starts
+   * a period.
+   *
+   * @param dateTime the time
+   * @return the time rounded up to the grain
+   */
+  public LocalDateTime periodCeiling(LocalDateTime dateTime) {
+    val start = periodStart(dateTime);
+    return start.equals(dateTime) ? start : start.plus(1, unit);
+  }
+}
@@ -0,0 +1,21 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+
+/** Dimension to group the connection history statistics by. */
+@SuppressWarnings("java:S115")
+@Getter
+@Accessors(fluent = true)
+@RequiredArgsConstructor
+public enum StatsGroup {
+  period(List.of("period_start")),
+  username(List.of("user_name")),
+  target(List.of("target_host", "target_port")),
+  clientHost(List.of("client_host"));
+
+  private final List<String> fields;
+}
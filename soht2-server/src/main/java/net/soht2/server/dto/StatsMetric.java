@@ -0,0 +1,20 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+
+/** Aggregated metric of the connection history statistics. */
+@SuppressWarnings("java:S115")
+@Getter
+@Accessors(fluent = true)
+@RequiredArgsConstructor
+public enum StatsMetric {
+  connections("connections"),
+  duration("duration_ms"),
+  bytesRead("bytes_read"),
+  bytesWritten("bytes_written");
+
+  private final String field;
+}
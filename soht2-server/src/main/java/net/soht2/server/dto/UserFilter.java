@@ -0,0 +1,14 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import lombok.Builder;
+import org.springframework.lang.Nullable;
+
+/**
+ * Filter of the user search. The name and the target are SQL {@code LIKE} patterns matched
+ * case-insensitively, the target matches if any of the allowed targets of the user matches it. The
+ * role is matched exactly. {@code null} values mean no filtering by the field.
+ */
+@Builder
+public record UserFilter(
+    @Nullable String userName, @Nullable String role, @Nullable String target) {}
@@ -0,0 +1,12 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import lombok.Builder;
+
+public final class UserOrder extends SortingOrder<UserSorting> {
+
+  @Builder
+  UserOrder(UserSorting field, SortingDir direction) {
+    super(field, direction);
+  }
+}
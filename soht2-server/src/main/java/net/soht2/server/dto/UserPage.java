@@ -0,0 +1,34 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import static java.util.Optional.ofNullable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import lombok.Builder;
+import net.soht2.common.dto.Soht2User;
+
+public final class UserPage extends Page<Soht2User, UserSorting> {
+
+  @Builder
+  private UserPage(UserPaging paging, Long totalItems, List<Soht2User> data) {
+    super(paging, totalItems, false, data, null);
+  }
+
+  @JsonProperty
+  @Override
+  public UserPaging paging() {
+    return ofNullable(super.paging())
+        .map(
+            p ->
+                p instanceof UserPaging userPaging
+                    ? userPaging
+                    : UserPaging.builder()
+                        .pageNumber(p.pageNumber())
+                        .pageSize(p.pageSize())
+                        .sorting(UserPaging.sortingOrder(p.sorting()))
+                        .skipTotal(p.skipTotal())
+                        .build())
+        .orElse(null);
+  }
+}
@@ -0,0 +1,59 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import static java.util.Optional.ofNullable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import lombok.Builder;
+
+public final class UserPaging extends Paging<UserSorting> {
+
+  @Builder
+  UserPaging(
+      int pageNumber, int pageSize, List<UserOrder> sorting, String cursor, boolean skipTotal) {
+    super(
+        pageNumber,
+        pageSize,
+        ofNullable(sorting)
+            .map(o -> o.stream().map(v -> (SortingOrder<UserSorting>) v).toList())
+            .orElse(null),
+        cursor,
+        skipTotal);
+  }
+
+  @JsonProperty("sorting")
+  public List<UserOrder> sortingOrder() {
+    return sortingOrder(sorting());
+  }
+
+  static List<UserOrder> sortingOrder(List<SortingOrder<UserSorting>> sorting) {
+    return ofNullable(sorting)
+        .map(
+            orders ->
+                orders.stream()
+                    .map(
+                        order ->
+                            order instanceof UserOrder userOrder
+                                ? userOrder
+                                : UserOrder.builder()
+                                    .field(order.field())
+                                    .direction(order.direction())
+                                    .build())
+                    .toList())
+        .orElse(null);
+  }
+
+  public static UserPaging fromRequest(
+      int pageNumber, int pageSize, List<String> sortBy, boolean skipTotal) {
+    return Paging.fromRequest(
+        pageNumber,
+        pageSize,
+        sortBy,
+        null,
+        skipTotal,
+        UserSorting.class,
+        UserOrder.class,
+        UserPaging.class);
+  }
+}
@@ -0,0 +1,29 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import static net.soht2.server.controller.UserController.MSG_PASSWORD;
+import static net.soht2.server.controller.UserController.MSG_USERNAME;
+import static net.soht2.server.controller.UserController.RE_PASSWORD;
+import static net.soht2.server.controller.UserController.RE_USERNAME;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import java.util.Set;
+import lombok.Builder;
+import org.springframework.lang.Nullable;
+
+/**
+ * Entry of the bulk user provisioning. A user that does not exist yet is created, and then the
+ * password is required; an existing user is updated with the specified (non-null) attributes only.
+ *
+ * @param username the name of the user to create or update
+ * @param password the password of the user
+ * @param role the role of the user, defaults to {@code USER} for a new user
+ * @param allowedTargets the allowed targets of the user, defaults to {@code *:*} for a new user
+ */
+@Builder
+public record UserProvision(
+    @NotNull @Pattern(regexp = RE_USERNAME, message = MSG_USERNAME) String username,
+    @Nullable @Pattern(regexp = RE_PASSWORD, message = MSG_PASSWORD) String password,
+    @Nullable String role,
+    @Nullable Set<String> allowedTargets) {}
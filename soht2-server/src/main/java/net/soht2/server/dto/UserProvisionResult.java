@@ -0,0 +1,26 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import lombok.Builder;
+import net.soht2.common.dto.Soht2User;
+import org.springframework.lang.Nullable;
+
+/**
+ * Result of a single entry of the bulk user provisioning.
+ *
+ * @param username the name of the user from the entry
+ * @param status the outcome of the entry
+ * @param user the user after provisioning, or {@code null} if the entry failed
+ * @param error the reason the entry failed, or {@code null}
+ */
+@Builder
+public record UserProvisionResult(
+    String username, Status status, @Nullable Soht2User user, @Nullable String error) {
+
+  public enum Status {
+    CREATED,
+    UPDATED,
+    UNCHANGED,
+    FAILED
+  }
+}
@@ -0,0 +1,19 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+
+@SuppressWarnings("java:S115")
+@Getter
+@Accessors(fluent = true)
+@RequiredArgsConstructor
+public enum UserSorting implements SortingField {
+  username("user_name_lc"),
+  role("user_role"),
+  createdAt("created_at"),
+  updatedAt("updated_at");
+
+  private final String field;
+}
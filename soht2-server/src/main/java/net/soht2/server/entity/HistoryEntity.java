@@ -24,7 +24,8 @@ public class HistoryEntity {
 
   @Id
   @Column(name = "history_id", nullable = false, updatable = false)
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "soht2_history_seq")
+  @SequenceGenerator(name = "soht2_history_seq", allocationSize = 50)
   private Long id;
 
   @Column(name = "user_name", nullable = false, updatable = false)
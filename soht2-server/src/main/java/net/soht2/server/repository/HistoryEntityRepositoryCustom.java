@@ -0,0 +1,78 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import java.util.List;
+import java.util.function.Consumer;
+import net.soht2.server.dto.HistoryCursor;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.dto.HistoryOrder;
+import net.soht2.server.entity.HistoryEntity;
+import org.springframework.lang.Nullable;
+
+/** Search queries of {@link HistoryEntityRepository} built from the specified filter only. */
+public interface HistoryEntityRepositoryCustom {
+
+  /**
+   * Counts history records matching the filter.
+   *
+   * @param filter the search filter
+   * @return the number of matching records
+   */
+  default long countAll(HistoryFilter filter) {
+    return countAll(filter, 0);
+  }
+
+  /**
+   * Counts history records matching the filter, but not more than the specified limit. Counting
+   * stops as soon as the limit is reached, which keeps counting cheap on large tables.
+   *
+   * @param filter the search filter
+   * @param limit the maximum number of records to count, zero or less for no limit
+   * @return the number of matching records, or the limit if there are more of them
+   */
+  long countAll(HistoryFilter filter, long limit);
+
+  /**
+   * Finds history records matching the filter. Records are ordered by the specified sorting and
+   * then by the history ID, so the order is always deterministic. If the cursor is specified, only
+   * records following it in this order are returned (keyset pagination), which lets the database
+   * seek in the index instead of skipping the offset rows.
+   *
+   * @param filter the search filter
+   * @param sorting the sorting orders
+   * @param after the cursor of the last record of the previous page, or {@code null}
+   * @param offset the number of records to skip
+   * @param limit the maximum number of records to return
+   * @return the list of matching records
+   */
+  List<HistoryEntity> findAll(
+      HistoryFilter filter,
+      List<HistoryOrder> sorting,
+      @Nullable HistoryCursor after,
+      int offset,
+      int limit);
+
+  /**
+   * Reads all history records matching the filter and passes them to the consumer one by one. Every
+   * history table is read in batches of {@code fetchSize} records, so the memory used does not
+   * depend on the number of records. Records of every table are ordered by the history ID. The
+   * method needs no transaction, and no transaction or connection is held across the batches.
+   *
+   * @param filter the search filter
+   * @param fetchSize the number of records read from the database at a time
+   * @param consumer the consumer of the records
+   */
+  void exportAll(HistoryFilter filter, int fetchSize, Consumer<HistoryEntity> consumer);
+
+  /**
+   * Deletes up to the specified number of history records of the user, ignoring case. The records
+   * are deleted by set-based statements without loading them, so the caller can delete all records
+   * of the user by calling this method in separate transactions until it returns less than the
+   * limit.
+   *
+   * @param userName the username
+   * @param limit the maximum number of records to delete
+   * @return the number of deleted records
+   */
+  int deleteChunkByUserName(String userName, int limit);
+}
@@ -0,0 +1,354 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import static java.util.Optional.ofNullable;
+import static net.soht2.server.dto.HistoryCursor.isDescending;
+import static net.soht2.server.repository.HistoryNgramTrigger.CLIENT_HOST;
+import static net.soht2.server.repository.HistoryNgramTrigger.NGRAM_SIZE;
+import static net.soht2.server.repository.HistoryNgramTrigger.TARGET_HOST;
+import static net.soht2.server.repository.HistoryNgramTrigger.ngrams;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.val;
+import net.soht2.server.dto.HistoryCursor;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.dto.HistoryOrder;
+import net.soht2.server.entity.HistoryEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.lang.Nullable;
+
+class HistoryEntityRepositoryCustomImpl implements HistoryEntityRepositoryCustom {
+
+  private static final String HISTORY_ID = "history_id";
+  private static final String UUID_MIN = "00000000-0000-0000-0000-000000000000";
+  private static final String UUID_MAX = "ffffffff-ffff-ffff-ffff-ffffffffffff";
+  private static final Pattern UUID_PATTERN =
+      Pattern.compile(
+          "\\p{XDigit}{8}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{12}");
+
+  private static final String SQL_DELETE_USER_CHUNK =
+      "DELETE FROM %s WHERE user_name_lc = LOWER(?) FETCH FIRST ? ROWS ONLY";
+
+  private final HistoryPartitionManager historyPartitionManager;
+  private final JdbcTemplate jdbcTemplate;
+
+  @PersistenceContext private EntityManager entityManager;
+
+  HistoryEntityRepositoryCustomImpl(
+      HistoryPartitionManager historyPartitionManager, JdbcTemplate jdbcTemplate) {
+    this.historyPartitionManager = historyPartitionManager;
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Every table is counted by a separate query, so it is read using its own indexes. With the
+   * limit, the remaining tables are counted up to the rest of it only.
+   */
+  @Override
+  public long countAll(HistoryFilter filter, long limit) {
+    long count = 0;
+    for (val table : historyPartitionManager.tables(filter)) {
+      val query = countQuery(table, filter, limit > 0 ? limit - count : 0);
+      count +=
+          ((Number)
+                  bind(entityManager.createNativeQuery(query.sql()), query.params())
+                      .getSingleResult())
+              .longValue();
+      if (limit > 0 && count >= limit) break;
+    }
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Every table is queried separately for its first {@code offset + limit} records, so it is
+   * read using its own indexes, and the sorted results are merged.
+   */
+  @Override
+  public List<HistoryEntity> findAll(
+      HistoryFilter filter,
+      List<HistoryOrder> sorting,
+      @Nullable HistoryCursor after,
+      int offset,
+      int limit) {
+    val tables = historyPartitionManager.tables(filter);
+    val fetchLimit = tables.size() == 1 ? limit : offset + limit;
+    val results =
+        tables.stream()
+            .flatMap(
+                table -> {
+                  val query = findQuery(table, filter, sorting, after);
+                  val result =
+                      (List<?>)
+                          bind(
+                                  entityManager.createNativeQuery(query.sql(), HistoryEntity.class),
+                                  query.params())
+                              .setFirstResult(tables.size() == 1 ? offset : 0)
+                              .setMaxResults(fetchLimit)
+                              .getResultList();
+                  return result.stream().map(HistoryEntity.class::cast);
+                });
+    return tables.size() == 1
+        ? results.toList()
+        : results.sorted(HistoryCursor.comparator(sorting)).skip(offset).limit(limit).toList();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Every batch is read by its own query seeking past the last exported history ID, so the
+   * connection is returned to the pool between the batches.
+   */
+  @Override
+  public void exportAll(HistoryFilter filter, int fetchSize, Consumer<HistoryEntity> consumer) {
+    val namedTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    for (val table : historyPartitionManager.tables(filter)) {
+      HistoryCursor after = null;
+      List<HistoryEntity> batch;
+      do {
+        val query = findQuery(table, filter, List.of(), after);
+        query.params().put("fetchSize", fetchSize);
+        batch =
+            namedTemplate.query(
+                query.sql() + " LIMIT :fetchSize", query.params(), (rs, i) -> toEntity(rs));
+        batch.forEach(consumer);
+        if (!batch.isEmpty())
+          after = new HistoryCursor(List.of(), List.of(), batch.getLast().getId());
+      } while (batch.size() == fetchSize);
+    }
+  }
+
+  @Override
+  public int deleteChunkByUserName(String userName, int limit) {
+    int deleted = 0;
+    for (val table : historyPartitionManager.tables(HistoryFilter.builder().build())) {
+      if (deleted >= limit) break;
+      deleted +=
+          jdbcTemplate.update(SQL_DELETE_USER_CHUNK.formatted(table), userName, limit - deleted);
+    }
+    return deleted;
+  }
+
+  private static HistoryEntity toEntity(ResultSet rs) throws SQLException {
+    return HistoryEntity.builder()
+        .id(rs.getLong("history_id"))
+        .userName(rs.getString("user_name"))
+        .connectionId(rs.getObject("connection_id", UUID.class))
+        .clientHost(rs.getString("client_host"))
+        .targetHost(rs.getString("target_host"))
+        .targetPort(rs.getInt("target_port"))
+        .openedAt(rs.getObject("opened_at", LocalDateTime.class))
+        .closedAt(rs.getObject("closed_at", LocalDateTime.class))
+        .bytesRead(rs.getLong("bytes_read"))
+        .bytesWritten(rs.getLong("bytes_written"))
+        .build();
+  }
+
+  /** Native SQL query with its named parameters. */
+  record SqlQuery(String sql, Map<String, Object> params) {}
+
+  /** Builds the query counting matching records in the given history table. */
+  static SqlQuery countQuery(String table, HistoryFilter filter, long limit) {
+    val params = new HashMap<String, Object>();
+    val sql =
+        new StringBuilder(limit > 0 ? "SELECT COUNT(*) FROM (SELECT 1" : "SELECT COUNT(*)")
+            .append(" FROM ")
+            .append(table)
+            .append(" h WHERE 1 = 1");
+    appendFilter(sql, params, table, filter);
+    if (limit > 0) {
+      sql.append(" LIMIT :countLimit) t");
+      params.put("countLimit", limit);
+    }
+    return new SqlQuery(sql.toString(), params);
+  }
+
+  /** Builds the query selecting matching records from the given history table. */
+  static SqlQuery findQuery(
+      String table,
+      HistoryFilter filter,
+      List<HistoryOrder> sorting,
+      @Nullable HistoryCursor after) {
+    val params = new HashMap<String, Object>();
+    val sql = new StringBuilder("SELECT h.* FROM ").append(table).append(" h WHERE 1 = 1");
+    appendFilter(sql, params, table, filter);
+    if (after != null) appendSeek(sql, params, after);
+    sql.append(
+        Stream.concat(
+                sorting.stream()
+                    .map(o -> "h." + o.field().field() + (isDescending(o) ? " DESC" : " ASC")),
+                Stream.of("h." + HISTORY_ID + " ASC"))
+            .collect(Collectors.joining(", ", " ORDER BY ", "")));
+    return new SqlQuery(sql.toString(), params);
+  }
+
+  /**
+   * Appends the filter conditions. Text patterns are matched against the lowercase generated
+   * columns, so a pattern with a literal prefix is an index range scan. A connection ID prefix is
+   * matched as a range of UUIDs. A host pattern starting with a wildcard is narrowed down by the
+   * trigrams of its literal part first.
+   */
+  private static void appendFilter(
+      StringBuilder sql, Map<String, Object> params, String table, HistoryFilter filter) {
+    val ngramTable = HistoryPartitionManager.ngramTableName(table);
+    appendLike(sql, params, "h.user_name_lc", "userName", filter.userName());
+    appendConnectionId(sql, params, filter.connectionId());
+    appendLike(sql, params, "h.client_host_lc", "clientHost", filter.clientHost());
+    appendNgrams(sql, params, ngramTable, CLIENT_HOST, "clientHostNgrams", filter.clientHost());
+    appendLike(sql, params, "h.target_host_lc", "targetHost", filter.targetHost());
+    appendNgrams(sql, params, ngramTable, TARGET_HOST, "targetHostNgrams", filter.targetHost());
+    if (filter.targetPorts() != null && !filter.targetPorts().isEmpty()) {
+      sql.append(" AND h.target_port IN (:targetPorts)");
+      params.put("targetPorts", filter.targetPorts());
+    }
+    appendCompare(sql, params, "h.opened_at >= :openedAfter", "openedAfter", filter.openedAfter());
+    appendCompare(
+        sql, params, "h.opened_at <= :openedBefore", "openedBefore", filter.openedBefore());
+    appendCompare(sql, params, "h.closed_at >= :closedAfter", "closedAfter", filter.closedAfter());
+    appendCompare(
+        sql, params, "h.closed_at <= :closedBefore", "closedBefore", filter.closedBefore());
+  }
+
+  private static void appendLike(
+      StringBuilder sql,
+      Map<String, Object> params,
+      String column,
+      String name,
+      @Nullable String value) {
+    if (value == null) return;
+    sql.append(" AND ").append(column).append(" LIKE LOWER(:").append(name).append(") ESCAPE '\\'");
+    params.put(name, value);
+  }
+
+  private static void appendConnectionId(
+      StringBuilder sql, Map<String, Object> params, @Nullable String pattern) {
+    if (pattern == null) return;
+    val isPrefix = pattern.endsWith("%");
+    val value = literal(isPrefix ? pattern.substring(0, pattern.length() - 1) : pattern);
+    val from = ofNullable(value).flatMap(v -> uuidBound(v, UUID_MIN));
+    val to = ofNullable(value).flatMap(v -> uuidBound(v, UUID_MAX));
+    if (from.isPresent() && to.isPresent() && (isPrefix || from.equals(to))) {
+      sql.append(" AND h.connection_id BETWEEN :connectionIdFrom AND :connectionIdTo");
+      params.put("connectionIdFrom", from.get());
+      params.put("connectionIdTo", to.get());
+    } else
+      appendLike(sql, params, "LOWER(CAST(h.connection_id AS VARCHAR))", "connectionId", pattern);
+  }
+
+  private static Optional<UUID> uuidBound(String prefix, String filler) {
+    val lowerCase = prefix.toLowerCase(Locale.ROOT);
+    if (lowerCase.length() > filler.length()) return Optional.empty();
+    val value = lowerCase + filler.substring(lowerCase.length());
+    return UUID_PATTERN.matcher(value).matches()
+        ? Optional.of(UUID.fromString(value))
+        : Optional.empty();
+  }
+
+  private static void appendNgrams(
+      StringBuilder sql,
+      Map<String, Object> params,
+      String ngramTable,
+      String hostKind,
+      String name,
+      @Nullable String pattern) {
+    if (pattern == null || !pattern.startsWith("%")) return;
+    val body = pattern.substring(1);
+    val substring =
+        body.endsWith("%") && !body.endsWith("\\%")
+            ? literal(body.substring(0, body.length() - 1))
+            : literal(body);
+    if (substring == null || substring.length() < NGRAM_SIZE) return;
+    val ngrams = ngrams(substring);
+    sql.append(" AND h.")
+        .append(HISTORY_ID)
+        .append(" IN (SELECT g.history_id FROM ")
+        .append(ngramTable)
+        .append(" g WHERE g.ngram IN (:")
+        .append(name)
+        .append(") AND g.host_kind = '")
+        .append(hostKind)
+        .append("' GROUP BY g.history_id HAVING COUNT(*) = ")
+        .append(ngrams.size())
+        .append(")");
+    params.put(name, ngrams);
+  }
+
+  /**
+   * Unescapes the {@code LIKE} pattern without wildcards.
+   *
+   * @return the literal value, or {@code null} if the pattern contains wildcards
+   */
+  private static @Nullable String literal(String pattern) {
+    val literal = new StringBuilder(pattern.length());
+    for (int i = 0; i < pattern.length(); i++) {
+      val c = pattern.charAt(i);
+      if (c == '\\' && i + 1 < pattern.length()) literal.append(pattern.charAt(++i));
+      else if (c == '%' || c == '_') return null;
+      else literal.append(c);
+    }
+    return literal.toString();
+  }
+
+  private static void appendCompare(
+      StringBuilder sql,
+      Map<String, Object> params,
+      String condition,
+      String name,
+      @Nullable Object value) {
+    if (value == null) return;
+    sql.append(" AND ").append(condition);
+    params.put(name, value);
+  }
+
+  /**
+   * Appends the condition selecting records that follow the cursor. For sorting {@code (a ASC, b
+   * DESC)} it is {@code a >= :k0 AND (a > :k0 OR (a = :k0 AND (b < :k1 OR (b = :k1 AND id >
+   * :k2))))}; the leading range on the first column lets the database use an index on it.
+   */
+  private static void appendSeek(
+      StringBuilder sql, Map<String, Object> params, HistoryCursor after) {
+    val size = after.sorting().size();
+    for (int i = 0; i < size; i++) params.put("k" + i, after.values().get(i));
+    params.put("k" + size, after.historyId());
+
+    var condition = "h." + HISTORY_ID + " > :k" + size;
+    for (int i = size - 1; i >= 0; i--) {
+      val order = after.sorting().get(i);
+      val column = "h." + order.field().field();
+      condition =
+          "%s %s :k%d OR (%s = :k%d AND (%s))"
+              .formatted(column, isDescending(order) ? "<" : ">", i, column, i, condition);
+    }
+    if (size > 0) {
+      val first = after.sorting().getFirst();
+      sql.append(" AND h.")
+          .append(first.field().field())
+          .append(isDescending(first) ? " <= :k0" : " >= :k0");
+    }
+    sql.append(" AND (").append(condition).append(")");
+  }
+
+  private static Query bind(Query query, Map<String, Object> params) {
+    params.forEach(query::setParameter);
+    return query;
+  }
+}
@@ -0,0 +1,99 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import lombok.val;
+import org.h2.api.Trigger;
+
+/**
+ * H2 trigger maintaining the n-gram table of a history partition, e.g. {@code
+ * soht2_history_ngram_p202508} for {@code soht2_history_p202508}. For every inserted history record
+ * it stores distinct trigrams of the lowercase client and target hosts, which are used to find
+ * records by a host substring without scanning the whole partition. The trigrams are deleted
+ * together with the history record by the foreign key cascade.
+ */
+public class HistoryNgramTrigger implements Trigger {
+
+  /** The length of the n-grams. */
+  static final int NGRAM_SIZE = 3;
+
+  /** The host kind of the client host n-grams. */
+  static final String CLIENT_HOST = "C";
+
+  /** The host kind of the target host n-grams. */
+  static final String TARGET_HOST = "T";
+
+  private static final String SQL_INSERT =
+      "INSERT INTO %s (ngram, host_kind, history_id) VALUES (?, ?, ?)";
+
+  private String ngramTable;
+  private int historyIdIndex = -1;
+  private int clientHostIndex = -1;
+  private int targetHostIndex = -1;
+
+  @Override
+  public void init(
+      Connection conn,
+      String schemaName,
+      String triggerName,
+      String tableName,
+      boolean before,
+      int type)
+      throws SQLException {
+    ngramTable = HistoryPartitionManager.ngramTableName(tableName);
+    try (val columns = conn.getMetaData().getColumns(null, schemaName, tableName, null)) {
+      while (columns.next()) {
+        val index = columns.getInt("ORDINAL_POSITION") - 1;
+        switch (columns.getString("COLUMN_NAME").toUpperCase(Locale.ROOT)) {
+          case "HISTORY_ID" -> historyIdIndex = index;
+          case "CLIENT_HOST" -> clientHostIndex = index;
+          case "TARGET_HOST" -> targetHostIndex = index;
+          default -> {
+            // not used by the trigger
+          }
+        }
+      }
+    }
+    if (historyIdIndex < 0 || clientHostIndex < 0 || targetHostIndex < 0)
+      throw new SQLException("Table " + tableName + " does not have the history columns");
+  }
+
+  @Override
+  public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+    if (newRow == null) return;
+    try (val stmt = conn.prepareStatement(SQL_INSERT.formatted(ngramTable))) {
+      val historyId = ((Number) newRow[historyIdIndex]).longValue();
+      for (val ngram : ngrams((String) newRow[clientHostIndex])) {
+        stmt.setString(1, ngram);
+        stmt.setString(2, CLIENT_HOST);
+        stmt.setLong(3, historyId);
+        stmt.addBatch();
+      }
+      for (val ngram : ngrams((String) newRow[targetHostIndex])) {
+        stmt.setString(1, ngram);
+        stmt.setString(2, TARGET_HOST);
+        stmt.setLong(3, historyId);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  /**
+   * Splits the lowercase value into distinct n-grams of {@link #NGRAM_SIZE} characters.
+   *
+   * @param value the value to split
+   * @return the set of n-grams, empty if the value is shorter than an n-gram
+   */
+  static Set<String> ngrams(String value) {
+    val lowerCase = value.toLowerCase(Locale.ROOT);
+    val ngrams = new LinkedHashSet<String>();
+    for (int i = 0; i + NGRAM_SIZE <= lowerCase.length(); i++)
+      ngrams.add(lowerCase.substring(i, i + NGRAM_SIZE));
+    return ngrams;
+  }
+}
@@ -0,0 +1,246 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.soht2.server.dto.HistoryFilter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Manages monthly partitions of the connection history. Every partition is a pair of tables: {@code
+ * soht2_history_pYYYYMM} with the records opened in the month and {@code
+ * soht2_history_ngram_pYYYYMM} with their host trigrams. Records of months without a partition are
+ * stored in the default partition {@code soht2_history_default}. The {@code soht2_history} view
+ * unions all partitions and routes inserted and deleted records by {@link HistoryPartitionTrigger}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HistoryPartitionManager {
+
+  /** The table of the default partition. */
+  static final String DEFAULT_TABLE = "soht2_history_default";
+
+  /** The stored columns of the history tables. */
+  static final String COLUMNS =
+      "history_id, user_name, connection_id, client_host, target_host, target_port,"
+          + " opened_at, closed_at, bytes_read, bytes_written";
+
+  private static final String TABLE_PREFIX = "soht2_history";
+  private static final String PARTITION_PREFIX = TABLE_PREFIX + "_p";
+  private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+  private static final Pattern PARTITION_PATTERN =
+      Pattern.compile(PARTITION_PREFIX + "(\\d{6})", Pattern.CASE_INSENSITIVE);
+
+  private static final String SQL_TABLES =
+      "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES"
+          + " WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_TYPE = 'BASE TABLE'";
+
+  private static final String SQL_CREATE_VIEW = "CREATE OR REPLACE VIEW soht2_history AS ";
+
+  private static final String SQL_SELECT_PARTITION =
+      "SELECT " + COLUMNS + ", user_name_lc, client_host_lc, target_host_lc FROM %s";
+
+  private static final List<String> SQL_CREATE_PARTITION =
+      List.of(
+          """
+          CREATE TABLE %1$s (
+            history_id     BIGINT       NOT NULL,
+            user_name      VARCHAR(30)  NOT NULL,
+            connection_id  UUID         NOT NULL,
+            client_host    VARCHAR(255) NOT NULL,
+            target_host    VARCHAR(255) NOT NULL,
+            target_port    INT          NOT NULL,
+            opened_at      TIMESTAMP    NOT NULL,
+            closed_at      TIMESTAMP    NOT NULL,
+            bytes_read     BIGINT       NOT NULL DEFAULT 0,
+            bytes_written  BIGINT       NOT NULL DEFAULT 0,
+            user_name_lc   VARCHAR(30)  GENERATED ALWAYS AS (LOWER(user_name)),
+            client_host_lc VARCHAR(255) GENERATED ALWAYS AS (LOWER(client_host)),
+            target_host_lc VARCHAR(255) GENERATED ALWAYS AS (LOWER(target_host)),
+            CONSTRAINT %1$s_pk PRIMARY KEY (history_id),
+            CONSTRAINT %1$s_ck CHECK (opened_at >= TIMESTAMP '%3$s' AND opened_at < TIMESTAMP '%4$s')
+          )\
+          """,
+          "CREATE INDEX %1$s_un_lc_idx ON %1$s (user_name_lc)",
+          "CREATE INDEX %1$s_ci_idx ON %1$s (connection_id)",
+          "CREATE INDEX %1$s_ch_lc_idx ON %1$s (client_host_lc)",
+          "CREATE INDEX %1$s_th_lc_idx ON %1$s (target_host_lc)",
+          "CREATE INDEX %1$s_tp_idx ON %1$s (target_port)",
+          "CREATE INDEX %1$s_oa_idx ON %1$s (opened_at)",
+          "CREATE INDEX %1$s_ca_idx ON %1$s (closed_at)",
+          """
+          CREATE TABLE %2$s (
+            ngram      VARCHAR(3) NOT NULL,
+            host_kind  CHAR(1)    NOT NULL,
+            history_id BIGINT     NOT NULL,
+            CONSTRAINT %2$s_pk PRIMARY KEY (ngram, host_kind, history_id),
+            CONSTRAINT %2$s_fk FOREIGN KEY (history_id)
+              REFERENCES %1$s (history_id) ON DELETE CASCADE
+          )\
+          """,
+          "CREATE TRIGGER %1$s_ngram_trg AFTER INSERT ON %1$s FOR EACH ROW CALL '"
+              + HistoryNgramTrigger.class.getName()
+              + "'");
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private volatile List<YearMonth> partitions = List.of();
+
+  @PostConstruct
+  void init() {
+    partitions =
+        jdbcTemplate.queryForList(SQL_TABLES, String.class).stream()
+            .map(PARTITION_PATTERN::matcher)
+            .filter(Matcher::matches)
+            .map(m -> YearMonth.parse(m.group(1), MONTH_FORMAT))
+            .sorted()
+            .toList();
+    log.info("init: partitions={}", partitions);
+  }
+
+  /**
+   * Returns the months having a partition.
+   *
+   * @return the sorted list of months
+   */
+  public List<YearMonth> partitions() {
+    return partitions;
+  }
+
+  /**
+   * Returns the tables to search for records matching the filter. Partitions that cannot contain
+   * such records by the {@code openedAfter}, {@code openedBefore} and {@code closedBefore} bounds
+   * are pruned; the default partition is always searched.
+   *
+   * @param filter the search filter
+   * @return the list of table names
+   */
+  public List<String> tables(HistoryFilter filter) {
+    return Stream.concat(
+            Stream.of(DEFAULT_TABLE),
+            partitions.stream()
+                .filter(
+                    m ->
+                        (filter.openedAfter() == null || end(m).isAfter(filter.openedAfter()))
+                            && (filter.openedBefore() == null
+                                || !start(m).isAfter(filter.openedBefore()))
+                            // a record is closed after it is opened
+                            && (filter.closedBefore() == null
+                                || !start(m).isAfter(filter.closedBefore())))
+                .map(HistoryPartitionManager::tableName))
+        .toList();
+  }
+
+  /**
+   * Creates partitions for the months that do not have them yet. Records of these months inserted
+   * later are stored in the new partitions; already stored records stay where they are.
+   *
+   * @param months the months to create partitions for
+   * @return the months for which partitions were created
+   */
+  public synchronized List<YearMonth> createPartitions(Collection<YearMonth> months) {
+    val created = months.stream().distinct().filter(m -> !partitions.contains(m)).toList();
+    if (created.isEmpty()) return created;
+    created.forEach(
+        m -> {
+          val table = tableName(m);
+          SQL_CREATE_PARTITION.forEach(
+              sql ->
+                  jdbcTemplate.execute(
+                      sql.formatted(table, ngramTableName(table), start(m), end(m))));
+        });
+    val updated = new TreeSet<>(partitions);
+    updated.addAll(created);
+    replaceView(List.copyOf(updated));
+    log.info("createPartitions: {}", created);
+    return created;
+  }
+
+  /**
+   * Drops the partitions containing only records opened before the cutoff. A whole partition is
+   * dropped at once, which is much cheaper than deleting its records one by one.
+   *
+   * @param cutoff the time before which records are expired
+   * @return the months whose partitions were dropped
+   */
+  public synchronized List<YearMonth> dropPartitionsBefore(LocalDateTime cutoff) {
+    val dropped = partitions.stream().filter(m -> !end(m).isAfter(cutoff)).toList();
+    if (dropped.isEmpty()) return dropped;
+    replaceView(partitions.stream().filter(m -> !dropped.contains(m)).toList());
+    dropped.forEach(
+        m -> {
+          val table = tableName(m);
+          jdbcTemplate.execute("DROP TABLE " + ngramTableName(table));
+          jdbcTemplate.execute("DROP TABLE " + table);
+        });
+    log.info("dropPartitionsBefore: cutoff={}, dropped={}", cutoff, dropped);
+    return dropped;
+  }
+
+  /**
+   * Deletes records opened before the cutoff from the default partition.
+   *
+   * @param cutoff the time before which records are expired
+   * @return the number of deleted records
+   */
+  public int purgeDefaultPartition(LocalDateTime cutoff) {
+    val deleted =
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_TABLE + " WHERE opened_at < ?", cutoff);
+    log.info("purgeDefaultPartition: cutoff={}, deleted={}", cutoff, deleted);
+    return deleted;
+  }
+
+  private void replaceView(List<YearMonth> months) {
+    jdbcTemplate.execute(
+        Stream.concat(
+                Stream.of(DEFAULT_TABLE), months.stream().map(HistoryPartitionManager::tableName))
+            .map(SQL_SELECT_PARTITION::formatted)
+            .collect(Collectors.joining(" UNION ALL ", SQL_CREATE_VIEW, "")));
+    partitions = months;
+  }
+
+  /**
+   * Returns the table of the partition for the given month.
+   *
+   * @param month the month
+   * @return the table name
+   */
+  static String tableName(YearMonth month) {
+    return PARTITION_PREFIX + month.format(MONTH_FORMAT);
+  }
+
+  /**
+   * Returns the n-gram table of the given history table.
+   *
+   * @param table the history table name
+   * @return the n-gram table name
+   */
+  static String ngramTableName(String table) {
+    return TABLE_PREFIX
+        + "_ngram"
+        + table.toLowerCase(Locale.ROOT).substring(TABLE_PREFIX.length());
+  }
+
+  private static LocalDateTime start(YearMonth month) {
+    return month.atDay(1).atStartOfDay();
+  }
+
+  private static LocalDateTime end(YearMonth month) {
+    return start(month.plusMonths(1));
+  }
+}
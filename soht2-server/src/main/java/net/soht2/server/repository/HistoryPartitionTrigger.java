@@ -0,0 +1,134 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import static net.soht2.server.repository.HistoryPartitionManager.COLUMNS;
+import static net.soht2.server.repository.HistoryPartitionManager.DEFAULT_TABLE;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.val;
+import org.h2.api.ErrorCode;
+import org.h2.api.Trigger;
+
+/**
+ * H2 {@code INSTEAD OF} trigger of the {@code soht2_history} view. It stores an inserted record in
+ * the partition of its {@code opened_at} month, or in the default partition if the month has no
+ * partition, and deletes a record from the partition it is stored in.
+ */
+public class HistoryPartitionTrigger implements Trigger {
+
+  private static final String[] COLUMN_NAMES = COLUMNS.split(",\\s*");
+
+  private static final String SQL_INSERT =
+      "INSERT INTO %s ("
+          + COLUMNS
+          + ") VALUES ("
+          + String.join(", ", Arrays.stream(COLUMN_NAMES).map(c -> "?").toList())
+          + ")";
+
+  private static final String SQL_DELETE = "DELETE FROM %s WHERE history_id = ?";
+
+  private static final String SQL_TABLE_EXISTS =
+      "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES"
+          + " WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = ?";
+
+  private final int[] columnIndexes = new int[COLUMN_NAMES.length];
+  private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+  private int historyIdIndex;
+  private int openedAtIndex;
+
+  @Override
+  public void init(
+      Connection conn,
+      String schemaName,
+      String triggerName,
+      String tableName,
+      boolean before,
+      int type)
+      throws SQLException {
+    Arrays.fill(columnIndexes, -1);
+    try (val columns = conn.getMetaData().getColumns(null, schemaName, tableName, null)) {
+      while (columns.next()) {
+        val name = columns.getString("COLUMN_NAME").toLowerCase(Locale.ROOT);
+        for (int i = 0; i < COLUMN_NAMES.length; i++)
+          if (COLUMN_NAMES[i].equals(name))
+            columnIndexes[i] = columns.getInt("ORDINAL_POSITION") - 1;
+      }
+    }
+    if (Arrays.stream(columnIndexes).anyMatch(i -> i < 0))
+      throw new SQLException("View " + tableName + " does not have the history columns");
+    historyIdIndex = columnIndexes[Arrays.asList(COLUMN_NAMES).indexOf("history_id")];
+    openedAtIndex = columnIndexes[Arrays.asList(COLUMN_NAMES).indexOf("opened_at")];
+  }
+
+  @Override
+  public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+    if (newRow != null) insert(conn, newRow);
+    else if (oldRow != null) delete(conn, oldRow);
+  }
+
+  private void insert(Connection conn, Object[] row) throws SQLException {
+    val partition = partitionTable(row);
+    if (partition != null && isPartition(conn, partition))
+      try {
+        insert(conn, partition, row);
+        return;
+      } catch (SQLException e) {
+        // the partition has been dropped in the meantime
+        if (e.getErrorCode() != ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1) throw e;
+        partitions.remove(partition);
+      }
+    insert(conn, DEFAULT_TABLE, row);
+  }
+
+  private void insert(Connection conn, String table, Object[] row) throws SQLException {
+    try (val stmt = conn.prepareStatement(SQL_INSERT.formatted(table))) {
+      for (int i = 0; i < columnIndexes.length; i++) stmt.setObject(i + 1, row[columnIndexes[i]]);
+      stmt.executeUpdate();
+    }
+  }
+
+  private void delete(Connection conn, Object[] row) throws SQLException {
+    val partition = partitionTable(row);
+    if (partition != null && isPartition(conn, partition) && delete(conn, partition, row) > 0)
+      return;
+    delete(conn, DEFAULT_TABLE, row);
+  }
+
+  private int delete(Connection conn, String table, Object[] row) throws SQLException {
+    try (val stmt = conn.prepareStatement(SQL_DELETE.formatted(table))) {
+      stmt.setObject(1, row[historyIdIndex]);
+      return stmt.executeUpdate();
+    }
+  }
+
+  private String partitionTable(Object[] row) {
+    val openedAt = row[openedAtIndex];
+    if (openedAt instanceof LocalDateTime v)
+      return HistoryPartitionManager.tableName(YearMonth.from(v));
+    if (openedAt instanceof Timestamp v)
+      return HistoryPartitionManager.tableName(YearMonth.from(v.toLocalDateTime()));
+    return null;
+  }
+
+  private boolean isPartition(Connection conn, String table) throws SQLException {
+    if (partitions.contains(table)) return true;
+    try (val stmt = conn.prepareStatement(SQL_TABLE_EXISTS)) {
+      stmt.setString(1, table.toUpperCase(Locale.ROOT));
+      try (val rs = stmt.executeQuery()) {
+        if (rs.next() && rs.getLong(1) > 0) {
+          partitions.add(table);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,217 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import static java.util.Optional.ofNullable;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
+import net.soht2.server.dto.StatsGrain;
+import net.soht2.server.entity.HistoryEntity;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository of the connection history rollups. Every rollup table aggregates the connections
+ * opened in a period of its {@link StatsGrain} by user, target host and port, and client host, so
+ * the statistics are read from a number of rows that does not depend on the size of the history.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HistoryRollupRepository {
+
+  private static final String PERIOD_START = "period_start";
+
+  private static final String SQL_MERGE =
+      """
+      MERGE INTO %s t
+      USING (SELECT CAST(:periodStart AS TIMESTAMP) period_start,
+                    CAST(:userName AS VARCHAR(30)) user_name,
+                    CAST(:targetHost AS VARCHAR(255)) target_host,
+                    CAST(:targetPort AS INT) target_port,
+                    CAST(:clientHost AS VARCHAR(255)) client_host,
+                    CAST(:connections AS BIGINT) connections,
+                    CAST(:durationMs AS BIGINT) duration_ms,
+                    CAST(:bytesRead AS BIGINT) bytes_read,
+                    CAST(:bytesWritten AS BIGINT) bytes_written) s
+      ON t.period_start = s.period_start
+        AND t.user_name = s.user_name
+        AND t.target_host = s.target_host
+        AND t.target_port = s.target_port
+        AND t.client_host = s.client_host
+      WHEN MATCHED THEN UPDATE SET
+        connections = t.connections + s.connections,
+        duration_ms = t.duration_ms + s.duration_ms,
+        bytes_read = t.bytes_read + s.bytes_read,
+        bytes_written = t.bytes_written + s.bytes_written
+      WHEN NOT MATCHED THEN INSERT VALUES (s.period_start, s.user_name, s.target_host,
+        s.target_port, s.client_host, s.connections, s.duration_ms, s.bytes_read, s.bytes_written)\
+      """;
+
+  private static final String SQL_DELETE_USER = "DELETE FROM %s WHERE LOWER(user_name) = :userName";
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  /**
+   * Adds the history records to the rollups of every grain. The records are aggregated first, so
+   * every affected rollup row is updated once per call.
+   *
+   * @param history the written history records
+   */
+  public void add(Collection<HistoryEntity> history) {
+    if (history.isEmpty()) return;
+    for (val grain : StatsGrain.values()) {
+      val rollups = new LinkedHashMap<RollupKey, long[]>();
+      history.forEach(
+          h -> {
+            val totals =
+                rollups.computeIfAbsent(
+                    new RollupKey(
+                        grain.periodStart(h.getOpenedAt()),
+                        h.getUserName(),
+                        h.getTargetHost(),
+                        h.getTargetPort(),
+                        h.getClientHost()),
+                    k -> new long[4]);
+            totals[0]++;
+            totals[1] += durationMillis(h);
+            totals[2] += ofNullable(h.getBytesRead()).orElse(0L);
+            totals[3] += ofNullable(h.getBytesWritten()).orElse(0L);
+          });
+      jdbcTemplate.batchUpdate(
+          SQL_MERGE.formatted(grain.table()),
+          rollups.entrySet().stream()
+              .map(
+                  e ->
+                      new MapSqlParameterSource()
+                          .addValue("periodStart", Timestamp.valueOf(e.getKey().periodStart()))
+                          .addValue("userName", e.getKey().userName())
+                          .addValue("targetHost", e.getKey().targetHost())
+                          .addValue("targetPort", e.getKey().targetPort())
+                          .addValue("clientHost", e.getKey().clientHost())
+                          .addValue("connections", e.getValue()[0])
+                          .addValue("durationMs", e.getValue()[1])
+                          .addValue("bytesRead", e.getValue()[2])
+                          .addValue("bytesWritten", e.getValue()[3]))
+              .toArray(SqlParameterSource[]::new));
+    }
+  }
+
+  /**
+   * Deletes the rollups of the user, ignoring case.
+   *
+   * @param userName the username
+   */
+  public void deleteByUserName(String userName) {
+    for (val grain : StatsGrain.values())
+      jdbcTemplate.update(
+          SQL_DELETE_USER.formatted(grain.table()),
+          Map.of("userName", userName.toLowerCase(Locale.ROOT)));
+  }
+
+  /**
+   * Aggregates the rollups matching the query. Groups are ordered by the period, if it is one of
+   * the dimensions, and then by the metric in descending order.
+   *
+   * @param query the statistics query
+   * @return the aggregated statistics of up to {@link HistoryStatsQuery#limit()} groups
+   */
+  public List<HistoryStats> find(HistoryStatsQuery query) {
+    val params = new HashMap<String, Object>();
+    val groupBy = query.groupBy().stream().flatMap(g -> g.fields().stream()).distinct().toList();
+    val sql =
+        new StringBuilder("SELECT ")
+            .append(groupBy.stream().map(f -> f + ", ").collect(Collectors.joining()))
+            .append(
+                "COALESCE(SUM(connections), 0) connections,"
+                    + " COALESCE(SUM(duration_ms), 0) duration_ms,"
+                    + " COALESCE(SUM(bytes_read), 0) bytes_read,"
+                    + " COALESCE(SUM(bytes_written), 0) bytes_written FROM ")
+            .append(query.grain().table())
+            .append(" WHERE period_start >= :from AND period_start < :to");
+    params.put("from", Timestamp.valueOf(query.grain().periodStart(query.from())));
+    params.put("to", Timestamp.valueOf(query.grain().periodCeiling(query.to())));
+    appendLike(sql, params, "user_name", "userName", query.userName());
+    appendLike(sql, params, "target_host", "targetHost", query.targetHost());
+    appendLike(sql, params, "client_host", "clientHost", query.clientHost());
+    if (query.targetPorts() != null && !query.targetPorts().isEmpty()) {
+      sql.append(" AND target_port IN (:targetPorts)");
+      params.put("targetPorts", query.targetPorts());
+    }
+    if (!groupBy.isEmpty()) sql.append(" GROUP BY ").append(String.join(", ", groupBy));
+    val orderBy = new ArrayList<String>();
+    if (groupBy.contains(PERIOD_START)) orderBy.add(PERIOD_START);
+    orderBy.add(query.orderBy().field() + " DESC");
+    groupBy.stream().filter(f -> !f.equals(PERIOD_START)).forEach(orderBy::add);
+    sql.append(" ORDER BY ").append(String.join(", ", orderBy)).append(" LIMIT :limit");
+    params.put("limit", query.limit());
+    return jdbcTemplate.query(sql.toString(), params, (rs, i) -> toStats(rs, Set.copyOf(groupBy)));
+  }
+
+  private static void appendLike(
+      StringBuilder sql,
+      Map<String, Object> params,
+      String column,
+      String name,
+      @Nullable String value) {
+    if (value == null) return;
+    sql.append(" AND LOWER(")
+        .append(column)
+        .append(") LIKE LOWER(:")
+        .append(name)
+        .append(") ESCAPE '\\'");
+    params.put(name, value);
+  }
+
+  private static HistoryStats toStats(ResultSet rs, Set<String> groupBy) throws SQLException {
+    return HistoryStats.builder()
+        .period(
+            groupBy.contains(PERIOD_START) ? rs.getTimestamp(PERIOD_START).toLocalDateTime() : null)
+        .userName(groupBy.contains("user_name") ? rs.getString("user_name") : null)
+        .targetHost(groupBy.contains("target_host") ? rs.getString("target_host") : null)
+        .targetPort(groupBy.contains("target_port") ? rs.getInt("target_port") : null)
+        .clientHost(groupBy.contains("client_host") ? rs.getString("client_host") : null)
+        .connections(rs.getLong("connections"))
+        .durationMillis(rs.getLong("duration_ms"))
+        .bytesRead(rs.getLong("bytes_read"))
+        .bytesWritten(rs.getLong("bytes_written"))
+        .build();
+  }
+
+  /**
+   * Returns the duration of the connection as it is added to the rollups.
+   *
+   * @param entity the history record
+   * @return the duration in milliseconds, zero if the connection is not closed
+   */
+  public static long durationMillis(HistoryEntity entity) {
+    return entity.getClosedAt() == null
+        ? 0
+        : Math.max(Duration.between(entity.getOpenedAt(), entity.getClosedAt()).toMillis(), 0);
+  }
+
+  private record RollupKey(
+      LocalDateTime periodStart,
+      String userName,
+      String targetHost,
+      int targetPort,
+      String clientHost) {}
+}
@@ -6,14 +6,30 @@ import java.util.List;
 import java.util.Optional;
 import net.soht2.server.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface UserEntityRepository extends JpaRepository<UserEntity, Long> {
+public interface UserEntityRepository
+    extends JpaRepository<UserEntity, Long>, UserEntityRepositoryCustom {
 
   Optional<UserEntity> findByNameIgnoreCase(String name);
 
   List<UserEntity> findAllByNameIgnoreCaseIn(Collection<String> names);
 
   boolean existsByNameIgnoreCase(String name);
+
+  /**
+   * Returns the version of the user table, which changes whenever a user is created, updated or
+   * deleted. It consists of the number of users, the maximum user ID and the latest update time,
+   * which are read from the table metadata and the indexes without scanning the table.
+   *
+   * @return the version of the user table
+   */
+  @Query(
+      value =
+          "SELECT CONCAT(COUNT(*), '-', COALESCE(MAX(user_id), 0), '-', MAX(updated_at))"
+              + " FROM soht2_users",
+      nativeQuery = true)
+  String version();
 }
@@ -0,0 +1,52 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import java.util.Collection;
+import java.util.List;
+import net.soht2.server.dto.UserFilter;
+import net.soht2.server.dto.UserOrder;
+import net.soht2.server.entity.UserEntity;
+
+/**
+ * Search queries of {@link UserEntityRepository} built from the specified filter, and batch writes
+ * of many users.
+ */
+public interface UserEntityRepositoryCustom {
+
+  /**
+   * Counts users matching the filter.
+   *
+   * @param filter the search filter
+   * @return the number of matching users
+   */
+  long countAll(UserFilter filter);
+
+  /**
+   * Finds users matching the filter. Users are ordered by the specified sorting and then by the
+   * user ID, so the order is always deterministic.
+   *
+   * @param filter the search filter
+   * @param sorting the sorting of the users
+   * @param offset the number of users to skip
+   * @param limit the maximum number of users to return
+   * @return the matching users
+   */
+  List<UserEntity> findAll(UserFilter filter, List<UserOrder> sorting, int offset, int limit);
+
+  /**
+   * Inserts new users by a single JDBC batch. Unlike {@code saveAll}, which inserts users with
+   * generated IDs one statement at a time, the batch is sent to the database at once. The IDs are
+   * not set on the entities.
+   *
+   * @param users the users to insert, with all columns set
+   */
+  void insertAll(Collection<UserEntity> users);
+
+  /**
+   * Updates existing users by a single JDBC batch. All columns of the users are written by their
+   * IDs, except for the creation time.
+   *
+   * @param users the users to update, with all columns set
+   */
+  void updateAll(Collection<UserEntity> users);
+}
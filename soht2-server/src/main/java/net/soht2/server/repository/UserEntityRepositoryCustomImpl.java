@@ -0,0 +1,139 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.val;
+import net.soht2.server.dto.SortingDir;
+import net.soht2.server.dto.UserFilter;
+import net.soht2.server.dto.UserOrder;
+import net.soht2.server.entity.UserEntity;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+class UserEntityRepositoryCustomImpl implements UserEntityRepositoryCustom {
+
+  /**
+   * Selects users with any allowed target matching the pattern. H2 cannot unnest an array of the
+   * outer row, so the elements are addressed by their indexes from a range of the longest array.
+   */
+  private static final String SQL_TARGET_FILTER =
+      " AND u.user_id IN (SELECT a.user_id FROM soht2_users a"
+          + " JOIN SYSTEM_RANGE(1, (SELECT MAX(CARDINALITY(targets)) FROM soht2_users)) r"
+          + " ON r.X <= CARDINALITY(a.targets)"
+          + " WHERE LOWER(a.targets[r.X]) LIKE LOWER(:target) ESCAPE '\\')";
+
+  private static final String SQL_INSERT =
+      """
+      INSERT INTO soht2_users (user_name, user_password, user_role, targets, created_at, updated_at)
+      VALUES (:name, :password, :role, :targets, :createdAt, :updatedAt)\
+      """;
+  private static final String SQL_UPDATE =
+      """
+      UPDATE soht2_users
+      SET user_name = :name, user_password = :password, user_role = :role, targets = :targets,
+        updated_at = :updatedAt
+      WHERE user_id = :id\
+      """;
+
+  private final NamedParameterJdbcTemplate jdbcTemplate;
+
+  @PersistenceContext private EntityManager entityManager;
+
+  UserEntityRepositoryCustomImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public long countAll(UserFilter filter) {
+    val params = new HashMap<String, Object>();
+    val sql = new StringBuilder("SELECT COUNT(*) FROM soht2_users u WHERE 1 = 1");
+    appendFilter(sql, params, filter);
+    return ((Number)
+            bind(entityManager.createNativeQuery(sql.toString()), params).getSingleResult())
+        .longValue();
+  }
+
+  @Override
+  public List<UserEntity> findAll(
+      UserFilter filter, List<UserOrder> sorting, int offset, int limit) {
+    val params = new HashMap<String, Object>();
+    val sql = new StringBuilder("SELECT u.* FROM soht2_users u WHERE 1 = 1");
+    appendFilter(sql, params, filter);
+    sql.append(
+        Stream.concat(
+                sorting.stream()
+                    .map(
+                        o ->
+                            "u."
+                                + o.field().field()
+                                + (o.direction() == SortingDir.DESC ? " DESC" : " ASC")),
+                Stream.of("u.user_id ASC"))
+            .collect(Collectors.joining(", ", " ORDER BY ", "")));
+    val result =
+        (List<?>)
+            bind(entityManager.createNativeQuery(sql.toString(), UserEntity.class), params)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    return result.stream().map(UserEntity.class::cast).toList();
+  }
+
+  @Override
+  public void insertAll(Collection<UserEntity> users) {
+    if (!users.isEmpty()) jdbcTemplate.batchUpdate(SQL_INSERT, toParams(users));
+  }
+
+  @Override
+  public void updateAll(Collection<UserEntity> users) {
+    if (!users.isEmpty()) jdbcTemplate.batchUpdate(SQL_UPDATE, toParams(users));
+  }
+
+  private static SqlParameterSource[] toParams(Collection<UserEntity> users) {
+    return users.stream()
+        .map(
+            u ->
+                new MapSqlParameterSource()
+                    .addValue("id", u.getId())
+                    .addValue("name", u.getName())
+                    .addValue("password", u.getPassword())
+                    .addValue("role", u.getRole())
+                    .addValue("targets", u.getAllowedTargets().toArray(String[]::new))
+                    .addValue("createdAt", u.getCreatedAt())
+                    .addValue("updatedAt", u.getUpdatedAt()))
+        .toArray(SqlParameterSource[]::new);
+  }
+
+  /**
+   * Appends the filter conditions. The name is matched against the lowercase generated column and
+   * the role by equality, so both are index range scans.
+   */
+  private static void appendFilter(
+      StringBuilder sql, Map<String, Object> params, UserFilter filter) {
+    if (filter.userName() != null) {
+      sql.append(" AND u.user_name_lc LIKE LOWER(:userName) ESCAPE '\\'");
+      params.put("userName", filter.userName());
+    }
+    if (filter.role() != null) {
+      sql.append(" AND u.user_role = :role");
+      params.put("role", filter.role());
+    }
+    if (filter.target() != null) {
+      sql.append(SQL_TARGET_FILTER);
+      params.put("target", filter.target());
+    }
+  }
+
+  private static Query bind(Query query, Map<String, Object> params) {
+    params.forEach(query::setParameter);
+    return query;
+  }
+}
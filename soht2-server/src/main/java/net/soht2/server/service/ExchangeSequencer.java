@@ -0,0 +1,167 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.service;
+
+import static net.soht2.server.service.ExceptionHelper.badRequest;
+import static net.soht2.server.service.ExceptionHelper.serviceUnavailable;
+
+import io.vavr.CheckedConsumer;
+import io.vavr.CheckedFunction0;
+import io.vavr.control.Try;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * Orders the sequence-numbered requests of a connection, so the client can keep several requests in
+ * flight and retry them safely. Uploads are written to the target in the order of their sequence
+ * numbers whatever order they arrive in, and repeated uploads are ignored. Downloads are served one
+ * by one in the order of their sequence numbers, and their responses are kept until the client
+ * acknowledges them, so a repeated download gets the same response again.
+ *
+ * <p>Sequence numbers of uploads and downloads are independent and start from zero. A request more
+ * than the window size ahead of the next expected one is rejected, and a download waiting for the
+ * preceding ones longer than the timeout fails, so a lost download does not hold up the others.
+ */
+@Slf4j
+public class ExchangeSequencer {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private final int window;
+  private final long timeoutNanos;
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final NavigableMap<Long, byte[]> pendingWrites = new TreeMap<>();
+  private long nextWrite;
+
+  private final ReentrantLock readLock = new ReentrantLock();
+  private final Condition readDone = readLock.newCondition();
+  private final NavigableMap<Long, byte[]> responses = new TreeMap<>();
+  private long nextRead;
+  private volatile boolean closed;
+
+  /**
+   * Creates a sequencer.
+   *
+   * @param window the maximum number of requests of each direction the client may have in flight
+   * @param timeout the maximum time a download waits for the preceding ones
+   */
+  public ExchangeSequencer(int window, Duration timeout) {
+    this.window = window;
+    this.timeoutNanos = timeout.toNanos();
+  }
+
+  /**
+   * Writes the uploaded data in the order of sequence numbers. The data is kept until all preceding
+   * uploads arrive, and then it is passed to the writer along with the uploads following it. If the
+   * writer fails, the sequencer is closed, since the data of the failed upload is lost and the
+   * following ones must not be written behind it.
+   *
+   * @param seq the sequence number of the upload
+   * @param data the uploaded data
+   * @param writer the action writing the data to the target
+   * @return a {@link Try} containing {@code false} if the upload is a repeated one, or an error if
+   *     the sequence number is out of the window, the connection is closed, or writing fails
+   */
+  public Try<Boolean> write(long seq, byte[] data, CheckedConsumer<byte[]> writer) {
+    writeLock.lock();
+    try {
+      if (closed) return Try.failure(new SocketException("Connection closed"));
+      if (seq < nextWrite || pendingWrites.containsKey(seq)) {
+        log.debug("write: repeated - seq={}", seq);
+        return Try.success(false);
+      }
+      if (seq >= nextWrite + window)
+        return Try.failure(badRequest("Upload " + seq + " is out of the window " + nextWrite));
+
+      pendingWrites.put(seq, data);
+      while (!pendingWrites.isEmpty() && pendingWrites.firstKey() == nextWrite) {
+        val next = pendingWrites.pollFirstEntry();
+        val result = Try.run(() -> writer.accept(next.getValue()));
+        if (result.isFailure()) {
+          // a retry must not pass for a repeated upload, so the target is given up
+          pendingWrites.clear();
+          close();
+          return result.map(v -> true);
+        }
+        nextWrite++;
+      }
+      return Try.success(true);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Serves the download in the order of sequence numbers. The download waits until all preceding
+   * downloads are served, and then the reader is called. Responses acknowledged by the client are
+   * discarded, the others are kept and returned again if the download is repeated.
+   *
+   * @param seq the sequence number of the download
+   * @param ack the sequence number of the last download the client received in order, or a negative
+   *     number if none
+   * @param reader the action reading the response from the target
+   * @return a {@link Try} containing the response, or an error if the sequence number is out of the
+   *     window, the preceding downloads are not served in time, the connection is closed, or
+   *     reading fails
+   */
+  public Try<byte[]> read(long seq, long ack, CheckedFunction0<byte[]> reader) {
+    readLock.lock();
+    try {
+      responses.headMap(ack, true).clear();
+      if (seq >= nextRead + window)
+        return Try.failure(badRequest("Download " + seq + " is out of the window " + nextRead));
+      var waitNanos = timeoutNanos;
+      while (seq > nextRead && !closed) {
+        if (waitNanos <= 0)
+          return Try.failure(
+              serviceUnavailable("Download " + seq + " timed out waiting for " + nextRead));
+        waitNanos = readDone.awaitNanos(waitNanos);
+      }
+      if (closed) return Try.failure(new SocketException("Connection closed"));
+      if (seq < nextRead) {
+        log.debug("read: repeated - seq={}", seq);
+        return Try.success(responses.getOrDefault(seq, EMPTY));
+      }
+
+      val result = Try.of(reader);
+      if (result.isSuccess()) {
+        responses.put(seq, result.get());
+        nextRead++;
+      } else closed = true; // the target is broken, the waiting downloads must not hang
+      readDone.signalAll();
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Try.failure(e);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Checks whether the sequencer is closed, either explicitly or by a failure of the target.
+   *
+   * @return {@code true} if the sequencer is closed
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /** Releases the waiting downloads and discards the kept responses. */
+  public void close() {
+    readLock.lock();
+    try {
+      closed = true;
+      responses.clear();
+      readDone.signalAll();
+    } finally {
+      readLock.unlock();
+    }
+  }
+}
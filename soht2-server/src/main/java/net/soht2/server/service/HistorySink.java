@@ -0,0 +1,94 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import net.soht2.server.dto.HistoryCursor;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.dto.HistoryOrder;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
+import net.soht2.server.entity.HistoryEntity;
+import org.springframework.lang.Nullable;
+
+/**
+ * Storage of the connection history used by {@link Soht2HistoryService}. The implementation is
+ * selected by the {@code soht2.server.history-sink.type} property: {@link JpaHistorySink} stores
+ * the history in the H2 database and is the default, {@link MappedHistorySink} appends it to
+ * memory-mapped segment files.
+ */
+public interface HistorySink {
+
+  /**
+   * Writes the history records and assigns their IDs.
+   *
+   * @param history the records to write
+   * @return the written records
+   */
+  List<HistoryEntity> write(Collection<HistoryEntity> history);
+
+  /**
+   * Counts history records matching the filter, but not more than the specified limit.
+   *
+   * @param filter the search filter
+   * @param limit the maximum number of records to count, zero or less for no limit
+   * @return the number of matching records, or the limit if there are more of them
+   */
+  long count(HistoryFilter filter, long limit);
+
+  /**
+   * Finds history records matching the filter. Records are ordered by the specified sorting and
+   * then by the history ID. If the cursor is specified, only records following it are returned.
+   *
+   * @param filter the search filter
+   * @param sorting the sorting orders
+   * @param after the cursor of the last record of the previous page, or {@code null}
+   * @param offset the number of records to skip
+   * @param limit the maximum number of records to return
+   * @return the list of matching records
+   */
+  List<HistoryEntity> find(
+      HistoryFilter filter,
+      List<HistoryOrder> sorting,
+      @Nullable HistoryCursor after,
+      int offset,
+      int limit);
+
+  /**
+   * Reads all history records matching the filter and passes them to the consumer one by one,
+   * without holding them in memory.
+   *
+   * @param filter the search filter
+   * @param consumer the consumer of the records
+   */
+  void export(HistoryFilter filter, Consumer<HistoryEntity> consumer);
+
+  /**
+   * Deletes all history records of the user, ignoring case, in bounded steps.
+   *
+   * @param userName the username
+   * @param progress the consumer of the number of records deleted so far, called after every step
+   * @return the number of deleted records
+   */
+  long deleteByUserName(String userName, LongConsumer progress);
+
+  /**
+   * Performs the periodic maintenance of the storage: prepares it for new records and, if the
+   * cutoff is specified, removes records opened before it.
+   *
+   * @param cutoff the time before which records are expired, or {@code null} to keep all records
+   * @return the number of removed storage units (partitions, segments or records)
+   */
+  long maintain(@Nullable LocalDateTime cutoff);
+
+  /**
+   * Aggregates the connection traffic matching the query.
+   *
+   * @param query the statistics query
+   * @return the aggregated statistics
+   */
+  List<HistoryStats> stats(HistoryStatsQuery query);
+}
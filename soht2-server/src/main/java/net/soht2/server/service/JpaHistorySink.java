@@ -0,0 +1,157 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.service;
+
+import static java.util.Optional.ofNullable;
+
+import io.vavr.control.Try;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.dto.HistoryCursor;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.dto.HistoryOrder;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
+import net.soht2.server.entity.HistoryEntity;
+import net.soht2.server.repository.HistoryEntityRepository;
+import net.soht2.server.repository.HistoryPartitionManager;
+import net.soht2.server.repository.HistoryRollupRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * History sink storing the connection history in the H2 database. Records are stored in monthly
+ * partitions managed by {@link HistoryPartitionManager}, and every written batch updates the
+ * traffic rollups of {@link HistoryRollupRepository} in the same transaction. This is the default
+ * sink.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(
+    prefix = "soht2.server.history-sink",
+    name = "type",
+    havingValue = "jpa",
+    matchIfMissing = true)
+public class JpaHistorySink implements HistorySink {
+
+  private final Soht2ServerConfig soht2ServerConfig;
+  private final HistoryEntityRepository historyEntityRepository;
+  private final HistoryPartitionManager historyPartitionManager;
+  private final HistoryRollupRepository historyRollupRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final TransactionTemplate chunkTemplate;
+
+  public JpaHistorySink(
+      Soht2ServerConfig soht2ServerConfig,
+      HistoryEntityRepository historyEntityRepository,
+      HistoryPartitionManager historyPartitionManager,
+      HistoryRollupRepository historyRollupRepository,
+      TransactionTemplate transactionTemplate) {
+    this.soht2ServerConfig = soht2ServerConfig;
+    this.historyEntityRepository = historyEntityRepository;
+    this.historyPartitionManager = historyPartitionManager;
+    this.historyRollupRepository = historyRollupRepository;
+    this.transactionTemplate = transactionTemplate;
+    // chunks are committed separately even if the deletion is called in a transaction
+    this.chunkTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+    this.chunkTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  @Override
+  public List<HistoryEntity> write(Collection<HistoryEntity> history) {
+    return transactionTemplate.execute(
+        status -> {
+          val saved = historyEntityRepository.saveAll(history);
+          historyRollupRepository.add(saved);
+          return saved;
+        });
+  }
+
+  @Override
+  public long count(HistoryFilter filter, long limit) {
+    return historyEntityRepository.countAll(filter, limit);
+  }
+
+  @Override
+  public List<HistoryEntity> find(
+      HistoryFilter filter,
+      List<HistoryOrder> sorting,
+      @Nullable HistoryCursor after,
+      int offset,
+      int limit) {
+    return historyEntityRepository.findAll(filter, sorting, after, offset, limit);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Every history table is read in batches by short queries outside a transaction, so a slow
+   * client does not keep a pooled connection for the whole export.
+   */
+  @Override
+  public void export(HistoryFilter filter, Consumer<HistoryEntity> consumer) {
+    historyEntityRepository.exportAll(
+        filter, soht2ServerConfig.getHistorySearch().getExportFetchSize(), consumer);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The records are deleted in chunks of the configured size, every chunk in its own
+   * transaction, and then the rollups of the user are deleted.
+   */
+  @Override
+  public long deleteByUserName(String userName, LongConsumer progress) {
+    val chunkSize = soht2ServerConfig.getHistoryDeletion().getChunkSize();
+    long total = 0;
+    int deleted;
+    do {
+      deleted =
+          ofNullable(
+                  chunkTemplate.execute(
+                      status -> historyEntityRepository.deleteChunkByUserName(userName, chunkSize)))
+              .orElse(0);
+      total += deleted;
+      progress.accept(total);
+      log.debug("deleteByUserName: userName={}, deleted={}", userName, total);
+    } while (deleted == chunkSize);
+    chunkTemplate.executeWithoutResult(
+        status -> historyRollupRepository.deleteByUserName(userName));
+    return total;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Partitions for the current and the next month are created in advance. Expired partitions are
+   * dropped as a whole, and expired records are deleted from the default partition.
+   */
+  @Override
+  public long maintain(@Nullable LocalDateTime cutoff) {
+    val month = YearMonth.now();
+    Try.of(() -> historyPartitionManager.createPartitions(List.of(month, month.plusMonths(1))))
+        .onFailure(e -> log.error("maintain: create - {}", e.toString()));
+    if (cutoff == null) return 0;
+    return historyPartitionManager.dropPartitionsBefore(cutoff).size()
+        + (long) historyPartitionManager.purgeDefaultPartition(cutoff);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The statistics are read from the hourly or daily rollups.
+   */
+  @Override
+  public List<HistoryStats> stats(HistoryStatsQuery query) {
+    return historyRollupRepository.find(query);
+  }
+}
@@ -0,0 +1,650 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+import static java.util.Optional.ofNullable;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.config.Soht2ServerConfig.HistorySinkProperties;
+import net.soht2.server.dto.HistoryCursor;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.dto.HistoryOrder;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
+import net.soht2.server.dto.StatsGroup;
+import net.soht2.server.dto.StatsMetric;
+import net.soht2.server.entity.HistoryEntity;
+import net.soht2.server.repository.HistoryRollupRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * History sink appending the connection history to memory-mapped segment files. Every record takes
+ * a fixed-size slot of {@link #RECORD_SIZE} bytes, so a record is written by a few absolute puts
+ * into the mapped buffer without any index maintenance. Searches scan the segments sequentially,
+ * skipping segments whose range of opening times does not overlap the filter.
+ *
+ * <p>A new segment is started when the current one is full. Deleted and expired records are only
+ * marked in place; sealed segments whose share of live records falls below the compaction threshold
+ * are rewritten to right-sized files by {@link #maintain(LocalDateTime)}, and segments without live
+ * records are removed. Strings longer than their slots are truncated.
+ *
+ * <p>The statistics are aggregated by scanning the records, so unlike the rollups of {@link
+ * JpaHistorySink} they are affected by the history retention.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "soht2.server.history-sink", name = "type", havingValue = "mapped")
+public class MappedHistorySink implements HistorySink {
+
+  /** The size of a record slot in a segment file. */
+  static final int RECORD_SIZE = 768;
+
+  private static final String SEGMENT_FORMAT = "history-%016d.seg";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final Pattern SEGMENT_PATTERN = Pattern.compile("history-(\\d{16})\\.seg");
+
+  private static final byte STATUS_EMPTY = 0;
+  private static final byte STATUS_LIVE = 1;
+  private static final byte STATUS_DELETED = 2;
+
+  private static final int OFF_STATUS = 0;
+  private static final int OFF_ID = 8;
+  private static final int OFF_CONNECTION_ID = 16;
+  private static final int OFF_TARGET_PORT = 32;
+  private static final int OFF_OPENED_AT = 40;
+  private static final int OFF_CLOSED_AT = 48;
+  private static final int OFF_BYTES_READ = 56;
+  private static final int OFF_BYTES_WRITTEN = 64;
+  private static final int OFF_USER_NAME = 72;
+  private static final int USER_NAME_SIZE = 128;
+  private static final int OFF_CLIENT_HOST = OFF_USER_NAME + USER_NAME_SIZE;
+  private static final int HOST_SIZE = 256;
+  private static final int OFF_TARGET_HOST = OFF_CLIENT_HOST + HOST_SIZE;
+  private static final long NO_TIME = Long.MIN_VALUE;
+  private static final long MICROS_PER_SECOND = 1_000_000L;
+
+  private final HistorySinkProperties properties;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final List<Segment> segments = new ArrayList<>();
+  private long lastId;
+
+  public MappedHistorySink(Soht2ServerConfig soht2ServerConfig) {
+    this.properties = soht2ServerConfig.getHistorySink();
+    Assert.isTrue(
+        properties.getSegmentRecords() <= Integer.MAX_VALUE / RECORD_SIZE,
+        "History sink segment records must not exceed " + Integer.MAX_VALUE / RECORD_SIZE);
+  }
+
+  /** Maps the existing segment files and restores the last history ID from them. */
+  @PostConstruct
+  @SneakyThrows
+  void open() {
+    val directory = properties.getDirectory().toPath();
+    Files.createDirectories(directory);
+    try (val files = Files.list(directory)) {
+      val paths = files.toList();
+      for (val path : paths)
+        if (path.getFileName().toString().endsWith(TMP_SUFFIX)) Files.delete(path);
+      lock.writeLock().lock();
+      try {
+        segments.clear();
+        lastId = 0;
+        paths.stream()
+            .map(p -> SEGMENT_PATTERN.matcher(p.getFileName().toString()))
+            .filter(Matcher::matches)
+            .map(m -> Long.parseLong(m.group(1)))
+            .sorted()
+            .forEach(n -> segments.add(openSegment(n)));
+        log.info(
+            "open: directory={}, segments={}, records={}, lastId={}",
+            directory,
+            segments.size(),
+            segments.stream().mapToLong(s -> s.live).sum(),
+            lastId);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /** Forces all written records to the storage and releases the segments. */
+  @PreDestroy
+  void close() {
+    lock.writeLock().lock();
+    try {
+      segments.forEach(s -> s.buffer.force());
+      segments.clear();
+      log.info("close: directory={}", properties.getDirectory());
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The records are appended to the current segment and forced to the storage once per call.
+   */
+  @Override
+  public List<HistoryEntity> write(Collection<HistoryEntity> history) {
+    lock.writeLock().lock();
+    try {
+      val written = new LinkedHashSet<Segment>();
+      for (val entity : history) {
+        val segment = currentSegment();
+        entity.setId(++lastId);
+        segment.append(entity);
+        written.add(segment);
+      }
+      written.forEach(s -> s.buffer.force());
+      return List.copyOf(history);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public long count(HistoryFilter filter, long limit) {
+    val count = new AtomicLong();
+    scan(filter, e -> count.incrementAndGet() < limit || limit <= 0);
+    return count.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Only the first {@code offset + limit} matching records are kept while scanning.
+   */
+  @Override
+  public List<HistoryEntity> find(
+      HistoryFilter filter,
+      List<HistoryOrder> sorting,
+      @Nullable HistoryCursor after,
+      int offset,
+      int limit) {
+    if (limit <= 0) return List.of();
+    val comparator = HistoryCursor.comparator(sorting);
+    val size = (long) offset + limit;
+    val top = new PriorityQueue<>(comparator.reversed());
+    scan(
+        filter,
+        e -> {
+          if (after != null && !after.isBefore(e)) return true;
+          if (top.size() < size) top.add(e);
+          else if (comparator.compare(e, top.element()) < 0) {
+            top.remove();
+            top.add(e);
+          }
+          return true;
+        });
+    return top.stream().sorted(comparator).skip(offset).toList();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Records are passed in the order they were written.
+   */
+  @Override
+  public void export(HistoryFilter filter, Consumer<HistoryEntity> consumer) {
+    scan(
+        filter,
+        e -> {
+          consumer.accept(e);
+          return true;
+        });
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The records are marked as deleted segment by segment.
+   */
+  @Override
+  public synchronized long deleteByUserName(String userName, LongConsumer progress) {
+    long total = 0;
+    for (int i = 0; ; i++) {
+      lock.writeLock().lock();
+      try {
+        if (i >= segments.size()) break;
+        val segment = segments.get(i);
+        total += segment.delete(s -> userName.equalsIgnoreCase(segment.userName(s)));
+      } finally {
+        lock.writeLock().unlock();
+      }
+      progress.accept(total);
+      log.debug("deleteByUserName: userName={}, deleted={}", userName, total);
+    }
+    return total;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Sealed segments containing only expired records are removed as a whole, expired records of
+   * other segments are marked as deleted. Then sealed segments below the compaction threshold are
+   * compacted.
+   *
+   * @return the number of expired records
+   */
+  @Override
+  public synchronized long maintain(@Nullable LocalDateTime cutoff) {
+    lock.writeLock().lock();
+    try {
+      long expired = 0;
+      if (cutoff != null) {
+        val cutoffMicros = toMicros(cutoff);
+        for (val segment : sealedSegments()) {
+          if (segment.maxOpenedAt < cutoffMicros) {
+            expired += segment.live;
+            removeSegment(segment);
+          } else if (segment.minOpenedAt < cutoffMicros)
+            expired += segment.delete(s -> segment.openedAt(s) < cutoffMicros);
+        }
+        val current = segments.isEmpty() ? null : segments.getLast();
+        if (current != null && current.minOpenedAt < cutoffMicros)
+          expired += current.delete(s -> current.openedAt(s) < cutoffMicros);
+      }
+      val threshold = properties.getCompactionThreshold();
+      for (val segment : sealedSegments()) {
+        if (segment.live == 0) removeSegment(segment);
+        else if (segment.live < segment.capacity * threshold) compactSegment(segment);
+      }
+      log.info("maintain: cutoff={}, expired={}, segments={}", cutoff, expired, segments.size());
+      return expired;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The statistics are aggregated by scanning the records opened in the time range.
+   */
+  @Override
+  public List<HistoryStats> stats(HistoryStatsQuery query) {
+    val grain = query.grain();
+    val from = grain.periodStart(query.from());
+    val to = grain.periodCeiling(query.to());
+    val filter =
+        HistoryFilter.builder()
+            .userName(query.userName())
+            .targetHost(query.targetHost())
+            .targetPorts(query.targetPorts())
+            .clientHost(query.clientHost())
+            .openedAfter(from)
+            .openedBefore(to)
+            .build();
+    val groupBy = query.groupBy();
+    val totals = new LinkedHashMap<HistoryStats, long[]>();
+    if (groupBy.isEmpty()) totals.put(HistoryStats.builder().build(), new long[4]);
+    scan(
+        filter,
+        e -> {
+          if (!e.getOpenedAt().isBefore(to)) return true;
+          val key =
+              HistoryStats.builder()
+                  .period(
+                      groupBy.contains(StatsGroup.period)
+                          ? grain.periodStart(e.getOpenedAt())
+                          : null)
+                  .userName(groupBy.contains(StatsGroup.username) ? e.getUserName() : null)
+                  .targetHost(groupBy.contains(StatsGroup.target) ? e.getTargetHost() : null)
+                  .targetPort(groupBy.contains(StatsGroup.target) ? e.getTargetPort() : null)
+                  .clientHost(groupBy.contains(StatsGroup.clientHost) ? e.getClientHost() : null)
+                  .build();
+          val total = totals.computeIfAbsent(key, k -> new long[4]);
+          total[0]++;
+          total[1] += HistoryRollupRepository.durationMillis(e);
+          total[2] += ofNullable(e.getBytesRead()).orElse(0L);
+          total[3] += ofNullable(e.getBytesWritten()).orElse(0L);
+          return true;
+        });
+    return totals.entrySet().stream()
+        .map(
+            e ->
+                e.getKey().toBuilder()
+                    .connections(e.getValue()[0])
+                    .durationMillis(e.getValue()[1])
+                    .bytesRead(e.getValue()[2])
+                    .bytesWritten(e.getValue()[3])
+                    .build())
+        .sorted(
+            Comparator.comparing(HistoryStats::period, nullsFirst(naturalOrder()))
+                .thenComparing(Comparator.comparingLong(metric(query.orderBy())).reversed())
+                .thenComparing(HistoryStats::userName, nullsFirst(naturalOrder()))
+                .thenComparing(HistoryStats::targetHost, nullsFirst(naturalOrder()))
+                .thenComparing(HistoryStats::targetPort, nullsFirst(naturalOrder()))
+                .thenComparing(HistoryStats::clientHost, nullsFirst(naturalOrder())))
+        .limit(query.limit())
+        .toList();
+  }
+
+  /**
+   * Scans the live records matching the filter in the order they were written. The scan works on a
+   * snapshot of the segments taken under the read lock, so it does not block writers; records
+   * written after the snapshot are not visible to it.
+   *
+   * @param filter the search filter
+   * @param consumer the consumer of the matching records returning {@code false} to stop the scan
+   */
+  private void scan(HistoryFilter filter, Predicate<HistoryEntity> consumer) {
+    val openedAfter = ofNullable(filter.openedAfter()).map(MappedHistorySink::toMicros);
+    // a record is closed after it is opened
+    val openedBefore =
+        Stream.of(filter.openedBefore(), filter.closedBefore())
+            .filter(Objects::nonNull)
+            .map(MappedHistorySink::toMicros)
+            .min(Long::compare);
+    val matcher = filter.matcher();
+    for (val view : snapshot()) {
+      if (view.size() == 0
+          || openedAfter.filter(t -> view.maxOpenedAt() < t).isPresent()
+          || openedBefore.filter(t -> view.minOpenedAt() > t).isPresent()) continue;
+      val segment = view.segment();
+      for (int slot = 0; slot < view.size(); slot++) {
+        if (segment.status(slot) != STATUS_LIVE) continue;
+        val entity = segment.read(slot);
+        if (matcher.test(entity) && !consumer.test(entity)) return;
+      }
+    }
+  }
+
+  private List<SegmentView> snapshot() {
+    lock.readLock().lock();
+    try {
+      return segments.stream()
+          .map(s -> new SegmentView(s, s.size, s.minOpenedAt, s.maxOpenedAt))
+          .toList();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Segment> sealedSegments() {
+    return segments.isEmpty() ? List.of() : List.copyOf(segments.subList(0, segments.size() - 1));
+  }
+
+  private Segment currentSegment() {
+    if (!segments.isEmpty() && !segments.getLast().isFull()) return segments.getLast();
+    val number = segments.isEmpty() ? 1 : segments.getLast().number + 1;
+    val segment = createSegment(number);
+    segments.add(segment);
+    log.info("currentSegment: created {}", segment.path);
+    return segment;
+  }
+
+  @SneakyThrows
+  private Segment createSegment(long number) {
+    val path = segmentPath(number);
+    try (val channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      val capacity = properties.getSegmentRecords();
+      return new Segment(
+          number,
+          path,
+          channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE),
+          capacity);
+    }
+  }
+
+  @SneakyThrows
+  private Segment openSegment(long number) {
+    val path = segmentPath(number);
+    try (val channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      val capacity = (int) (channel.size() / RECORD_SIZE);
+      val segment =
+          new Segment(
+              number,
+              path,
+              channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE),
+              capacity);
+      segment.restore();
+      lastId = Math.max(lastId, segment.maxId);
+      return segment;
+    }
+  }
+
+  @SneakyThrows
+  private void removeSegment(Segment segment) {
+    segments.remove(segment);
+    // the buffer stays mapped until it is garbage collected, so running scans are not affected
+    Files.deleteIfExists(segment.path);
+    log.info("removeSegment: {}", segment.path);
+  }
+
+  /**
+   * Rewrites the live records of the segment to a right-sized file, which atomically replaces the
+   * segment file.
+   */
+  @SneakyThrows
+  private void compactSegment(Segment segment) {
+    val tmp = segment.path.resolveSibling(segment.path.getFileName() + TMP_SUFFIX);
+    try (val channel =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      val buffer =
+          channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segment.live * RECORD_SIZE);
+      int slot = 0;
+      for (int i = 0; i < segment.size; i++)
+        if (segment.status(i) == STATUS_LIVE)
+          buffer.put(slot++ * RECORD_SIZE, segment.buffer, i * RECORD_SIZE, RECORD_SIZE);
+      buffer.force();
+    }
+    Files.move(
+        tmp, segment.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    val compacted = openSegment(segment.number);
+    segments.set(segments.indexOf(segment), compacted);
+    log.info(
+        "compactSegment: {}, capacity={}, live={}", segment.path, segment.capacity, segment.live);
+  }
+
+  private Path segmentPath(long number) {
+    return properties.getDirectory().toPath().resolve(SEGMENT_FORMAT.formatted(number));
+  }
+
+  private static ToLongFunction<HistoryStats> metric(StatsMetric metric) {
+    return switch (metric) {
+      case connections -> HistoryStats::connections;
+      case duration -> HistoryStats::durationMillis;
+      case bytesRead -> HistoryStats::bytesRead;
+      case bytesWritten -> HistoryStats::bytesWritten;
+    };
+  }
+
+  private static long toMicros(@Nullable LocalDateTime dateTime) {
+    if (dateTime == null) return NO_TIME;
+    val instant = dateTime.toInstant(ZoneOffset.UTC);
+    return instant.getEpochSecond() * MICROS_PER_SECOND + instant.getNano() / 1_000;
+  }
+
+  private static @Nullable LocalDateTime fromMicros(long micros) {
+    if (micros == NO_TIME) return null;
+    return LocalDateTime.ofEpochSecond(
+        Math.floorDiv(micros, MICROS_PER_SECOND),
+        (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1_000,
+        ZoneOffset.UTC);
+  }
+
+  private record SegmentView(Segment segment, int size, long minOpenedAt, long maxOpenedAt) {}
+
+  /**
+   * Segment file mapped into memory. Records are appended to its slots one after another, so the
+   * first empty slot is the end of the segment. Its state is changed under the write lock only.
+   */
+  private static final class Segment {
+
+    private final long number;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int size;
+    private int live;
+    private long minOpenedAt = Long.MAX_VALUE;
+    private long maxOpenedAt = Long.MIN_VALUE;
+    private long maxId;
+
+    private Segment(long number, Path path, MappedByteBuffer buffer, int capacity) {
+      this.number = number;
+      this.path = path;
+      this.buffer = buffer;
+      this.capacity = capacity;
+    }
+
+    private boolean isFull() {
+      return size >= capacity;
+    }
+
+    private void restore() {
+      while (size < capacity && status(size) != STATUS_EMPTY) {
+        if (status(size) == STATUS_LIVE) live++;
+        track(openedAt(size), buffer.getLong(size * RECORD_SIZE + OFF_ID));
+        size++;
+      }
+    }
+
+    private void track(long openedAt, long id) {
+      minOpenedAt = Math.min(minOpenedAt, openedAt);
+      maxOpenedAt = Math.max(maxOpenedAt, openedAt);
+      maxId = Math.max(maxId, id);
+    }
+
+    private byte status(int slot) {
+      return buffer.get(slot * RECORD_SIZE + OFF_STATUS);
+    }
+
+    private long openedAt(int slot) {
+      return buffer.getLong(slot * RECORD_SIZE + OFF_OPENED_AT);
+    }
+
+    private String userName(int slot) {
+      return readString(slot * RECORD_SIZE + OFF_USER_NAME);
+    }
+
+    private void append(HistoryEntity entity) {
+      val base = size * RECORD_SIZE;
+      val openedAt = toMicros(entity.getOpenedAt());
+      buffer.putLong(base + OFF_ID, entity.getId());
+      buffer.putLong(base + OFF_CONNECTION_ID, entity.getConnectionId().getMostSignificantBits());
+      buffer.putLong(
+          base + OFF_CONNECTION_ID + 8, entity.getConnectionId().getLeastSignificantBits());
+      buffer.putInt(base + OFF_TARGET_PORT, entity.getTargetPort());
+      buffer.putLong(base + OFF_OPENED_AT, openedAt);
+      buffer.putLong(base + OFF_CLOSED_AT, toMicros(entity.getClosedAt()));
+      buffer.putLong(base + OFF_BYTES_READ, ofNullable(entity.getBytesRead()).orElse(0L));
+      buffer.putLong(base + OFF_BYTES_WRITTEN, ofNullable(entity.getBytesWritten()).orElse(0L));
+      writeString(base + OFF_USER_NAME, USER_NAME_SIZE, entity.getUserName());
+      writeString(base + OFF_CLIENT_HOST, HOST_SIZE, entity.getClientHost());
+      writeString(base + OFF_TARGET_HOST, HOST_SIZE, entity.getTargetHost());
+      // the status is written last, so a partially written record is not restored
+      buffer.put(base + OFF_STATUS, STATUS_LIVE);
+      track(openedAt, entity.getId());
+      size++;
+      live++;
+    }
+
+    private HistoryEntity read(int slot) {
+      val base = slot * RECORD_SIZE;
+      return HistoryEntity.builder()
+          .id(buffer.getLong(base + OFF_ID))
+          .userName(readString(base + OFF_USER_NAME))
+          .connectionId(
+              new UUID(
+                  buffer.getLong(base + OFF_CONNECTION_ID),
+                  buffer.getLong(base + OFF_CONNECTION_ID + 8)))
+          .clientHost(readString(base + OFF_CLIENT_HOST))
+          .targetHost(readString(base + OFF_TARGET_HOST))
+          .targetPort(buffer.getInt(base + OFF_TARGET_PORT))
+          .openedAt(fromMicros(buffer.getLong(base + OFF_OPENED_AT)))
+          .closedAt(fromMicros(buffer.getLong(base + OFF_CLOSED_AT)))
+          .bytesRead(buffer.getLong(base + OFF_BYTES_READ))
+          .bytesWritten(buffer.getLong(base + OFF_BYTES_WRITTEN))
+          .build();
+    }
+
+    /**
+     * Marks the live records selected by the predicate as deleted and forces the change.
+     *
+     * @return the number of deleted records
+     */
+    private int delete(IntPredicate selected) {
+      int deleted = 0;
+      for (int slot = 0; slot < size; slot++)
+        if (status(slot) == STATUS_LIVE && selected.test(slot)) {
+          buffer.put(slot * RECORD_SIZE + OFF_STATUS, STATUS_DELETED);
+          deleted++;
+        }
+      if (deleted > 0) buffer.force();
+      live -= deleted;
+      return deleted;
+    }
+
+    private void writeString(int index, int slotSize, @Nullable String value) {
+      val bytes = ByteBuffer.allocate(slotSize - Short.BYTES);
+      // the encoder stops at a character boundary when the slot is full
+      UTF_8
+          .newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE)
+          .encode(CharBuffer.wrap(ofNullable(value).orElse("")), bytes, true);
+      buffer.putShort(index, (short) bytes.position());
+      buffer.put(index + Short.BYTES, bytes.array(), 0, bytes.position());
+    }
+
+    private String readString(int index) {
+      val bytes = new byte[Short.toUnsignedInt(buffer.getShort(index))];
+      buffer.get(index + Short.BYTES, bytes);
+      return new String(bytes, UTF_8);
+    }
+  }
+}
@@ -9,6 +9,9 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -19,6 +22,11 @@ import lombok.Getter;
 import lombok.Value;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.soht2.common.compress.AdaptiveCompressor;
+import net.soht2.common.compress.Compressor;
+import net.soht2.common.compress.PresetDictionary;
+import net.soht2.common.compress.StreamInflater;
 import net.soht2.common.dto.Soht2Connection;
 
 /**
@@ -38,6 +46,7 @@ public class ServerConnection implements Closeable {
 
   InputStream inputStream;
   OutputStream outputStream;
+  ExchangeSequencer sequencer;
   Consumer<ServerConnection> postCloseAction;
 
   @Getter(AccessLevel.NONE)
@@ -52,9 +61,22 @@ public class ServerConnection implements Closeable {
   @Getter(AccessLevel.NONE)
   AtomicLong bytesWritten = new AtomicLong(0);
 
+  /** The preset dictionary of the target, or {@code null} if the target has none. */
+  PresetDictionary dictionary;
+
+  @Getter(AccessLevel.NONE)
+  Map<String, AdaptiveCompressor> responseCompressors = new ConcurrentHashMap<>();
+
+  @Getter(AccessLevel.NONE)
+  AtomicReference<StreamInflater> requestInflater = new AtomicReference<>();
+
   @Builder
   private ServerConnection(
-      Soht2Connection soht2, int socketTimeout, Consumer<ServerConnection> postCloseAction) {
+      Soht2Connection soht2,
+      int socketTimeout,
+      int exchangeWindow,
+      PresetDictionary dictionary,
+      Consumer<ServerConnection> postCloseAction) {
     log.debug("new: connection={}", soht2);
     this.soht2.set(soht2);
     this.socket =
@@ -66,6 +88,11 @@ public class ServerConnection implements Closeable {
     log.debug("new: socket={}", socket);
     this.inputStream = Try.of(socket::getInputStream).get();
     this.outputStream = Try.of(socket::getOutputStream).get();
+    // every preceding download in the window is served within the socket read timeout
+    this.sequencer =
+        new ExchangeSequencer(
+            exchangeWindow, Duration.ofMillis(socketTimeout).multipliedBy(exchangeWindow));
+    this.dictionary = dictionary;
     this.postCloseAction = postCloseAction;
     this.isOpened.set(true);
   }
@@ -135,6 +162,42 @@ public class ServerConnection implements Closeable {
     return bytesRead.get();
   }
 
+  /**
+   * Returns the adaptive compressor of the responses of the connection for the given compressor.
+   * The compressor is created on the first call, and it keeps learning whether compression pays off
+   * for the data of the connection.
+   *
+   * @param compressor the compressor of the encoding accepted by the client
+   * @param minSize the minimum size of a response to be compressed
+   * @return the adaptive compressor of the responses
+   */
+  public AdaptiveCompressor responseCompressor(Compressor compressor, long minSize) {
+    return responseCompressors.computeIfAbsent(
+        compressor.getAcceptEncoding(), e -> new AdaptiveCompressor(compressor, minSize));
+  }
+
+  /**
+   * Returns the inflater of the request stream of the connection, which decompresses the uploads
+   * compressed by the client's {@link net.soht2.common.compress.StreamDeflater}. It is created on
+   * the first call, and the uploads must be passed to it in the order of their sequence numbers.
+   * Concurrent first calls may create several inflaters, and the ones not kept are closed, so their
+   * native resources are released.
+   *
+   * @return the inflater of the request stream
+   */
+  public StreamInflater requestInflater() {
+    val current = requestInflater.get();
+    if (current != null) return current;
+    val created = new StreamInflater();
+    if (!requestInflater.compareAndSet(null, created)) {
+      created.close();
+      return requestInflater.get();
+    }
+    // the connection closed meanwhile does not close the inflater anymore
+    if (!isOpened.get()) created.close();
+    return created;
+  }
+
   /** Returns the total number of bytes written to the connection. */
   public long bytesWritten() {
     return bytesWritten.get();
@@ -148,6 +211,10 @@ public class ServerConnection implements Closeable {
     Try.run(inputStream::close);
     Try.run(outputStream::close);
     Try.run(socket::close);
+    sequencer.close();
+    Try.run(() -> Optional.ofNullable(requestInflater.get()).ifPresent(StreamInflater::close));
+    responseCompressors.forEach(
+        (encoding, c) -> log.debug("close: {}.compression={}", encoding, c.getStats()));
     if (postCloseAction != null) postCloseAction.accept(this);
   }
 }
@@ -0,0 +1,187 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.server.service;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.Optional.ofNullable;
+
+import io.vavr.control.Try;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.soht2.common.compress.DictionaryTrainer;
+import net.soht2.common.compress.PresetDictionary;
+import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.config.Soht2ServerConfig.DictionaryProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service managing the preset dictionaries of compression trained per target. The dictionaries are
+ * loaded from the {@code <host>_<port>.dict} files of the configured directory on startup, and
+ * registered as {@link PresetDictionary}, so the uploads compressed with them are decompressed.
+ *
+ * <p>If the sample limit is set, the service also collects the traffic of every target into the
+ * {@code samples/<host>_<port>.smp} file of the directory, until the file reaches the limit. The
+ * samples are put into a bounded queue and appended to the files later by {@link #flushSamples()},
+ * so the exchanges never wait for the file I/O. The samples are the input of {@link
+ * DictionaryTrainer}.
+ */
+@Slf4j
+@Service
+public class Soht2DictionaryService {
+
+  static final String DICTIONARY_SUFFIX = ".dict";
+  static final String SAMPLE_SUFFIX = ".smp";
+  static final String SAMPLE_DIRECTORY = "samples";
+
+  /** The maximum size of a sample, the beginning of a larger payload is sampled. */
+  static final int MAX_SAMPLE_SIZE = 2 * PresetDictionary.MAX_SIZE;
+
+  /** The maximum number of samples waiting to be written, the later ones are dropped. */
+  static final int SAMPLE_QUEUE_CAPACITY = 256;
+
+  private final DictionaryProperties properties;
+  private final Map<String, PresetDictionary> dictionaries = new ConcurrentHashMap<>();
+  private final Map<String, Long> sampleSizes = new ConcurrentHashMap<>();
+  private final BlockingQueue<Map.Entry<String, byte[]>> sampleQueue =
+      new ArrayBlockingQueue<>(SAMPLE_QUEUE_CAPACITY);
+
+  /** Whether the exchanged payloads are sampled, set once the directory is found by load. */
+  private volatile boolean sampling;
+
+  public Soht2DictionaryService(Soht2ServerConfig soht2ServerConfig) {
+    this.properties = soht2ServerConfig.getDictionaries();
+  }
+
+  /**
+   * Loads and registers the dictionaries of the directory, and enables sampling if the sample limit
+   * is set. Without the directory, both dictionaries and sampling are disabled.
+   */
+  @PostConstruct
+  @SneakyThrows
+  void load() {
+    val directory = properties.getDirectory();
+    if (directory == null || !directory.isDirectory()) {
+      log.info("load: dictionaries are disabled, directory={}", directory);
+      return;
+    }
+    sampling = properties.getSampleLimit().toBytes() > 0;
+    try (val files = Files.list(directory.toPath())) {
+      files
+          .filter(p -> p.getFileName().toString().endsWith(DICTIONARY_SUFFIX))
+          .forEach(
+              path ->
+                  Try.of(
+                          () ->
+                              Map.entry(
+                                  target(path),
+                                  PresetDictionary.register(Files.readAllBytes(path))))
+                      .onSuccess(e -> dictionaries.put(e.getKey(), e.getValue()))
+                      .onSuccess(e -> log.info("load: file={}, dictionary={}", path, e.getValue()))
+                      .onFailure(e -> log.warn("load: file={} - {}", path, e.toString())));
+    }
+  }
+
+  /**
+   * Returns the dictionary of the target.
+   *
+   * @param host the target host
+   * @param port the target port
+   * @return the dictionary, or empty if the target has none
+   */
+  public Optional<PresetDictionary> find(String host, int port) {
+    return Optional.ofNullable(dictionaries.get(key(host, port)));
+  }
+
+  /**
+   * Queues the payload exchanged with the target for its sample file, unless sampling is disabled
+   * or the file has reached the sample limit. Sampling never fails nor delays the exchange: if the
+   * queue is full, the sample is dropped.
+   *
+   * @param host the target host
+   * @param port the target port
+   * @param data the payload sent to or received from the target
+   */
+  public void sample(String host, int port, byte[] data) {
+    if (!sampling || data.length == 0) return;
+    val limit = properties.getSampleLimit().toBytes();
+    val key = key(host, port);
+    if (sampleSizes.getOrDefault(key, 0L) >= limit) return;
+    val sample = Arrays.copyOf(data, Math.min(data.length, MAX_SAMPLE_SIZE));
+    if (!sampleQueue.offer(Map.entry(key, sample))) log.debug("sample: queue is full, key={}", key);
+  }
+
+  /**
+   * Appends all queued samples to the sample files of their targets, opening every file once per
+   * flush. This method is scheduled to run periodically, and it is also called on shutdown so that
+   * no queued samples are lost. An I/O error is only logged, and the samples of the file are
+   * dropped.
+   */
+  @PreDestroy
+  @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.SECONDS)
+  public void flushSamples() {
+    val batch = new ArrayList<Map.Entry<String, byte[]>>();
+    if (sampleQueue.drainTo(batch) == 0) return;
+    val samples = new LinkedHashMap<String, List<byte[]>>();
+    batch.forEach(
+        e -> samples.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue()));
+    samples.forEach(this::writeSamples);
+  }
+
+  private void writeSamples(String key, List<byte[]> samples) {
+    val limit = properties.getSampleLimit().toBytes();
+    val file =
+        properties.getDirectory().toPath().resolve(SAMPLE_DIRECTORY).resolve(key + SAMPLE_SUFFIX);
+    val size =
+        ofNullable(sampleSizes.get(key))
+            .orElseGet(() -> Try.of(() -> Files.size(file)).getOrElse(0L));
+    if (size >= limit) {
+      sampleSizes.put(key, size);
+      return;
+    }
+    Try.run(() -> Files.createDirectories(file.getParent()))
+        .mapTry(
+            v -> {
+              var current = size;
+              try (val out = Files.newOutputStream(file, CREATE, APPEND)) {
+                for (val sample : samples) {
+                  if (current >= limit) break;
+                  DictionaryTrainer.writeSample(out, sample);
+                  current += Integer.BYTES + sample.length;
+                }
+              }
+              return current;
+            })
+        .onSuccess(v -> sampleSizes.put(key, v))
+        .onSuccess(v -> log.debug("writeSamples: file={}, size={}", file, v))
+        .onFailure(e -> log.warn("writeSamples: file={} - {}", file, e.toString()))
+        .onFailure(e -> sampleSizes.put(key, limit));
+  }
+
+  private static String key(String host, int port) {
+    return host.toLowerCase() + "_" + port;
+  }
+
+  /** Returns the target key of the dictionary file named by {@link #key(String, int)}. */
+  private static String target(Path path) {
+    val name = path.getFileName().toString();
+    val key = name.substring(0, name.length() - DICTIONARY_SUFFIX.length());
+    val separator = key.lastIndexOf('_');
+    return key(key.substring(0, separator), Integer.parseInt(key.substring(separator + 1)));
+  }
+}
@@ -1,29 +1,65 @@
 /* SOHT2 © Licensed under MIT 2025. */
 package net.soht2.server.service;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Optional.ofNullable;
+import static net.soht2.server.service.ExceptionHelper.badRequest;
 import static net.soht2.server.service.ExceptionHelper.forbidden;
 import static net.soht2.server.service.ExceptionHelper.serviceUnavailable;
 import static net.soht2.server.service.Soht2UserService.getCurrentUser;
+import static org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.vavr.control.Try;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import lombok.RequiredArgsConstructor;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import net.soht2.common.dto.Soht2Connection;
 import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.config.Soht2ServerConfig.OverflowPolicy;
+import net.soht2.server.dto.HistoryCursor;
+import net.soht2.server.dto.HistoryDeletion;
+import net.soht2.server.dto.HistoryExportFormat;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.dto.HistoryOrder;
 import net.soht2.server.dto.HistoryPage;
 import net.soht2.server.dto.HistoryPaging;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
 import net.soht2.server.entity.HistoryEntity;
-import net.soht2.server.repository.HistoryEntityRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Service for managing connection history in the SOHT2 application. This service provides
@@ -31,23 +67,63 @@ import org.springframework.util.StringUtils;
  * enabled or disabled through the server configuration.
  */
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class Soht2HistoryService {
 
   private static final String ERR_HISTORY_DISABLED = "History logging is disabled";
+  private static final long STATS_DEFAULT_DAYS = 7;
+  private static final long HISTORY_DELETIONS_SIZE = 1000;
+  private static final Duration HISTORY_DELETIONS_TTL = Duration.ofDays(1);
+  private static final String CSV_HEADER =
+      "id,username,clientHost,targetHost,targetPort,openedAt,closedAt,bytesRead,bytesWritten\n";
 
   private final Soht2ServerConfig soht2ServerConfig;
-  private final HistoryEntityRepository historyEntityRepository;
+  private final HistorySink historySink;
+  private final ObjectMapper objectMapper;
+  private final TaskExecutor taskExecutor;
+  private final BlockingQueue<HistoryEntity> historyQueue;
+  private final Cache<HistoryFilter, Long> countCache;
+  private final Cache<PageKey, List<HistoryEntity>> pageCache;
+  private final Cache<String, HistoryDeletion> historyDeletions;
+
+  public Soht2HistoryService(
+      Soht2ServerConfig soht2ServerConfig,
+      HistorySink historySink,
+      ObjectMapper objectMapper,
+      @Qualifier(APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor) {
+    this.soht2ServerConfig = soht2ServerConfig;
+    this.historySink = historySink;
+    this.objectMapper = objectMapper;
+    this.taskExecutor = taskExecutor;
+    this.historyQueue =
+        new ArrayBlockingQueue<>(soht2ServerConfig.getHistoryWriter().getQueueCapacity());
+    val historySearch = soht2ServerConfig.getHistorySearch();
+    this.countCache =
+        Caffeine.newBuilder()
+            .maximumSize(historySearch.getCacheSize())
+            .expireAfterWrite(historySearch.getCacheTtl())
+            .build();
+    this.pageCache =
+        Caffeine.newBuilder()
+            .maximumSize(historySearch.getCacheSize())
+            .expireAfterWrite(historySearch.getCacheTtl())
+            .build();
+    this.historyDeletions =
+        Caffeine.newBuilder()
+            .maximumSize(HISTORY_DELETIONS_SIZE)
+            .expireAfterWrite(HISTORY_DELETIONS_TTL)
+            .build();
+  }
 
   /**
-   * Adds a connection history record if history logging is enabled.
+   * Adds a connection history record if history logging is enabled. The record is put into a
+   * bounded queue and written to the {@link HistorySink} later by {@link #flushHistory()}. If the
+   * queue is full, the configured {@link OverflowPolicy} is applied.
    *
    * @param connection the connection details used to create a history record
    * @throws org.springframework.web.client.HttpServerErrorException.ServiceUnavailable if history
    *     logging is disabled
    */
-  @Transactional
   public void addHistory(Soht2Connection connection) {
     if (!soht2ServerConfig.isEnableHistory()) throw serviceUnavailable(ERR_HISTORY_DISABLED);
     Try.of(
@@ -63,27 +139,194 @@ public class Soht2HistoryService {
                     .bytesRead(connection.bytesRead())
                     .bytesWritten(connection.bytesWritten())
                     .build())
-        .mapTry(historyEntityRepository::save)
-        .onSuccess(v -> log.info("addHistory: {}", v))
+        .andThen(this::enqueueHistory)
+        .onSuccess(v -> log.debug("addHistory: {}", v))
         .onFailure(e -> log.error("addHistory: {}", e.toString()));
   }
 
   /**
-   * Deletes all history records associated with the given username, ignoring case sensitivity.
+   * Writes all queued history records to the {@link HistorySink} in batches. This method is
+   * scheduled to run periodically, and it is also called on shutdown so that no queued records are
+   * lost.
+   */
+  @PreDestroy
+  @Scheduled(fixedDelayString = "${soht2.server.history-writer.flush-interval}")
+  public void flushHistory() {
+    val batchSize = soht2ServerConfig.getHistoryWriter().getBatchSize();
+    val batch = new ArrayList<HistoryEntity>(batchSize);
+    while (historyQueue.drainTo(batch, batchSize) > 0) {
+      Try.of(() -> historySink.write(batch))
+          .andThen(this::evictSearchCache)
+          .onSuccess(v -> log.info("flushHistory: size={}", v.size()))
+          .onFailure(e -> log.error("flushHistory: size={} - {}", batch.size(), e.toString()));
+      batch.clear();
+    }
+  }
+
+  private void enqueueHistory(HistoryEntity historyEntity) {
+    if (historyQueue.offer(historyEntity)) return;
+    switch (soht2ServerConfig.getHistoryWriter().getOverflowPolicy()) {
+      case DISCARD_NEWEST -> log.warn("enqueueHistory: queue is full, discarded {}", historyEntity);
+      case DISCARD_OLDEST -> {
+        do {
+          ofNullable(historyQueue.poll())
+              .ifPresent(v -> log.warn("enqueueHistory: queue is full, discarded {}", v));
+        } while (!historyQueue.offer(historyEntity));
+      }
+      case CALLER_WRITES -> {
+        log.warn("enqueueHistory: queue is full, writing synchronously {}", historyEntity);
+        evictSearchCache(historySink.write(List.of(historyEntity)));
+      }
+    }
+  }
+
+  /**
+   * Deletes all history records and traffic rollups associated with the given username, ignoring
+   * case sensitivity. The records are deleted by the {@link HistorySink} in bounded steps, so the
+   * deletion neither holds long locks nor loads the records into memory. If the deletion fails, the
+   * already deleted records stay deleted, and it can be repeated.
    *
    * @param userName the username for which all history records should be deleted
+   * @return the number of deleted history records
    * @throws org.springframework.web.client.HttpServerErrorException.ServiceUnavailable if history
    *     logging is disabled
    */
-  @Transactional
-  public void deleteHistory(String userName) {
+  public long deleteHistory(String userName) {
     if (!soht2ServerConfig.isEnableHistory()) throw serviceUnavailable(ERR_HISTORY_DISABLED);
     log.info("deleteHistory: userName={}", userName);
-    historyEntityRepository.deleteAllByUserNameIgnoreCase(userName);
+    return deleteHistoryChunks(userName, deleted -> {});
+  }
+
+  /**
+   * Starts the deletion of all history records and traffic rollups associated with the given
+   * username in the background, see {@link #deleteHistory(String)}. Its progress is available by
+   * {@link #getHistoryDeletion(String)}. If the deletion of the user's history is already running,
+   * no new one is started.
+   *
+   * @param userName the username for which all history records should be deleted
+   * @return the progress of the deletion
+   * @throws org.springframework.web.client.HttpServerErrorException.ServiceUnavailable if history
+   *     logging is disabled
+   */
+  public HistoryDeletion deleteHistoryInBackground(String userName) {
+    if (!soht2ServerConfig.isEnableHistory()) throw serviceUnavailable(ERR_HISTORY_DISABLED);
+    val key = userName.toLowerCase(Locale.ROOT);
+    val started =
+        HistoryDeletion.builder()
+            .userName(userName)
+            .status(HistoryDeletion.Status.RUNNING)
+            .startedAt(LocalDateTime.now())
+            .build();
+    val current =
+        historyDeletions
+            .asMap()
+            .compute(
+                key,
+                (k, v) -> v != null && v.status() == HistoryDeletion.Status.RUNNING ? v : started);
+    if (current != started) return current;
+
+    log.info("deleteHistoryInBackground: userName={}", userName);
+    taskExecutor.execute(
+        () ->
+            Try.of(
+                    () ->
+                        deleteHistoryChunks(
+                            userName,
+                            deleted ->
+                                updateHistoryDeletion(key, v -> v.toBuilder().deleted(deleted))))
+                .onSuccess(
+                    deleted ->
+                        updateHistoryDeletion(
+                            key,
+                            v ->
+                                v.toBuilder()
+                                    .status(HistoryDeletion.Status.COMPLETED)
+                                    .deleted(deleted)
+                                    .finishedAt(LocalDateTime.now())))
+                .onFailure(
+                    e -> {
+                      log.error(
+                          "deleteHistoryInBackground: userName={} - {}", userName, e.toString());
+                      updateHistoryDeletion(
+                          key,
+                          v ->
+                              v.toBuilder()
+                                  .status(HistoryDeletion.Status.FAILED)
+                                  .finishedAt(LocalDateTime.now())
+                                  .error(e.toString()));
+                    }));
+    return started;
   }
 
   /**
-   * Searches the connection history based on the specified filters.
+   * Returns the progress of the latest deletion of the user's history started by {@link
+   * #deleteHistoryInBackground(String)}.
+   *
+   * @param userName the username, ignoring case
+   * @return the progress of the deletion, or empty if there was no deletion recently
+   */
+  public Optional<HistoryDeletion> getHistoryDeletion(String userName) {
+    return ofNullable(historyDeletions.getIfPresent(userName.toLowerCase(Locale.ROOT)));
+  }
+
+  private void updateHistoryDeletion(
+      String key, Function<HistoryDeletion, HistoryDeletion.HistoryDeletionBuilder> update) {
+    historyDeletions.asMap().computeIfPresent(key, (k, v) -> update.apply(v).build());
+  }
+
+  private long deleteHistoryChunks(String userName, LongConsumer progress) {
+    flushHistory();
+    val total = historySink.deleteByUserName(userName, progress);
+    clearSearchCache();
+    log.info("deleteHistoryChunks: userName={}, deleted={}", userName, total);
+    return total;
+  }
+
+  /**
+   * Maintains the {@link HistorySink}: for the default sink, it creates monthly partitions in
+   * advance. If the retention period is set, it also removes records older than it. It runs on
+   * startup and then periodically.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(
+      initialDelayString = "${soht2.server.history-partitions.maintenance-interval}",
+      fixedDelayString = "${soht2.server.history-partitions.maintenance-interval}")
+  public void maintainHistory() {
+    if (!soht2ServerConfig.isEnableHistory()) return;
+    val retention = soht2ServerConfig.getHistoryPartitions().getRetention();
+    val cutoff = retention.isZero() ? null : LocalDateTime.now().minus(retention);
+    Try.of(() -> historySink.maintain(cutoff))
+        .onSuccess(v -> log.info("maintainHistory: cutoff={}, expired={}", cutoff, v))
+        .onFailure(e -> log.error("maintainHistory: {}", e.toString()))
+        .filter(v -> v > 0)
+        .onSuccess(v -> clearSearchCache());
+  }
+
+  /** Discards all cached history search results and counts. */
+  public void clearSearchCache() {
+    countCache.invalidateAll();
+    pageCache.invalidateAll();
+  }
+
+  /**
+   * Discards cached search results and counts whose filter matches any of the written records. The
+   * results of other filters are not affected by the records and stay cached. Every distinct filter
+   * compiles its patterns once and checks the whole batch with them.
+   */
+  private void evictSearchCache(Collection<HistoryEntity> written) {
+    val affected = new HashMap<HistoryFilter, Boolean>();
+    Predicate<HistoryFilter> isAffected =
+        f -> affected.computeIfAbsent(f, v -> written.stream().anyMatch(v.matcher()));
+    countCache.asMap().keySet().removeIf(isAffected);
+    pageCache.asMap().keySet().removeIf(k -> isAffected.test(k.filter()));
+  }
+
+  /**
+   * Searches the connection history based on the specified filters. Pages can be requested either
+   * by the page number or by the cursor returned as {@link HistoryPage#nextCursor()} of the
+   * previous page. The latter seeks directly to the position after the previous page, so its cost
+   * does not grow with the page number. The total count is not calculated if {@link
+   * HistoryPaging#skipTotal()} is set.
    *
    * @param userName the usernames to filter the history records by
    * @param connectionId the connection IDs to filter the history records by
@@ -98,6 +341,8 @@ public class Soht2HistoryService {
    * @param authentication the authentication object for verifying user permissions
    * @return a {@link HistoryPage} object containing the filtered history records, total count, and
    *     paging information
+   * @throws org.springframework.web.client.HttpClientErrorException.BadRequest if the cursor is
+   *     invalid or does not match the sorting
    * @throws org.springframework.web.client.HttpClientErrorException.Forbidden if the search is
    *     performed without proper authentication
    * @throws org.springframework.web.client.HttpServerErrorException.ServiceUnavailable if history
@@ -143,47 +388,225 @@ public class Soht2HistoryService {
         paging,
         authentication);
 
+    val filter =
+        historyFilter(
+            userName,
+            connectionId,
+            clientHost,
+            targetHost,
+            targetPorts,
+            openedAfter,
+            openedBefore,
+            closedAfter,
+            closedBefore,
+            authentication);
+    val sorting = ofNullable(paging.sortingOrder()).orElseGet(List::of);
+    val after =
+        ofNullable(paging.cursor())
+            .map(
+                c ->
+                    Try.of(() -> HistoryCursor.decode(c, sorting))
+                        .getOrElseThrow(e -> badRequest("Invalid cursor: " + e.getMessage())))
+            .orElse(null);
+    val offset = after == null ? (long) paging.pageNumber() * paging.pageSize() : 0L;
+    if (offset > Integer.MAX_VALUE) throw badRequest("Page number is too large");
+    val countLimit = soht2ServerConfig.getHistorySearch().getCountLimit();
+    val total =
+        paging.skipTotal() ? null : countCache.get(filter, f -> historySink.count(f, countLimit));
+    val totalApproximate = total != null && countLimit > 0 && total >= countLimit;
+
+    // one extra record is fetched to find out whether there is a next page
+    val entities =
+        paging.pageSize() > 0 && (total == null || totalApproximate || offset < total)
+            ? pageCache.get(
+                new PageKey(filter, sorting, after, (int) offset, paging.pageSize() + 1),
+                k -> historySink.find(k.filter(), k.sorting(), k.after(), k.offset(), k.limit()))
+            : List.<HistoryEntity>of();
+    val pageEntities =
+        entities.size() > paging.pageSize() ? entities.subList(0, paging.pageSize()) : entities;
+    val nextCursor =
+        entities.size() > paging.pageSize()
+            ? HistoryCursor.of(sorting, pageEntities.getLast()).encode()
+            : null;
+    return HistoryPage.builder()
+        .paging(paging)
+        .totalItems(total)
+        .totalApproximate(totalApproximate)
+        .data(pageEntities.stream().map(HistoryEntity::toSoht2Connection).toList())
+        .nextCursor(nextCursor)
+        .build();
+  }
+
+  /**
+   * Aggregates the connection traffic by the hourly or daily grain. The default sink reads it from
+   * the rollups, which are maintained as history records are written, so the cost of the query
+   * depends on the number of rollup rows in the time range, not on the size of the history, and the
+   * rollups are not affected by the history retention.
+   *
+   * @param query the statistics query; its string values may have an asterisk (*) wildcard on the
+   *     start or/and the end. If the time range is not specified, it is the last 7 days.
+   * @param authentication the authentication object for verifying user permissions
+   * @return the aggregated statistics
+   * @throws org.springframework.web.client.HttpClientErrorException.BadRequest if the time range is
+   *     empty
+   * @throws org.springframework.web.client.HttpClientErrorException.Forbidden if the statistics are
+   *     requested without proper authentication
+   * @throws org.springframework.web.client.HttpServerErrorException.ServiceUnavailable if history
+   *     logging is disabled
+   */
+  @Transactional(readOnly = true)
+  public List<HistoryStats> getStats(HistoryStatsQuery query, Authentication authentication) {
+    if (!soht2ServerConfig.isEnableHistory()) throw serviceUnavailable(ERR_HISTORY_DISABLED);
+    log.info("getStats: query={}, authentication={}", query, authentication);
+
     val un =
         getCurrentUser(authentication)
-            .map(cu -> cu.isAdmin() ? ofNullable(userName).orElse("") : cu.name())
-            .orElseThrow(() -> forbidden("Search requires authentication"));
+            .map(cu -> cu.isAdmin() ? query.userName() : cu.name())
+            .orElseThrow(() -> forbidden("Statistics require authentication"));
+    val to = ofNullable(query.to()).orElseGet(LocalDateTime::now);
+    val from = ofNullable(query.from()).orElseGet(() -> to.minusDays(STATS_DEFAULT_DAYS));
+    if (!from.isBefore(to)) throw badRequest("Statistics time range is empty");
 
-    val unLike = asLikeParam(un);
-    val connectionIdLike = asLikeParam(connectionId);
-    val clientHostLike = asLikeParam(clientHost);
-    val targetHostLike = asLikeParam(targetHost);
-    val total =
-        historyEntityRepository.countAll(
-            unLike,
-            connectionIdLike,
-            clientHostLike,
-            targetHostLike,
+    return historySink.stats(
+        query.toBuilder()
+            .from(from)
+            .to(to)
+            .userName(asLikeParam(un))
+            .targetHost(asLikeParam(query.targetHost()))
+            .clientHost(asLikeParam(query.clientHost()))
+            .build());
+  }
+
+  /**
+   * Exports all connection history records matching the specified filters. The records are written
+   * to the response as they are read from the {@link HistorySink}, so the memory used does not
+   * depend on the number of exported records.
+   *
+   * @param userName the usernames to filter the history records by
+   * @param connectionId the connection IDs to filter the history records by
+   * @param clientHost the client hosts to filter the history records by
+   * @param targetHost the target hosts to filter the history records by
+   * @param targetPorts a collection of target ports to filter the history records by
+   * @param openedAfter the minimum opened date-time to filter the history records by
+   * @param openedBefore the maximum opened date-time to filter the history records by
+   * @param closedAfter the minimum closed date-time to filter the history records by
+   * @param closedBefore the maximum closed date-time to filter the history records by
+   * @param format the format of the exported records
+   * @param authentication the authentication object for verifying user permissions
+   * @return the response body writing the exported records
+   * @throws org.springframework.web.client.HttpClientErrorException.Forbidden if the export is
+   *     performed without proper authentication
+   * @throws org.springframework.web.client.HttpServerErrorException.ServiceUnavailable if history
+   *     logging is disabled
+   */
+  @SuppressWarnings("java:S107")
+  public StreamingResponseBody exportHistory(
+      @Nullable String userName,
+      @Nullable String connectionId,
+      @Nullable String clientHost,
+      @Nullable String targetHost,
+      Collection<Integer> targetPorts,
+      @Nullable LocalDateTime openedAfter,
+      @Nullable LocalDateTime openedBefore,
+      @Nullable LocalDateTime closedAfter,
+      @Nullable LocalDateTime closedBefore,
+      HistoryExportFormat format,
+      Authentication authentication) {
+    if (!soht2ServerConfig.isEnableHistory()) throw serviceUnavailable(ERR_HISTORY_DISABLED);
+    val filter =
+        historyFilter(
+            userName,
+            connectionId,
+            clientHost,
+            targetHost,
             targetPorts,
             openedAfter,
             openedBefore,
             closedAfter,
-            closedBefore);
-    val data =
-        total > 0 && (long) paging.pageNumber() * paging.pageSize() < total
-            ? historyEntityRepository
-                .findAll(
-                    unLike,
-                    connectionIdLike,
-                    clientHostLike,
-                    targetHostLike,
-                    targetPorts,
-                    openedAfter,
-                    openedBefore,
-                    closedAfter,
-                    closedBefore,
-                    paging.toPageable(true))
-                .stream()
-                .map(HistoryEntity::toSoht2Connection)
-                .toList()
-            : List.<Soht2Connection>of();
-    return HistoryPage.builder().paging(paging).totalItems(total).data(data).build();
+            closedBefore,
+            authentication);
+    log.info("exportHistory: filter={}, format={}", filter, format);
+
+    return out -> {
+      val writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+      val count = new AtomicLong();
+      if (format == HistoryExportFormat.csv) writer.write(CSV_HEADER);
+      historySink.export(
+          filter,
+          entity -> {
+            writeRecord(writer, format, entity.toSoht2Connection());
+            count.incrementAndGet();
+          });
+      writer.flush();
+      log.info("exportHistory: count={}", count);
+    };
+  }
+
+  @SneakyThrows
+  private void writeRecord(Writer writer, HistoryExportFormat format, Soht2Connection connection) {
+    switch (format) {
+      case ndjson -> writer.write(objectMapper.writeValueAsString(connection));
+      case csv ->
+          writer.write(
+              Stream.of(
+                      connection.id(),
+                      connection.user().username(),
+                      connection.clientHost(),
+                      connection.targetHost(),
+                      connection.targetPort(),
+                      connection.openedAt(),
+                      connection.closedAt(),
+                      connection.bytesRead(),
+                      connection.bytesWritten())
+                  .map(Soht2HistoryService::asCsvValue)
+                  .collect(Collectors.joining(",")));
+    }
+    writer.write('\n');
+  }
+
+  static String asCsvValue(@Nullable Object value) {
+    val s = value == null ? "" : value.toString();
+    return s.chars().anyMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')
+        ? '"' + s.replace("\"", "\"\"") + '"'
+        : s;
   }
 
+  private HistoryFilter historyFilter(
+      @Nullable String userName,
+      @Nullable String connectionId,
+      @Nullable String clientHost,
+      @Nullable String targetHost,
+      Collection<Integer> targetPorts,
+      @Nullable LocalDateTime openedAfter,
+      @Nullable LocalDateTime openedBefore,
+      @Nullable LocalDateTime closedAfter,
+      @Nullable LocalDateTime closedBefore,
+      Authentication authentication) {
+    val un =
+        getCurrentUser(authentication)
+            .map(cu -> cu.isAdmin() ? ofNullable(userName).orElse("") : cu.name())
+            .orElseThrow(() -> forbidden("Search requires authentication"));
+    return HistoryFilter.builder()
+        .userName(asLikeParam(un))
+        .connectionId(asLikeParam(connectionId))
+        .clientHost(asLikeParam(clientHost))
+        .targetHost(asLikeParam(targetHost))
+        .targetPorts(targetPorts)
+        .openedAfter(openedAfter)
+        .openedBefore(openedBefore)
+        .closedAfter(closedAfter)
+        .closedBefore(closedBefore)
+        .build()
+        .normalized();
+  }
+
+  private record PageKey(
+      HistoryFilter filter,
+      List<HistoryOrder> sorting,
+      @Nullable HistoryCursor after,
+      int offset,
+      int limit) {}
+
   static @Nullable String asLikeParam(@Nullable String param) {
     if (!StringUtils.hasLength(param)) return null;
     return param.replaceAll("[%_]", "\\\\$0").replaceFirst("^\\*", "%").replaceFirst("\\*$", "%");
@@ -5,12 +5,17 @@ import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 import static net.soht2.common.compress.Compressor.compressorCache;
+import static net.soht2.common.compress.Compressor.compressorFactory;
+import static net.soht2.common.compress.Compressor.dictionaryCompressorFactory;
 import static net.soht2.common.util.AuxUtil.peek;
 import static net.soht2.server.service.ExceptionHelper.gone;
 import static net.soht2.server.service.Soht2UserService.EMPTY_CU;
 import static net.soht2.server.service.Soht2UserService.getCurrentUser;
 
+import io.vavr.CheckedConsumer;
 import io.vavr.control.Try;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.time.LocalDateTime;
@@ -20,9 +25,15 @@ import java.util.function.Function;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import net.soht2.common.compress.AdaptiveCompressor;
+import net.soht2.common.compress.CompressionType;
+import net.soht2.common.compress.Compressor;
+import net.soht2.common.compress.PresetDictionary;
+import net.soht2.common.compress.StreamDeflater;
 import net.soht2.common.dto.Soht2Connection;
 import net.soht2.common.dto.Soht2User;
 import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.dto.EncodedData;
 import net.soht2.server.entity.UserEntity;
 import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -39,14 +50,18 @@ import org.springframework.stereotype.Service;
 public class Soht2Service {
 
   private static final byte[] EMPTY = new byte[0];
+  private static final List<CompressionType> RESPONSE_COMPRESSION_TYPES =
+      List.of(CompressionType.LZ4, CompressionType.GZIP);
 
   private final Map<UUID, ServerConnection> connections = new ConcurrentHashMap<>();
   private final Soht2ServerConfig soht2ServerConfig;
   private final Soht2UserService soht2UserService;
   private final Soht2HistoryService soht2HistoryService;
+  private final Soht2DictionaryService soht2DictionaryService;
 
   /**
-   * Opens a new SOHT2 connection and adds it to the connection pool.
+   * Opens a new SOHT2 connection and adds it to the connection pool. The connection gets the preset
+   * dictionary of its target, if there is one.
    *
    * @param soht2 A {@link Soht2Connection} object containing the SOHT2 connection details to be
    *     opened
@@ -59,6 +74,9 @@ public class Soht2Service {
         ServerConnection.builder()
             .soht2(soht2)
             .socketTimeout((int) soht2ServerConfig.getSocketReadTimeout().toMillis())
+            .exchangeWindow(soht2ServerConfig.getExchangeWindow())
+            .dictionary(
+                soht2DictionaryService.find(soht2.targetHost(), soht2.targetPort()).orElse(null))
             .postCloseAction(this::postCloseAction)
             .build();
     connections.put(soht2.id(), connection);
@@ -92,6 +110,16 @@ public class Soht2Service {
         .map(ServerConnection::soht2);
   }
 
+  /**
+   * Retrieves the preset dictionary of the target of the connection.
+   *
+   * @param id the unique identifier of the connection
+   * @return the dictionary, or empty if the connection is not found or its target has none
+   */
+  public Optional<PresetDictionary> dictionary(UUID id) {
+    return ofNullable(connections.get(id)).map(ServerConnection::dictionary);
+  }
+
   /**
    * Retrieves a collection of all active {@link Soht2Connection} instances. The method filters the
    * connections based on the current user's permissions, allowing only those connections that
@@ -126,7 +154,9 @@ public class Soht2Service {
   /**
    * Sends data to a connection identified by the unique identifier and retrieves the response data.
    * The method writes the provided data to the connection's output stream and reads the response
-   * data from its input stream. Handles socket timeout exceptions by returning an empty byte array.
+   * data from its input stream, draining everything that is already available there up to the
+   * configured max response size. Handles socket timeout exceptions by returning an empty byte
+   * array.
    *
    * @param id the unique identifier of the connection to communicate with
    * @param data the byte array containing the data to be sent to the connection
@@ -134,29 +164,53 @@ public class Soht2Service {
    *     the operation is successful, or an empty byte array in case of a timeout
    */
   public Try<byte[]> exchange(UUID id, @Nullable byte[] data, @Nullable String encoding) {
+    return exchange(id, data, encoding, null, null);
+  }
+
+  /**
+   * Sends data to a connection identified by the unique identifier and retrieves the response data,
+   * as {@link #exchange(UUID, byte[], String)} does. If the sequence number is specified, the
+   * exchange is served by the {@link ExchangeSequencer} of the connection in the order of sequence
+   * numbers, and a repeated exchange returns the same response without writing the data again.
+   *
+   * @param id the unique identifier of the connection to communicate with
+   * @param data the byte array containing the data to be sent to the connection
+   * @param encoding the content encoding of the data (optional)
+   * @param seq the sequence number of the download (optional)
+   * @param ack the sequence number of the last download the client received in order (optional)
+   * @return a {@link Try} containing the byte array received from the connection's input stream if
+   *     the operation is successful, or an empty byte array in case of a timeout
+   */
+  public Try<byte[]> exchange(
+      UUID id,
+      @Nullable byte[] data,
+      @Nullable String encoding,
+      @Nullable Long seq,
+      @Nullable Long ack) {
     if (log.isTraceEnabled())
       ofNullable(data)
           .map(v -> v.length)
           .filter(v -> v > 0)
-          .ifPresent(v -> log.trace("exchange: id={}, in.length={}, encoding={}", id, v, encoding));
-    return Try.of(() -> connections.get(id))
-        .filter(Objects::nonNull, () -> gone("Connection " + id + " not found"))
-        .filter(ServerConnection::isOpened, () -> gone("Connection " + id + " is closed"))
-        .andThenTry(c -> c.lastActivity(LocalDateTime.now()))
-        .mapTry(
-            sc -> {
-              if (ofNullable(data).filter(v -> v.length > 0).isPresent()) {
-                val dataOut = compressorCache.apply(encoding).decompress(data);
-                sc.outputStream().write(dataOut);
-                sc.outputStream().flush();
-                sc.addBytesWritten(dataOut.length);
-              }
-              val buffer = new byte[(int) soht2ServerConfig.getReadBufferSize().toBytes()];
-              val bufferLen = sc.inputStream().read(buffer);
-              if (bufferLen <= 0) return EMPTY;
-              sc.addBytesRead(bufferLen);
-              return bufferLen >= buffer.length ? buffer : Arrays.copyOf(buffer, bufferLen);
-            })
+          .ifPresent(
+              v ->
+                  log.trace(
+                      "exchange: id={}, seq={}, in.length={}, encoding={}", id, seq, v, encoding));
+    return openedConnection(id)
+        .flatMap(
+            sc ->
+                seq == null
+                    ? Try.run(() -> write(sc, decompress(sc, data, encoding))).mapTry(v -> read(sc))
+                    : sc.sequencer()
+                        .read(
+                            seq,
+                            ofNullable(ack).orElse(-1L),
+                            () -> {
+                              write(sc, decompress(sc, data, encoding));
+                              // an empty response is kept for a repeated download as well
+                              return Try.of(() -> read(sc))
+                                  .recover(SocketTimeoutException.class, e -> EMPTY)
+                                  .get();
+                            }))
         .recover(SocketTimeoutException.class, e -> EMPTY)
         .onFailure(e -> log.error("exchange: id={} - {}", id, e.toString()))
         .recover(SocketException.class, e -> EMPTY)
@@ -169,6 +223,196 @@ public class Soht2Service {
                     .ifPresent(v -> log.trace("exchange: id={}, out.length={}", id, v)));
   }
 
+  /**
+   * Sends data to a connection identified by the unique identifier without reading the response
+   * data. It allows the client to upload data independently of downloading the target data with
+   * {@link #exchange(UUID, byte[], String)}, so the upload never waits for the target to respond.
+   *
+   * @param id the unique identifier of the connection to send data to
+   * @param data the byte array containing the data to be sent to the connection
+   * @param encoding the content encoding of the data (optional)
+   * @return a {@link Try} that is successful if the data was written to the connection
+   */
+  public Try<Void> write(UUID id, @Nullable byte[] data, @Nullable String encoding) {
+    return write(id, data, encoding, null);
+  }
+
+  /**
+   * Sends data to a connection identified by the unique identifier without reading the response
+   * data, as {@link #write(UUID, byte[], String)} does. If the sequence number is specified, the
+   * data is written by the {@link ExchangeSequencer} of the connection in the order of sequence
+   * numbers, and a repeated upload is ignored. If writing to the target fails, the connection is
+   * closed, so the failed upload cannot be mistaken for a delivered one when it is retried.
+   *
+   * @param id the unique identifier of the connection to send data to
+   * @param data the byte array containing the data to be sent to the connection
+   * @param encoding the content encoding of the data (optional)
+   * @param seq the sequence number of the upload (optional)
+   * @return a {@link Try} that is successful if the data was written or kept to be written in order
+   */
+  public Try<Void> write(
+      UUID id, @Nullable byte[] data, @Nullable String encoding, @Nullable Long seq) {
+    if (log.isTraceEnabled())
+      ofNullable(data)
+          .map(v -> v.length)
+          .filter(v -> v > 0)
+          .ifPresent(
+              v ->
+                  log.trace(
+                      "write: id={}, seq={}, in.length={}, encoding={}", id, seq, v, encoding));
+    // the stream uploads are inflated in the order of sequence numbers, and each one only once
+    val stream = StreamDeflater.CONTENT_ENCODING.equalsIgnoreCase(encoding);
+    return openedConnection(id)
+        .flatMap(
+            sc ->
+                Try.of(
+                        () ->
+                            stream
+                                ? ofNullable(data).orElse(EMPTY)
+                                : decompress(sc, data, encoding))
+                    .flatMap(
+                        bytes -> {
+                          CheckedConsumer<byte[]> writer =
+                              v -> write(sc, stream ? decompress(sc, v, encoding) : v);
+                          return seq == null
+                              ? Try.run(() -> writer.accept(bytes))
+                              : sc.sequencer()
+                                  .write(seq, bytes, writer)
+                                  .onFailure(
+                                      e -> {
+                                        if (sc.sequencer().isClosed()) sc.close();
+                                      });
+                        }))
+        .map(v -> (Void) null)
+        .onFailure(e -> log.error("write: id={} - {}", id, e.toString()));
+  }
+
+  private Try<ServerConnection> openedConnection(UUID id) {
+    return Try.of(() -> connections.get(id))
+        .filter(Objects::nonNull, () -> gone("Connection " + id + " not found"))
+        .filter(ServerConnection::isOpened, () -> gone("Connection " + id + " is closed"))
+        .andThenTry(c -> c.lastActivity(LocalDateTime.now()));
+  }
+
+  /**
+   * Compresses the exchange response with the fastest encoding accepted by the client, LZ4 or GZIP,
+   * if compression is enabled. If the client has the preset dictionary of the target, which it
+   * tells by its id, and it accepts DEFLATE, the response is compressed with the dictionary
+   * instead, which pays off for much smaller responses. If adaptive compression is enabled, the
+   * response is compressed only if it pays off for the connection, see {@link AdaptiveCompressor}.
+   *
+   * @param id the unique identifier of the connection the response is read from
+   * @param data the response data
+   * @param acceptEncoding the encodings accepted by the client (optional)
+   * @param dictionaryId the id of the preset dictionary the client has (optional)
+   * @return the compressed response with its content encoding, or empty if the response has to be
+   *     sent as is
+   */
+  public Optional<EncodedData> compressResponse(
+      UUID id, byte[] data, @Nullable String acceptEncoding, @Nullable String dictionaryId) {
+    val compression = soht2ServerConfig.getResponseCompression();
+    if (!compression.isEnabled()) return Optional.empty();
+    val connection = ofNullable(connections.get(id));
+    val dictionaryCompressor =
+        connection
+            .map(ServerConnection::dictionary)
+            .filter(d -> d.id().equals(dictionaryId))
+            .map(
+                d ->
+                    dictionaryCompressorFactory.apply(
+                        d, compression.getLevel(), compression.getStrategy()))
+            .filter(c -> acceptsEncoding(acceptEncoding, c));
+    val minSize =
+        (dictionaryCompressor.isPresent()
+                ? soht2ServerConfig.getDictionaries().getMinResponseSize()
+                : compression.getMinResponseSize())
+            .toBytes();
+    return dictionaryCompressor
+        .or(
+            () ->
+                RESPONSE_COMPRESSION_TYPES.stream()
+                    .map(
+                        type ->
+                            compressorFactory.apply(
+                                type.name(), compression.getLevel(), compression.getStrategy()))
+                    .filter(c -> acceptsEncoding(acceptEncoding, c))
+                    .findFirst())
+        .flatMap(
+            compressor ->
+                (compression.isAdaptive()
+                        ? connection.flatMap(
+                            sc -> sc.responseCompressor(compressor, minSize).compress(data))
+                        : Optional.of(data)
+                            .filter(v -> v.length >= minSize)
+                            .map(compressor::compress))
+                    .map(v -> new EncodedData(compressor.getContentEncoding(), v)));
+  }
+
+  private static boolean acceptsEncoding(@Nullable String acceptEncoding, Compressor compressor) {
+    return ofNullable(acceptEncoding).stream()
+        .flatMap(v -> Arrays.stream(v.split(",")))
+        .map(v -> v.split(";")[0].trim())
+        .anyMatch(compressor.getAcceptEncoding()::equalsIgnoreCase);
+  }
+
+  private static byte[] decompress(
+      ServerConnection sc, @Nullable byte[] data, @Nullable String encoding) {
+    if (data == null || data.length == 0) return EMPTY;
+    return StreamDeflater.CONTENT_ENCODING.equalsIgnoreCase(encoding)
+        ? sc.requestInflater().inflate(data)
+        : compressorCache.apply(encoding).decompress(data);
+  }
+
+  private void write(ServerConnection sc, byte[] data) throws IOException {
+    if (data.length == 0) return;
+    sc.outputStream().write(data);
+    sc.outputStream().flush();
+    sc.addBytesWritten(data.length);
+    sample(sc, data);
+  }
+
+  private void sample(ServerConnection sc, byte[] data) {
+    soht2DictionaryService.sample(sc.soht2().targetHost(), sc.soht2().targetPort(), data);
+  }
+
+  /**
+   * Reads data from the target of the given connection. The first read blocks up to the configured
+   * socket timeout; then the method keeps reading without blocking while the target data is already
+   * available, until the configured max response size is reached.
+   *
+   * @param sc the connection to read data from
+   * @return the byte array read from the connection, or an empty array if there is no data
+   * @throws IOException if an I/O error occurs
+   */
+  private byte[] read(ServerConnection sc) throws IOException {
+    val maxSize = (int) soht2ServerConfig.getMaxResponseSize().toBytes();
+    val buffer = new byte[(int) soht2ServerConfig.getReadBufferSize().toBytes()];
+    val in = sc.inputStream();
+
+    var bufferLen = in.read(buffer);
+    if (bufferLen <= 0) return EMPTY;
+    if (in.available() <= 0) {
+      sc.addBytesRead(bufferLen);
+      val data = bufferLen >= buffer.length ? buffer : Arrays.copyOf(buffer, bufferLen);
+      sample(sc, data);
+      return data;
+    }
+
+    val result = new ByteArrayOutputStream(Math.min(maxSize, buffer.length * 2));
+    result.write(buffer, 0, bufferLen);
+    int available;
+    while (result.size() < maxSize && (available = in.available()) > 0) {
+      bufferLen =
+          in.read(buffer, 0, Math.min(Math.min(available, buffer.length), maxSize - result.size()));
+      if (bufferLen <= 0) break;
+      result.write(buffer, 0, bufferLen);
+    }
+    sc.addBytesRead(result.size());
+    val data = result.toByteArray();
+    sample(sc, data);
+    return data;
+  }
+
   /**
    * Closes all connections that have been abandoned for a duration longer than the configured
    * timeout. This method is scheduled to run periodically to ensure that stale connections are
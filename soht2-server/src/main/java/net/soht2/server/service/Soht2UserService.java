@@ -2,15 +2,23 @@
 package net.soht2.server.service;
 
 import static io.vavr.Predicates.not;
+import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static net.soht2.server.service.ExceptionHelper.*;
 import static org.springframework.util.StringUtils.hasText;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
@@ -18,11 +26,16 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import net.soht2.common.dto.Soht2User;
 import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.dto.HistoryDeletion;
+import net.soht2.server.dto.UserFilter;
+import net.soht2.server.dto.UserPage;
+import net.soht2.server.dto.UserPaging;
+import net.soht2.server.dto.UserProvision;
+import net.soht2.server.dto.UserProvisionResult;
 import net.soht2.server.entity.UserEntity;
 import net.soht2.server.repository.UserEntityRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.lang.Nullable;
 import org.springframework.security.core.Authentication;
@@ -31,6 +44,10 @@ import org.springframework.security.core.userdetails.*;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.client.HttpClientErrorException;
 
 /**
@@ -55,7 +72,9 @@ public class Soht2UserService implements UserDetailsService {
   private final UserEntityRepository userEntityRepository;
   private final PasswordEncoder passwordEncoder;
   private final Cache userCache;
+  private final Cache unknownUserCache;
   private final Soht2HistoryService soht2HistoryService;
+  private final TransactionTemplate transactionTemplate;
 
   @Setter(onMethod_ = {@Autowired, @Lazy})
   private Soht2UserService self;
@@ -82,15 +101,21 @@ public class Soht2UserService implements UserDetailsService {
   }
 
   /**
-   * Retrieves a cached user entity by username. If the user is not found in the cache, it queries
-   * the database.
+   * Retrieves a cached user entity by username, ignoring case. If the user is not found in the
+   * cache, it is loaded from the database. A stale cached user is returned while it is reloaded in
+   * the background. Unknown usernames are remembered in a separate short-lived cache, so they do
+   * not hit the database on every request.
    *
    * @param username the username of the user to retrieve
    * @return an {@link Optional} containing the {@link UserEntity} if found, or empty if not found
    */
-  @Cacheable(cacheNames = "userCache", key = "#username")
   public Optional<UserEntity> getCachedUserEntity(String username) {
-    return userEntityRepository.findByNameIgnoreCase(username);
+    val key = username.toLowerCase(Locale.ROOT);
+    if (unknownUserCache.get(key) != null) return Optional.empty();
+    // the user cache loads missing users by itself
+    val userEntity = ofNullable(userCache.get(key, UserEntity.class));
+    if (userEntity.isEmpty()) unknownUserCache.put(key, Boolean.TRUE);
+    return userEntity;
   }
 
   /**
@@ -141,15 +166,138 @@ public class Soht2UserService implements UserDetailsService {
     if (!allowedTargets.stream().allMatch(RE_TARGET.asMatchPredicate()))
       throw badRequest(ERR_TARGET);
 
-    return userEntityRepository
-        .save(
+    val userEntity =
+        userEntityRepository.save(
             UserEntity.builder()
                 .name(name.toLowerCase())
                 .password(passwordEncoder.encode(password))
                 .role(checkRole(role).orElse(UserEntity.ROLE_USER))
                 .allowedTargets(allowedTargets)
-                .build())
-        .toSoht2User();
+                .build());
+    evictUser(name);
+    return userEntity.toSoht2User();
+  }
+
+  /**
+   * Creates or updates many users at once. All entries are validated before anything is written,
+   * and invalid entries are reported as failed without affecting the others. Passwords are hashed
+   * in parallel outside the transaction, so the expensive hashing uses all cores and does not hold
+   * a database connection. Then the existing users are read by one query, and new and changed users
+   * are written by JDBC batches in a single transaction.
+   *
+   * @param entries the users to create or update
+   * @return the results of the entries, in the order of the entries
+   */
+  public List<UserProvisionResult> provisionUsers(List<UserProvision> entries) {
+    log.info("provisionUsers: entries={}", entries.size());
+
+    val names = new HashSet<String>();
+    val errors =
+        entries.stream()
+            .map(e -> validateProvision(e, hasText(e.username()) && names.add(lowerCase(e))))
+            .toList();
+    val hashes =
+        IntStream.range(0, entries.size())
+            .parallel()
+            .mapToObj(
+                i ->
+                    errors.get(i) == null && hasText(entries.get(i).password())
+                        ? passwordEncoder.encode(entries.get(i).password())
+                        : null)
+            .toList();
+
+    val results =
+        requireNonNull(
+            transactionTemplate.execute(status -> writeProvision(entries, errors, hashes)));
+    results.stream()
+        .filter(r -> r.status() != UserProvisionResult.Status.FAILED)
+        .forEach(r -> evictUser(r.username()));
+    return results;
+  }
+
+  private List<UserProvisionResult> writeProvision(
+      List<UserProvision> entries, List<String> errors, List<String> hashes) {
+    val existing =
+        userEntityRepository
+            .findAllByNameIgnoreCaseIn(
+                IntStream.range(0, entries.size())
+                    .filter(i -> errors.get(i) == null)
+                    .mapToObj(i -> lowerCase(entries.get(i)))
+                    .toList())
+            .stream()
+            .collect(Collectors.toMap(u -> u.getName().toLowerCase(Locale.ROOT), u -> u));
+    val now = LocalDateTime.now();
+    val inserts = new ArrayList<UserEntity>();
+    val updates = new ArrayList<UserEntity>();
+    val results = new ArrayList<UserProvisionResult>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      val entry = entries.get(i);
+      val result = UserProvisionResult.builder().username(entry.username());
+      val current = errors.get(i) == null ? existing.get(lowerCase(entry)) : null;
+      if (errors.get(i) != null)
+        result.status(UserProvisionResult.Status.FAILED).error(errors.get(i));
+      else if (current == null && hashes.get(i) == null)
+        result.status(UserProvisionResult.Status.FAILED).error("Password must be provided");
+      else if (current == null) {
+        val user =
+            UserEntity.builder()
+                .name(lowerCase(entry))
+                .password(hashes.get(i))
+                .role(checkRole(entry.role()).orElse(UserEntity.ROLE_USER))
+                .allowedTargets(ofNullable(entry.allowedTargets()).orElse(Set.of("*:*")))
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        inserts.add(user);
+        result.status(UserProvisionResult.Status.CREATED).user(user.toSoht2User());
+      } else if (hashes.get(i) == null && !hasText(entry.role()) && entry.allowedTargets() == null)
+        result.status(UserProvisionResult.Status.UNCHANGED).user(current.toSoht2User());
+      else {
+        // a copy, so the managed entity is not flushed in addition to the batch
+        val user =
+            UserEntity.builder()
+                .id(current.getId())
+                .name(current.getName())
+                .password(ofNullable(hashes.get(i)).orElse(current.getPassword()))
+                .role(checkRole(entry.role()).orElse(current.getRole()))
+                .allowedTargets(
+                    ofNullable(entry.allowedTargets()).orElse(current.getAllowedTargets()))
+                .createdAt(current.getCreatedAt())
+                .updatedAt(now)
+                .build();
+        updates.add(user);
+        result.status(UserProvisionResult.Status.UPDATED).user(user.toSoht2User());
+      }
+      results.add(result.build());
+    }
+    userEntityRepository.insertAll(inserts);
+    userEntityRepository.updateAll(updates);
+    log.debug("provisionUsers: created={}, updated={}", inserts.size(), updates.size());
+    return results;
+  }
+
+  /**
+   * Validates the provisioning entry the same way as {@link #createUser} and {@link #updateUser}
+   * do, except for the existence of the user, which is checked when writing.
+   *
+   * @return the error message, or {@code null} if the entry is valid
+   */
+  private static @Nullable String validateProvision(UserProvision entry, boolean isFirst) {
+    if (!hasText(entry.username())) return ERR_USER_EMPTY;
+    if ("self".equalsIgnoreCase(entry.username())) return "Cannot create user with name 'self'";
+    if (!entry.username().matches("^\\w+$"))
+      return "User name must consist of alphanumeric characters and underscores only";
+    if (!isFirst) return "Duplicate user name";
+    if (hasText(entry.role()) && !UserEntity.ROLES.contains(entry.role().toUpperCase(Locale.ROOT)))
+      return "Invalid role: " + entry.role().toUpperCase(Locale.ROOT);
+    if (!ofNullable(entry.allowedTargets()).stream()
+        .flatMap(Collection::stream)
+        .allMatch(RE_TARGET.asMatchPredicate())) return ERR_TARGET;
+    return null;
+  }
+
+  private static String lowerCase(UserProvision entry) {
+    return entry.username().toLowerCase(Locale.ROOT);
   }
 
   /**
@@ -197,7 +345,7 @@ public class Soht2UserService implements UserDetailsService {
     }
     if (hasChanges) {
       userEntity = userEntityRepository.save(userEntity);
-      userCache.evict(name);
+      evictUser(name);
     }
     return userEntity.toSoht2User();
   }
@@ -209,14 +357,16 @@ public class Soht2UserService implements UserDetailsService {
    * @param name the name of the user to delete
    * @param force if true, allows deletion of admin users; otherwise, throws an exception
    * @param andHistory if true, also deletes the user's history; otherwise, leaves the history
+   * @param inBackground if true, the user's history is deleted in the background once the user's
+   *     deletion is committed, and the progress is available by {@link #getHistoryDeletion(String)}
    * @throws HttpClientErrorException.BadRequest if the name of the user is not provided
    * @throws HttpClientErrorException.Forbidden if the user to be deleted is admin and {@code force}
    *     argument is {@code false}
    */
   @Transactional
-  public void deleteUser(String name, boolean force, boolean andHistory)
+  public void deleteUser(String name, boolean force, boolean andHistory, boolean inBackground)
       throws HttpClientErrorException {
-    log.info("deleteUser: name={}, force={}", name, force);
+    log.info("deleteUser: name={}, force={}, inBackground={}", name, force, inBackground);
 
     if (!hasText(name)) throw badRequest(ERR_USER_EMPTY);
     val userEntity =
@@ -226,14 +376,41 @@ public class Soht2UserService implements UserDetailsService {
     if (userEntity.getRole().equals(UserEntity.ROLE_ADMIN) && !force)
       throw forbidden("Cannot delete admin user");
 
-    if (andHistory && soht2ServerConfig.isEnableHistory()) soht2HistoryService.deleteHistory(name);
+    if (andHistory && soht2ServerConfig.isEnableHistory()) {
+      if (!inBackground) soht2HistoryService.deleteHistory(name);
+      else {
+        // the deletion must not start for a user whose removal is rolled back
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+              @Override
+              public void afterCommit() {
+                soht2HistoryService.deleteHistoryInBackground(name);
+              }
+            });
+      }
+    }
 
     userEntityRepository.delete(userEntity);
-    userCache.evict(name);
+    evictUser(name);
   }
 
   /**
-   * Lists all users in the system.
+   * Returns the progress of the latest deletion of the user's history running in the background.
+   *
+   * @param name the name of the user
+   * @return the progress of the deletion
+   * @throws HttpClientErrorException.NotFound if there was no deletion of the user's history
+   *     recently
+   */
+  public HistoryDeletion getHistoryDeletion(String name) throws HttpClientErrorException {
+    return soht2HistoryService
+        .getHistoryDeletion(name)
+        .orElseThrow(() -> notFound("History deletion not found"));
+  }
+
+  /**
+   * Lists all users in the system. Large user bases should be listed page by page with {@link
+   * #searchUsers(String, String, String, UserPaging)} instead.
    *
    * @return a list of {@link Soht2User} objects representing all users
    */
@@ -243,6 +420,82 @@ public class Soht2UserService implements UserDetailsService {
     return userEntityRepository.findAll().stream().map(UserEntity::toSoht2User).toList();
   }
 
+  /**
+   * Searches users by the specified filters. The users are read page by page in the specified
+   * order, so the cost of a page does not depend on the number of users in the system. The total
+   * count is not calculated if {@link UserPaging#skipTotal()} is set.
+   *
+   * @param userName the substring of the username to filter the users by, {@code *} at the start or
+   *     the end matches any characters
+   * @param role the role to filter the users by
+   * @param target the substring of an allowed target to filter the users by, {@code *} at the start
+   *     or the end matches any characters
+   * @param paging the paging and sorting information for the search
+   * @return a {@link UserPage} object containing the filtered users, total count, and paging
+   *     information
+   */
+  @Transactional(readOnly = true)
+  public UserPage searchUsers(
+      @Nullable String userName,
+      @Nullable String role,
+      @Nullable String target,
+      UserPaging paging) {
+    log.info(
+        "searchUsers: userName={}, role={}, target={}, paging={}", userName, role, target, paging);
+    val offset = (long) paging.pageNumber() * paging.pageSize();
+    if (offset > Integer.MAX_VALUE) throw badRequest("Page number is too large");
+    val filter = userFilter(userName, role, target);
+    val total = paging.skipTotal() ? null : userEntityRepository.countAll(filter);
+    val entities =
+        paging.pageSize() > 0 && (total == null || offset < total)
+            ? userEntityRepository.findAll(
+                filter,
+                ofNullable(paging.sortingOrder()).orElseGet(List::of),
+                (int) offset,
+                paging.pageSize())
+            : List.<UserEntity>of();
+    return UserPage.builder()
+        .paging(paging)
+        .totalItems(total)
+        .data(entities.stream().map(UserEntity::toSoht2User).toList())
+        .build();
+  }
+
+  /**
+   * Calculates the entity tag of a user search result. It is derived from the version of the user
+   * table and the search parameters, so it changes whenever any user is created, updated or
+   * deleted, and a client can skip a page it already has without the page being read.
+   *
+   * @param userName the username filter of the search
+   * @param role the role filter of the search
+   * @param target the allowed target filter of the search
+   * @param paging the paging and sorting information for the search
+   * @return the entity tag, without quotes
+   */
+  @Transactional(readOnly = true)
+  public String searchUsersETag(
+      @Nullable String userName,
+      @Nullable String role,
+      @Nullable String target,
+      UserPaging paging) {
+    val key =
+        String.join(
+            "\n",
+            userEntityRepository.version(),
+            String.valueOf(userFilter(userName, role, target)),
+            String.valueOf(paging));
+    return DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static UserFilter userFilter(
+      @Nullable String userName, @Nullable String role, @Nullable String target) {
+    return UserFilter.builder()
+        .userName(Soht2HistoryService.asLikeParam(userName))
+        .role(hasText(role) ? role.toUpperCase(Locale.ROOT) : null)
+        .target(Soht2HistoryService.asLikeParam(target))
+        .build();
+  }
+
   /**
    * Lists users by their names.
    *
@@ -306,11 +559,17 @@ public class Soht2UserService implements UserDetailsService {
 
     userEntity.setPassword(passwordEncoder.encode(newPassword));
     userEntity = userEntityRepository.save(userEntity);
-    userCache.evict(authentication.getName());
+    evictUser(authentication.getName());
 
     return userEntity.toSoht2User();
   }
 
+  private void evictUser(String name) {
+    val key = name.toLowerCase(Locale.ROOT);
+    userCache.evict(key);
+    unknownUserCache.evict(key);
+  }
+
   private Optional<String> checkRole(@Nullable String role) {
     return ofNullable(role)
         .filter(not(String::isBlank))
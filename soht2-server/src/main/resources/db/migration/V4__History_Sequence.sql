@@ -0,0 +1,5 @@
+-- History IDs are allocated by the pooled optimizer in blocks of 50 to allow JDBC batch inserts.
+-- The first value of the sequence is the upper bound of the first block, so it starts 50 IDs ahead.
+CREATE SEQUENCE soht2_history_seq
+  START WITH (SELECT COALESCE(MAX(history_id), 0) + 50 FROM soht2_history)
+  INCREMENT BY 50;
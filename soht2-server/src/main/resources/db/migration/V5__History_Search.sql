@@ -0,0 +1,36 @@
+-- Lowercase copies of the searched text columns, so case-insensitive searches by a prefix can use
+-- an index range instead of evaluating LOWER() for every row.
+ALTER TABLE soht2_history
+  ADD COLUMN user_name_lc VARCHAR(30) GENERATED ALWAYS AS (LOWER(user_name));
+ALTER TABLE soht2_history
+  ADD COLUMN client_host_lc VARCHAR(255) GENERATED ALWAYS AS (LOWER(client_host));
+ALTER TABLE soht2_history
+  ADD COLUMN target_host_lc VARCHAR(255) GENERATED ALWAYS AS (LOWER(target_host));
+
+CREATE INDEX soht2_history_un_lc_idx ON soht2_history (user_name_lc);
+CREATE INDEX soht2_history_ch_lc_idx ON soht2_history (client_host_lc);
+CREATE INDEX soht2_history_th_lc_idx ON soht2_history (target_host_lc);
+
+-- Trigrams of the lowercase client (C) and target (T) hosts for searches by a substring.
+-- The n-gram comes first in the primary key, so a lookup of several n-grams is an index seek.
+CREATE TABLE soht2_history_ngram (
+  ngram      VARCHAR(3) NOT NULL,
+  host_kind  CHAR(1)    NOT NULL,
+  history_id BIGINT     NOT NULL,
+  CONSTRAINT soht2_history_ngram_pk PRIMARY KEY (ngram, host_kind, history_id),
+  CONSTRAINT soht2_history_ngram_fk FOREIGN KEY (history_id)
+    REFERENCES soht2_history (history_id) ON DELETE CASCADE
+);
+
+INSERT INTO soht2_history_ngram (ngram, host_kind, history_id)
+SELECT DISTINCT SUBSTRING(h.client_host_lc, r.X, 3), 'C', h.history_id
+FROM soht2_history h
+  JOIN SYSTEM_RANGE(1, 253) r ON r.X <= CHAR_LENGTH(h.client_host_lc) - 2;
+
+INSERT INTO soht2_history_ngram (ngram, host_kind, history_id)
+SELECT DISTINCT SUBSTRING(h.target_host_lc, r.X, 3), 'T', h.history_id
+FROM soht2_history h
+  JOIN SYSTEM_RANGE(1, 253) r ON r.X <= CHAR_LENGTH(h.target_host_lc) - 2;
+
+CREATE TRIGGER soht2_history_ngram_trg AFTER INSERT ON soht2_history
+  FOR EACH ROW CALL 'net.soht2.server.repository.HistoryNgramTrigger';
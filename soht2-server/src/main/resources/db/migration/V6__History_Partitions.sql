@@ -0,0 +1,20 @@
+-- History records are stored in monthly partition tables soht2_history_pYYYYMM, which are created
+-- by the application. The existing table becomes the default partition for records of months that
+-- have no partition. The soht2_history view unions all partitions, and its trigger routes inserted
+-- and deleted records to the partition of their opened_at month.
+DROP TRIGGER soht2_history_ngram_trg;
+
+ALTER TABLE soht2_history RENAME TO soht2_history_default;
+ALTER TABLE soht2_history_ngram RENAME TO soht2_history_ngram_default;
+
+CREATE TRIGGER soht2_history_default_ngram_trg AFTER INSERT ON soht2_history_default
+  FOR EACH ROW CALL 'net.soht2.server.repository.HistoryNgramTrigger';
+
+CREATE VIEW soht2_history AS
+SELECT history_id, user_name, connection_id, client_host, target_host, target_port,
+       opened_at, closed_at, bytes_read, bytes_written,
+       user_name_lc, client_host_lc, target_host_lc
+FROM soht2_history_default;
+
+CREATE TRIGGER soht2_history_partition_trg INSTEAD OF INSERT, DELETE ON soht2_history
+  FOR EACH ROW CALL 'net.soht2.server.repository.HistoryPartitionTrigger';
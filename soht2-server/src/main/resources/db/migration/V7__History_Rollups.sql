@@ -0,0 +1,46 @@
+-- Traffic rollups of the connection history at hourly and daily grain. Every row aggregates the
+-- connections opened in the period by one user from one client host to one target. The rollups are
+-- updated by the application whenever history records are written.
+CREATE TABLE soht2_history_hourly (
+  period_start  TIMESTAMP    NOT NULL,
+  user_name     VARCHAR(30)  NOT NULL,
+  target_host   VARCHAR(255) NOT NULL,
+  target_port   INT          NOT NULL,
+  client_host   VARCHAR(255) NOT NULL,
+  connections   BIGINT       NOT NULL,
+  duration_ms   BIGINT       NOT NULL,
+  bytes_read    BIGINT       NOT NULL,
+  bytes_written BIGINT       NOT NULL,
+  CONSTRAINT soht2_history_hourly_pk
+    PRIMARY KEY (period_start, user_name, target_host, target_port, client_host)
+);
+
+CREATE TABLE soht2_history_daily (
+  period_start  TIMESTAMP    NOT NULL,
+  user_name     VARCHAR(30)  NOT NULL,
+  target_host   VARCHAR(255) NOT NULL,
+  target_port   INT          NOT NULL,
+  client_host   VARCHAR(255) NOT NULL,
+  connections   BIGINT       NOT NULL,
+  duration_ms   BIGINT       NOT NULL,
+  bytes_read    BIGINT       NOT NULL,
+  bytes_written BIGINT       NOT NULL,
+  CONSTRAINT soht2_history_daily_pk
+    PRIMARY KEY (period_start, user_name, target_host, target_port, client_host)
+);
+
+CREATE INDEX soht2_history_hourly_un_idx ON soht2_history_hourly (user_name, period_start);
+CREATE INDEX soht2_history_daily_un_idx ON soht2_history_daily (user_name, period_start);
+
+INSERT INTO soht2_history_hourly
+SELECT DATE_TRUNC('HOUR', opened_at), user_name, target_host, target_port, client_host,
+       COUNT(*), SUM(GREATEST(DATEDIFF('MILLISECOND', opened_at, closed_at), 0)),
+       SUM(bytes_read), SUM(bytes_written)
+FROM soht2_history
+GROUP BY DATE_TRUNC('HOUR', opened_at), user_name, target_host, target_port, client_host;
+
+INSERT INTO soht2_history_daily
+SELECT DATE_TRUNC('DAY', period_start), user_name, target_host, target_port, client_host,
+       SUM(connections), SUM(duration_ms), SUM(bytes_read), SUM(bytes_written)
+FROM soht2_history_hourly
+GROUP BY DATE_TRUNC('DAY', period_start), user_name, target_host, target_port, client_host;
@@ -0,0 +1,9 @@
+-- Lowercase copy of the user name, so case-insensitive searches and sorting by the name can use an
+-- index range instead of evaluating LOWER() for every row.
+ALTER TABLE soht2_users
+  ADD COLUMN user_name_lc VARCHAR(30) GENERATED ALWAYS AS (LOWER(user_name));
+
+CREATE INDEX soht2_users_un_lc_idx ON soht2_users (user_name_lc);
+CREATE INDEX soht2_users_role_idx ON soht2_users (user_role, user_name_lc);
+CREATE INDEX soht2_users_ca_idx ON soht2_users (created_at);
+CREATE INDEX soht2_users_ua_idx ON soht2_users (updated_at);
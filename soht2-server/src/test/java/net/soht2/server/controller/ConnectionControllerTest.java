@@ -14,9 +14,11 @@ import io.vavr.control.Try;
 import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import lombok.val;
+import net.soht2.common.compress.PresetDictionary;
 import net.soht2.common.dto.Soht2Connection;
 import net.soht2.common.dto.Soht2User;
 import net.soht2.common.util.AuxUtil;
@@ -40,6 +42,7 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @WebMvcTest({SecurityConfig.class, Soht2ServerConfig.class, ConnectionController.class})
 @EnableConfigurationProperties(CorsEndpointProperties.class)
@@ -78,8 +81,10 @@ class ConnectionControllerTest {
               .targetPort(12345)
               .build();
 
+      val dictionary = PresetDictionary.register("open_OK dictionary".getBytes());
       val connectionInfo = mock(ServerConnection.class);
       doReturn(sohtConnection).when(connectionInfo).soht2();
+      doReturn(dictionary).when(connectionInfo).dictionary();
       doReturn(true)
           .when(soht2Service)
           .isTargetAllowed(any(Authentication.class), anyString(), anyInt());
@@ -95,6 +100,7 @@ class ConnectionControllerTest {
                   .queryParam("port", "12345"))
           .andExpect(status().isOk())
           .andExpect(content().contentType(APPLICATION_JSON))
+          .andExpect(header().string(Soht2Connection.HEADER_DICTIONARY, dictionary.id()))
           .andExpect(jsonPath("$.id").value(sohtConnection.id().toString()))
           .andExpect(jsonPath("$.user.username").value(sohtConnection.user().username()))
           .andExpect(jsonPath("$.clientHost").value(sohtConnection.clientHost()))
@@ -108,6 +114,32 @@ class ConnectionControllerTest {
     }
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  void dictionary_OK(boolean found) throws Exception {
+    val connectionId = UUID.randomUUID();
+    val dictionary = PresetDictionary.register("dictionary_OK dictionary".getBytes());
+
+    doReturn(true).when(soht2Service).isConnectionOwner(any(Authentication.class), any(UUID.class));
+    doReturn(Optional.of(dictionary).filter(d -> found))
+        .when(soht2Service)
+        .dictionary(any(UUID.class));
+
+    val result =
+        mockMvc.perform(
+            get("/api/connection/" + connectionId + "/dictionary")
+                .header(HttpHeaders.AUTHORIZATION, AUTH));
+    if (found)
+      result
+          .andExpect(status().isOk())
+          .andExpect(content().contentType(APPLICATION_OCTET_STREAM))
+          .andExpect(content().bytes(dictionary.data()));
+    else result.andExpect(status().isNotFound());
+
+    verify(soht2Service).isConnectionOwner(any(Authentication.class), eq(connectionId));
+    verify(soht2Service).dictionary(connectionId);
+  }
+
   @ParameterizedTest
   @ValueSource(booleans = {true, false})
   void exchange_OK(boolean nonEmpty) throws Exception {
@@ -125,7 +157,9 @@ class ConnectionControllerTest {
     val bytesOut = nonEmpty ? UTHelper.createBinData(bufferSize * 3 / 2) : bytesEmpty;
 
     doReturn(true).when(soht2Service).isConnectionOwner(any(Authentication.class), any(UUID.class));
-    doReturn(Try.success(bytesOut)).when(soht2Service).exchange(any(UUID.class), any(), any());
+    doReturn(Try.success(bytesOut))
+        .when(soht2Service)
+        .exchange(any(UUID.class), any(), any(), any(), any());
 
     mockMvc
         .perform(
@@ -138,7 +172,59 @@ class ConnectionControllerTest {
         .andExpect(content().bytes(bytesOut));
 
     verify(soht2Service).isConnectionOwner(any(Authentication.class), eq(sohtConnection.id()));
-    verify(soht2Service).exchange(sohtConnection.id(), bytesIn.length > 0 ? bytesIn : null, null);
+    verify(soht2Service)
+        .exchange(sohtConnection.id(), bytesIn.length > 0 ? bytesIn : null, null, null, null);
+  }
+
+  @Test
+  void exchange_Compressed() throws Exception {
+    val connectionId = UUID.randomUUID();
+    val bytesOut = UTHelper.createBinData(100);
+    val bytesCompressed = UTHelper.createBinData(50);
+
+    doReturn(true).when(soht2Service).isConnectionOwner(any(Authentication.class), any(UUID.class));
+    doReturn(Try.success(bytesOut))
+        .when(soht2Service)
+        .exchange(any(UUID.class), any(), any(), any(), any());
+    doReturn(Optional.of(new EncodedData("gzip", bytesCompressed)))
+        .when(soht2Service)
+        .compressResponse(any(UUID.class), any(), any(), any());
+
+    mockMvc
+        .perform(
+            post("/api/connection/" + connectionId)
+                .contentType(APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.AUTHORIZATION, AUTH)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                .header(Soht2Connection.HEADER_DICTIONARY, "0badc0de"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andExpect(content().bytes(bytesCompressed));
+
+    verify(soht2Service).compressResponse(connectionId, bytesOut, "gzip, deflate", "0badc0de");
+  }
+
+  @Test
+  void write_OK() throws Exception {
+    val connectionId = UUID.randomUUID();
+    val bytesIn = UTHelper.createBinData((int) soht2ServerConfig.getReadBufferSize().toBytes());
+
+    doReturn(true).when(soht2Service).isConnectionOwner(any(Authentication.class), any(UUID.class));
+    doReturn(Try.success(null)).when(soht2Service).write(any(UUID.class), any(), any(), any());
+
+    mockMvc
+        .perform(
+            put("/api/connection/" + connectionId)
+                .contentType(APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.AUTHORIZATION, AUTH)
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .header(Soht2Connection.HEADER_SEQUENCE, "7")
+                .content(bytesIn))
+        .andExpect(status().isOk())
+        .andExpect(content().bytes(new byte[0]));
+
+    verify(soht2Service).isConnectionOwner(any(Authentication.class), eq(connectionId));
+    verify(soht2Service).write(connectionId, bytesIn, "gzip", 7L);
   }
 
   @Test
@@ -164,6 +250,7 @@ class ConnectionControllerTest {
         HistoryPage.builder()
             .paging(paging)
             .totalItems(1000L)
+            .nextCursor("dXNlcm5hbWU6QVNDCnVzZXIyCjQ")
             .data(
                 List.of(
                     Soht2Connection.builder()
@@ -241,4 +328,57 @@ class ConnectionControllerTest {
             eq(paging),
             any(Authentication.class));
   }
+
+  @Test
+  void exportHistory_OK() throws Exception {
+    StreamingResponseBody body = out -> out.write("id,username\n".getBytes());
+    doReturn(body)
+        .when(soht2HistoryService)
+        .exportHistory(
+            any(),
+            any(),
+            any(),
+            any(),
+            anyCollection(),
+            any(),
+            any(),
+            any(),
+            any(),
+            any(HistoryExportFormat.class),
+            any(Authentication.class));
+
+    val result =
+        mockMvc
+            .perform(
+                get("/api/connection/history/export")
+                    .header(HttpHeaders.AUTHORIZATION, AUTH)
+                    .queryParam("th", ".com")
+                    .queryParam("tp", "22,443")
+                    .queryParam("fmt", "csv"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("text/csv"))
+        .andExpect(
+            header()
+                .string(
+                    HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"soht2-history.csv\""))
+        .andExpect(content().string("id,username\n"));
+
+    verify(soht2HistoryService)
+        .exportHistory(
+            isNull(),
+            isNull(),
+            isNull(),
+            eq(".com"),
+            eq(Set.of(22, 443)),
+            isNull(),
+            isNull(),
+            isNull(),
+            isNull(),
+            eq(HistoryExportFormat.csv),
+            any(Authentication.class));
+  }
 }
@@ -13,10 +13,15 @@ import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import lombok.val;
 import net.soht2.common.dto.Soht2User;
 import net.soht2.server.config.SecurityConfig;
 import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.dto.UserPage;
+import net.soht2.server.dto.UserPaging;
+import net.soht2.server.dto.UserProvision;
+import net.soht2.server.dto.UserProvisionResult;
 import net.soht2.server.service.Soht2UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -102,6 +107,55 @@ class UserControllerTest {
     verify(soht2UserService, never()).createUser(anyString(), anyString(), any(), anySet());
   }
 
+  @Test
+  void provision_OK() throws Exception {
+    val result =
+        UserProvisionResult.builder()
+            .username(soht2User.username())
+            .status(UserProvisionResult.Status.CREATED)
+            .user(soht2User)
+            .build();
+    doReturn(List.of(result)).when(soht2UserService).provisionUsers(anyList());
+
+    mockMvc
+        .perform(
+            post("/api/user/bulk")
+                .header(HttpHeaders.AUTHORIZATION, AUTH)
+                .contentType(APPLICATION_JSON)
+                .content(
+                    """
+                    [{"username": "a_b", "password": "1qaz@WSX", "allowedTargets": ["localhost:*"]}]
+                    """))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(APPLICATION_JSON))
+        .andExpect(jsonPath("$[0].username").value(soht2User.username()))
+        .andExpect(jsonPath("$[0].status").value("CREATED"))
+        .andExpect(jsonPath("$[0].user.role").value(soht2User.role()));
+
+    verify(soht2UserService)
+        .provisionUsers(
+            List.of(
+                UserProvision.builder()
+                    .username("a_b")
+                    .password("1qaz@WSX")
+                    .allowedTargets(Set.of("localhost:*"))
+                    .build()));
+
+    // nothing is provisioned if any entry is malformed
+    mockMvc
+        .perform(
+            post("/api/user/bulk")
+                .header(HttpHeaders.AUTHORIZATION, AUTH)
+                .contentType(APPLICATION_JSON)
+                .content(
+                    """
+                    [{"username": "a_b", "password": "1qaz@WSX"}, {"username": "c", "password": "x"}]
+                    """))
+        .andExpect(status().isBadRequest());
+
+    verifyNoMoreInteractions(soht2UserService);
+  }
+
   @Test
   void update_OK() throws Exception {
     doReturn(soht2User).when(soht2UserService).updateUser(anyString(), any(), any(), any());
@@ -137,7 +191,7 @@ class UserControllerTest {
                 .queryParam("history", "true"))
         .andExpect(status().isOk());
 
-    verify(soht2UserService).deleteUser(soht2User.username(), true, true);
+    verify(soht2UserService).deleteUser(soht2User.username(), true, true, false);
   }
 
   @Test
@@ -159,6 +213,57 @@ class UserControllerTest {
     verify(soht2UserService).listUsers();
   }
 
+  @Test
+  void search_OK() throws Exception {
+    val paging = UserPaging.fromRequest(1, 5, List.of("role:desc", "username"), false);
+    val page = UserPage.builder().paging(paging).totalItems(6L).data(List.of(soht2User)).build();
+    doReturn("0123abcd").when(soht2UserService).searchUsersETag("a*", "user", "*host*", paging);
+    doReturn(page).when(soht2UserService).searchUsers("a*", "user", "*host*", paging);
+
+    mockMvc
+        .perform(
+            get("/api/user/search")
+                .header(HttpHeaders.AUTHORIZATION, AUTH)
+                .queryParam("un", "a*")
+                .queryParam("role", "user")
+                .queryParam("tg", "*host*")
+                .queryParam("sort", "role:desc", "username")
+                .queryParam("pg", "1")
+                .queryParam("sz", "5"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(APPLICATION_JSON))
+        .andExpect(header().string(HttpHeaders.ETAG, "\"0123abcd\""))
+        .andExpect(jsonPath("$.totalItems").value(6))
+        .andExpect(jsonPath("$.totalPages").value(2))
+        .andExpect(jsonPath("$.paging.sorting[0].field").value("role"))
+        .andExpect(jsonPath("$.paging.sorting[0].direction").value("DESC"))
+        .andExpect(jsonPath("$.data[0].username").value(soht2User.username()));
+
+    // the page is not read again while the tag matches
+    mockMvc
+        .perform(
+            get("/api/user/search")
+                .header(HttpHeaders.AUTHORIZATION, AUTH)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0123abcd\"")
+                .queryParam("un", "a*")
+                .queryParam("role", "user")
+                .queryParam("tg", "*host*")
+                .queryParam("sort", "role:desc", "username")
+                .queryParam("pg", "1")
+                .queryParam("sz", "5"))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+
+    verify(soht2UserService, times(1)).searchUsers(any(), any(), any(), any());
+
+    mockMvc
+        .perform(
+            get("/api/user/search")
+                .header(HttpHeaders.AUTHORIZATION, AUTH)
+                .queryParam("sort", "password:asc"))
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   void self_OK() throws Exception {
     soht2User =
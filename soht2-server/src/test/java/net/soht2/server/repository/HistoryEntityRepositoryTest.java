@@ -0,0 +1,191 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import jakarta.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.entity.HistoryEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+@Slf4j
+@SpringBootTest
+@ActiveProfiles("test")
+class HistoryEntityRepositoryTest {
+
+  // the primary key index of the n-gram table is named by H2, so only the seek condition is checked
+  static final String NGRAM_SEEK = "\\w+: NGRAM IN\\(";
+  static final UUID CONNECTION_ID = UUID.fromString("5788abf9-d021-4a96-88ab-f9d0219a9695");
+
+  @Autowired HistoryEntityRepository historyEntityRepository;
+  @Autowired HistoryPartitionManager historyPartitionManager;
+  @Autowired EntityManager entityManager;
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  List<HistoryEntity> history;
+
+  @BeforeEach
+  void beforeEach() {
+    history =
+        historyEntityRepository.saveAllAndFlush(
+            IntStream.range(0, 40)
+                .mapToObj(
+                    i ->
+                        HistoryEntity.builder()
+                            .userName("User" + i % 4)
+                            .connectionId(i == 0 ? CONNECTION_ID : UUID.randomUUID())
+                            .clientHost(i % 2 == 0 ? "LocalHost" : "192.168.1." + i)
+                            .targetHost("host" + i + (i % 3 == 0 ? ".Example.com" : ".test.org"))
+                            .targetPort(22)
+                            .openedAt(LocalDateTime.parse("2025-08-08T16:00").plusMinutes(i))
+                            .closedAt(LocalDateTime.parse("2025-08-08T17:00").plusMinutes(i))
+                            .bytesRead(0L)
+                            .bytesWritten(0L)
+                            .build())
+                .toList());
+  }
+
+  @AfterEach
+  void afterEach() {
+    historyEntityRepository.deleteAll();
+    historyPartitionManager.dropPartitionsBefore(LocalDateTime.parse("2025-09-01T00:00"));
+  }
+
+  @Test
+  void partitions_OK() {
+    val july = YearMonth.parse("2025-07");
+    val august = YearMonth.parse("2025-08");
+    assertThat(historyPartitionManager.createPartitions(List.of(july, august)))
+        .containsExactly(july, august);
+    assertThat(historyPartitionManager.createPartitions(List.of(august))).isEmpty();
+    val partitioned =
+        historyEntityRepository.saveAllAndFlush(
+            Stream.of("2025-07-31T23:59", "2025-08-01T00:00", "2025-08-31T12:00")
+                .map(LocalDateTime::parse)
+                .map(
+                    openedAt ->
+                        HistoryEntity.builder()
+                            .userName("partitioned")
+                            .connectionId(UUID.randomUUID())
+                            .clientHost("localhost")
+                            .targetHost("partitioned.example.com")
+                            .targetPort(443)
+                            .openedAt(openedAt)
+                            .closedAt(openedAt.plusHours(1))
+                            .bytesRead(0L)
+                            .bytesWritten(0L)
+                            .build())
+                .toList());
+
+    assertThat(count(HistoryPartitionManager.tableName(july))).isEqualTo(1);
+    assertThat(count(HistoryPartitionManager.tableName(august))).isEqualTo(2);
+    assertThat(count(HistoryPartitionManager.DEFAULT_TABLE)).isEqualTo(history.size());
+    assertThat(historyEntityRepository.count()).isEqualTo(history.size() + partitioned.size());
+
+    // partitions which cannot contain matching records are not searched
+    val filter =
+        HistoryFilter.builder()
+            .userName("partitioned")
+            .openedAfter(LocalDateTime.parse("2025-08-01T00:00"))
+            .build();
+    assertThat(historyPartitionManager.tables(filter))
+        .contains(HistoryPartitionManager.tableName(august))
+        .doesNotContain(HistoryPartitionManager.tableName(july));
+    assertThat(historyEntityRepository.findAll(filter, List.of(), null, 0, 10))
+        .containsExactlyElementsOf(partitioned.subList(1, 3));
+    assertThat(
+            historyEntityRepository.countAll(
+                HistoryFilter.builder()
+                    .closedBefore(LocalDateTime.parse("2025-08-01T00:59:30"))
+                    .build()))
+        .isEqualTo(1);
+
+    // a record is deleted from the partition it is stored in
+    historyEntityRepository.delete(partitioned.get(2));
+    assertThat(count(HistoryPartitionManager.tableName(august))).isEqualTo(1);
+
+    // expired partitions are dropped as a whole
+    assertThat(
+            historyPartitionManager.dropPartitionsBefore(LocalDateTime.parse("2025-08-15T00:00")))
+        .containsExactly(july);
+    assertThat(historyPartitionManager.partitions()).doesNotContain(july).contains(august);
+    assertThat(historyEntityRepository.findAll())
+        .hasSize(history.size() + 1)
+        .doesNotContain(partitioned.getFirst());
+  }
+
+  @Test
+  void exportAll_OK() {
+    val exported = new ArrayList<HistoryEntity>();
+    // the records are read in batches, the last one is shorter
+    historyEntityRepository.exportAll(HistoryFilter.builder().build(), 7, exported::add);
+    assertThat(exported)
+        .extracting(HistoryEntity::getId)
+        .containsExactlyElementsOf(history.stream().map(HistoryEntity::getId).toList());
+
+    exported.clear();
+    historyEntityRepository.exportAll(
+        HistoryFilter.builder().userName("user1").build(), 5, exported::add);
+    assertThat(exported).hasSize(10).allMatch(e -> e.getUserName().equals("User1"));
+  }
+
+  long count(String table) {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+  }
+
+  @ParameterizedTest
+  @MethodSource("findAll_UsesIndex_Args")
+  void findAll_UsesIndex(HistoryFilter filter, String indexCondition) {
+    val query =
+        HistoryEntityRepositoryCustomImpl.findQuery(
+            HistoryPartitionManager.DEFAULT_TABLE, filter, List.of(), null);
+    val explain = entityManager.createNativeQuery("EXPLAIN " + query.sql());
+    query.params().forEach(explain::setParameter);
+    val plan = String.valueOf(explain.getSingleResult());
+    log.info("findAll_UsesIndex: plan={}", plan);
+
+    assertThat(plan).containsPattern("/\\* PUBLIC\\." + indexCondition);
+    assertThat(historyEntityRepository.findAll(filter, List.of(), null, 0, 100))
+        .containsExactlyElementsOf(history.stream().filter(filter::matches).toList())
+        .isNotEmpty();
+  }
+
+  static Stream<Arguments> findAll_UsesIndex_Args() {
+    return Stream.of(
+        Arguments.of(
+            HistoryFilter.builder().userName("user1").build(),
+            "SOHT2_HISTORY_UN_LC_IDX: USER_NAME_LC"),
+        Arguments.of(
+            HistoryFilter.builder().clientHost("LOCAL%").build(),
+            "SOHT2_HISTORY_CH_LC_IDX: CLIENT_HOST_LC"),
+        Arguments.of(
+            HistoryFilter.builder().targetHost("host1%").build(),
+            "SOHT2_HISTORY_TH_LC_IDX: TARGET_HOST_LC"),
+        Arguments.of(HistoryFilter.builder().targetHost("%.example.%").build(), NGRAM_SEEK),
+        Arguments.of(HistoryFilter.builder().clientHost("%168.1.1").build(), NGRAM_SEEK),
+        Arguments.of(
+            HistoryFilter.builder().connectionId("5788ABF9-d0%").build(),
+            "SOHT2_HISTORY_CI_IDX: CONNECTION_ID"),
+        Arguments.of(
+            HistoryFilter.builder().connectionId(CONNECTION_ID.toString()).build(),
+            "SOHT2_HISTORY_CI_IDX: CONNECTION_ID"));
+  }
+}
@@ -0,0 +1,126 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+class ExchangeSequencerTest {
+
+  final ExchangeSequencer sequencer = new ExchangeSequencer(4, Duration.ofSeconds(5));
+
+  @Test
+  void write_OK() {
+    val target = new ByteArrayOutputStream();
+    // the uploads are written in order of their sequence numbers
+    assertThat(sequencer.write(1, new byte[] {1}, target::write).get()).isTrue();
+    assertThat(sequencer.write(2, new byte[] {2}, target::write).get()).isTrue();
+    assertThat(target.toByteArray()).isEmpty();
+    assertThat(sequencer.write(0, new byte[] {0}, target::write).get()).isTrue();
+    assertThat(target.toByteArray()).containsExactly(0, 1, 2);
+
+    // repeated uploads are ignored
+    assertThat(sequencer.write(1, new byte[] {1}, target::write).get()).isFalse();
+    assertThat(sequencer.write(4, new byte[] {4}, target::write).get()).isTrue();
+    assertThat(sequencer.write(4, new byte[] {4}, target::write).get()).isFalse();
+    assertThat(target.toByteArray()).containsExactly(0, 1, 2);
+
+    assertThat(sequencer.write(7, new byte[] {7}, target::write).getCause())
+        .isInstanceOf(ResponseStatusException.class);
+    assertThat(sequencer.write(3, new byte[] {3}, target::write).get()).isTrue();
+    assertThat(target.toByteArray()).containsExactly(0, 1, 2, 3, 4);
+  }
+
+  @Test
+  void write_Failure() {
+    val target = new ByteArrayOutputStream();
+    assertThat(sequencer.write(1, new byte[] {1}, target::write).get()).isTrue();
+
+    // the sequencer is closed if writing fails
+    assertThat(
+            sequencer
+                .write(
+                    0,
+                    new byte[] {0},
+                    v -> {
+                      throw new IOException("Broken pipe");
+                    })
+                .getCause())
+        .isInstanceOf(IOException.class);
+    assertThat(sequencer.isClosed()).isTrue();
+    assertThat(target.toByteArray()).isEmpty();
+
+    // the retried upload is not taken for a repeated one
+    assertThat(sequencer.write(0, new byte[] {0}, target::write).getCause())
+        .isInstanceOf(SocketException.class);
+    assertThat(sequencer.write(2, new byte[] {2}, target::write).getCause())
+        .isInstanceOf(SocketException.class);
+    assertThat(sequencer.read(0, -1, () -> new byte[] {0}).getCause())
+        .isInstanceOf(SocketException.class);
+    assertThat(target.toByteArray()).isEmpty();
+  }
+
+  @Test
+  void read_OK() throws Exception {
+    val reads = new AtomicInteger();
+    try (val executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      // the downloads arriving ahead wait for the preceding ones
+      val third =
+          CompletableFuture.supplyAsync(
+              () -> sequencer.read(2, -1, () -> new byte[] {(byte) reads.getAndIncrement()}),
+              executor);
+      val second =
+          CompletableFuture.supplyAsync(
+              () -> sequencer.read(1, -1, () -> new byte[] {(byte) reads.getAndIncrement()}),
+              executor);
+      TimeUnit.MILLISECONDS.sleep(200);
+      assertThat(third).isNotDone();
+      assertThat(second).isNotDone();
+
+      assertThat(sequencer.read(0, -1, () -> new byte[] {(byte) reads.getAndIncrement()}).get())
+          .containsExactly(0);
+      assertThat(second.get(5, TimeUnit.SECONDS).get()).containsExactly(1);
+      assertThat(third.get(5, TimeUnit.SECONDS).get()).containsExactly(2);
+    }
+
+    // a repeated download gets the kept response until it is acknowledged
+    assertThat(sequencer.read(1, 0, () -> new byte[] {9}).get()).containsExactly(1);
+    assertThat(sequencer.read(1, 1, () -> new byte[] {9}).get()).isEmpty();
+    assertThat(reads).hasValue(3);
+    assertThat(sequencer.read(7, 2, () -> new byte[] {9}).getCause())
+        .isInstanceOf(ResponseStatusException.class);
+  }
+
+  @Test
+  void read_Timeout() {
+    val sequencer = new ExchangeSequencer(4, Duration.ofMillis(100));
+    // the download fails if the preceding one does not arrive in time
+    assertThat(sequencer.read(1, -1, () -> new byte[] {1}).getCause())
+        .isInstanceOf(ResponseStatusException.class)
+        .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+        .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+    // the failed download is served when it is retried in order
+    assertThat(sequencer.read(0, -1, () -> new byte[] {0}).get()).containsExactly(0);
+    assertThat(sequencer.read(1, 0, () -> new byte[] {1}).get()).containsExactly(1);
+  }
+
+  @Test
+  void close_OK() throws Exception {
+    val waiting = CompletableFuture.supplyAsync(() -> sequencer.read(1, -1, () -> new byte[0]));
+    TimeUnit.MILLISECONDS.sleep(200);
+    sequencer.close();
+    assertThat(waiting.get(5, TimeUnit.SECONDS).getCause()).isInstanceOf(SocketException.class);
+  }
+}
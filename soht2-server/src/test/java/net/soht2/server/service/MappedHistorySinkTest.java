@@ -0,0 +1,212 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import lombok.SneakyThrows;
+import lombok.val;
+import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.dto.HistoryCursor;
+import net.soht2.server.dto.HistoryFilter;
+import net.soht2.server.dto.HistoryOrder;
+import net.soht2.server.dto.HistorySorting;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
+import net.soht2.server.dto.SortingDir;
+import net.soht2.server.dto.StatsGrain;
+import net.soht2.server.dto.StatsGroup;
+import net.soht2.server.dto.StatsMetric;
+import net.soht2.server.entity.HistoryEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedHistorySinkTest {
+
+  static final LocalDateTime OPENED_AT = LocalDateTime.parse("2025-08-08T16:00:00.123456");
+
+  @TempDir Path directory;
+
+  Soht2ServerConfig config;
+  MappedHistorySink sink;
+
+  @BeforeEach
+  void beforeEach() {
+    config = new Soht2ServerConfig();
+    config.getHistorySink().setDirectory(directory.toFile());
+    config.getHistorySink().setSegmentRecords(16);
+    sink = new MappedHistorySink(config);
+    sink.open();
+  }
+
+  @AfterEach
+  void afterEach() {
+    sink.close();
+  }
+
+  @Test
+  void write_OK() {
+    val written = sink.write(history(40));
+    assertThat(written).extracting(HistoryEntity::getId).containsExactlyElementsOf(ids(1, 40));
+    assertThat(segmentFiles()).hasSize(3);
+
+    sink.close();
+    sink.open();
+    assertThat(sink.find(HistoryFilter.builder().build(), List.of(), null, 0, 100))
+        .containsExactlyElementsOf(written);
+    assertThat(sink.write(history(1))).extracting(HistoryEntity::getId).containsExactly(41L);
+  }
+
+  @Test
+  void find_OK() {
+    sink.write(history(40));
+    val filter =
+        HistoryFilter.builder()
+            .userName("user1")
+            .targetHost("%.example.com")
+            .openedAfter(OPENED_AT.plusMinutes(5))
+            .build()
+            .normalized();
+    val all = sink.find(filter, List.of(), null, 0, 100);
+    assertThat(all)
+        .extracting(HistoryEntity::getTargetHost)
+        .containsExactly("host9.Example.com", "host21.Example.com", "host33.Example.com");
+    assertThat(sink.count(filter, 0)).isEqualTo(3);
+    assertThat(sink.count(filter, 2)).isEqualTo(2);
+
+    val sorting =
+        List.of(
+            HistoryOrder.builder()
+                .field(HistorySorting.openedAt)
+                .direction(SortingDir.DESC)
+                .build());
+    val page = sink.find(filter, sorting, null, 0, 2);
+    assertThat(page)
+        .extracting(HistoryEntity::getTargetHost)
+        .containsExactly("host33.Example.com", "host21.Example.com");
+    assertThat(sink.find(filter, sorting, null, 2, 2)).containsExactly(all.getFirst());
+    assertThat(sink.find(filter, sorting, HistoryCursor.of(sorting, page.getLast()), 0, 2))
+        .containsExactly(all.getFirst());
+  }
+
+  @Test
+  void export_OK() {
+    sink.write(history(40));
+    val exported = new ArrayList<HistoryEntity>();
+    sink.export(HistoryFilter.builder().targetPorts(List.of(22)).build(), exported::add);
+    assertThat(exported).extracting(HistoryEntity::getId).containsExactlyElementsOf(ids(1, 20));
+  }
+
+  @Test
+  void deleteByUserName_OK() {
+    sink.write(history(40));
+    val progress = new ArrayList<Long>();
+    assertThat(sink.deleteByUserName("USER0", progress::add)).isEqualTo(10);
+    assertThat(progress).containsExactly(4L, 8L, 10L);
+    assertThat(sink.count(HistoryFilter.builder().build(), 0)).isEqualTo(30);
+    assertThat(sink.count(HistoryFilter.builder().userName("user0").build(), 0)).isZero();
+  }
+
+  @Test
+  void maintain_OK() {
+    sink.write(history(40));
+    // the first segment is dropped and 3 records of the second one are expired
+    assertThat(sink.maintain(OPENED_AT.plusMinutes(19))).isEqualTo(19);
+    assertThat(segmentFiles()).hasSize(2);
+    // the second segment is compacted when less than half of its records are live
+    sink.deleteByUserName("user1", v -> {});
+    sink.deleteByUserName("user2", v -> {});
+    assertThat(sink.maintain(null)).isZero();
+    assertThat(directory.resolve("history-0000000000000002.seg"))
+        .hasSize(7L * MappedHistorySink.RECORD_SIZE);
+
+    sink.close();
+    sink.open();
+    assertThat(sink.find(HistoryFilter.builder().build(), List.of(), null, 0, 100))
+        .extracting(HistoryEntity::getId)
+        .containsExactly(20L, 21L, 24L, 25L, 28L, 29L, 32L, 33L, 36L, 37L, 40L);
+  }
+
+  @Test
+  void stats_OK() {
+    sink.write(history(40));
+    val stats =
+        sink.stats(
+            HistoryStatsQuery.builder()
+                .grain(StatsGrain.hour)
+                .from(OPENED_AT)
+                .to(OPENED_AT.plusHours(2))
+                .targetPorts(List.of(22))
+                .groupBy(List.of(StatsGroup.username))
+                .orderBy(StatsMetric.bytesWritten)
+                .limit(2)
+                .build());
+    assertThat(stats)
+        .containsExactly(
+            HistoryStats.builder()
+                .userName("User3")
+                .connections(5)
+                .durationMillis(5 * 3_600_000L)
+                .bytesRead(55)
+                .bytesWritten(550)
+                .build(),
+            HistoryStats.builder()
+                .userName("User2")
+                .connections(5)
+                .durationMillis(5 * 3_600_000L)
+                .bytesRead(50)
+                .bytesWritten(500)
+                .build());
+
+    // the period containing the end of the range is included as a whole
+    assertThat(
+            sink.stats(
+                HistoryStatsQuery.builder()
+                    .grain(StatsGrain.hour)
+                    .from(OPENED_AT)
+                    .to(OPENED_AT.plusMinutes(10))
+                    .groupBy(List.of())
+                    .orderBy(StatsMetric.connections)
+                    .limit(1)
+                    .build()))
+        .extracting(HistoryStats::connections)
+        .containsExactly(40L);
+  }
+
+  static List<HistoryEntity> history(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(
+            i ->
+                HistoryEntity.builder()
+                    .userName("User" + i % 4)
+                    .connectionId(UUID.randomUUID())
+                    .clientHost(i % 2 == 0 ? "LocalHost" : "192.168.1." + i)
+                    .targetHost("host" + i + (i % 3 == 0 ? ".Example.com" : ".test.org"))
+                    .targetPort(i < 20 ? 22 : 443)
+                    .openedAt(OPENED_AT.plusMinutes(i))
+                    .closedAt(OPENED_AT.plusHours(1).plusMinutes(i))
+                    .bytesRead((long) i)
+                    .bytesWritten(i * 10L)
+                    .build())
+        .toList();
+  }
+
+  static List<Long> ids(long from, long to) {
+    return IntStream.rangeClosed((int) from, (int) to).mapToObj(i -> (long) i).toList();
+  }
+
+  @SneakyThrows
+  List<Path> segmentFiles() {
+    try (val files = Files.list(directory)) {
+      return files.toList();
+    }
+  }
+}
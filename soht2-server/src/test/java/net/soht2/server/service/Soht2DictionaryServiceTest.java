@@ -0,0 +1,89 @@
+/* SOHT2 © Licensed under MIT 2026. */
+package net.soht2.server.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import lombok.val;
+import net.soht2.common.compress.DictionaryTrainer;
+import net.soht2.server.config.Soht2ServerConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class Soht2DictionaryServiceTest {
+
+  @TempDir Path directory;
+
+  Soht2ServerConfig config;
+
+  @BeforeEach
+  void beforeEach() {
+    config = new Soht2ServerConfig();
+    config.getDictionaries().setDirectory(directory.toFile());
+  }
+
+  @Test
+  void load_OK() throws Exception {
+    val data = new byte[1000];
+    new Random(1).nextBytes(data);
+    Files.write(directory.resolve("Target.Host_8080.dict"), data);
+    Files.write(directory.resolve("malformed.dict"), data);
+    Files.write(directory.resolve("other_8081.txt"), data);
+
+    val service = new Soht2DictionaryService(config);
+    service.load();
+
+    assertThat(service.find("target.host", 8080))
+        .hasValueSatisfying(d -> assertThat(d.data()).isEqualTo(data));
+    assertThat(service.find("target.host", 8081)).isEmpty();
+    assertThat(service.find("other", 8081)).isEmpty();
+  }
+
+  @Test
+  void load_Disabled() {
+    config.getDictionaries().setDirectory(null);
+    config.getDictionaries().setSampleLimit(DataSize.ofBytes(250));
+    val service = new Soht2DictionaryService(config);
+    service.load();
+    assertThat(service.find("localhost", 80)).isEmpty();
+
+    // sampling is disabled without the directory
+    service.sample("localhost", 80, new byte[100]);
+    service.flushSamples();
+    assertThat(directory.resolve(Soht2DictionaryService.SAMPLE_DIRECTORY)).doesNotExist();
+  }
+
+  @Test
+  void sample_OK() throws Exception {
+    config.getDictionaries().setSampleLimit(DataSize.ofBytes(250));
+    val service = new Soht2DictionaryService(config);
+    service.load();
+
+    val large = new byte[Soht2DictionaryService.MAX_SAMPLE_SIZE + 1];
+    service.sample("localhost", 80, new byte[100]);
+    service.sample("localhost", 80, new byte[0]);
+    service.sample("localhost", 80, new byte[100]);
+    // the samples are written to the files when they are flushed
+    val samples = directory.resolve(Soht2DictionaryService.SAMPLE_DIRECTORY);
+    assertThat(samples.resolve("localhost_80.smp")).doesNotExist();
+    service.flushSamples();
+    assertThat(DictionaryTrainer.readSamples(samples.resolve("localhost_80.smp"))).hasSize(2);
+
+    // the third record exceeds the limit, so the later ones are not written
+    service.sample("localhost", 80, new byte[100]);
+    service.sample("localhost", 80, new byte[100]);
+    service.flushSamples();
+    service.sample("localhost", 80, new byte[100]);
+    service.sample("localhost", 81, large);
+    service.flushSamples();
+
+    assertThat(DictionaryTrainer.readSamples(samples.resolve("localhost_80.smp"))).hasSize(3);
+    assertThat(DictionaryTrainer.readSamples(samples.resolve("localhost_81.smp")))
+        .singleElement()
+        .satisfies(v -> assertThat(v).hasSize(Soht2DictionaryService.MAX_SAMPLE_SIZE));
+  }
+}
@@ -1,22 +1,49 @@
 /* SOHT2 © Licensed under MIT 2025. */
 package net.soht2.server.service;
 
+import static io.vavr.API.unchecked;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import net.soht2.common.dto.Soht2Connection;
 import net.soht2.common.dto.Soht2User;
+import net.soht2.server.config.Soht2ServerConfig;
+import net.soht2.server.config.Soht2ServerConfig.OverflowPolicy;
+import net.soht2.server.dto.HistoryDeletion;
+import net.soht2.server.dto.HistoryExportFormat;
+import net.soht2.server.dto.HistoryFilter;
 import net.soht2.server.dto.HistoryOrder;
+import net.soht2.server.dto.HistoryPage;
 import net.soht2.server.dto.HistoryPaging;
 import net.soht2.server.dto.HistorySorting;
+import net.soht2.server.dto.HistoryStats;
+import net.soht2.server.dto.HistoryStatsQuery;
 import net.soht2.server.dto.SortingDir;
+import net.soht2.server.dto.StatsGrain;
+import net.soht2.server.dto.StatsGroup;
+import net.soht2.server.dto.StatsMetric;
 import net.soht2.server.entity.HistoryEntity;
 import net.soht2.server.entity.UserEntity;
 import net.soht2.server.repository.HistoryEntityRepository;
@@ -29,10 +56,13 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
 @SpringBootTest
@@ -42,6 +72,7 @@ class Soht2HistoryServiceTest {
 
   @Autowired Soht2HistoryService soht2HistoryService;
   @Autowired HistoryEntityRepository historyEntityRepository;
+  @Autowired ObjectMapper objectMapper;
 
   Authentication auth;
 
@@ -53,6 +84,7 @@ class Soht2HistoryServiceTest {
   @AfterEach
   void afterEach() {
     historyEntityRepository.deleteAll();
+    soht2HistoryService.clearSearchCache();
   }
 
   @Test
@@ -69,6 +101,7 @@ class Soht2HistoryServiceTest {
             .build();
 
     soht2HistoryService.addHistory(soht2);
+    soht2HistoryService.flushHistory();
 
     assertThat(
             historyEntityRepository.findAll().stream()
@@ -77,6 +110,74 @@ class Soht2HistoryServiceTest {
         .isNotEmpty();
   }
 
+  @Test
+  void addHistory_Batch_OK() {
+    val connections =
+        IntStream.range(0, 120)
+            .mapToObj(
+                i ->
+                    Soht2Connection.builder()
+                        .user(Soht2User.builder().username("user" + i % 3).build())
+                        .clientHost("localhost")
+                        .targetHost("example.com")
+                        .targetPort(1000 + i)
+                        .closedAt(LocalDateTime.now())
+                        .build())
+            .toList();
+
+    connections.forEach(soht2HistoryService::addHistory);
+    assertThat(historyEntityRepository.count()).isZero();
+    soht2HistoryService.flushHistory();
+
+    val history = historyEntityRepository.findAll();
+    assertThat(history)
+        .extracting(HistoryEntity::getConnectionId)
+        .containsExactlyInAnyOrderElementsOf(
+            connections.stream().map(Soht2Connection::id).toList());
+    assertThat(history.stream().map(HistoryEntity::getId).distinct()).hasSize(connections.size());
+  }
+
+  @ParameterizedTest
+  @CsvSource({"DISCARD_NEWEST, '', 1;2", "DISCARD_OLDEST, '', 2;3", "CALLER_WRITES, 3, 1;2"})
+  void addHistory_QueueFull(OverflowPolicy policy, String writtenFirst, String flushed) {
+    val config = new Soht2ServerConfig();
+    config.getHistoryWriter().setQueueCapacity(2);
+    config.getHistoryWriter().setOverflowPolicy(policy);
+    val historySink = mock(HistorySink.class);
+    val written = new ArrayList<String>();
+    when(historySink.write(anyCollection()))
+        .thenAnswer(
+            i -> {
+              val batch = List.copyOf(i.<Collection<HistoryEntity>>getArgument(0));
+              written.add(
+                  batch.stream()
+                      .map(e -> String.valueOf(e.getTargetPort()))
+                      .collect(Collectors.joining(";")));
+              return batch;
+            });
+    val service =
+        new Soht2HistoryService(config, historySink, objectMapper, new SyncTaskExecutor());
+
+    // the third record does not fit into the queue
+    IntStream.rangeClosed(1, 3)
+        .mapToObj(
+            i ->
+                Soht2Connection.builder()
+                    .user(Soht2User.builder().username("user").build())
+                    .clientHost("localhost")
+                    .targetHost("example.com")
+                    .targetPort(i)
+                    .build())
+        .forEach(service::addHistory);
+    val expected = new ArrayList<String>();
+    if (!writtenFirst.isEmpty()) expected.add(writtenFirst);
+    assertThat(written).containsExactlyElementsOf(expected);
+
+    service.flushHistory();
+    expected.add(flushed);
+    assertThat(written).containsExactlyElementsOf(expected);
+  }
+
   @Test
   void deleteHistory_OK() {
     val he1 =
@@ -120,6 +221,37 @@ class Soht2HistoryServiceTest {
         .isNotEmpty();
   }
 
+  @Test
+  void deleteHistory_Chunked_OK() {
+    createHistory();
+    createChunkyHistory(25);
+
+    assertThat(soht2HistoryService.deleteHistory("Chunky")).isEqualTo(25);
+    assertThat(historyEntityRepository.findAll())
+        .hasSize(8)
+        .noneMatch(e -> e.getUserName().equalsIgnoreCase("chunky"));
+  }
+
+  @Test
+  void deleteHistoryInBackground_OK() throws InterruptedException {
+    createChunkyHistory(25);
+
+    val started = soht2HistoryService.deleteHistoryInBackground("chunky");
+    assertThat(started.status()).isEqualTo(HistoryDeletion.Status.RUNNING);
+
+    val deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    HistoryDeletion deletion;
+    do {
+      TimeUnit.MILLISECONDS.sleep(50);
+      deletion = soht2HistoryService.getHistoryDeletion("CHUNKY").orElseThrow();
+    } while (deletion.status() == HistoryDeletion.Status.RUNNING && System.nanoTime() < deadline);
+
+    assertThat(deletion.status()).isEqualTo(HistoryDeletion.Status.COMPLETED);
+    assertThat(deletion.deleted()).isEqualTo(25);
+    assertThat(deletion.finishedAt()).isNotNull();
+    assertThat(historyEntityRepository.count()).isZero();
+  }
+
   @ParameterizedTest
   @CsvSource({"0,3:2:1:0:7", "1,6:5:4"})
   void searchHistory_Full_OK(int pageNumber, String expectedIndexes) {
@@ -154,6 +286,316 @@ class Soht2HistoryServiceTest {
     assertThat(actual.data()).containsExactlyElementsOf(expected);
   }
 
+  @ParameterizedTest
+  @CsvSource({
+    "username:ASC;openedAt:DESC,3,3:2:1:0:7:6:5:4",
+    "targetPort:DESC,2,5:6:7:0:1:2:3:4",
+    "clientHost:ASC;bytesRead:DESC,5,5:4:3:7:6:2:1:0"
+  })
+  void searchHistory_Cursor_OK(String sortBy, int pageSize, String expectedIndexes) {
+    val historySoht2 = createHistory().stream().map(HistoryEntity::toSoht2Connection).toList();
+    val expected =
+        Arrays.stream(expectedIndexes.split(":"))
+            .map(Integer::parseInt)
+            .map(historySoht2::get)
+            .toList();
+    val sorting =
+        Arrays.stream(sortBy.split(";"))
+            .map(v -> v.split(":"))
+            .map(
+                v ->
+                    HistoryOrder.builder()
+                        .field(HistorySorting.valueOf(v[0]))
+                        .direction(SortingDir.valueOf(v[1]))
+                        .build())
+            .toList();
+
+    val actual = new ArrayList<Soht2Connection>();
+    String cursor = null;
+    do {
+      val paging =
+          HistoryPaging.builder()
+              .pageNumber(0)
+              .pageSize(pageSize)
+              .sorting(sorting)
+              .cursor(cursor)
+              .skipTotal(true)
+              .build();
+      val page =
+          soht2HistoryService.searchHistory(
+              null, null, null, null, Set.of(), null, null, null, null, paging, auth);
+      assertThat(page.totalItems()).isNull();
+      assertThat(page.data()).hasSizeLessThanOrEqualTo(pageSize);
+      actual.addAll(page.data());
+      cursor = page.nextCursor();
+    } while (cursor != null);
+
+    assertThat(actual).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  void searchHistory_Cursor_MismatchedSorting() {
+    createHistory();
+    val byUsername = List.of(HistoryOrder.builder().field(HistorySorting.username).build());
+    val first =
+        soht2HistoryService.searchHistory(
+            null,
+            null,
+            null,
+            null,
+            Set.of(),
+            null,
+            null,
+            null,
+            null,
+            HistoryPaging.builder().pageNumber(0).pageSize(2).sorting(byUsername).build(),
+            auth);
+    assertThat(first.totalItems()).isEqualTo(8);
+    assertThat(first.nextCursor()).isNotNull();
+
+    val paging =
+        HistoryPaging.builder()
+            .pageNumber(0)
+            .pageSize(2)
+            .sorting(List.of(HistoryOrder.builder().field(HistorySorting.openedAt).build()))
+            .cursor(first.nextCursor())
+            .build();
+    assertThatThrownBy(
+            () ->
+                soht2HistoryService.searchHistory(
+                    null, null, null, null, Set.of(), null, null, null, null, paging, auth))
+        .isInstanceOfSatisfying(
+            ResponseStatusException.class,
+            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+  }
+
+  @Test
+  void searchHistory_PageOutOfRange() {
+    val paging = HistoryPaging.builder().pageNumber(Integer.MAX_VALUE).pageSize(10).build();
+    assertThatThrownBy(
+            () ->
+                soht2HistoryService.searchHistory(
+                    null, null, null, null, Set.of(), null, null, null, null, paging, auth))
+        .isInstanceOfSatisfying(
+            ResponseStatusException.class,
+            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+  }
+
+  @Test
+  void searchHistory_Cache_OK() {
+    val history = createHistory();
+    val paging = HistoryPaging.builder().pageNumber(0).pageSize(10).build();
+    val search =
+        (Supplier<HistoryPage>)
+            () ->
+                soht2HistoryService.searchHistory(
+                    "USER1", null, null, null, Set.of(), null, null, null, null, paging, auth);
+    assertThat(search.get().totalItems()).isEqualTo(4);
+
+    // a record written bypassing the service is not visible until cached results are evicted
+    historyEntityRepository.saveAndFlush(
+        HistoryEntity.builder()
+            .userName("user1")
+            .connectionId(UUID.randomUUID())
+            .clientHost("localhost")
+            .targetHost("example.com")
+            .targetPort(22)
+            .openedAt(LocalDateTime.parse("2025-08-08T18:00"))
+            .closedAt(LocalDateTime.parse("2025-08-08T19:00"))
+            .bytesRead(0L)
+            .bytesWritten(0L)
+            .build());
+    assertThat(search.get().totalItems()).isEqualTo(4);
+
+    // a written record that does not match the filter keeps cached results
+    soht2HistoryService.addHistory(history.get(4).toSoht2Connection());
+    soht2HistoryService.flushHistory();
+    assertThat(search.get().totalItems()).isEqualTo(4);
+
+    // a written record that matches the filter evicts cached results
+    soht2HistoryService.addHistory(history.get(0).toSoht2Connection());
+    soht2HistoryService.flushHistory();
+    val actual = search.get();
+    assertThat(actual.totalItems()).isEqualTo(6);
+    assertThat(actual.data()).hasSize(6);
+  }
+
+  @Test
+  void countAll_Limit_OK() {
+    createHistory();
+    val filter = HistoryFilter.builder().targetHost("%.com").build();
+    assertThat(historyEntityRepository.countAll(filter)).isEqualTo(8);
+    assertThat(historyEntityRepository.countAll(filter, 3)).isEqualTo(3);
+    assertThat(historyEntityRepository.countAll(filter, 10)).isEqualTo(8);
+  }
+
+  @Test
+  void exportHistory_OK() throws Exception {
+    val history = createHistory();
+
+    val ndjson = new ByteArrayOutputStream();
+    soht2HistoryService
+        .exportHistory(
+            null,
+            null,
+            null,
+            null,
+            Set.of(),
+            null,
+            null,
+            null,
+            null,
+            HistoryExportFormat.ndjson,
+            auth)
+        .writeTo(ndjson);
+    val connections =
+        ndjson
+            .toString(UTF_8)
+            .lines()
+            .map(unchecked(l -> objectMapper.readValue(l, Soht2Connection.class)))
+            .toList();
+    assertThat(connections)
+        .extracting(Soht2Connection::id)
+        .containsExactlyInAnyOrderElementsOf(
+            history.stream().map(HistoryEntity::getConnectionId).toList());
+
+    val csv = new ByteArrayOutputStream();
+    soht2HistoryService
+        .exportHistory(
+            "user1",
+            null,
+            null,
+            null,
+            Set.of(),
+            null,
+            null,
+            null,
+            null,
+            HistoryExportFormat.csv,
+            auth)
+        .writeTo(csv);
+    val lines = csv.toString(UTF_8).lines().toList();
+    assertThat(lines.getFirst()).startsWith("id,username,");
+    assertThat(lines.subList(1, lines.size()))
+        .map(l -> l.split(",")[0])
+        .containsExactlyInAnyOrderElementsOf(
+            history.stream()
+                .filter(h -> h.getUserName().equals("user1"))
+                .map(h -> h.getConnectionId().toString())
+                .toList());
+  }
+
+  @Test
+  void asCsvValue() {
+    assertThat(Soht2HistoryService.asCsvValue(null)).isEmpty();
+    assertThat(Soht2HistoryService.asCsvValue(443)).isEqualTo("443");
+    assertThat(Soht2HistoryService.asCsvValue("a,b")).isEqualTo("\"a,b\"");
+    assertThat(Soht2HistoryService.asCsvValue("a\"b")).isEqualTo("\"a\"\"b\"");
+  }
+
+  @Test
+  void getStats_OK() {
+    Stream.of(
+            Soht2Connection.builder()
+                .user(Soht2User.builder().username("statsA").build())
+                .clientHost("localhost")
+                .targetHost("example.com")
+                .targetPort(443)
+                .openedAt(LocalDateTime.parse("2025-08-08T10:15"))
+                .closedAt(LocalDateTime.parse("2025-08-08T10:45"))
+                .bytesRead(100L)
+                .bytesWritten(1000L)
+                .build(),
+            Soht2Connection.builder()
+                .user(Soht2User.builder().username("statsA").build())
+                .clientHost("localhost")
+                .targetHost("example.com")
+                .targetPort(443)
+                .openedAt(LocalDateTime.parse("2025-08-08T11:00"))
+                .closedAt(LocalDateTime.parse("2025-08-08T11:30"))
+                .bytesRead(50L)
+                .bytesWritten(500L)
+                .build(),
+            Soht2Connection.builder()
+                .user(Soht2User.builder().username("statsB").build())
+                .clientHost("192.168.1.100")
+                .targetHost("example.org")
+                .targetPort(22)
+                .openedAt(LocalDateTime.parse("2025-08-09T10:00"))
+                .closedAt(LocalDateTime.parse("2025-08-09T12:00"))
+                .bytesRead(10L)
+                .bytesWritten(5000L)
+                .build())
+        .forEach(soht2HistoryService::addHistory);
+    soht2HistoryService.flushHistory();
+
+    val query =
+        HistoryStatsQuery.builder()
+            .grain(StatsGrain.day)
+            .from(LocalDateTime.parse("2025-08-08T00:00"))
+            .to(LocalDateTime.parse("2025-08-10T00:00"))
+            .userName("stats*")
+            .groupBy(List.of(StatsGroup.username, StatsGroup.target))
+            .orderBy(StatsMetric.bytesWritten)
+            .limit(10)
+            .build();
+    assertThat(soht2HistoryService.getStats(query, auth))
+        .containsExactly(
+            HistoryStats.builder()
+                .userName("statsB")
+                .targetHost("example.org")
+                .targetPort(22)
+                .connections(1)
+                .durationMillis(Duration.ofHours(2).toMillis())
+                .bytesRead(10)
+                .bytesWritten(5000)
+                .build(),
+            HistoryStats.builder()
+                .userName("statsA")
+                .targetHost("example.com")
+                .targetPort(443)
+                .connections(2)
+                .durationMillis(Duration.ofHours(1).toMillis())
+                .bytesRead(150)
+                .bytesWritten(1500)
+                .build());
+
+    assertThat(
+            soht2HistoryService.getStats(
+                query.toBuilder()
+                    .grain(StatsGrain.hour)
+                    .userName("statsa")
+                    .groupBy(List.of(StatsGroup.period))
+                    .build(),
+                auth))
+        .extracting(HistoryStats::period, HistoryStats::bytesWritten)
+        .containsExactly(
+            tuple(LocalDateTime.parse("2025-08-08T10:00"), 1000L),
+            tuple(LocalDateTime.parse("2025-08-08T11:00"), 500L));
+
+    // the period containing the end of the range is included as a whole
+    assertThat(
+            soht2HistoryService.getStats(
+                query.toBuilder()
+                    .from(LocalDateTime.parse("2025-08-09T09:00"))
+                    .to(LocalDateTime.parse("2025-08-09T09:30"))
+                    .build(),
+                auth))
+        .extracting(HistoryStats::userName, HistoryStats::connections)
+        .containsExactly(tuple("statsB", 1L));
+
+    assertThatThrownBy(
+            () -> soht2HistoryService.getStats(query.toBuilder().to(query.from()).build(), auth))
+        .isInstanceOfSatisfying(
+            ResponseStatusException.class,
+            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+
+    // rollups are deleted together with the history of the user
+    soht2HistoryService.deleteHistory("statsa");
+    soht2HistoryService.deleteHistory("statsb");
+    assertThat(soht2HistoryService.getStats(query, auth)).isEmpty();
+  }
+
   @ParameterizedTest
   @MethodSource("searchHistory_Filter_OK_Args")
   void searchHistory_Filter_OK(
@@ -213,6 +655,25 @@ class Soht2HistoryServiceTest {
             List.of(2, 3, 4, 5)));
   }
 
+  void createChunkyHistory(int count) {
+    historyEntityRepository.saveAllAndFlush(
+        IntStream.range(0, count)
+            .mapToObj(
+                i ->
+                    HistoryEntity.builder()
+                        .userName(i % 2 == 0 ? "chunky" : "CHUNKY")
+                        .connectionId(UUID.randomUUID())
+                        .clientHost("localhost")
+                        .targetHost("example.com")
+                        .targetPort(443)
+                        .openedAt(LocalDateTime.now())
+                        .closedAt(LocalDateTime.now())
+                        .bytesRead(0L)
+                        .bytesWritten(0L)
+                        .build())
+            .toList());
+  }
+
   List<HistoryEntity> createHistory() {
     return historyEntityRepository.saveAllAndFlush(
         List.of(
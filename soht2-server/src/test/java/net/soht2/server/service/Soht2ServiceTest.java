@@ -6,14 +6,23 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static net.soht2.server.test.UTHelper.createBinData;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import io.vavr.control.Try;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.zip.Deflater;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import net.soht2.common.compress.Compressor;
+import net.soht2.common.compress.DeflateStrategy;
+import net.soht2.common.compress.PresetDictionary;
+import net.soht2.common.compress.StreamDeflater;
 import net.soht2.common.dto.Soht2Connection;
 import net.soht2.common.dto.Soht2User;
 import net.soht2.server.config.Soht2ServerConfig;
@@ -43,6 +52,7 @@ class Soht2ServiceTest {
   @Autowired Soht2ServerConfig soht2ServerConfig;
 
   @MockitoBean Soht2UserService soht2UserService;
+  @MockitoBean Soht2DictionaryService soht2DictionaryService;
 
   int socketTimeout;
   int bufferSize;
@@ -133,4 +143,169 @@ class Soht2ServiceTest {
 
     assertThat(soht2Service.list(authentication)).isEmpty();
   }
+
+  @Test
+  void testExchangeDrainsAvailableData() {
+    try (val server =
+            EchoServer.builder()
+                .portNumber(PORT_NUMBER)
+                .socketTimeout(socketTimeout)
+                .bufferSize(bufferSize)
+                .build();
+        val client =
+            soht2Service.open(
+                Soht2Connection.builder()
+                    .user(Soht2User.builder().username("system").build())
+                    .clientHost("localhost")
+                    .targetHost("localhost")
+                    .targetPort(PORT_NUMBER)
+                    .build(),
+                authentication)) {
+      val connectionId = client.soht2().id();
+      val input = createBinData(bufferSize * 4);
+
+      val first = soht2Service.exchange(connectionId, input, null).get();
+      // give the echo server time to send the rest of the data back in several chunks
+      Try.run(() -> Thread.sleep(500)).get();
+      val second = soht2Service.exchange(connectionId, null, null).get();
+
+      val actual = new ByteArrayOutputStream(input.length);
+      Try.run(() -> actual.write(first)).andThenTry(() -> actual.write(second)).get();
+      assertThat(actual.toByteArray()).isEqualTo(input);
+      assertThat(Math.max(first.length, second.length)).isGreaterThan(bufferSize);
+      assertThat(soht2Service.exchange(connectionId, null, null).get()).isEmpty();
+    }
+  }
+
+  @Test
+  void testWriteWithoutRead() {
+    try (val server =
+            EchoServer.builder()
+                .portNumber(PORT_NUMBER)
+                .socketTimeout(socketTimeout)
+                .bufferSize(bufferSize)
+                .build();
+        val client =
+            soht2Service.open(
+                Soht2Connection.builder()
+                    .user(Soht2User.builder().username("system").build())
+                    .clientHost("localhost")
+                    .targetHost("localhost")
+                    .targetPort(PORT_NUMBER)
+                    .build(),
+                authentication)) {
+      val connectionId = client.soht2().id();
+      val input = createBinData(bufferSize / 2);
+
+      // the echoed data is left for the next exchange
+      assertThat(soht2Service.write(connectionId, input, null).isSuccess()).isTrue();
+      assertThat(client.bytesWritten()).isEqualTo(input.length);
+      assertThat(client.bytesRead()).isZero();
+      assertThat(soht2Service.exchange(connectionId, null, null).get()).isEqualTo(input);
+
+      client.close();
+      assertThat(soht2Service.write(connectionId, input, null).isFailure()).isTrue();
+    }
+  }
+
+  @Test
+  void testWriteDeflateStream() throws Exception {
+    try (val server =
+            EchoServer.builder()
+                .portNumber(PORT_NUMBER)
+                .socketTimeout(socketTimeout)
+                .bufferSize(bufferSize)
+                .build();
+        val client =
+            soht2Service.open(
+                Soht2Connection.builder()
+                    .user(Soht2User.builder().username("system").build())
+                    .clientHost("localhost")
+                    .targetHost("localhost")
+                    .targetPort(PORT_NUMBER)
+                    .build(),
+                authentication);
+        val deflater = new StreamDeflater(Deflater.DEFAULT_COMPRESSION, DeflateStrategy.DEFAULT)) {
+      val connectionId = client.soht2().id();
+      val inputList = List.of("first message", "second message", "third message");
+      val compressed = new ArrayList<byte[]>();
+      for (int seq = 0; seq < inputList.size(); seq++)
+        compressed.add(deflater.deflate(seq, inputList.get(seq).getBytes()));
+
+      // uploads arriving out of order and repeated ones are inflated in order and only once
+      for (val seq : List.of(1, 0, 1, 2))
+        assertThat(
+                soht2Service
+                    .write(
+                        connectionId,
+                        compressed.get(seq),
+                        StreamDeflater.CONTENT_ENCODING,
+                        (long) seq)
+                    .isSuccess())
+            .isTrue();
+      Try.run(() -> Thread.sleep(100)).get();
+      assertThat(new String(soht2Service.exchange(connectionId, null, null).get()))
+          .isEqualTo(String.join("", inputList));
+    }
+  }
+
+  @Test
+  void testDictionary() {
+    val message =
+        "{\"method\":\"orders.update\",\"params\":{\"status\":\"CONFIRMED\",\"currency\":\"EUR\"}}";
+    val dictionary = PresetDictionary.register(message.repeat(2).getBytes());
+    doReturn(Optional.of(dictionary))
+        .when(soht2DictionaryService)
+        .find(eq("localhost"), eq(PORT_NUMBER));
+
+    try (val server =
+            EchoServer.builder()
+                .portNumber(PORT_NUMBER)
+                .socketTimeout(socketTimeout)
+                .bufferSize(bufferSize)
+                .build();
+        val client =
+            soht2Service.open(
+                Soht2Connection.builder()
+                    .user(Soht2User.builder().username("system").build())
+                    .clientHost("localhost")
+                    .targetHost("localhost")
+                    .targetPort(PORT_NUMBER)
+                    .build(),
+                authentication)) {
+      val connectionId = client.soht2().id();
+      assertThat(soht2Service.dictionary(connectionId)).containsSame(dictionary);
+
+      // the upload compressed with the dictionary is decompressed by its id
+      val compressor =
+          Compressor.dictionaryCompressorFactory.apply(dictionary, -1, DeflateStrategy.DEFAULT);
+      assertThat(
+              soht2Service
+                  .write(connectionId, compressor.compress(message.getBytes()), "deflate")
+                  .isSuccess())
+          .isTrue();
+      Try.run(() -> Thread.sleep(100)).get();
+      val response = soht2Service.exchange(connectionId, null, null).get();
+      assertThat(new String(response)).isEqualTo(message);
+
+      // the dictionary is preferred for the small response if the client has it and accepts DEFLATE
+      assertThat(
+              soht2Service.compressResponse(
+                  connectionId, response, "lz4, deflate", dictionary.id()))
+          .hasValueSatisfying(
+              encoded -> {
+                assertThat(encoded.contentEncoding()).isEqualTo("deflate");
+                assertThat(encoded.data()).hasSizeLessThan(response.length / 2);
+                assertThat(compressor.decompress(encoded.data())).isEqualTo(response);
+              });
+      assertThat(soht2Service.compressResponse(connectionId, response, "lz4", dictionary.id()))
+          .isEmpty();
+      // a client accepting DEFLATE without the dictionary does not get it
+      assertThat(soht2Service.compressResponse(connectionId, response, "deflate", null)).isEmpty();
+      assertThat(soht2Service.compressResponse(connectionId, response, "deflate", "0badc0de"))
+          .isEmpty();
+      // both the upload and the echoed response are sampled
+      verify(soht2DictionaryService, times(2)).sample("localhost", PORT_NUMBER, response);
+    }
+  }
 }
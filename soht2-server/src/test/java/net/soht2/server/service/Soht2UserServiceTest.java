@@ -0,0 +1,204 @@
+/* SOHT2 © Licensed under MIT 2025. */
+package net.soht2.server.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.Set;
+import lombok.val;
+import net.soht2.common.dto.Soht2User;
+import net.soht2.server.config.CacheConfig;
+import net.soht2.server.dto.UserFilter;
+import net.soht2.server.dto.UserPaging;
+import net.soht2.server.dto.UserProvision;
+import net.soht2.server.dto.UserProvisionResult;
+import net.soht2.server.entity.UserEntity;
+import net.soht2.server.repository.UserEntityRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class Soht2UserServiceTest {
+
+  static final String USER_NAME = "cached_user";
+
+  @Autowired Soht2UserService soht2UserService;
+  @Autowired UserEntityRepository userEntityRepository;
+  @Autowired CacheManager cacheManager;
+  @Autowired MeterRegistry meterRegistry;
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @AfterEach
+  void afterEach() {
+    userEntityRepository.findByNameIgnoreCase(USER_NAME).ifPresent(userEntityRepository::delete);
+    userEntityRepository.deleteAll(
+        userEntityRepository.findAll(
+            UserFilter.builder().userName("search\\_%").build(), List.of(), 0, 100));
+    userEntityRepository.deleteAll(
+        userEntityRepository.findAll(
+            UserFilter.builder().userName("bulk\\_%").build(), List.of(), 0, 100));
+    cacheManager.getCacheNames().forEach(n -> cacheManager.getCache(n).clear());
+  }
+
+  @Test
+  void getCachedUserEntity_Unknown() {
+    val unknownUsers = nativeCache(CacheConfig.UNKNOWN_USER_CACHE);
+    val hits = unknownUsers.stats().hitCount();
+    assertThat(soht2UserService.getCachedUserEntity(USER_NAME)).isEmpty();
+    assertThat(soht2UserService.getCachedUserEntity(USER_NAME.toUpperCase())).isEmpty();
+    assertThat(unknownUsers.stats().hitCount()).isEqualTo(hits + 1);
+
+    // a created user is not unknown anymore
+    soht2UserService.createUser(USER_NAME, "secret", null, Set.of());
+    assertThat(soht2UserService.getCachedUserEntity(USER_NAME))
+        .map(UserEntity::getName)
+        .contains(USER_NAME);
+  }
+
+  @Test
+  void deleteUser_HistoryInBackground() {
+    soht2UserService.createUser(USER_NAME, "secret", null, Set.of());
+
+    // the history is kept if the deletion of the user is rolled back
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              soht2UserService.deleteUser(USER_NAME, false, true, true);
+              status.setRollbackOnly();
+            });
+    assertThat(userEntityRepository.findByNameIgnoreCase(USER_NAME)).isPresent();
+    assertThatThrownBy(() -> soht2UserService.getHistoryDeletion(USER_NAME))
+        .isInstanceOf(ResponseStatusException.class);
+
+    // the history deletion starts once the deletion of the user is committed
+    soht2UserService.deleteUser(USER_NAME, false, true, true);
+    assertThat(userEntityRepository.findByNameIgnoreCase(USER_NAME)).isEmpty();
+    assertThat(soht2UserService.getHistoryDeletion(USER_NAME).userName()).isEqualTo(USER_NAME);
+  }
+
+  @Test
+  void getCachedUserEntity_Cached() {
+    soht2UserService.createUser(USER_NAME, "secret", null, Set.of());
+    val users = nativeCache(CacheConfig.USER_CACHE);
+    val hits = users.stats().hitCount();
+    val cached = soht2UserService.getCachedUserEntity(USER_NAME).orElseThrow();
+    assertThat(soht2UserService.getCachedUserEntity(USER_NAME.toUpperCase())).contains(cached);
+    assertThat(users.stats().hitCount()).isEqualTo(hits + 1);
+
+    // changes are visible immediately
+    soht2UserService.updateUser(USER_NAME, null, UserEntity.ROLE_ADMIN, null);
+    assertThat(soht2UserService.getCachedUserEntity(USER_NAME))
+        .map(UserEntity::getRole)
+        .contains(UserEntity.ROLE_ADMIN);
+
+    assertThat(meterRegistry.find("cache.gets").tag("cache", CacheConfig.USER_CACHE).meters())
+        .isNotEmpty();
+  }
+
+  @Test
+  void searchUsers_OK() {
+    soht2UserService.createUser("search_b", "secret", null, Set.of("b.example.com:443"));
+    soht2UserService.createUser("search_a", "secret", UserEntity.ROLE_ADMIN, Set.of("*:*"));
+    soht2UserService.createUser("search_c", "secret", null, Set.of("c.example.com:*", "x:1"));
+
+    val paging = UserPaging.fromRequest(0, 2, List.of("username:asc"), false);
+    val page = soht2UserService.searchUsers("SEARCH_*", null, null, paging);
+    assertThat(page.totalItems()).isEqualTo(3);
+    assertThat(page.totalPages()).isEqualTo(2);
+    assertThat(page.data()).extracting(Soht2User::username).containsExactly("search_a", "search_b");
+    assertThat(
+            soht2UserService
+                .searchUsers("search_*", null, null, UserPaging.fromRequest(1, 2, null, true))
+                .data())
+        .extracting(Soht2User::username)
+        .containsExactly("search_c");
+
+    assertThat(soht2UserService.searchUsers("search_*", "user", "*.EXAMPLE.com*", paging).data())
+        .extracting(Soht2User::username)
+        .containsExactly("search_b", "search_c");
+    assertThat(soht2UserService.searchUsers("search_*", "admin", null, paging).data())
+        .extracting(Soht2User::username)
+        .containsExactly("search_a");
+
+    // the offset of a page beyond the supported range is rejected
+    val farPaging = UserPaging.fromRequest(Integer.MAX_VALUE, 2, null, true);
+    assertThatThrownBy(() -> soht2UserService.searchUsers(null, null, null, farPaging))
+        .isInstanceOf(ResponseStatusException.class)
+        .hasMessageContaining("Page number is too large");
+
+    // the tag changes with any change of the users only
+    val eTag = soht2UserService.searchUsersETag("search_*", null, null, paging);
+    assertThat(soht2UserService.searchUsersETag("search_*", null, null, paging)).isEqualTo(eTag);
+    assertThat(soht2UserService.searchUsersETag("search_*", "user", null, paging))
+        .isNotEqualTo(eTag);
+    soht2UserService.updateUser("search_c", null, UserEntity.ROLE_ADMIN, null);
+    assertThat(soht2UserService.searchUsersETag("search_*", null, null, paging)).isNotEqualTo(eTag);
+  }
+
+  @Test
+  void provisionUsers_OK() {
+    soht2UserService.createUser("bulk_old", "secret", null, Set.of("a:1"));
+    soht2UserService.createUser("bulk_same", "secret", null, Set.of("a:1"));
+    val cached = soht2UserService.getCachedUserEntity("bulk_old").orElseThrow();
+
+    val results =
+        soht2UserService.provisionUsers(
+            List.of(
+                UserProvision.builder().username("Bulk_New").password("secret1").build(),
+                UserProvision.builder().username("bulk_old").role("admin").build(),
+                UserProvision.builder().username("bulk_same").build(),
+                UserProvision.builder().username("bulk_new").password("secret2").build(),
+                UserProvision.builder().username("bulk_none").build(),
+                UserProvision.builder()
+                    .username("bulk_bad")
+                    .password("secret3")
+                    .allowedTargets(Set.of("Bad Target"))
+                    .build()));
+    assertThat(results)
+        .extracting(UserProvisionResult::status)
+        .containsExactly(
+            UserProvisionResult.Status.CREATED,
+            UserProvisionResult.Status.UPDATED,
+            UserProvisionResult.Status.UNCHANGED,
+            UserProvisionResult.Status.FAILED,
+            UserProvisionResult.Status.FAILED,
+            UserProvisionResult.Status.FAILED);
+    assertThat(results)
+        .extracting(UserProvisionResult::error)
+        .containsExactly(
+            null,
+            null,
+            null,
+            "Duplicate user name",
+            "Password must be provided",
+            "Invalid allowed target format. Must be in the format 'host:123' or '*.host:*'");
+
+    val created = userEntityRepository.findByNameIgnoreCase("bulk_new").orElseThrow();
+    assertThat(created.getAllowedTargets()).containsExactly("*:*");
+    assertThat(soht2UserService.loadUserByUsername("bulk_new").getPassword())
+        .isEqualTo(created.getPassword());
+    assertThat(userEntityRepository.existsByNameIgnoreCase("bulk_bad")).isFalse();
+
+    // the changed user is evicted from the cache
+    val updated = soht2UserService.getCachedUserEntity("bulk_old").orElseThrow();
+    assertThat(updated.getRole()).isEqualTo(UserEntity.ROLE_ADMIN);
+    assertThat(updated.getPassword()).isEqualTo(cached.getPassword());
+    assertThat(updated.getAllowedTargets()).containsExactly("a:1");
+  }
+
+  Cache<Object, Object> nativeCache(String name) {
+    return ((CaffeineCache) cacheManager.getCache(name)).getNativeCache();
+  }
+}
@@ -26,6 +26,7 @@ public class EchoServer implements Closeable, Runnable {
   @Getter private final int bufferSize;
 
   private final AtomicBoolean isRunning;
+  private final ServerSocket serverSocket;
   private final CompletableFuture<Void> future;
 
   @Builder
@@ -35,6 +36,8 @@ public class EchoServer implements Closeable, Runnable {
     this.socketTimeout = socketTimeout;
     this.bufferSize = bufferSize;
     isRunning = new AtomicBoolean();
+    // bind before the accepting thread starts, so clients can connect right after construction
+    serverSocket = new ServerSocket(portNumber);
     future = runAsync(this);
     log.info("EchoServer: portNumber={}", portNumber);
   }
@@ -42,7 +45,7 @@ public class EchoServer implements Closeable, Runnable {
   @SneakyThrows
   @Override
   public void run() {
-    try (val serverSocket = new ServerSocket(portNumber);
+    try (serverSocket;
         val clientSocket = serverSocket.accept();
         val out = clientSocket.getOutputStream();
         val in = clientSocket.getInputStream()) {
@@ -41,6 +41,8 @@ export type HistorySortColumn =
   | 'bytesRead'
   | 'bytesWritten';
 
+export type UserSortColumn = 'username' | 'role' | 'createdAt' | 'updatedAt';
+
 export type TableSorting<SortColumn extends string> = {
   column: SortColumn | null;
   direction: SortingDirLower | null;
@@ -55,12 +57,16 @@ export interface Paging<SortColumn extends string> {
   pageNumber: number;
   pageSize: number;
   sorting?: SortingOrder<SortColumn>[] | null;
+  cursor?: string | null;
+  skipTotal?: boolean;
 }
 
 export interface Page<DataType, SortColumn extends string> {
   paging?: Paging<SortColumn> | null;
   totalItems?: number | null;
+  totalApproximate?: boolean; // total is a lower bound when counting stopped at the limit
   data?: DataType[] | null;
+  nextCursor?: string | null; // cursor of the next page, absent on the last page
   totalPages?: number | null; // computed by server
 }
 
@@ -70,6 +76,33 @@ export type HistoryPage = Page<Soht2Connection, HistorySortColumn> & {
   paging?: HistoryPaging | null;
 };
 
+export type UserOrder = SortingOrder<UserSortColumn>;
+export type UserPaging = Paging<UserSortColumn> & { sorting?: UserOrder[] | null };
+export type UserPage = Page<Soht2User, UserSortColumn> & { paging?: UserPaging | null };
+
+export interface UserProvision {
+  username: string;
+  password?: string | null; // required for a new user
+  role?: string | null;
+  allowedTargets?: string[] | null;
+}
+
+export interface UserProvisionResult {
+  username: string;
+  status: 'CREATED' | 'UPDATED' | 'UNCHANGED' | 'FAILED';
+  user?: Soht2User | null;
+  error?: string | null;
+}
+
+export interface HistoryDeletion {
+  userName: string;
+  status: 'RUNNING' | 'COMPLETED' | 'FAILED';
+  deleted: number;
+  startedAt: ISODateTime;
+  finishedAt?: ISODateTime | null;
+  error?: string | null;
+}
+
 export type ValidationError = { defaultMessage: string; arguments: unknown[] };
 export class ApiError extends Error {
   timestamp: ISODateTime;
@@ -206,6 +239,16 @@ export const httpClient = new HttpClient({
 });
 
 // ===== UserController API =====
+export type UserRequestParams = {
+  un?: string; // username occurrence
+  role?: string; // role e.g. "ADMIN"
+  tg?: string; // allowed target occurrence
+  sort?: string[]; // sorting criteria e.g. ["role:asc", "username:asc"] - default is username:asc
+  pg?: number; // page number - default is 0
+  sz?: number; // page size - default is 10
+  cnt?: boolean; // count total number of users - default is true
+};
+
 export const UserApi = {
   // POST /api/user?username=&password=&role?=&target=*
   createUser: async (
@@ -223,6 +266,14 @@ export const UserApi = {
     return client.postJson<Soht2User>('/api/user', undefined, query);
   },
 
+  // POST /api/user/bulk with JSON array of users to create or update
+  provisionUsers: async (
+    entries: UserProvision[],
+    client: HttpClient = httpClient
+  ): Promise<UserProvisionResult[]> => {
+    return client.postJson<UserProvisionResult[]>('/api/user/bulk', entries);
+  },
+
   // PUT /api/user/{name}?password?=&role?=&target?=
   updateUser: async (
     name: string,
@@ -236,21 +287,44 @@ export const UserApi = {
     return client.putJson<Soht2User>(`/api/user/${encodeURIComponent(name)}`, undefined, query);
   },
 
-  // DELETE /api/user/{name}?force=&history=
+  // DELETE /api/user/{name}?force=&history=&background=
   deleteUser: async (
     name: string,
-    opts?: { force?: boolean; history?: boolean },
+    opts?: { force?: boolean; history?: boolean; background?: boolean },
     client: HttpClient = httpClient
   ): Promise<void> => {
-    const query: Query = { force: opts?.force ?? false, history: opts?.history ?? false };
+    const query: Query = {
+      force: opts?.force ?? false,
+      history: opts?.history ?? false,
+      background: opts?.background ?? false,
+    };
     return client.delete(`/api/user/${encodeURIComponent(name)}`, query);
   },
 
+  // GET /api/user/{name}/history-deletion
+  getHistoryDeletion: async (
+    name: string,
+    client: HttpClient = httpClient
+  ): Promise<HistoryDeletion> => {
+    return client.getJson<HistoryDeletion>(
+      `/api/user/${encodeURIComponent(name)}/history-deletion`
+    );
+  },
+
   // GET /api/user
   listUsers: async (client: HttpClient = httpClient): Promise<Soht2User[]> => {
     return client.getJson<Soht2User[]>('/api/user');
   },
 
+  // GET /api/user/search?un?=&role?=&tg?=&sort?=&pg?=&sz?=&cnt?=
+  // responses carry an ETag, so the browser revalidates unchanged pages with If-None-Match
+  searchUsers: async (
+    params: UserRequestParams = {},
+    client: HttpClient = httpClient
+  ): Promise<UserPage> => {
+    return client.getJson<UserPage>('/api/user/search', params as Query);
+  },
+
   // GET /api/user/self
   getSelf: async (client: HttpClient = httpClient): Promise<Soht2User> => {
     return client.getJson<Soht2User>('/api/user/self');
@@ -284,8 +358,37 @@ export type HistoryRequestParams = HistoryFilters & {
   sort?: string[]; // sorting criteria e.g. ["targetHost:asc", "openedAt:desc"]
   pg?: number; // page number - default is 0
   sz?: number; // page size - default is 10
+  cur?: string; // cursor of the page (nextCursor of the previous page) - overrides page number
+  cnt?: boolean; // count total number of records - default is true
 };
 
+export type StatsGrain = 'hour' | 'day';
+export type StatsGroup = 'period' | 'username' | 'target' | 'clientHost';
+export type StatsMetric = 'connections' | 'duration' | 'bytesRead' | 'bytesWritten';
+export type StatsRequestParams = {
+  gr?: StatsGrain; // rollup grain - default is day
+  from?: ISODateTime; // start of the time range, inclusive - default is 7 days ago
+  to?: ISODateTime; // end of the time range, exclusive - default is now
+  un?: string; // username occurrence
+  th?: string; // target host occurrence
+  tp?: number[]; // target ports e.g. [80, 443]
+  ch?: string; // client host occurrence
+  by?: StatsGroup[]; // dimensions to group by - default is ["username", "target"]
+  sort?: StatsMetric; // metric to order groups by in descending order - default is bytesWritten
+  lim?: number; // max number of groups - default is 100
+};
+export interface HistoryStats {
+  period?: ISODateTime | null;
+  userName?: string | null;
+  targetHost?: string | null;
+  targetPort?: number | null;
+  clientHost?: string | null;
+  connections: number;
+  durationMillis: number;
+  bytesRead: number;
+  bytesWritten: number;
+}
+
 export const ConnectionApi = {
   // GET /api/connection
   list: async (client: HttpClient = httpClient): Promise<Soht2Connection[]> => {
@@ -300,6 +403,14 @@ export const ConnectionApi = {
     return client.getJson<HistoryPage>('/api/connection/history', filters as Query);
   },
 
+  // GET /api/connection/stats with aggregated traffic
+  stats: async (
+    params: StatsRequestParams = {},
+    client: HttpClient = httpClient
+  ): Promise<HistoryStats[]> => {
+    return client.getJson<HistoryStats[]>('/api/connection/stats', params as Query);
+  },
+
   // DELETE /api/connection/{id}
   close: async (id: UUID, client: HttpClient = httpClient): Promise<void> => {
     return client.delete(`/api/connection/${encodeURIComponent(id)}`);
@@ -15,44 +15,73 @@ import PersonRemoveAlt1Icon from '@mui/icons-material/PersonRemoveAlt1';
 import RefreshIcon from '@mui/icons-material/Refresh';
 import {
   DataGrid,
-  getGridDateOperators,
+  getGridSingleSelectOperators,
+  getGridStringOperators,
   type GridColDef,
-  type GridColumnVisibilityModel,
   type GridFilterModel,
+  type GridPaginationModel,
   type GridSortModel,
 } from '@mui/x-data-grid';
-import { type ApiError, type Soht2User, type TableSorting, UserApi } from '../api/soht2Api';
-import { formatDateTime, getDataGridStyle } from '../api/functions';
+import {
+  type ApiError,
+  type Soht2User,
+  type SortingDirLower,
+  UserApi,
+  type UserRequestParams,
+  type UserSortColumn,
+} from '../api/soht2Api';
+import {
+  formatDateTime,
+  getDataGridStyle,
+  getStringFilter,
+  getStringFilterItem,
+} from '../api/functions';
 import { dispatchAppErrorEvent, UserChangedEvent } from '../api/appEvents';
-import { useEventListener } from '../hooks';
+import { useDebounce, useEventListener } from '../hooks';
 import HeaderMenuButton from '../controls/HeaderMenuButton';
 import NewUserDialog from './NewUserDialog';
 import EditUserDialog from './EditUserDialog';
 import DeleteUserDialog from './DeleteUserDialog';
-import DateTimeGridFilter from '../controls/DateTimeGridFilter';
 import { LoadingOverlay, NoRowsOverlay } from '../controls/dataGridOverlays';
 
-type UserSortColumn = 'username' | 'role' | 'createdAt';
-export type UsersSorting = TableSorting<UserSortColumn>;
-
 type UserVisibilityColumn = 'role' | 'createdAt' | 'allowedTargets';
 export type UsersVisibility = { [K in UserVisibilityColumn]?: boolean };
 
-export type UserFilter = { field: UserSortColumn; operator: string; value: string | number | null };
+export const DEF_USERS_PG_SZ = 50;
 
 export type UserSettings = {
-  sorting: UsersSorting;
   visibility: UsersVisibility;
-  filters: UserFilter[];
+  requestParams: UserRequestParams;
 };
 
+function getGridFilterModel(params?: UserRequestParams): GridFilterModel {
+  const p = params ?? {};
+  const items = [
+    getStringFilterItem('username', p.un) ?? null,
+    p.role ? { field: 'role', operator: 'is', value: p.role } : null,
+    getStringFilterItem('allowedTargets', p.tg) ?? null,
+  ].filter(v => v !== null);
+  return { items };
+}
+
+function getUserFilters(filterModel?: GridFilterModel): UserRequestParams {
+  const items = filterModel?.items ?? [];
+  const role = items.find(f => f.field === 'role')?.value as string | undefined;
+  return {
+    un: getStringFilter(items.find(f => f.field === 'username')),
+    role: role || undefined,
+    tg: getStringFilter(items.find(f => f.field === 'allowedTargets')),
+  };
+}
+
 export default function UsersTable({
   initSettings,
   onSettingsChange,
 }: Readonly<{ initSettings?: UserSettings; onSettingsChange?: (s: UserSettings) => void }>) {
   const theme = useTheme();
 
-  const [users, setUsers] = useState<Soht2User[]>([]);
+  const [rows, setRows] = useState<Soht2User[]>([]);
+  const [rowCount, setRowCount] = useState(0);
   const [loading, setLoading] = useState(false);
   const [menuHeaderAnchor, setMenuHeaderAnchor] = useState<HTMLElement | null>(null);
   const [menuRowAnchor, setMenuRowAnchor] = useState<HTMLElement | null>(null);
@@ -60,25 +89,52 @@ export default function UsersTable({
   const [newUserOpen, setNewUserOpen] = useState(false);
   const [editUserOpen, setEditUserOpen] = useState(false);
   const [deleteUserOpen, setDeleteUserOpen] = useState(false);
-  const [sorting, setSorting] = useState(
-    initSettings?.sorting ?? { column: null, direction: null }
-  );
   const [visibility, setVisibility] = useState(initSettings?.visibility ?? {});
-  const [filters, setFilters] = useState(initSettings?.filters ?? []);
+  const [sortModel, setSortModel] = useState<GridSortModel>(() => {
+    const m = initSettings?.requestParams?.sort ?? [];
+    if (m.length === 0) return [];
+    const [c, d] = m[0].split(':');
+    return [{ field: c as UserSortColumn, sort: d.toLowerCase() as SortingDirLower }];
+  });
+  const [paginationModel, setPaginationModel] = useState({
+    page: initSettings?.requestParams?.pg ?? 0,
+    pageSize: initSettings?.requestParams?.sz ?? DEF_USERS_PG_SZ,
+  } as GridPaginationModel);
+  const [filterModel, setFilterModel] = useState(() =>
+    getGridFilterModel(initSettings?.requestParams)
+  );
+  const [requestParams, setRequestParams] = useState(initSettings?.requestParams ?? {});
 
-  const load = useCallback(async () => {
+  const load = useCallback(async (params: UserRequestParams) => {
     try {
       setLoading(true);
-      const data = await UserApi.listUsers();
-      setUsers(data ?? []);
+      const res = await UserApi.searchUsers(params);
+      setRows(res?.data ?? []);
+      setRowCount(res?.totalItems ?? 0);
     } catch (e) {
       dispatchAppErrorEvent(e as ApiError);
     } finally {
       setLoading(false);
     }
   }, []);
-  useEffect(() => void load(), [load]);
-  useEventListener(UserChangedEvent.TYPE, () => void load());
+  useEffect(() => void load(requestParams), [load, requestParams]);
+  useEventListener(UserChangedEvent.TYPE, () => void load(requestParams));
+
+  useEffect(() => {
+    const [si] = sortModel;
+    const sort = si?.field && si?.sort ? [`${si.field}:${si.sort}`] : undefined;
+    const pg = paginationModel.page;
+    const sz = paginationModel.pageSize;
+    setRequestParams(params => ({ ...params, sort, pg, sz }));
+  }, [paginationModel.page, paginationModel.pageSize, sortModel]);
+
+  const handleFilterModel = useCallback(() => {
+    setRequestParams(params => {
+      const np = { ...params, ...getUserFilters(filterModel) };
+      return JSON.stringify(params) === JSON.stringify(np) ? params : np;
+    });
+  }, [filterModel]);
+  useDebounce(700, handleFilterModel, [handleFilterModel]);
 
   const handleMenuHeaderOpen = useCallback(
     (e: MouseEvent<HTMLElement>) => setMenuHeaderAnchor(e.currentTarget),
@@ -87,8 +143,8 @@ export default function UsersTable({
   const handleMenuHeaderClose = useCallback(() => setMenuHeaderAnchor(null), []);
   const handleManualRefresh = useCallback(() => {
     handleMenuHeaderClose();
-    void load();
-  }, [handleMenuHeaderClose, load]);
+    void load(requestParams);
+  }, [handleMenuHeaderClose, load, requestParams]);
   const handleNewUserOpen = useCallback(() => {
     handleMenuHeaderClose();
     setNewUserOpen(true);
@@ -113,48 +169,31 @@ export default function UsersTable({
   const handleDeleteUserClose = useCallback(() => setDeleteUserOpen(false), []);
 
   useEffect(() => {
-    if (onSettingsChange) onSettingsChange({ sorting, visibility, filters });
-  }, [filters, onSettingsChange, sorting, visibility]);
+    if (onSettingsChange) onSettingsChange({ visibility, requestParams });
+  }, [onSettingsChange, requestParams, visibility]);
 
-  const sortModel = useMemo(
-    () =>
-      sorting.column && sorting.direction
-        ? ([{ field: sorting.column, sort: sorting.direction }] as GridSortModel)
-        : [],
-    [sorting]
-  );
-  const handleSortModelChange = useCallback((model: GridSortModel) => {
-    const { field, sort } = model?.length > 0 ? model[0] : { field: null, sort: null };
-    setSorting({
-      column: field as UserSortColumn,
-      direction: (sort ?? null) as UsersSorting['direction'],
-    });
-  }, []);
-  const handleColumnVisibilityModelChange = useCallback(
-    (m: GridColumnVisibilityModel) => setVisibility(m as UsersVisibility),
-    []
-  );
-  const handleFilterModelChange = useCallback((m: GridFilterModel) => {
-    setFilters(
-      (m?.items ?? []).map<UserFilter>(({ field, operator, value }) => ({
-        field: field as UserSortColumn,
-        operator,
-        value,
-      }))
+  const columns = useMemo<GridColDef[]>(() => {
+    const stringOperators = getGridStringOperators().filter(
+      op => !op.value.startsWith('doesNot') && !op.value.startsWith('is')
     );
-  }, []);
-
-  const rows = useMemo(() => users.map(u => ({ ...u, id: u.username })), [users]);
-
-  const columns: GridColDef[] = useMemo(
-    () => [
-      { field: 'username', headerName: 'Name', flex: 1, minWidth: 150, hideable: false },
+    const roleOperators = getGridSingleSelectOperators().filter(op => op.value === 'is');
+    return [
+      {
+        field: 'username',
+        headerName: 'Name',
+        flex: 1,
+        minWidth: 150,
+        hideable: false,
+        filterOperators: stringOperators,
+      },
       {
         field: 'role',
+        type: 'singleSelect',
         headerName: 'Role',
         flex: 0.7,
         minWidth: 120,
-        renderCell: ({ value }) => String(value ?? ''),
+        valueOptions: ['USER', 'ADMIN'],
+        filterOperators: roleOperators,
       },
       {
         field: 'createdAt',
@@ -162,12 +201,9 @@ export default function UsersTable({
         headerName: 'Created',
         flex: 0.5,
         minWidth: 150,
+        filterable: false,
         valueGetter: value => new Date(value),
         renderCell: ({ value }) => (value ? formatDateTime(value) : ''),
-        filterOperators: getGridDateOperators(true).map(operator => ({
-          ...operator,
-          InputComponent: operator.InputComponent ? DateTimeGridFilter : undefined,
-        })),
       },
       {
         field: 'allowedTargets',
@@ -175,7 +211,7 @@ export default function UsersTable({
         flex: 2,
         minWidth: 220,
         sortable: false,
-        filterable: false,
+        filterOperators: stringOperators,
         renderCell: ({ value }) => {
           const targets = (value as string[] | undefined) ?? [];
           return (
@@ -221,9 +257,8 @@ export default function UsersTable({
           </IconButton>
         ),
       },
-    ],
-    [handleMenuHeaderOpen, handleMenuRowOpen, menuHeaderAnchor, menuRowAnchor]
-  );
+    ];
+  }, [handleMenuHeaderOpen, handleMenuRowOpen, menuHeaderAnchor, menuRowAnchor]);
 
   const sx = useMemo(() => getDataGridStyle(theme), [theme]);
 
@@ -234,18 +269,22 @@ export default function UsersTable({
           <DataGrid
             columns={columns}
             rows={rows}
-            initialState={{ filter: { filterModel: { items: filters } } }}
+            rowCount={rowCount}
             getRowId={row => (row as Soht2User).username}
-            sortingMode="client"
+            sortingMode="server"
+            filterMode="server"
+            paginationMode="server"
             loading={loading}
             sortModel={sortModel}
+            filterModel={filterModel}
+            paginationModel={paginationModel}
             columnVisibilityModel={visibility}
-            onSortModelChange={handleSortModelChange}
-            onColumnVisibilityModelChange={handleColumnVisibilityModelChange}
-            onFilterModelChange={handleFilterModelChange}
+            pageSizeOptions={[20, DEF_USERS_PG_SZ, 100]}
+            onSortModelChange={setSortModel}
+            onColumnVisibilityModelChange={setVisibility}
+            onFilterModelChange={setFilterModel}
+            onPaginationModelChange={setPaginationModel}
             disableRowSelectionOnClick
-            hideFooter={true}
-            paginationModel={{ page: 0, pageSize: rows.length }}
             slots={{ noRowsOverlay: NoRowsOverlay, loadingOverlay: LoadingOverlay }}
             slotProps={{ noRowsOverlay: { message: 'No user records available to display.' } }}
             sx={sx}
@@ -7,7 +7,7 @@ import Tab from '@mui/material/Tab';
 import { httpClient, type Soht2User } from '../api/soht2Api';
 import Layout from '../components/Layout';
 import TabPanel from '../components/TabPanel';
-import UsersTable, { type UserSettings } from '../components/UsersTable';
+import UsersTable, { DEF_USERS_PG_SZ, type UserSettings } from '../components/UsersTable';
 import ConnectionsTable, { type ConnectionSettings } from '../components/ConnectionsTable';
 import HistoryTable, { DEF_PG_SZ, type HistorySettings } from '../components/HistoryTable';
 
@@ -18,8 +18,7 @@ export default function AdminPage({ user }: Readonly<{ user?: Soht2User | null }
   const handleTabChange = useCallback((_: SyntheticEvent, newTab: number) => setTab(newTab), []);
 
   const [usersSettings, setUsersSettings] = useState<UserSettings>({
-    sorting: { column: 'username', direction: 'asc' },
-    filters: [],
+    requestParams: { sort: ['username:asc'], sz: DEF_USERS_PG_SZ, pg: 0 },
     visibility: {},
   });
 